@@ -42,7 +42,49 @@ public enum SonyaProperty {
     /** Hibernate. Connection timeout.*/
     H_C3P0_TIMEOUT("hibernate.c3p0.timeout"),
     /** Hibernate. Pool max statements for caching. */
-    H_C3P0_MAX_STATEMENTS("hibernate.c3p0.max_statements");
+    H_C3P0_MAX_STATEMENTS("hibernate.c3p0.max_statements"),
+    /** Search. Slow query threshold, milliseconds. */
+    SEARCH_SLOW_QUERY_MS("search.slow_query.threshold_ms"),
+    /** Search. Slow query log capacity. */
+    SEARCH_SLOW_QUERY_CAPACITY("search.slow_query.capacity"),
+    /** Search. Default and max search timeout, milliseconds. */
+    SEARCH_TIMEOUT_MS("search.timeout_ms"),
+    /** Search. Max concurrent searches. */
+    SEARCH_MAX_CONCURRENCY("search.admission.max_concurrency"),
+    /** Search. Wait queue size. */
+    SEARCH_QUEUE_SIZE("search.admission.queue_size"),
+    /** Search. Wait queue size for one client. */
+    SEARCH_CLIENT_QUEUE_SIZE("search.admission.client_queue_size"),
+    /** Search. Max wait time in queue, milliseconds. */
+    SEARCH_QUEUE_TIMEOUT_MS("search.admission.queue_timeout_ms"),
+    /** Search. Coalescing time bucket, minutes, zero - disabled. */
+    SEARCH_COALESCE_BUCKET_MIN("search.coalesce.time_bucket_min"),
+    /** Search. Warm-up queries for every graph, zero - disabled. */
+    SEARCH_WARMUP_QUERIES("search.warmup.queries"),
+    /** Search. Warm-up time limit for one graph, milliseconds. */
+    SEARCH_WARMUP_TIMEOUT_MS("search.warmup.timeout_ms"),
+    /** Search. Warm-up queries file, captured by slow query log. */
+    SEARCH_WARMUP_FILE("search.warmup.file"),
+    /** Search. Max graph vertices for reachability matrices, zero - off. */
+    SEARCH_REACHABILITY_MAX_VERTICES("search.reachability.max_vertices"),
+    /** Search. Access bus stops radius, meters, zero - fixed count. */
+    SEARCH_ACCESS_RADIUS_M("search.access.radius_m"),
+    /** Search. Min access bus stops, if radius is too small. */
+    SEARCH_ACCESS_MIN_STOPS("search.access.min_stops"),
+    /** Search. Prune dominated access bus stops. */
+    SEARCH_ACCESS_PRUNE("search.access.prune"),
+    /** Search. Station radius for same name bus stops, meters, zero - off. */
+    SEARCH_STATION_RADIUS_M("search.station.radius_m"),
+    /** Search. Collapse paths with the same way into one graph vertex. */
+    SEARCH_COLLAPSE_PATHS("search.graph.collapse_paths"),
+    /** Search. Search engine bean name for all profiles, empty - adaptive. */
+    SEARCH_ENGINE("search.engine"),
+    /** Search. Graphs memory budget, MB, zero - unlimited. */
+    SEARCH_GRAPH_MEMORY_MB("search.graph.memory_mb"),
+    /** Search. Min graph vertices for off-heap adjacency, zero - off. */
+    SEARCH_GRAPH_OFFHEAP_VERTICES("search.graph.offheap.min_vertices"),
+    /** Search. Directory for memory-mapped adjacency, empty - direct. */
+    SEARCH_GRAPH_OFFHEAP_DIR("search.graph.offheap.dir");
     /** Property key. */
     private final String key;
     /**
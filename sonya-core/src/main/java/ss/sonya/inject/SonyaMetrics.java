@@ -0,0 +1,66 @@
+/*
+ * Copyright (C) 2017 ss
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ss.sonya.inject;
+
+/**
+ * Metrics registry.
+ * Labels are passed as pairs: name, value, name, value...
+ * @author ss
+ */
+public interface SonyaMetrics {
+    /**
+     * Record value into histogram.
+     * @param name metric name.
+     * @param value value.
+     * @param labels labels.
+     */
+    void observe(String name, double value, String... labels);
+    /**
+     * Record elapsed time into histogram, seconds.
+     * @param name metric name.
+     * @param startNanos start time, from System.nanoTime().
+     * @param labels labels.
+     */
+    void observeSince(String name, long startNanos, String... labels);
+    /**
+     * Increment counter.
+     * @param name metric name.
+     * @param delta increment.
+     * @param labels labels.
+     */
+    void increment(String name, double delta, String... labels);
+    /**
+     * Set gauge value.
+     * @param name metric name.
+     * @param value value.
+     * @param labels labels.
+     */
+    void gauge(String name, double value, String... labels);
+    /**
+     * Histogram quantile.
+     * @param name metric name.
+     * @param quantile quantile, 0..1.
+     * @param labels labels.
+     * @return quantile value or NaN if histogram is empty.
+     */
+    double quantile(String name, double quantile, String... labels);
+    /**
+     * Export all metrics in Prometheus text format.
+     * @return metrics.
+     */
+    String export();
+}
@@ -0,0 +1,49 @@
+/*
+ * Copyright (C) 2017 ss
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ss.sonya.inject.rest;
+
+import javax.servlet.http.HttpServletResponse;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.RestController;
+import ss.sonya.inject.SonyaMetrics;
+
+/**
+ * Metrics web-service.
+ * @author ss
+ */
+@RestController
+@RequestMapping("/rest/metrics")
+public class MetricsWS {
+    /** Prometheus text format content type. */
+    private static final String CONTENT_TYPE =
+            "text/plain; version=0.0.4; charset=utf-8";
+    /** Metrics. */
+    @Autowired
+    private SonyaMetrics metrics;
+    /**
+     * Export metrics in Prometheus text format.
+     * @param resp HTTP response.
+     * @throws Exception error.
+     */
+    @RequestMapping(method = RequestMethod.GET)
+    public void export(HttpServletResponse resp) throws Exception {
+        resp.setContentType(CONTENT_TYPE);
+        resp.getOutputStream().write(metrics.export().getBytes("UTF-8"));
+    }
+}
@@ -0,0 +1,255 @@
+/*
+ * Copyright (C) 2017 ss
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ss.sonya.inject.service;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.DoubleAdder;
+import org.springframework.stereotype.Service;
+import ss.sonya.inject.SonyaMetrics;
+
+/**
+ * Metrics registry implementation.
+ * Histograms use logarithmic buckets (5% width), so quantiles are
+ * calculated with small relative error and without sample storage.
+ * @author ss
+ */
+@Service
+public class MetricsServiceImpl implements SonyaMetrics {
+    /** Exported quantiles. */
+    private static final double[] QUANTILES = {0.5, 0.95, 0.99};
+    /** Histogram type. */
+    private static final String SUMMARY = "summary";
+    /** Counter type. */
+    private static final String COUNTER = "counter";
+    /** Gauge type. */
+    private static final String GAUGE = "gauge";
+    /** Metric families, key - metric name. */
+    private final Map<String, Family> families = new ConcurrentHashMap<>();
+    @Override
+    public void observe(final String name, final double value,
+            final String... labels) {
+        ((Histogram) series(name, SUMMARY, labels)).observe(value);
+    }
+    @Override
+    public void observeSince(final String name, final long startNanos,
+            final String... labels) {
+        observe(name, (double) (System.nanoTime() - startNanos)
+                / TimeUnit.SECONDS.toNanos(1), labels);
+    }
+    @Override
+    public void increment(final String name, final double delta,
+            final String... labels) {
+        ((DoubleAdder) series(name, COUNTER, labels)).add(delta);
+    }
+    @Override
+    public void gauge(final String name, final double value,
+            final String... labels) {
+        ((AtomicLong) series(name, GAUGE, labels)).set(
+                Double.doubleToLongBits(value));
+    }
+    @Override
+    public double quantile(final String name, final double quantile,
+            final String... labels) {
+        Family family = families.get(name);
+        if (family == null || !SUMMARY.equals(family.type)) {
+            return Double.NaN;
+        }
+        Object s = family.series.get(renderLabels(labels));
+        return s == null ? Double.NaN : ((Histogram) s).quantile(quantile);
+    }
+    @Override
+    public String export() {
+        StringBuilder sb = new StringBuilder();
+        for (Map.Entry<String, Family> e : new TreeMap<>(families)
+                .entrySet()) {
+            String name = e.getKey();
+            Family family = e.getValue();
+            sb.append("# TYPE ").append(name).append(" ")
+                    .append(family.type).append("\n");
+            for (Map.Entry<String, Object> s : new TreeMap<>(family.series)
+                    .entrySet()) {
+                String labels = s.getKey();
+                if (SUMMARY.equals(family.type)) {
+                    Histogram h = (Histogram) s.getValue();
+                    for (double q : QUANTILES) {
+                        String ql = (labels.isEmpty() ? "" : labels + ",")
+                                + "quantile=\"" + q + "\"";
+                        line(sb, name, ql, h.quantile(q));
+                    }
+                    line(sb, name + "_sum", labels, h.sum.sum());
+                    line(sb, name + "_count", labels, h.count());
+                } else if (COUNTER.equals(family.type)) {
+                    line(sb, name, labels,
+                            ((DoubleAdder) s.getValue()).sum());
+                } else {
+                    line(sb, name, labels, Double.longBitsToDouble(
+                            ((AtomicLong) s.getValue()).get()));
+                }
+            }
+        }
+        return sb.toString();
+    }
+    /**
+     * Find or create series.
+     * @param name metric name.
+     * @param type metric type.
+     * @param labels labels.
+     * @return series.
+     */
+    private Object series(final String name, final String type,
+            final String... labels) {
+        Family family = families.computeIfAbsent(name, n -> new Family(type));
+        if (!type.equals(family.type)) {
+            throw new IllegalArgumentException("metric [" + name
+                    + "] already registered as " + family.type);
+        }
+        return family.series.computeIfAbsent(renderLabels(labels), k -> {
+            switch (type) {
+                case SUMMARY:
+                    return new Histogram();
+                case COUNTER:
+                    return new DoubleAdder();
+                default:
+                    return new AtomicLong(Double.doubleToLongBits(0));
+            }
+        });
+    }
+    /**
+     * Render labels.
+     * @param labels labels, name-value pairs.
+     * @return labels in Prometheus format, without braces.
+     */
+    private static String renderLabels(final String... labels) {
+        if (labels.length % 2 != 0) {
+            throw new IllegalArgumentException(
+                    "labels must be name-value pairs");
+        }
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < labels.length; i += 2) {
+            if (i > 0) {
+                sb.append(",");
+            }
+            sb.append(labels[i]).append("=\"");
+            String v = labels[i + 1] == null ? "" : labels[i + 1];
+            sb.append(v.replace("\\", "\\\\").replace("\"", "\\\"")
+                    .replace("\n", "\\n")).append("\"");
+        }
+        return sb.toString();
+    }
+    /**
+     * Append sample line.
+     * @param sb output.
+     * @param name sample name.
+     * @param labels rendered labels.
+     * @param value value.
+     */
+    private static void line(final StringBuilder sb, final String name,
+            final String labels, final double value) {
+        sb.append(name);
+        if (!labels.isEmpty()) {
+            sb.append("{").append(labels).append("}");
+        }
+        sb.append(" ").append(value).append("\n");
+    }
+    /**
+     * Metric family.
+     */
+    private static final class Family {
+        /** Metric type. */
+        private final String type;
+        /** Series, key - rendered labels. */
+        private final Map<String, Object> series = new ConcurrentHashMap<>();
+        /**
+         * Constructor.
+         * @param pType metric type.
+         */
+        Family(final String pType) {
+            type = pType;
+        }
+    }
+    /**
+     * Histogram with logarithmic buckets.
+     */
+    static final class Histogram {
+        /** Lowest bucket bound, values below it are in zero bucket. */
+        private static final double MIN = 1e-6;
+        /** Bucket growth. */
+        private static final double GROWTH = 1.05;
+        /** Buckets count, covers values up to 1e10. */
+        private static final int BUCKETS = 2 + (int) Math.ceil(
+                Math.log(1e10 / MIN) / Math.log(GROWTH));
+        /** Bucket counters. */
+        private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+        /** Sum of values. */
+        private final DoubleAdder sum = new DoubleAdder();
+        /**
+         * Record value.
+         * @param value value.
+         */
+        void observe(final double value) {
+            int idx = 0;
+            if (value > MIN) {
+                idx = Math.min(BUCKETS - 1, 1 + (int) Math.floor(
+                        Math.log(value / MIN) / Math.log(GROWTH)));
+            }
+            buckets.incrementAndGet(idx);
+            sum.add(value);
+        }
+        /**
+         * Values count.
+         * @return count.
+         */
+        long count() {
+            long n = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                n += buckets.get(i);
+            }
+            return n;
+        }
+        /**
+         * Calculate quantile.
+         * @param q quantile, 0..1.
+         * @return value or NaN if histogram is empty.
+         */
+        double quantile(final double q) {
+            long[] snapshot = new long[BUCKETS];
+            long n = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                snapshot[i] = buckets.get(i);
+                n += snapshot[i];
+            }
+            if (n == 0) {
+                return Double.NaN;
+            }
+            long rank = Math.max(1, (long) Math.ceil(q * n));
+            long cumulative = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                cumulative += snapshot[i];
+                if (cumulative >= rank) {
+                    // geometric middle of bucket
+                    return i == 0 ? 0 : MIN * Math.pow(GROWTH, i - 0.5);
+                }
+            }
+            return MIN * Math.pow(GROWTH, BUCKETS - 1);
+        }
+    }
+}
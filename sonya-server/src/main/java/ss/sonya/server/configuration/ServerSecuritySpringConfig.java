@@ -40,6 +40,15 @@ public class ServerSecuritySpringConfig extends WebSecurityConfigurerAdapter {
     @Override
     protected void configure(final HttpSecurity http) throws Exception {
         http.csrf().disable()
+                .authorizeRequests()
+                .antMatchers(HttpMethod.GET, "/rest/data/route/slow-queries")
+                .access("hasRole('ADMIN')").and()
+                .authorizeRequests()
+                .antMatchers(HttpMethod.GET, "/rest/data/route/engines")
+                .access("hasRole('ADMIN')").and()
+                .authorizeRequests()
+                .antMatchers(HttpMethod.GET, "/rest/metrics")
+                .access("hasRole('ADMIN')").and()
                 .authorizeRequests().antMatchers(HttpMethod.GET, "/**")
                 .permitAll().and()
                 .authorizeRequests()
@@ -18,8 +18,11 @@
 package ss.sonya.transport.api;
 
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import ss.sonya.transport.exception.SearchRejectedException;
 import ss.sonya.transport.search.vo.OptimalPath;
 import ss.sonya.transport.search.vo.SearchSettings;
+import ss.sonya.transport.search.vo.SlowQuery;
 
 /**
  * Search transport information service API.
@@ -28,10 +31,28 @@ import ss.sonya.transport.search.vo.SearchSettings;
 public interface SearchService {
     /**
      * Search routes.
+     * Identical concurrent searches share one computation.
      * @param settings search settings.
      * @return search result.
      * @throws Exception operation error.
      */
     List<OptimalPath> searchRoutes(final SearchSettings settings)
             throws Exception;
+    /**
+     * Search routes asynchronously under admission control,
+     * search is executed in dedicated search pool.
+     * Search deadline is set into settings, search can be cancelled
+     * by deadline.
+     * @param settings search settings.
+     * @param client client key, used for fair queueing.
+     * @return search result, completed exceptionally with
+     *      {@link SearchRejectedException} if server is overloaded.
+     */
+    CompletableFuture<List<OptimalPath>> searchRoutesAsync(
+            final SearchSettings settings, final String client);
+    /**
+     * Get slow queries, captured by slow query log.
+     * @return slow queries, oldest first.
+     */
+    List<SlowQuery> getSlowQueries();
 }
@@ -0,0 +1,467 @@
+/*
+ * Copyright (C) 2017 ss
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ss.sonya.transport.component;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import org.apache.log4j.Logger;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import ss.sonya.configuration.SonyaConfig;
+import ss.sonya.constants.SonyaProperty;
+import ss.sonya.inject.SonyaMetrics;
+import ss.sonya.transport.constants.TransportConst;
+import ss.sonya.transport.exception.SearchRejectedException;
+
+/**
+ * Search admission control.
+ * Limits concurrent searches, excess searches wait in bounded queue.
+ * Waiting doesn't hold threads: permit is a future, completed when
+ * search admitted or rejected.
+ * Queue is broken by clients and served in round-robin order, so one
+ * client can't occupy whole queue. Concurrency limit is adaptive:
+ * it shrinks when short-term latency grows above long-term latency
+ * (server is overloaded) and grows back when latency is stable.
+ * @author ss
+ */
+@Component
+public class SearchAdmission {
+    /** Logger. */
+    private static final Logger LOG = Logger.getLogger(SearchAdmission.class);
+    /** Default queue size. */
+    private static final int DEFAULT_QUEUE = 100;
+    /** Default client queue size. */
+    private static final int DEFAULT_CLIENT_QUEUE = 10;
+    /** Default queue timeout, milliseconds. */
+    private static final int DEFAULT_QUEUE_TIMEOUT = 2000;
+    /** Min concurrency limit. */
+    private static final double MIN_LIMIT = 1;
+    /** Short-term latency smoothing. */
+    private static final double SHORT_ALPHA = 0.1;
+    /** Long-term latency smoothing. */
+    private static final double LONG_ALPHA = 0.01;
+    /** Latency tolerance, short-term latency may exceed long-term. */
+    private static final double TOLERANCE = 1.5;
+    /** Min gradient, limit can't be decreased faster. */
+    private static final double MIN_GRADIENT = 0.5;
+    /** Limit smoothing. */
+    private static final double LIMIT_ALPHA = 0.2;
+    /** Metric label, reject reason. */
+    private static final String REASON = "reason";
+    /** Metrics. */
+    @Autowired
+    private SonyaMetrics metrics;
+    /** Lock. */
+    private final ReentrantLock lock = new ReentrantLock();
+    /** Queue timeouts timer. */
+    private final ScheduledExecutorService timer =
+            Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread t = new Thread(r, "search-admission-timer");
+                t.setDaemon(true);
+                return t;
+            });
+    /** Waiting searches by client, in round-robin order. */
+    private final Map<String, Deque<Waiter>> queue = new LinkedHashMap<>();
+    /** Max concurrency limit. */
+    private int maxLimit;
+    /** Queue size. */
+    private int queueSize;
+    /** Client queue size. */
+    private int clientQueueSize;
+    /** Queue timeout, milliseconds. */
+    private long queueTimeout;
+    /** Current concurrency limit. */
+    private double limit;
+    /** Searches in progress. */
+    private int inFlight;
+    /** Searches in queue. */
+    private int queued;
+    /** Rejected searches. */
+    private long rejected;
+    /** Short-term latency, nanoseconds. */
+    private double shortLatency;
+    /** Long-term latency, nanoseconds. */
+    private double longLatency;
+    /**
+     * Initialization.
+     */
+    @PostConstruct
+    protected void init() {
+        configure(SonyaConfig.settingI(SonyaProperty.SEARCH_MAX_CONCURRENCY,
+                    Runtime.getRuntime().availableProcessors() * 2),
+                SonyaConfig.settingI(SonyaProperty.SEARCH_QUEUE_SIZE,
+                    DEFAULT_QUEUE),
+                SonyaConfig.settingI(SonyaProperty.SEARCH_CLIENT_QUEUE_SIZE,
+                    DEFAULT_CLIENT_QUEUE),
+                SonyaConfig.settingI(SonyaProperty.SEARCH_QUEUE_TIMEOUT_MS,
+                    DEFAULT_QUEUE_TIMEOUT));
+    }
+    /**
+     * Destroy.
+     */
+    @PreDestroy
+    protected void destroy() {
+        timer.shutdownNow();
+    }
+    /**
+     * Configure admission control, current limit is reset to max.
+     * @param pMaxLimit max concurrent searches.
+     * @param pQueueSize queue size.
+     * @param pClientQueueSize queue size for one client.
+     * @param pQueueTimeout max wait time in queue, milliseconds.
+     */
+    public void configure(final int pMaxLimit, final int pQueueSize,
+            final int pClientQueueSize, final long pQueueTimeout) {
+        lock.lock();
+        try {
+            maxLimit = Math.max(1, pMaxLimit);
+            queueSize = pQueueSize;
+            clientQueueSize = pClientQueueSize;
+            queueTimeout = pQueueTimeout;
+            limit = maxLimit;
+            shortLatency = 0;
+            longLatency = 0;
+            LOG.info("search admission: limit [" + maxLimit + "], queue ["
+                    + queueSize + "], client queue [" + clientQueueSize
+                    + "], queue timeout [" + queueTimeout + "] ms");
+        } finally {
+            lock.unlock();
+        }
+    }
+    /**
+     * Request search permit.
+     * Permit is granted immediately or search waits in queue.
+     * Every granted permit must be released.
+     * @param client client key, for example remote address.
+     * @param maxWait max wait time, milliseconds, limited by queue timeout.
+     * @return permit future, completed when search admitted,
+     *      or completed exceptionally with {@link SearchRejectedException}
+     *      if queue is full or wait time elapsed.
+     */
+    public CompletableFuture<Void> admit(final String client,
+            final long maxWait) {
+        String key = client == null ? "" : client;
+        Waiter waiter = new Waiter(key);
+        lock.lock();
+        try {
+            if (queued == 0 && inFlight < (int) limit) {
+                inFlight++;
+                gauges();
+                waiter.permit.complete(null);
+                return waiter.permit;
+            }
+            Deque<Waiter> clientQueue = queue.get(key);
+            if (clientQueue != null
+                    && clientQueue.size() >= clientQueueSize) {
+                waiter.permit.completeExceptionally(reject("client_limit",
+                        "too many searches from client",
+                        SearchRejectedException.TOO_MANY_REQUESTS));
+                return waiter.permit;
+            }
+            if (queued >= queueSize) {
+                waiter.permit.completeExceptionally(reject("queue_full",
+                        "search queue is full",
+                        SearchRejectedException.SERVICE_UNAVAILABLE));
+                return waiter.permit;
+            }
+            if (clientQueue == null) {
+                clientQueue = new ArrayDeque<>();
+                queue.put(key, clientQueue);
+            }
+            clientQueue.add(waiter);
+            queued++;
+            gauges();
+            waiter.timeout = timer.schedule(() -> expire(waiter),
+                    Math.min(maxWait, queueTimeout), TimeUnit.MILLISECONDS);
+            return waiter.permit;
+        } finally {
+            lock.unlock();
+        }
+    }
+    /**
+     * Acquire search permit, wait in queue if limit reached.
+     * Every acquired permit must be released.
+     * @param client client key, for example remote address.
+     * @param maxWait max wait time, milliseconds, limited by queue timeout.
+     * @throws SearchRejectedException queue is full or wait time elapsed.
+     * @throws InterruptedException thread interrupted.
+     */
+    public void acquire(final String client, final long maxWait)
+            throws SearchRejectedException, InterruptedException {
+        CompletableFuture<Void> permit = admit(client, maxWait);
+        try {
+            permit.get();
+        } catch (ExecutionException e) {
+            throw (SearchRejectedException) e.getCause();
+        } catch (InterruptedException e) {
+            abandon(permit);
+            throw e;
+        }
+    }
+    /**
+     * Abandon permit, if client is not waiting for search anymore.
+     * Waiting search is removed from queue, granted permit is released.
+     * @param permit permit future.
+     */
+    public void abandon(final CompletableFuture<Void> permit) {
+        lock.lock();
+        try {
+            for (Deque<Waiter> clientQueue : queue.values()) {
+                for (Waiter w : clientQueue) {
+                    if (w.permit == permit) {
+                        remove(w);
+                        permit.cancel(false);
+                        return;
+                    }
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+        // permit is granted or being granted, in last case
+        // cancelled permit is released by granting thread
+        if (!permit.cancel(false) && !permit.isCompletedExceptionally()) {
+            release(-1);
+        }
+    }
+    /**
+     * Release search permit.
+     * @param latency search latency, nanoseconds, negative if search
+     *      was not executed.
+     */
+    public void release(final long latency) {
+        List<Waiter> admitted;
+        lock.lock();
+        try {
+            inFlight--;
+            if (latency >= 0) {
+                adjustLimit(latency);
+            }
+            admitted = dispatch();
+        } finally {
+            lock.unlock();
+        }
+        // complete outside of lock, dependent stages may run here
+        for (Waiter w : admitted) {
+            w.timeout.cancel(false);
+            if (!w.permit.complete(null)) {
+                // abandoned concurrently
+                release(-1);
+            }
+        }
+    }
+    /**
+     * Reject search, which waits too long.
+     * @param waiter waiting search.
+     */
+    private void expire(final Waiter waiter) {
+        SearchRejectedException e;
+        lock.lock();
+        try {
+            Deque<Waiter> clientQueue = queue.get(waiter.client);
+            if (clientQueue == null || !clientQueue.contains(waiter)) {
+                return;     // admitted already
+            }
+            remove(waiter);
+            e = reject("timeout", "search queue timeout",
+                    SearchRejectedException.SERVICE_UNAVAILABLE);
+        } finally {
+            lock.unlock();
+        }
+        waiter.permit.completeExceptionally(e);
+    }
+    /**
+     * Remove waiting search from queue.
+     * Called under lock.
+     * @param waiter waiting search.
+     */
+    private void remove(final Waiter waiter) {
+        Deque<Waiter> clientQueue = queue.get(waiter.client);
+        clientQueue.remove(waiter);
+        if (clientQueue.isEmpty()) {
+            queue.remove(waiter.client);
+        }
+        if (waiter.timeout != null) {
+            waiter.timeout.cancel(false);
+        }
+        queued--;
+        gauges();
+    }
+    /**
+     * Admit waiting searches while limit allows, one per client in turn.
+     * Called under lock.
+     * @return admitted searches, permits must be completed.
+     */
+    private List<Waiter> dispatch() {
+        List<Waiter> admitted = new ArrayList<>();
+        Iterator<Map.Entry<String, Deque<Waiter>>> itr =
+                queue.entrySet().iterator();
+        while (queued > 0 && inFlight < (int) limit) {
+            if (!itr.hasNext()) {
+                itr = queue.entrySet().iterator();
+            }
+            Map.Entry<String, Deque<Waiter>> e = itr.next();
+            Waiter w = e.getValue().poll();
+            itr.remove();
+            if (!e.getValue().isEmpty()) {
+                // client goes to the end of round
+                queue.put(e.getKey(), e.getValue());
+                itr = queue.entrySet().iterator();
+            }
+            admitted.add(w);
+            queued--;
+            inFlight++;
+        }
+        gauges();
+        return admitted;
+    }
+    /**
+     * Update concurrency limit by latency gradient.
+     * Called under lock.
+     * @param latency search latency, nanoseconds.
+     */
+    private void adjustLimit(final double latency) {
+        if (longLatency == 0) {
+            shortLatency = latency;
+            longLatency = latency;
+            return;
+        }
+        shortLatency += SHORT_ALPHA * (latency - shortLatency);
+        longLatency += LONG_ALPHA * (latency - longLatency);
+        double gradient = Math.max(MIN_GRADIENT, Math.min(1,
+                TOLERANCE * longLatency / shortLatency));
+        // queue headroom allows limit to grow
+        double newLimit = limit * gradient + Math.sqrt(limit);
+        limit = Math.max(MIN_LIMIT, Math.min(maxLimit,
+                limit * (1 - LIMIT_ALPHA) + newLimit * LIMIT_ALPHA));
+    }
+    /**
+     * Create rejection.
+     * Called under lock.
+     * @param reason metric reason.
+     * @param msg message.
+     * @param status HTTP status.
+     * @return exception.
+     */
+    private SearchRejectedException reject(final String reason,
+            final String msg, final int status) {
+        rejected++;
+        metrics.increment(TransportConst.METRIC_SEARCH_REJECTED, 1,
+                REASON, reason);
+        // client may retry when current searches are expected to finish
+        int retryAfter = (int) Math.max(1, TimeUnit.NANOSECONDS.toSeconds(
+                (long) longLatency) * Math.max(1, queued) / (int) limit);
+        return new SearchRejectedException(msg, status, retryAfter);
+    }
+    /**
+     * Update gauges.
+     * Called under lock.
+     */
+    private void gauges() {
+        metrics.gauge(TransportConst.METRIC_SEARCH_IN_FLIGHT, inFlight);
+        metrics.gauge(TransportConst.METRIC_SEARCH_QUEUED, queued);
+        metrics.gauge(TransportConst.METRIC_SEARCH_LIMIT, (int) limit);
+    }
+    /**
+     * @return searches in progress.
+     */
+    public int getInFlight() {
+        lock.lock();
+        try {
+            return inFlight;
+        } finally {
+            lock.unlock();
+        }
+    }
+    /**
+     * @return searches in queue.
+     */
+    public int getQueued() {
+        lock.lock();
+        try {
+            return queued;
+        } finally {
+            lock.unlock();
+        }
+    }
+    /**
+     * @return rejected searches.
+     */
+    public long getRejected() {
+        lock.lock();
+        try {
+            return rejected;
+        } finally {
+            lock.unlock();
+        }
+    }
+    /**
+     * @return max concurrency limit.
+     */
+    public int getMaxLimit() {
+        lock.lock();
+        try {
+            return maxLimit;
+        } finally {
+            lock.unlock();
+        }
+    }
+    /**
+     * @return current concurrency limit.
+     */
+    public int getLimit() {
+        lock.lock();
+        try {
+            return (int) limit;
+        } finally {
+            lock.unlock();
+        }
+    }
+    /**
+     * Waiting search.
+     */
+    private static class Waiter {
+        /** Client key. */
+        private final String client;
+        /** Permit. */
+        private final CompletableFuture<Void> permit =
+                new CompletableFuture<>();
+        /** Queue timeout. */
+        private ScheduledFuture<?> timeout;
+        /**
+         * Constructor.
+         * @param pClient client key.
+         */
+        Waiter(final String pClient) {
+            client = pClient;
+        }
+    }
+}
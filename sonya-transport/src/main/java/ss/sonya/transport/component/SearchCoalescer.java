@@ -0,0 +1,419 @@
+/*
+ * Copyright (C) 2017 ss
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ss.sonya.transport.component;
+
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.GregorianCalendar;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.function.Function;
+import javax.annotation.PostConstruct;
+import org.apache.log4j.Logger;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import ss.sonya.configuration.SonyaConfig;
+import ss.sonya.constants.SonyaProperty;
+import ss.sonya.entity.BusStop;
+import ss.sonya.entity.RouteProfile;
+import ss.sonya.entity.TransportProfile;
+import ss.sonya.inject.SonyaMetrics;
+import ss.sonya.transport.constants.TransportConst;
+import ss.sonya.transport.search.Graph;
+import ss.sonya.transport.search.GraphConstructor;
+import ss.sonya.transport.search.SearchDeadline;
+import ss.sonya.transport.search.SearchEngine;
+import ss.sonya.transport.search.vo.AccessStops;
+import ss.sonya.transport.search.vo.OptimalPath;
+import ss.sonya.transport.search.vo.SearchKey;
+import ss.sonya.transport.search.vo.SearchSettings;
+
+/**
+ * Single-flight search coalescing.
+ * Concurrent searches with equal normalized key share one computation:
+ * first search (leader) runs search engine, others wait for its result.
+ * Shared search has own deadline, it is cancelled only when all
+ * participants are cancelled. Explain searches are never coalesced,
+ * because diagnostics belong to one search.
+ * Asynchronous searches are coalesced before admission: only leader
+ * takes search permit, followers wait without threads. Key is created on
+ * caller thread, so searches of evicted graph are not coalesced instead
+ * of loading graph there. Access bus stops of key are passed to search
+ * engine.
+ * @author ss
+ */
+@Component
+public class SearchCoalescer {
+    /** Logger. */
+    private static final Logger LOG = Logger.getLogger(SearchCoalescer.class);
+    /** Default time bucket, minutes. */
+    private static final int DEFAULT_BUCKET = 1;
+    /** Minutes in hour. */
+    private static final int MINUTES = 60;
+    /** Graph constructor. */
+    @Autowired
+    private GraphConstructor graphConstructor;
+    /** Transport geometry. */
+    @Autowired
+    private TransportGeometry transportGeometry;
+    /** Metrics. */
+    @Autowired
+    private SonyaMetrics metrics;
+    /** Searches in progress. */
+    private final Map<SearchKey, Flight> flights = new ConcurrentHashMap<>();
+    /** Time bucket, minutes, zero - coalescing disabled. */
+    private volatile int bucket;
+    /**
+     * Initialization.
+     */
+    @PostConstruct
+    protected void init() {
+        setBucket(SonyaConfig.settingI(SonyaProperty.SEARCH_COALESCE_BUCKET_MIN,
+                DEFAULT_BUCKET));
+    }
+    /**
+     * Search routes, sharing computation with identical searches
+     * in progress.
+     * @param settings search settings.
+     * @param engine search engine.
+     * @return search result.
+     * @throws Exception search error.
+     */
+    public List<OptimalPath> search(final SearchSettings settings,
+            final SearchEngine engine) throws Exception {
+        SearchKey key = settings.isExplain() ? null : key(settings);
+        if (key == null) {
+            return engine.search(settings);
+        }
+        SearchDeadline own = settings.getDeadline();
+        if (own == null) {
+            own = new SearchDeadline(settings.getTimeout());
+            settings.setDeadline(own);
+        }
+        Flight flight = new Flight(own.remaining() == Long.MAX_VALUE ? 0
+                : Math.max(1, own.remaining()));
+        while (true) {
+            Flight current = flights.putIfAbsent(key, flight);
+            if (current == null) {
+                return lead(key, flight, settings, engine);
+            }
+            if (current.join()) {
+                return follow(current, settings);
+            }
+            // all participants are gone, search is cancelled
+            flights.remove(key, current);
+        }
+    }
+    /**
+     * Search routes asynchronously, sharing computation with identical
+     * searches in progress.
+     * @param settings search settings, deadline must be set.
+     * @param leader starts search for leader, for example admits it
+     *      and runs search engine.
+     * @return search result.
+     */
+    public CompletableFuture<List<OptimalPath>> searchAsync(
+            final SearchSettings settings, final Function<SearchSettings,
+            CompletableFuture<List<OptimalPath>>> leader) {
+        SearchKey key = settings.isExplain() ? null : key(settings);
+        if (key == null) {
+            return leader.apply(settings);
+        }
+        SearchDeadline own = settings.getDeadline();
+        Flight flight = new Flight(own.remaining() == Long.MAX_VALUE ? 0
+                : Math.max(1, own.remaining()));
+        while (true) {
+            Flight current = flights.putIfAbsent(key, flight);
+            if (current == null) {
+                return leadAsync(key, flight, settings, leader);
+            }
+            if (current.join()) {
+                return followAsync(current, settings);
+            }
+            // all participants are gone, search is cancelled
+            flights.remove(key, current);
+        }
+    }
+    /**
+     * Start shared search.
+     * @param key search key.
+     * @param flight shared search.
+     * @param settings search settings.
+     * @param leader starts search.
+     * @return search result.
+     */
+    private CompletableFuture<List<OptimalPath>> leadAsync(
+            final SearchKey key, final Flight flight,
+            final SearchSettings settings, final Function<SearchSettings,
+            CompletableFuture<List<OptimalPath>>> leader) {
+        SearchDeadline own = settings.getDeadline();
+        CompletableFuture<Void> ticket = flight.attach(own);
+        settings.setDeadline(flight.deadline);
+        return leader.apply(settings).whenComplete((result, e) -> {
+            flights.remove(key, flight);
+            if (e != null) {
+                flight.result.completeExceptionally(e);
+            } else {
+                flight.result.complete(result);
+            }
+            settings.setDeadline(own);
+            ticket.complete(null);
+            if (flight.deadline.isPartial()) {
+                own.markPartial();
+            }
+        });
+    }
+    /**
+     * Wait for shared search result without thread.
+     * @param flight shared search.
+     * @param settings search settings.
+     * @return search result, empty if search is cancelled.
+     */
+    private CompletableFuture<List<OptimalPath>> followAsync(
+            final Flight flight, final SearchSettings settings) {
+        metrics.increment(TransportConst.METRIC_SEARCH_COALESCED, 1,
+                "profile", String.valueOf(settings.getProfileId()));
+        SearchDeadline own = settings.getDeadline();
+        CompletableFuture<Void> ticket = flight.attach(own);
+        return CompletableFuture.anyOf(flight.result, ticket).handle((v, e) -> {
+            boolean cancelled = ticket.isCancelled();
+            ticket.complete(null);
+            if (flight.deadline.isPartial()) {
+                own.markPartial();
+            }
+            if (cancelled || !flight.result.isDone()) {
+                return new ArrayList<>();
+            }
+            try {
+                // result is shared, every participant gets own list
+                return new ArrayList<>(flight.result.join());
+            } catch (CancellationException ex) {
+                return new ArrayList<>();
+            }
+        });
+    }
+    /**
+     * Run shared search.
+     * @param key search key.
+     * @param flight shared search.
+     * @param settings search settings.
+     * @param engine search engine.
+     * @return search result.
+     * @throws Exception search error.
+     */
+    private List<OptimalPath> lead(final SearchKey key, final Flight flight,
+            final SearchSettings settings, final SearchEngine engine)
+            throws Exception {
+        SearchDeadline own = settings.getDeadline();
+        CompletableFuture<Void> ticket = flight.attach(own);
+        settings.setDeadline(flight.deadline);
+        try {
+            List<OptimalPath> result = engine.search(settings);
+            flight.result.complete(result);
+            return result;
+        } catch (Exception e) {
+            flight.result.completeExceptionally(e);
+            throw e;
+        } finally {
+            flights.remove(key, flight);
+            if (!flight.result.isDone()) {
+                flight.result.completeExceptionally(
+                        new IllegalStateException("search failed"));
+            }
+            settings.setDeadline(own);
+            ticket.complete(null);
+            if (flight.deadline.isPartial()) {
+                own.markPartial();
+            }
+        }
+    }
+    /**
+     * Wait for shared search result.
+     * @param flight shared search.
+     * @param settings search settings.
+     * @return search result, empty if search is cancelled.
+     * @throws Exception search error.
+     */
+    private List<OptimalPath> follow(final Flight flight,
+            final SearchSettings settings) throws Exception {
+        metrics.increment(TransportConst.METRIC_SEARCH_COALESCED, 1,
+                "profile", String.valueOf(settings.getProfileId()));
+        SearchDeadline own = settings.getDeadline();
+        CompletableFuture<Void> ticket = flight.attach(own);
+        try {
+            CompletableFuture.anyOf(flight.result, ticket).get();
+            if (ticket.isCancelled()) {
+                return new ArrayList<>();
+            }
+            // result is shared, every participant gets own list
+            return new ArrayList<>(flight.result.get());
+        } catch (CancellationException e) {
+            return new ArrayList<>();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof Exception) {
+                throw (Exception) e.getCause();
+            }
+            throw e;
+        } finally {
+            ticket.complete(null);
+            if (flight.deadline.isPartial()) {
+                own.markPartial();
+            }
+        }
+    }
+    /**
+     * Create normalized search key.
+     * @param settings search settings.
+     * @return search key or null if coalescing is not possible.
+     */
+    private SearchKey key(final SearchSettings settings) {
+        int minutes = bucket;
+        if (minutes <= 0) {
+            return null;
+        }
+        // evicted graph is not loaded on caller thread
+        Graph graph = graphConstructor.peekGraph(settings.getProfileId());
+        TransportProfile profile = graphConstructor.findProfile(
+                settings.getProfileId());
+        if (graph == null || profile == null
+                || settings.getDisabledRouteTypes() == null) {
+            return null;
+        }
+        int day;
+        int time;
+        if (settings.isCurrentTimeAndDate()) {
+            Calendar c = new GregorianCalendar();
+            day = c.get(Calendar.DAY_OF_WEEK);
+            time = c.get(Calendar.HOUR_OF_DAY) * MINUTES
+                    + c.get(Calendar.MINUTE);
+        } else if (settings.getTime() != null) {
+            day = settings.getDay();
+            String[] hhmm = settings.getTime().split(":");
+            try {
+                time = Integer.parseInt(hhmm[0].trim()) * MINUTES
+                        + Integer.parseInt(hhmm[1].trim());
+            } catch (NumberFormatException
+                    | ArrayIndexOutOfBoundsException e) {
+                LOG.debug("search time not parsed [" + settings.getTime()
+                        + "]");
+                return null;
+            }
+        } else {
+            day = settings.getDay();
+            time = -minutes;
+        }
+        // search engine reuses access bus stops
+        AccessStops access = transportGeometry.findAccessStops(graph,
+                profile, settings);
+        settings.setAccessStops(access);
+        List<RouteProfile> disabled = settings.getDisabledRouteTypes();
+        int[] types = new int[disabled.size()];
+        for (int i = 0; i < types.length; i++) {
+            types[i] = disabled.get(i).getId();
+        }
+        return new SearchKey(settings.getProfileId(),
+                ids(access.getStart()), ids(access.getEnd()),
+                day, Math.floorDiv(time, minutes), settings.getMaxTransfers(),
+                settings.getMaxResults(), types);
+    }
+    /**
+     * Bus stop IDs.
+     * @param list bus stops.
+     * @return IDs.
+     */
+    private static int[] ids(final List<BusStop> list) {
+        int[] ids = new int[list.size()];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = list.get(i).getId();
+        }
+        return ids;
+    }
+    /**
+     * Set time bucket.
+     * @param minutes time bucket, minutes, zero - coalescing disabled.
+     */
+    public void setBucket(final int minutes) {
+        bucket = minutes;
+    }
+    /**
+     * @return searches in progress.
+     */
+    public int getInFlight() {
+        return flights.size();
+    }
+    /**
+     * Shared search.
+     */
+    private static final class Flight {
+        /** Shared search deadline. */
+        private final SearchDeadline deadline;
+        /** Shared search result. */
+        private final CompletableFuture<List<OptimalPath>> result =
+                new CompletableFuture<>();
+        /** Participants, waiting for result, leader is first. */
+        private int participants = 1;
+        /**
+         * Constructor.
+         * @param timeout shared search timeout, milliseconds.
+         */
+        Flight(final long timeout) {
+            deadline = new SearchDeadline(timeout);
+        }
+        /**
+         * Join shared search.
+         * @return false if shared search is cancelled.
+         */
+        synchronized boolean join() {
+            if (deadline.isCancelled()) {
+                return false;
+            }
+            participants++;
+            return true;
+        }
+        /**
+         * Attach participant deadline.
+         * Participant leaves shared search when its deadline is cancelled,
+         * shared search is cancelled when last participant leaves.
+         * @param own participant deadline.
+         * @return participant ticket, must be completed when participant
+         *      got result.
+         */
+        CompletableFuture<Void> attach(final SearchDeadline own) {
+            CompletableFuture<Void> ticket = new CompletableFuture<>();
+            ticket.whenComplete((v, e) -> {
+                if (ticket.isCancelled()) {
+                    leave();
+                }
+            });
+            own.register(ticket);
+            return ticket;
+        }
+        /**
+         * Participant left shared search.
+         */
+        private synchronized void leave() {
+            participants--;
+            if (participants == 0 && !result.isDone()) {
+                deadline.cancel();
+            }
+        }
+    }
+}
@@ -0,0 +1,291 @@
+/*
+ * Copyright (C) 2017 ss
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ss.sonya.transport.component;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.annotation.PostConstruct;
+import org.apache.log4j.Logger;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import ss.sonya.configuration.SonyaConfig;
+import ss.sonya.constants.SonyaProperty;
+import ss.sonya.entity.TransportProfile;
+import ss.sonya.inject.SonyaMetrics;
+import ss.sonya.transport.constants.TransportConst;
+import ss.sonya.transport.search.Graph;
+import ss.sonya.transport.search.GraphConstructor;
+import ss.sonya.transport.search.SearchEngine;
+import ss.sonya.transport.search.vo.OptimalPath;
+import ss.sonya.transport.search.vo.SearchSettings;
+
+/**
+ * Search engine registry.
+ * Keeps all search engine beans and selects engine for every search:
+ * admin override for transport profile first, then configured engine,
+ * then engine with the lowest observed latency among engines, which
+ * support profile graph. Every engine gets some searches, so latency
+ * of all candidates is known and stays actual.
+ * @author ss
+ */
+@Component
+public class SearchEngineRegistry {
+    /** Logger. */
+    private static final Logger LOG = Logger.getLogger(
+            SearchEngineRegistry.class);
+    /** Searches of every candidate before latency comparison. */
+    private static final int MIN_SAMPLES = 20;
+    /** Every n-th search of profile is served by other candidate. */
+    private static final int EXPLORE_EVERY = 100;
+    /** Latency smoothing factor. */
+    private static final double ALPHA = 0.2;
+    /** Search engine beans, key - bean name. */
+    @Autowired
+    private Map<String, SearchEngine> beans;
+    /** Graph constructor. */
+    @Autowired
+    private GraphConstructor graphConstructor;
+    /** Metrics. */
+    @Autowired
+    private SonyaMetrics metrics;
+    /** Search engines, key - name. */
+    private final Map<String, SearchEngine> engines =
+            new ConcurrentSkipListMap<>();
+    /** Admin overrides, key - transport profile ID. */
+    private final Map<Integer, String> overrides = new ConcurrentHashMap<>();
+    /** Observed latency, key - transport profile ID, engine name. */
+    private final Map<Integer, Map<String, Latency>> latencies =
+            new ConcurrentHashMap<>();
+    /** Searches count, key - transport profile ID. */
+    private final Map<Integer, AtomicLong> searches =
+            new ConcurrentHashMap<>();
+    /** Engine for all profiles, null - adaptive selection. */
+    private volatile String defaultEngine;
+    /**
+     * Initialization.
+     */
+    @PostConstruct
+    protected void init() {
+        engines.putAll(beans);
+        setDefaultEngine(SonyaConfig.setting(SonyaProperty.SEARCH_ENGINE,
+                null));
+        LOG.info("search engines " + engines.keySet());
+    }
+    /**
+     * Register search engine.
+     * @param name engine name.
+     * @param engine search engine.
+     */
+    public void register(final String name, final SearchEngine engine) {
+        engines.put(name, engine);
+    }
+    /**
+     * Remove search engine.
+     * @param name engine name.
+     */
+    public void remove(final String name) {
+        engines.remove(name);
+        overrides.values().removeIf(name::equals);
+        latencies.values().forEach(map -> map.remove(name));
+    }
+    /**
+     * @return engine names.
+     */
+    public Set<String> getEngines() {
+        return engines.keySet();
+    }
+    /**
+     * Get search engine.
+     * @param name engine name.
+     * @return search engine or null.
+     */
+    public SearchEngine engine(final String name) {
+        return engines.get(name);
+    }
+    /**
+     * Set engine for all profiles.
+     * @param name engine name, null or empty - adaptive selection.
+     */
+    public void setDefaultEngine(final String name) {
+        defaultEngine = name == null || name.isEmpty() ? null : name;
+    }
+    /**
+     * Set admin override for transport profile.
+     * @param profileId transport profile ID.
+     * @param name engine name, null - remove override.
+     */
+    public void setOverride(final Integer profileId, final String name) {
+        if (name == null) {
+            overrides.remove(profileId);
+            return;
+        }
+        if (!engines.containsKey(name)) {
+            throw new IllegalArgumentException("unknown search engine ["
+                    + name + "]");
+        }
+        overrides.put(profileId, name);
+    }
+    /**
+     * Engines, which support transport profile graph.
+     * @param profileId transport profile ID.
+     * @return engine names, all engines if graph is not built or evicted.
+     */
+    public List<String> candidates(final Integer profileId) {
+        Graph graph = graphConstructor.peekGraph(profileId);
+        TransportProfile profile = graphConstructor.findProfile(profileId);
+        List<String> list = new ArrayList<>();
+        engines.forEach((name, engine) -> {
+            if (graph == null || engine.supports(graph, profile)) {
+                list.add(name);
+            }
+        });
+        return list;
+    }
+    /**
+     * Select search engine.
+     * Returned engine counts searches and records latency.
+     * @param settings search settings.
+     * @return search engine.
+     */
+    public SearchEngine select(final SearchSettings settings) {
+        Integer profileId = settings.getProfileId();
+        String name = choose(profileId);
+        SearchEngine engine = engines.get(name);
+        String pid = String.valueOf(profileId);
+        return s -> {
+            long start = System.nanoTime();
+            List<OptimalPath> result = engine.search(s);
+            latencies.computeIfAbsent(profileId,
+                    k -> new ConcurrentHashMap<>())
+                    .computeIfAbsent(name, k -> new Latency())
+                    .record(System.nanoTime() - start);
+            metrics.increment(TransportConst.METRIC_SEARCH_ENGINE, 1,
+                    "profile", pid, "engine", name);
+            return result;
+        };
+    }
+    /**
+     * Selection status for every transport profile.
+     * @return status, key - transport profile ID.
+     */
+    public Map<Integer, Map<String, Object>> getStatus() {
+        Map<Integer, Map<String, Object>> status = new LinkedHashMap<>();
+        for (TransportProfile profile : graphConstructor.getProfiles()) {
+            Map<String, Object> map = new LinkedHashMap<>();
+            map.put("candidates", candidates(profile.getId()));
+            map.put("override", overrides.get(profile.getId()));
+            Map<String, Object> latency = new LinkedHashMap<>();
+            latencies.getOrDefault(profile.getId(), new ConcurrentHashMap<>())
+                    .forEach((name, l) -> latency.put(name, l.toMap()));
+            map.put("latency", latency);
+            status.put(profile.getId(), map);
+        }
+        return status;
+    }
+    /**
+     * Choose engine for transport profile.
+     * @param profileId transport profile ID.
+     * @return engine name.
+     */
+    private String choose(final Integer profileId) {
+        String name = overrides.get(profileId);
+        if (name != null && engines.containsKey(name)) {
+            return name;
+        }
+        name = defaultEngine;
+        if (name != null && engines.containsKey(name)) {
+            return name;
+        }
+        List<String> candidates = candidates(profileId);
+        if (candidates.isEmpty()) {
+            throw new IllegalStateException(
+                    "no search engine for transport profile [" + profileId
+                    + "]");
+        }
+        if (candidates.size() == 1) {
+            return candidates.get(0);
+        }
+        Map<String, Latency> stats = latencies.computeIfAbsent(profileId,
+                k -> new ConcurrentHashMap<>());
+        long n = searches.computeIfAbsent(profileId, k -> new AtomicLong())
+                .incrementAndGet();
+        // new candidates get searches first
+        for (String c : candidates) {
+            Latency l = stats.get(c);
+            if (l == null || l.getSamples() < MIN_SAMPLES) {
+                return c;
+            }
+        }
+        if (n % EXPLORE_EVERY == 0) {
+            return candidates.get((int) (n / EXPLORE_EVERY
+                    % candidates.size()));
+        }
+        String best = candidates.get(0);
+        for (String c : candidates) {
+            if (stats.get(c).getAverage() < stats.get(best).getAverage()) {
+                best = c;
+            }
+        }
+        return best;
+    }
+    /**
+     * Smoothed search latency.
+     */
+    private static final class Latency {
+        /** Average latency, nanoseconds. */
+        private double average;
+        /** Searches count. */
+        private long samples;
+        /**
+         * Record search latency.
+         * @param nanos latency, nanoseconds.
+         */
+        synchronized void record(final long nanos) {
+            average = samples == 0 ? nanos
+                    : average + ALPHA * (nanos - average);
+            samples++;
+        }
+        /**
+         * @return average latency, nanoseconds.
+         */
+        synchronized double getAverage() {
+            return average;
+        }
+        /**
+         * @return searches count.
+         */
+        synchronized long getSamples() {
+            return samples;
+        }
+        /**
+         * @return latency for status.
+         */
+        synchronized Map<String, Object> toMap() {
+            Map<String, Object> map = new LinkedHashMap<>();
+            map.put("averageMs", average / TimeUnit.MILLISECONDS.toNanos(1));
+            map.put("samples", samples);
+            return map;
+        }
+    }
+}
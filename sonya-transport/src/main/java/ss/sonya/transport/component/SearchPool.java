@@ -0,0 +1,95 @@
+/*
+ * Copyright (C) 2017 ss
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ss.sonya.transport.component;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import org.apache.log4j.Logger;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+/**
+ * Dedicated thread pools for search.
+ * Request threads: servlet container threads are released while search
+ * is running. Pool size equals to max concurrent searches, excess
+ * searches wait in admission queue without holding threads.
+ * Worker threads: shared by all searches for parallel work inside
+ * one search, pool size equals to processors count.
+ * @author ss
+ */
+@Component
+public class SearchPool {
+    /** Logger. */
+    private static final Logger LOG = Logger.getLogger(SearchPool.class);
+    /** Search admission control. */
+    @Autowired
+    private SearchAdmission admission;
+    /** Request threads. */
+    private ExecutorService requests;
+    /** Worker threads. */
+    private ForkJoinPool workers;
+    /**
+     * Initialization.
+     */
+    @PostConstruct
+    protected void init() {
+        AtomicInteger counter = new AtomicInteger();
+        int threads = admission.getMaxLimit();
+        requests = Executors.newFixedThreadPool(threads, r -> {
+            Thread t = new Thread(r, "search-" + counter.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+        workers = new ForkJoinPool(Runtime.getRuntime().availableProcessors(),
+                pool -> {
+                    ForkJoinWorkerThread t = ForkJoinPool
+                            .defaultForkJoinWorkerThreadFactory.newThread(pool);
+                    t.setName("search-worker-" + t.getPoolIndex());
+                    return t;
+                }, null, false);
+        LOG.info("search pool threads [" + threads + "], workers ["
+                + workers.getParallelism() + "]");
+    }
+    /**
+     * Destroy.
+     */
+    @PreDestroy
+    protected void destroy() {
+        requests.shutdownNow();
+        workers.shutdownNow();
+    }
+    /**
+     * Executor for search requests.
+     * @return executor.
+     */
+    public Executor requests() {
+        return requests;
+    }
+    /**
+     * Worker threads for parallel work inside one search.
+     * @return worker pool.
+     */
+    public ForkJoinPool workers() {
+        return workers;
+    }
+}
@@ -0,0 +1,290 @@
+/*
+ * Copyright (C) 2017 ss
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ss.sonya.transport.component;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import org.apache.log4j.Logger;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationListener;
+import org.springframework.context.event.ContextRefreshedEvent;
+import org.springframework.stereotype.Component;
+import ss.sonya.configuration.SonyaConfig;
+import ss.sonya.constants.SonyaProperty;
+import ss.sonya.entity.BusStop;
+import ss.sonya.entity.TransportProfile;
+import ss.sonya.inject.SonyaMetrics;
+import ss.sonya.transport.constants.TransportConst;
+import ss.sonya.transport.search.Graph;
+import ss.sonya.transport.search.GraphConstructor;
+import ss.sonya.transport.search.SearchEngine;
+import ss.sonya.transport.search.vo.SearchSettings;
+import ss.sonya.transport.search.vo.SlowQuery;
+
+/**
+ * Search warm-up.
+ * After graph is built, representative queries are executed against
+ * search engine, so search code is compiled by JIT before real traffic.
+ * Queries are taken from captured queries file (slow query log export)
+ * and completed by random trips between graph bus stops.
+ * Queries are executed by every search engine, which supports graph.
+ * Server is ready, when every graph is warmed up at least once.
+ * @author ss
+ */
+@Component
+public class SearchWarmup
+        implements ApplicationListener<ContextRefreshedEvent> {
+    /** Logger. */
+    private static final Logger LOG = Logger.getLogger(SearchWarmup.class);
+    /** Default queries count. */
+    private static final int DEFAULT_QUERIES = 100;
+    /** Default warm-up time limit, milliseconds. */
+    private static final int DEFAULT_TIMEOUT = 60000;
+    /** Default query timeout, milliseconds. */
+    private static final int DEFAULT_QUERY_TIMEOUT = 10000;
+    /** Max transfers for sampled queries. */
+    private static final int TRANSFERS = 2;
+    /** Max results for sampled queries. */
+    private static final int RESULTS = 5;
+    /** First hour for sampled queries. */
+    private static final int FIRST_HOUR = 6;
+    /** Hours range for sampled queries. */
+    private static final int HOURS = 16;
+    /** Minutes in hour. */
+    private static final int MINUTES = 60;
+    /** Days in week. */
+    private static final int DAYS = 7;
+    /** Search engines. */
+    @Autowired
+    private SearchEngineRegistry engines;
+    /** Graph constructor. */
+    @Autowired
+    private GraphConstructor graphConstructor;
+    /** Metrics. */
+    @Autowired
+    private SonyaMetrics metrics;
+    /** Warm-up thread. */
+    private final ExecutorService executor =
+            Executors.newSingleThreadExecutor(r -> {
+                Thread t = new Thread(r, "search-warmup");
+                t.setDaemon(true);
+                return t;
+            });
+    /** Warmed up transport profile IDs. */
+    private final Set<Integer> warmed = ConcurrentHashMap.newKeySet();
+    /** Initial warm-up started. */
+    private final AtomicBoolean started = new AtomicBoolean();
+    /** Queries count for one graph. */
+    private volatile int queries;
+    /** Warm-up time limit for one graph, milliseconds. */
+    private long timeout;
+    /** Query timeout, milliseconds. */
+    private long queryTimeout;
+    /** Captured queries file. */
+    private String file;
+    /**
+     * Initialization.
+     */
+    @PostConstruct
+    protected void init() {
+        queries = SonyaConfig.settingI(SonyaProperty.SEARCH_WARMUP_QUERIES,
+                DEFAULT_QUERIES);
+        timeout = SonyaConfig.settingI(SonyaProperty.SEARCH_WARMUP_TIMEOUT_MS,
+                DEFAULT_TIMEOUT);
+        queryTimeout = SonyaConfig.settingI(SonyaProperty.SEARCH_TIMEOUT_MS,
+                DEFAULT_QUERY_TIMEOUT);
+        file = SonyaConfig.setting(SonyaProperty.SEARCH_WARMUP_FILE, null);
+    }
+    /**
+     * Destroy.
+     */
+    @PreDestroy
+    protected void destroy() {
+        executor.shutdownNow();
+    }
+    @Override
+    public void onApplicationEvent(final ContextRefreshedEvent event) {
+        // event is published by every context in hierarchy
+        if (started.compareAndSet(false, true)) {
+            graphConstructor.getProfiles().forEach(this::warmup);
+        }
+    }
+    /**
+     * Warm up search for transport profile graph in background.
+     * Must be called after graph registration.
+     * @param profile transport profile.
+     * @return executed queries count.
+     */
+    public CompletableFuture<Integer> warmup(final TransportProfile profile) {
+        return CompletableFuture.supplyAsync(() -> run(profile), executor);
+    }
+    /**
+     * Run warm-up queries.
+     * @param profile transport profile.
+     * @return executed queries count.
+     */
+    private int run(final TransportProfile profile) {
+        // evicted graph is not loaded for warm-up
+        Graph graph = graphConstructor.peekGraph(profile.getId());
+        if (graph == null) {
+            return 0;
+        }
+        long start = System.nanoTime();
+        long limit = start + TimeUnit.MILLISECONDS.toNanos(timeout);
+        int executed = 0;
+        int failed = 0;
+        // every engine, which can serve profile, is warmed up
+        List<SearchEngine> candidates = new ArrayList<>();
+        engines.candidates(profile.getId()).forEach(
+                name -> candidates.add(engines.engine(name)));
+        try {
+            for (SearchSettings settings : queries(profile, graph)) {
+                if (System.nanoTime() - limit > 0
+                        || Thread.currentThread().isInterrupted()) {
+                    break;
+                }
+                for (SearchEngine engine : candidates) {
+                    try {
+                        engine.search(settings);
+                    } catch (Exception e) {
+                        failed++;
+                        LOG.debug("warm-up query failed", e);
+                    }
+                }
+                executed++;
+            }
+        } finally {
+            warmed.add(profile.getId());
+            metrics.observeSince(TransportConst.METRIC_SEARCH_WARMUP, start,
+                    "profile", String.valueOf(profile.getId()));
+        }
+        LOG.info("search warm-up " + profile + ", queries [" + executed
+                + "], failed [" + failed + "], elapsed time ["
+                + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)
+                + "] ms");
+        return executed;
+    }
+    /**
+     * Warm-up queries: captured queries first, then sampled trips.
+     * @param profile transport profile.
+     * @param graph graph.
+     * @return search settings.
+     */
+    private List<SearchSettings> queries(final TransportProfile profile,
+            final Graph graph) {
+        int count = queries;
+        List<SearchSettings> list = new ArrayList<>(Math.max(0, count));
+        if (count <= 0) {
+            return list;
+        }
+        for (SearchSettings s : captured()) {
+            if (list.size() < count
+                    && profile.getId().equals(s.getProfileId())) {
+                s.setExplain(false);
+                s.setTimeout(queryTimeout);
+                list.add(s);
+            }
+        }
+        List<BusStop> stops = new ArrayList<>(
+                graph.getBusStops(Collections.emptyList()));
+        if (stops.size() < 2) {
+            return list;
+        }
+        Collections.sort(stops, (o1, o2) -> o1.getId().compareTo(o2.getId()));
+        Random random = new Random(profile.getId());
+        while (list.size() < count) {
+            BusStop from = stops.get(random.nextInt(stops.size()));
+            BusStop to = stops.get(random.nextInt(stops.size()));
+            SearchSettings s = new SearchSettings();
+            s.setProfileId(profile.getId());
+            s.setStartLat(from.getLatitude());
+            s.setStartLon(from.getLongitude());
+            s.setEndLat(to.getLatitude());
+            s.setEndLon(to.getLongitude());
+            s.setDay(1 + random.nextInt(DAYS));
+            s.setTime(String.format("%02d:%02d",
+                    FIRST_HOUR + random.nextInt(HOURS),
+                    random.nextInt(MINUTES)));
+            s.setMaxTransfers(TRANSFERS);
+            s.setMaxResults(RESULTS);
+            s.setDisabledRouteTypes(new ArrayList<>());
+            s.setTimeout(queryTimeout);
+            list.add(s);
+        }
+        return list;
+    }
+    /**
+     * Read captured queries.
+     * @return captured queries settings.
+     */
+    private List<SearchSettings> captured() {
+        List<SearchSettings> list = new ArrayList<>();
+        if (file == null || file.isEmpty()) {
+            return list;
+        }
+        try {
+            List<SlowQuery> captured = new ObjectMapper().readValue(
+                    new File(file), new TypeReference<List<SlowQuery>>() { });
+            captured.forEach(q -> list.add(q.getSettings()));
+        } catch (Exception e) {
+            LOG.warn("warm-up queries not loaded [" + file + "]", e);
+        }
+        return list;
+    }
+    /**
+     * Server is ready: every resident graph is warmed up at least once.
+     * @return true if ready.
+     */
+    public boolean isReady() {
+        return started.get() && graphConstructor.getProfiles().stream()
+                .allMatch(p -> warmed.contains(p.getId())
+                        || graphConstructor.peekGraph(p.getId()) == null);
+    }
+    /**
+     * Warm-up status.
+     * @return key - transport profile ID, value - graph is warmed up.
+     */
+    public Map<Integer, Boolean> getStatus() {
+        Map<Integer, Boolean> status = new TreeMap<>();
+        graphConstructor.getProfiles().forEach(p -> status.put(p.getId(),
+                warmed.contains(p.getId())));
+        return status;
+    }
+    /**
+     * Set queries count for one graph.
+     * @param count queries count, zero - warm-up disabled.
+     */
+    public void setQueries(final int count) {
+        queries = count;
+    }
+}
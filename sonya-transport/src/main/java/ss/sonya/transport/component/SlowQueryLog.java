@@ -0,0 +1,148 @@
+/*
+ * Copyright (C) 2017 ss
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ss.sonya.transport.component;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import javax.annotation.PostConstruct;
+import org.apache.log4j.Logger;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import ss.sonya.configuration.SonyaConfig;
+import ss.sonya.constants.SonyaProperty;
+import ss.sonya.inject.SonyaMetrics;
+import ss.sonya.transport.constants.TransportConst;
+import ss.sonya.transport.search.vo.SearchSettings;
+import ss.sonya.transport.search.vo.SlowQuery;
+
+/**
+ * Slow query log.
+ * Bounded ring buffer, keeps last searches slower than threshold.
+ * @author ss
+ */
+@Component
+public class SlowQueryLog {
+    /** Logger. */
+    private static final Logger LOG = Logger.getLogger(SlowQueryLog.class);
+    /** Default threshold, milliseconds. */
+    private static final int DEFAULT_THRESHOLD = 1000;
+    /** Default capacity. */
+    private static final int DEFAULT_CAPACITY = 200;
+    /** Metrics. */
+    @Autowired
+    private SonyaMetrics metrics;
+    /** Threshold, nanoseconds. */
+    private volatile long threshold;
+    /** Ring buffer. */
+    private SlowQuery[] buffer;
+    /** Next write position. */
+    private int next;
+    /** Captured queries count. */
+    private long total;
+    /**
+     * Initialization.
+     */
+    @PostConstruct
+    protected void init() {
+        setThreshold(SonyaConfig.settingI(SonyaProperty.SEARCH_SLOW_QUERY_MS,
+                DEFAULT_THRESHOLD));
+        setCapacity(SonyaConfig.settingI(
+                SonyaProperty.SEARCH_SLOW_QUERY_CAPACITY, DEFAULT_CAPACITY));
+    }
+    /**
+     * Record search, if it slower than threshold.
+     * @param settings search settings.
+     * @param graphVersion graph version.
+     * @param elapsedNanos search latency, nanoseconds.
+     * @param results results count.
+     * @return true if search captured.
+     */
+    public boolean record(final SearchSettings settings,
+            final long graphVersion, final long elapsedNanos,
+            final int results) {
+        if (elapsedNanos < threshold) {
+            return false;
+        }
+        SlowQuery q = new SlowQuery();
+        q.setDate(new Date());
+        q.setGraphVersion(graphVersion);
+        q.setElapsed((double) elapsedNanos / TimeUnit.MILLISECONDS.toNanos(1));
+        q.setResults(results);
+        q.setSettings(settings);
+        synchronized (this) {
+            buffer[next] = q;
+            next = (next + 1) % buffer.length;
+            total++;
+        }
+        metrics.increment(TransportConst.METRIC_SEARCH_SLOW, 1, "profile",
+                String.valueOf(settings.getProfileId()));
+        if (LOG.isDebugEnabled()) {
+            LOG.debug("slow search [" + q.getElapsed() + "] ms, profile ["
+                    + settings.getProfileId() + "]");
+        }
+        return true;
+    }
+    /**
+     * Captured queries, oldest first.
+     * @return slow queries.
+     */
+    public synchronized List<SlowQuery> snapshot() {
+        List<SlowQuery> list = new ArrayList<>(buffer.length);
+        for (int i = 0; i < buffer.length; i++) {
+            SlowQuery q = buffer[(next + i) % buffer.length];
+            if (q != null) {
+                list.add(q);
+            }
+        }
+        return list;
+    }
+    /**
+     * Remove all captured queries.
+     */
+    public synchronized void clear() {
+        buffer = new SlowQuery[buffer.length];
+        next = 0;
+    }
+    /**
+     * Captured queries count since start, including overwritten.
+     * @return count.
+     */
+    public synchronized long getTotal() {
+        return total;
+    }
+    /**
+     * Set threshold.
+     * @param millis threshold, milliseconds.
+     */
+    public void setThreshold(final long millis) {
+        threshold = TimeUnit.MILLISECONDS.toNanos(millis);
+    }
+    /**
+     * Set capacity, captured queries are removed.
+     * @param capacity max captured queries.
+     */
+    public synchronized void setCapacity(final int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException(
+                    "slow query log capacity must be positive");
+        }
+        buffer = new SlowQuery[capacity];
+        next = 0;
+    }
+}
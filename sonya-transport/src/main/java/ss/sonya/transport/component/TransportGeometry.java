@@ -24,13 +24,20 @@ import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import javax.annotation.PostConstruct;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
+import ss.sonya.configuration.SonyaConfig;
+import ss.sonya.constants.SonyaProperty;
 import ss.sonya.transport.constants.TransportConst;
 import ss.sonya.entity.BusStop;
 import ss.sonya.entity.Route;
+import ss.sonya.entity.TransportProfile;
 import ss.sonya.inject.service.Geometry;
+import ss.sonya.transport.search.Graph;
+import ss.sonya.transport.search.vo.AccessStops;
 import ss.sonya.transport.search.vo.OptimalPath;
+import ss.sonya.transport.search.vo.SearchSettings;
 
 /**
  * Transport geometry.
@@ -38,9 +45,88 @@ import ss.sonya.transport.search.vo.OptimalPath;
  */
 @Component
 public class TransportGeometry {
+    /** Default min access bus stops. */
+    private static final int DEFAULT_ACCESS_MIN_STOPS = 3;
+    /** Meters in kilometer. */
+    private static final double METERS = 1000;
     /** Geometry. */
     @Autowired
     private Geometry geometry;
+    /** Access bus stops radius, km, zero - fixed count. */
+    private volatile double accessRadius;
+    /** Min access bus stops, if radius is too small. */
+    private volatile int accessMinStops = DEFAULT_ACCESS_MIN_STOPS;
+    /**
+     * Initialization.
+     */
+    @PostConstruct
+    protected void init() {
+        setAccessRadius(SonyaConfig.settingI(
+                SonyaProperty.SEARCH_ACCESS_RADIUS_M, 0) / METERS);
+        setAccessMinStops(SonyaConfig.settingI(
+                SonyaProperty.SEARCH_ACCESS_MIN_STOPS,
+                DEFAULT_ACCESS_MIN_STOPS));
+    }
+    /**
+     * Find access bus stops for start or end point.
+     * With access radius, bus stops in radius are taken, radius grows
+     * to min bus stops in sparse areas and shrinks to limit in dense
+     * areas. Without radius, fixed number closest bus stops are taken.
+     * @param limit maximum result size.
+     * @param all all bus stops.
+     * @param lat latitude.
+     * @param lon longitude.
+     * @return list bus stops, closest first if radius is set.
+     */
+    public List<BusStop> findAccessBusStops(final int limit,
+            final Set<BusStop> all, final double lat, final double lon) {
+        List<BusStop> nearest = findNearestBusStops(limit, all, lat, lon);
+        if (accessRadius <= 0) {
+            return nearest;
+        }
+        Map<BusStop, Double> dist = new HashMap<>();
+        for (BusStop b : nearest) {
+            dist.put(b, geometry.calcDistance(b.getLatitude(),
+                    b.getLongitude(), lat, lon));
+        }
+        nearest.sort((b1, b2) -> Double.compare(dist.get(b1),
+                dist.get(b2)));
+        int n = 0;
+        while (n < nearest.size() && (n < accessMinStops
+                || dist.get(nearest.get(n)) <= accessRadius)) {
+            n++;
+        }
+        return new ArrayList<>(nearest.subList(0, n));
+    }
+    /**
+     * Find access bus stops for search start and end points.
+     * @param graph graph.
+     * @param profile transport profile.
+     * @param settings search settings.
+     * @return access bus stops.
+     */
+    public AccessStops findAccessStops(final Graph graph,
+            final TransportProfile profile, final SearchSettings settings) {
+        Set<BusStop> all = graph.getAccessStops(
+                settings.getDisabledRouteTypes());
+        return new AccessStops(graph, findAccessBusStops(
+                profile.getSearchLimitForPoints(), all,
+                settings.getStartLat(), settings.getStartLon()),
+                findAccessBusStops(profile.getSearchLimitForPoints(), all,
+                        settings.getEndLat(), settings.getEndLon()));
+    }
+    /**
+     * @param radius access bus stops radius, km, zero - fixed count.
+     */
+    public void setAccessRadius(final double radius) {
+        accessRadius = radius;
+    }
+    /**
+     * @param minStops min access bus stops, if radius is too small.
+     */
+    public void setAccessMinStops(final int minStops) {
+        accessMinStops = minStops;
+    }
     /**
      * Find fixed number closest bus stops.
      * @param limit maximum result size.
@@ -146,6 +232,25 @@ public class TransportGeometry {
         }
         return closest;
     }
+    /**
+     * Calculate distance of path sub-way by way distances: difference of
+     * distances from first bus stop of path way.
+     * Sub-way is calculated by bus stops, if it starts from mock bus stop.
+     * @param subWay sub-way of path.
+     * @param from sub-way start index in path way.
+     * @param distances path way distances or null.
+     * @return sub-way distance, km.
+     */
+    public double calcWayDistance(final List<BusStop> subWay,
+            final int from, final double[] distances) {
+        int to = from + subWay.size() - 1;
+        if (distances == null || subWay.isEmpty() || from < 0
+                || to >= distances.length
+                || TransportConst.MOCK_BS.equals(subWay.get(0).getName())) {
+            return calcWayDistance(subWay);
+        }
+        return distances[to] - distances[from];
+    }
     /**
      * Calculate way distance approximately.
      * @param way - way.
@@ -177,11 +282,24 @@ public class TransportGeometry {
      * @throws Exception - operation error.
      */
     public void calcOptimalPathTime(final OptimalPath op) throws Exception {
+        calcOptimalPathTime(op, null);
+    }
+    /**
+     * Calculate optimal path time and distance.
+     * Ride distances are taken from graph way distances, if they are built
+     * and sub-way start indexes are known.
+     * @param op optimal path.
+     * @param graph graph or null.
+     * @throws Exception error.
+     */
+    public void calcOptimalPathTime(final OptimalPath op, final Graph graph)
+            throws Exception {
         double transferDist = 0;
         double transportTime = 0;
         double dist = 0;
         List<BusStop> prevSubWay = null;
         Route r;
+        int[] wayStart = op.getWayStart();
         int cur = 0;
         double speed;
         for (List<BusStop> subWay : op.getWay()) {
@@ -194,7 +312,10 @@ public class TransportGeometry {
             }
             r = op.getPath().get(cur).getRoute();
             speed = r.getType().getAvgSpeed();
-            double subDist = calcWayDistance(subWay);
+            double subDist = graph == null || wayStart == null
+                    ? calcWayDistance(subWay)
+                    : calcWayDistance(subWay, wayStart[cur],
+                            graph.wayDistances(op.getPath().get(cur)));
             transportTime += subDist / speed;
             dist += subDist;
             prevSubWay = subWay;
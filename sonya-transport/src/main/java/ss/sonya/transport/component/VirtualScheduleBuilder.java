@@ -22,7 +22,6 @@ import java.util.ArrayList;
 import java.util.Calendar;
 import java.util.Date;
 import java.util.GregorianCalendar;
-import java.util.Iterator;
 import java.util.List;
 import java.util.concurrent.TimeUnit;
 import org.apache.log4j.Logger;
@@ -69,6 +68,16 @@ public class VirtualScheduleBuilder {
             return trips;
         }
         Calendar c = GregorianCalendar.getInstance();
+        // way is the same for all trips, calculate distances once
+        double distance = transportGeometry.calcWayDistance(fullWay); // km
+        double[] segments = new double[fullWay.size()];
+        for (int i = 1; i < fullWay.size(); i++) {
+            BusStop prev = fullWay.get(i - 1);
+            BusStop bs = fullWay.get(i);
+            segments[i] = geometry.calcDistance(prev.getLatitude(),
+                    prev.getLongitude(), bs.getLatitude(),
+                    bs.getLongitude());                             // km
+        }
         for (Trip t : schedule) {
             if (t.getIrregular() == null
                     || t.getIrregular().isEmpty()) {
@@ -106,7 +115,6 @@ public class VirtualScheduleBuilder {
                     sDate = c.getTime();
                 }
             }
-            double distance = transportGeometry.calcWayDistance(fullWay); // km
             double time;
             if (o.has("duration")) {
                 time = o.getDouble("duration");
@@ -121,18 +129,9 @@ public class VirtualScheduleBuilder {
                 trip.setDays(t.getDays());
                 StringBuilder tripInfo = new StringBuilder();
                 tripInfo.append(hhMM.format(date)).append(",");
-                Iterator<BusStop> itr = fullWay.iterator();
-                BusStop prev = null;
-                while (itr.hasNext()) {
-                    BusStop bs = itr.next();
-                    if (prev == null) {
-                        prev = bs;
-                        continue;
-                    }
-                    double subDist = geometry.calcDistance(prev.getLatitude(),
-                            prev.getLongitude(), bs.getLatitude(),
-                            bs.getLongitude());                     // km
-                    double subTime = subDist / distance * time
+                for (int i = 1; i < fullWay.size(); i++) {
+                    BusStop bs = fullWay.get(i);
+                    double subTime = segments[i] / distance * time
                             * TimeUnit.MINUTES.toSeconds(1);     // sec
                     c.add(Calendar.SECOND, (int) subTime);
                     String bsTime = hhMM.format(c.getTime());
@@ -140,7 +139,6 @@ public class VirtualScheduleBuilder {
                         LOG.trace(bs.getName() + " --> " + bsTime);
                     }
                     tripInfo.append(bsTime).append(",");
-                    prev = bs;
                 }
                 tripInfo.setLength(tripInfo.length() - 1);
                 trip.setRegular(tripInfo.toString());
@@ -0,0 +1,30 @@
+/*
+ * Copyright (C) 2017 ss
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ss.sonya.transport.constants;
+
+/**
+ * Transport profile graph state.
+ * @author ss
+ */
+public enum GraphState {
+    /** Graph is built and resident, search is available. */
+    READY,
+    /** Graph is evicted by memory budget, it's loaded on next search. */
+    EVICTED,
+    /** Graph is loading. */
+    LOADING;
+}
@@ -0,0 +1,51 @@
+/*
+ * Copyright (C) 2017 ss
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ss.sonya.transport.constants;
+
+/**
+ * Search phase.
+ * @author ss
+ */
+public enum SearchPhase {
+    /** Find nearest bus stops for start and end points. */
+    NEAREST_STOPS,
+    /** Create start and end vertices. */
+    POINT_VERTICES,
+    /** Find straight paths. */
+    STRAIGHT_PATHS,
+    /** Breadth-first search. */
+    BFS,
+    /** Exclude disabled route types. */
+    EXCLUDE_DISABLED,
+    /** Grouping decisions, select best. */
+    GROUPING,
+    /** Filter duplicates. */
+    DEDUPE,
+    /** Insert schedule. */
+    SCHEDULE,
+    /** Sort results. */
+    SORT;
+    /** Metric label. */
+    private final String label = name().toLowerCase();
+    /**
+     * Get metric label.
+     * @return label.
+     */
+    public String getLabel() {
+        return label;
+    }
+}
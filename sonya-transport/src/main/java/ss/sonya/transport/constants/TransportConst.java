@@ -42,6 +42,59 @@ public final class TransportConst {
     public static final double HUMAN_SPEED = 4;
     /** Transfer time payment. In hours. */
     public static final double TRANSFER_TIME_PAYMENT = 10 / 60;
+    /** Metric. Search latency, seconds. */
+    public static final String METRIC_SEARCH = "sonya_search_seconds";
+    /** Metric. Search phase latency, seconds. */
+    public static final String METRIC_SEARCH_PHASE =
+            "sonya_search_phase_seconds";
+    /** Metric. Decisions, found by search. */
+    public static final String METRIC_SEARCH_DECISIONS =
+            "sonya_search_decisions";
+    /** Metric. Search results, returned to client. */
+    public static final String METRIC_SEARCH_RESULTS = "sonya_search_results";
+    /** Metric. Slow searches, captured by slow query log. */
+    public static final String METRIC_SEARCH_SLOW = "sonya_search_slow_total";
+    /** Metric. Searches in progress. */
+    public static final String METRIC_SEARCH_IN_FLIGHT =
+            "sonya_search_in_flight";
+    /** Metric. Searches in wait queue. */
+    public static final String METRIC_SEARCH_QUEUED = "sonya_search_queued";
+    /** Metric. Current concurrency limit. */
+    public static final String METRIC_SEARCH_LIMIT = "sonya_search_limit";
+    /** Metric. Rejected searches. */
+    public static final String METRIC_SEARCH_REJECTED =
+            "sonya_search_rejected_total";
+    /** Metric. Searches, which joined identical search in progress. */
+    public static final String METRIC_SEARCH_COALESCED =
+            "sonya_search_coalesced_total";
+    /** Metric. Searches, served by search engine. */
+    public static final String METRIC_SEARCH_ENGINE =
+            "sonya_search_engine_total";
+    /** Metric. Search warm-up duration, seconds. */
+    public static final String METRIC_SEARCH_WARMUP =
+            "sonya_search_warmup_seconds";
+    /** Metric. Graph build latency, seconds. */
+    public static final String METRIC_GRAPH_BUILD = "sonya_graph_build_seconds";
+    /** Metric. Graph vertices. */
+    public static final String METRIC_GRAPH_VERTICES = "sonya_graph_vertices";
+    /** Metric. Graph edges. */
+    public static final String METRIC_GRAPH_EDGES = "sonya_graph_edges";
+    /** Metric. Estimated graph memory, bytes, zero if graph is evicted. */
+    public static final String METRIC_GRAPH_MEMORY = "sonya_graph_memory_bytes";
+    /** Metric. Off-heap graph adjacency, bytes. */
+    public static final String METRIC_GRAPH_OFFHEAP =
+            "sonya_graph_offheap_bytes";
+    /** Metric. Graphs evicted by memory budget. */
+    public static final String METRIC_GRAPH_EVICTIONS =
+            "sonya_graph_evictions_total";
+    /** Metric. Import stage latency, seconds. */
+    public static final String METRIC_IMPORT = "sonya_import_seconds";
+    /** Metric. Import events. */
+    public static final String METRIC_IMPORT_EVENTS =
+            "sonya_import_events_total";
+    /** Metric. Import errors. */
+    public static final String METRIC_IMPORT_ERRORS =
+            "sonya_import_errors_total";
     /** Contains times from 00:00 - 23:59. */
     public static final Map<String, Long> ALL_TIMES = new HashMap<>();
     /** Initialization. */
@@ -0,0 +1,58 @@
+/*
+ * Copyright (C) 2017 ss
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ss.sonya.transport.exception;
+
+/**
+ * Search rejected by admission control.
+ * @author ss
+ */
+public class SearchRejectedException extends Exception {
+    /** Default UID. */
+    private static final long serialVersionUID = 1L;
+    /** HTTP status, too many requests (client exceeded its share). */
+    public static final int TOO_MANY_REQUESTS = 429;
+    /** HTTP status, service unavailable (server overloaded). */
+    public static final int SERVICE_UNAVAILABLE = 503;
+    /** HTTP status. */
+    private final int status;
+    /** Retry after, seconds. */
+    private final int retryAfter;
+    /**
+     * Constructor.
+     * @param msg message.
+     * @param pStatus HTTP status.
+     * @param pRetryAfter retry after, seconds.
+     */
+    public SearchRejectedException(final String msg, final int pStatus,
+            final int pRetryAfter) {
+        super(msg);
+        status = pStatus;
+        retryAfter = pRetryAfter;
+    }
+    /**
+     * @return the status
+     */
+    public int getStatus() {
+        return status;
+    }
+    /**
+     * @return the retryAfter
+     */
+    public int getRetryAfter() {
+        return retryAfter;
+    }
+}
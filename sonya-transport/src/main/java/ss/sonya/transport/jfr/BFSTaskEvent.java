@@ -0,0 +1,49 @@
+/*
+ * Copyright (C) 2017 ss
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ss.sonya.transport.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Flight recorder event, one BFS task.
+ * @author ss
+ */
+@Name("ss.sonya.BFSTask")
+@Label("BFS Task")
+@Category({"Sonya", "Search"})
+@Description("Breadth-first search from portion of start vertices")
+public class BFSTaskEvent extends Event {
+    /** Start vertices in task portion. */
+    @Label("Start vertices")
+    public int startVertices;
+    /** Search limit depth. */
+    @Label("Depth")
+    public int depth;
+    /** Reverse search. */
+    @Label("Reverse")
+    public boolean reverse;
+    /** Decisions, found by BFS. */
+    @Label("Decisions")
+    public int decisions;
+    /** Optimal paths, passed transfers check. */
+    @Label("Optimal paths")
+    public int paths;
+}
@@ -0,0 +1,49 @@
+/*
+ * Copyright (C) 2017 ss
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ss.sonya.transport.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Flight recorder event, one data parser run.
+ * @author ss
+ */
+@Name("ss.sonya.DataParse")
+@Label("Data Parse")
+@Category({"Sonya", "Import"})
+@Description("Data parser run")
+public class DataParseEvent extends Event {
+    /** Parser name. */
+    @Label("Parser")
+    public String parser;
+    /** Bus stops. */
+    @Label("Bus stops")
+    public int busstops;
+    /** Routes. */
+    @Label("Routes")
+    public int routes;
+    /** Paths. */
+    @Label("Paths")
+    public int paths;
+    /** Paths with schedule. */
+    @Label("Schedule")
+    public int schedule;
+}
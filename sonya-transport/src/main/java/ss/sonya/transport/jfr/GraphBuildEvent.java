@@ -0,0 +1,52 @@
+/*
+ * Copyright (C) 2017 ss
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ss.sonya.transport.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Flight recorder event, one graph build phase.
+ * @author ss
+ */
+@Name("ss.sonya.GraphBuild")
+@Label("Graph Build")
+@Category({"Sonya", "Graph"})
+@Description("Graph build phase: edges or schedule")
+public class GraphBuildEvent extends Event {
+    /** Transport profile ID. */
+    @Label("Profile")
+    public int profileId;
+    /** Build phase. */
+    @Label("Phase")
+    public String phase;
+    /** Paths. */
+    @Label("Paths")
+    public int paths;
+    /** Bus stops. */
+    @Label("Bus stops")
+    public int busstops;
+    /** Graph vertices. */
+    @Label("Vertices")
+    public int vertices;
+    /** Graph edges. */
+    @Label("Edges")
+    public int edges;
+}
@@ -0,0 +1,52 @@
+/*
+ * Copyright (C) 2017 ss
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ss.sonya.transport.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Flight recorder event, one import data stage.
+ * @author ss
+ */
+@Name("ss.sonya.ImportStage")
+@Label("Import Stage")
+@Category({"Sonya", "Import"})
+@Description("Import data stage: deserialize, bus stops, routes, paths...")
+public class ImportStageEvent extends Event {
+    /** Transport profile ID. */
+    @Label("Profile")
+    public int profileId;
+    /** Route profile ID. */
+    @Label("Route profile")
+    public int routeProfileId;
+    /** Import stage. */
+    @Label("Stage")
+    public String stage;
+    /** Stage input items. */
+    @Label("Items")
+    public int items;
+    /** Import events, produced by stage. */
+    @Label("Events")
+    public int events;
+    /** Persist changes. */
+    @Label("Persist")
+    public boolean persist;
+}
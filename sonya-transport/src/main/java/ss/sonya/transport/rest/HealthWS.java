@@ -0,0 +1,62 @@
+/*
+ * Copyright (C) 2017 ss
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ss.sonya.transport.rest;
+
+import java.util.HashMap;
+import java.util.Map;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.RestController;
+import ss.sonya.transport.component.SearchWarmup;
+import ss.sonya.transport.search.GraphConstructor;
+
+/**
+ * Health web-service, used by load balancer.
+ * @author ss
+ */
+@RestController
+@RequestMapping("/rest/health")
+public class HealthWS {
+    /** Search warm-up. */
+    @Autowired
+    private SearchWarmup searchWarmup;
+    /** Graph constructor. */
+    @Autowired
+    private GraphConstructor graphConstructor;
+    /**
+     * Readiness, search graphs are built and warmed up.
+     * Graphs, evicted by memory budget, are loaded on next search.
+     * @return 200 if server is ready, otherwise 503.
+     */
+    @RequestMapping(value = "/ready",
+            method = RequestMethod.GET,
+            produces = MediaType.APPLICATION_JSON_UTF8_VALUE)
+    public ResponseEntity<Map<String, Object>> ready() {
+        boolean ready = searchWarmup.isReady();
+        Map<String, Object> map = new HashMap<>();
+        map.put("ready", ready);
+        map.put("profiles", searchWarmup.getStatus());
+        map.put("graphs", graphConstructor.getStates());
+        map.put("graphsBytes", graphConstructor.getResidentBytes());
+        return ResponseEntity.status(ready ? HttpStatus.OK
+                : HttpStatus.SERVICE_UNAVAILABLE).body(map);
+    }
+}
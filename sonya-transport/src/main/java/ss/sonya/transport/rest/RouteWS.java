@@ -16,19 +16,35 @@
  */
 package ss.sonya.transport.rest;
 
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import javax.annotation.PostConstruct;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.ExceptionHandler;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestMethod;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.async.DeferredResult;
 import ss.sonya.entity.Route;
-import ss.sonya.transport.search.SearchEngine;
+import ss.sonya.transport.api.SearchService;
+import ss.sonya.transport.component.SearchEngineRegistry;
+import ss.sonya.transport.exception.SearchRejectedException;
+import ss.sonya.transport.search.SearchDeadline;
 import ss.sonya.transport.search.vo.OptimalPath;
+import ss.sonya.transport.search.vo.SearchResult;
 import ss.sonya.transport.search.vo.SearchSettings;
+import ss.sonya.transport.search.vo.SlowQuery;
 
 /**
  * Route web-service.
@@ -37,9 +53,16 @@ import ss.sonya.transport.search.vo.SearchSettings;
 @RestController
 @RequestMapping("/rest/data/route")
 public class RouteWS extends TransportWS<Route> {
-    /** Search engine. */
+    /** Response header, search result is partial. */
+    public static final String HEADER_PARTIAL = "X-Search-Partial";
+    /** Time after search deadline to complete request, ms. */
+    private static final long TIMEOUT_GRACE = 2000;
+    /** Search service. */
     @Autowired
-    private SearchEngine searchEngine;
+    private SearchService searchService;
+    /** Search engines. */
+    @Autowired
+    private SearchEngineRegistry engines;
     /**
      * Initialize controller.
      */
@@ -62,15 +85,143 @@ public class RouteWS extends TransportWS<Route> {
     }
     /**
      * Search routes.
+     * Search is executed asynchronously in search pool, servlet thread
+     * is released immediately.
+     * If search deadline reached, partial result is returned
+     * and marked by response header. If search is not completed in time,
+     * 503 is returned.
+     * Searches are queued by client address (with proxy, configure
+     * Tomcat RemoteIpValve to get real address).
      * @param settings search settings.
-     * @return list of optimal paths.
+     * @param req HTTP servlet request.
+     * @return list of optimal paths or, in explain mode,
+     *      optimal paths with search diagnostics.
      * @throws Exception error.
      */
     @RequestMapping(value = "/search",
             method = RequestMethod.POST,
             produces = MediaType.APPLICATION_JSON_UTF8_VALUE)
-    public List<OptimalPath> searchRoutes(
-            @RequestBody SearchSettings settings) throws Exception {
-        return searchEngine.search(settings);
+    public DeferredResult<ResponseEntity<Object>> searchRoutes(
+            @RequestBody SearchSettings settings, HttpServletRequest req)
+            throws Exception {
+        CompletableFuture<List<OptimalPath>> future = searchService
+                .searchRoutesAsync(settings, req.getRemoteAddr());
+        SearchDeadline deadline = settings.getDeadline();
+        long timeout = deadline.remaining() == Long.MAX_VALUE ? 0
+                : deadline.remaining() + TIMEOUT_GRACE;
+        DeferredResult<ResponseEntity<Object>> result =
+                new DeferredResult<>(timeout > 0 ? timeout : null);
+        result.onTimeout(() -> {
+            deadline.cancel();
+            result.setErrorResult(ResponseEntity
+                    .status(HttpStatus.SERVICE_UNAVAILABLE)
+                    .body(error("search timeout")));
+        });
+        // client disconnected or request timed out, stop search
+        result.onCompletion(() -> {
+            if (!future.isDone()) {
+                deadline.cancel();
+            }
+        });
+        future.whenComplete((paths, e) -> {
+            if (e != null) {
+                result.setErrorResult(e instanceof CompletionException
+                        && e.getCause() != null ? e.getCause() : e);
+                return;
+            }
+            boolean partial = deadline.isPartial();
+            Object body = settings.isExplain() ? new SearchResult(paths,
+                    settings.getDiagnostics(), partial) : paths;
+            ResponseEntity.BodyBuilder builder = ResponseEntity.ok();
+            if (partial) {
+                builder.header(HEADER_PARTIAL, Boolean.TRUE.toString());
+            }
+            result.setResult(builder.body(body));
+        });
+        return result;
+    }
+    /**
+     * Search rejected by admission control.
+     * @param e exception.
+     * @return 429 or 503 response with standard json message.
+     */
+    @ExceptionHandler(SearchRejectedException.class)
+    public ResponseEntity<Map<String, Object>> searchRejected(
+            final SearchRejectedException e) {
+        return ResponseEntity.status(e.getStatus())
+                .header(HttpHeaders.RETRY_AFTER,
+                        String.valueOf(e.getRetryAfter()))
+                .body(error(e.getMessage()));
+    }
+    /**
+     * Standard json error message.
+     * @param message error message.
+     * @return error message.
+     */
+    private static Map<String, Object> error(final String message) {
+        Map<String, Object> map = new HashMap<>();
+        map.put("error", true);
+        map.put("message", message);
+        return map;
+    }
+    /**
+     * Download slow queries.
+     * @param resp HTTP servlet response.
+     * @return slow queries, oldest first.
+     * @throws Exception error.
+     */
+    @RequestMapping(value = "/slow-queries",
+            method = RequestMethod.GET,
+            produces = MediaType.APPLICATION_JSON_UTF8_VALUE)
+    public List<SlowQuery> getSlowQueries(HttpServletResponse resp)
+            throws Exception {
+        resp.setHeader("Content-Disposition",
+                "attachment; filename=\"slow-queries.json\"");
+        return searchService.getSlowQueries();
+    }
+    /**
+     * Search engines and their selection for transport profiles.
+     * @return engines, overrides and observed latency.
+     * @throws Exception error.
+     */
+    @RequestMapping(value = "/engines",
+            method = RequestMethod.GET,
+            produces = MediaType.APPLICATION_JSON_UTF8_VALUE)
+    public Map<String, Object> getEngines() throws Exception {
+        Map<String, Object> map = new HashMap<>();
+        map.put("engines", engines.getEngines());
+        map.put("profiles", engines.getStatus());
+        return map;
+    }
+    /**
+     * Use search engine for transport profile.
+     * @param id transport profile ID.
+     * @param engine engine name.
+     * @return 200 or 400 if engine is unknown.
+     * @throws Exception error.
+     */
+    @RequestMapping(value = "/engines/{id}/{engine}",
+            method = RequestMethod.PUT,
+            produces = MediaType.APPLICATION_JSON_UTF8_VALUE)
+    public ResponseEntity<Map<String, Object>> setEngine(
+            @PathVariable("id") Integer id,
+            @PathVariable("engine") String engine) throws Exception {
+        if (!engines.getEngines().contains(engine)) {
+            return ResponseEntity.badRequest().body(
+                    error("unknown search engine [" + engine + "]"));
+        }
+        engines.setOverride(id, engine);
+        return ResponseEntity.ok(new HashMap<>());
+    }
+    /**
+     * Remove search engine override, engine is selected by latency.
+     * @param id transport profile ID.
+     * @throws Exception error.
+     */
+    @RequestMapping(value = "/engines/{id}",
+            method = RequestMethod.DELETE)
+    public void removeEngine(@PathVariable("id") Integer id)
+            throws Exception {
+        engines.setOverride(id, null);
     }
 }
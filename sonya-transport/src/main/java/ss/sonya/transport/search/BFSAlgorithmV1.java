@@ -18,8 +18,11 @@ package ss.sonya.transport.search;
 
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
 import java.util.Calendar;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.Date;
 import java.util.GregorianCalendar;
 import java.util.HashMap;
@@ -27,27 +30,40 @@ import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.PriorityQueue;
 import java.util.Set;
 import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
 import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
 import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import javax.annotation.PostConstruct;
 import org.apache.log4j.Logger;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.config.BeanDefinition;
 import org.springframework.context.annotation.Scope;
 import org.springframework.stereotype.Service;
+import ss.sonya.configuration.SonyaConfig;
+import ss.sonya.constants.SonyaProperty;
+import ss.sonya.transport.constants.SearchPhase;
 import ss.sonya.transport.constants.TransportConst;
 import ss.sonya.entity.BusStop;
 import ss.sonya.entity.Path;
 import ss.sonya.entity.TransportProfile;
+import ss.sonya.inject.SonyaMetrics;
 import ss.sonya.inject.service.Geometry;
+import ss.sonya.transport.component.SearchPool;
 import ss.sonya.transport.component.TransportGeometry;
+import ss.sonya.transport.jfr.SearchEvent;
+import ss.sonya.transport.search.vo.AccessStops;
 import ss.sonya.transport.search.vo.BusStopTime;
 import ss.sonya.transport.search.vo.OptimalPath;
 import ss.sonya.transport.search.vo.OptimalSchedule;
+import ss.sonya.transport.search.vo.SearchDiagnostics;
 import ss.sonya.transport.search.vo.SearchSettings;
 
 /**
@@ -59,6 +75,10 @@ import ss.sonya.transport.search.vo.SearchSettings;
 public class BFSAlgorithmV1 implements SearchEngine {
     /** Logger. */
     private static final Logger LOG = Logger.getLogger(BFSAlgorithmV1.class);
+    /** Metric label, transport profile. */
+    private static final String PROFILE = "profile";
+    /** Metric label, search phase. */
+    private static final String PHASE = "phase";
     /** Transport geometry. */
     @Autowired
     private TransportGeometry transportGeometry;
@@ -68,173 +88,368 @@ public class BFSAlgorithmV1 implements SearchEngine {
     /** Graph constructor. */
     @Autowired
     private GraphConstructor graphConstructor;
+    /** Metrics. */
+    @Autowired
+    private SonyaMetrics metrics;
+    /** Search thread pools. */
+    @Autowired
+    private SearchPool searchPool;
+    /** Prune dominated start and end bus stops. */
+    private boolean pruneAccess = true;
+    /**
+     * Initialization.
+     */
+    @PostConstruct
+    protected void init() {
+        pruneAccess = Boolean.parseBoolean(SonyaConfig.setting(
+                SonyaProperty.SEARCH_ACCESS_PRUNE, Boolean.TRUE.toString()));
+    }
+    /**
+     * @param prune prune dominated start and end bus stops.
+     */
+    public void setPruneAccess(final boolean prune) {
+        pruneAccess = prune;
+    }
     @Override
     public List<OptimalPath> search(final SearchSettings settings)
             throws Exception {
-        long st = System.currentTimeMillis();
-        LOG.info("#-bfs-#-#-#-#-#-#-# BFS_V1: start search #-#-#-#-#-#-#-#-#");
+        long st = System.nanoTime();
+        SearchEvent event = new SearchEvent();
+        event.begin();
+        String pid = String.valueOf(settings.getProfileId());
+        SearchDiagnostics diag = settings.isExplain()
+                ? new SearchDiagnostics() : null;
+        settings.setDiagnostics(diag);
+        SearchDeadline deadline = settings.getDeadline();
+        if (deadline == null) {
+            deadline = new SearchDeadline(settings.getTimeout());
+            settings.setDeadline(deadline);
+        }
         double sLat = settings.getStartLat();
         double sLng = settings.getStartLon();
         double eLat = settings.getEndLat();
         double eLng = settings.getEndLon();
         List<OptimalPath> result = new CopyOnWriteArrayList<>();
-        LOG.info("#-bfs-# start coord [" + sLat + ", " + sLng + "]");
-        LOG.info("#-bfs-#   end coord [" + eLat + ", " + eLng + "]");
+        if (LOG.isDebugEnabled()) {
+            LOG.debug("#-bfs-# start coord [" + sLat + ", " + sLng + "]");
+            LOG.debug("#-bfs-#   end coord [" + eLat + ", " + eLng + "]");
+        }
         Graph graph = graphConstructor.findGraph(settings.getProfileId());
         TransportProfile profile = graphConstructor
                 .findProfile(settings.getProfileId());
-        LOG.info("#-bfs-# profile [" + profile + "]");
-        Set<BusStop> all = new HashSet<>();
-        graph.getAllPaths().forEach(p -> {
-            if (!settings.getDisabledRouteTypes()
-                    .contains(p.getRoute().getType())) {
-                all.addAll(p.getBusstops());
-            }
-        });
-        LOG.info("#-bfs-# total bus stops [" + all.size() + "]");
-        // find fixed count closer bus stops near start point
-        List<BusStop> startBs = transportGeometry.findNearestBusStops(
-                profile.getSearchLimitForPoints(), all, sLat, sLng);
-        // find fixed count closer bus stops near end point
-        List<BusStop> endBs = transportGeometry.findNearestBusStops(
-                profile.getSearchLimitForPoints(), all, eLat, eLng);
-        LOG.debug("#-bfs-# start area - bus stop size ["
-                + startBs.size() + "]");
-        LOG.debug("#-bfs-#   end area - bus stop size [" + endBs.size() + "]");
+        long t = System.nanoTime();
+        // find closer bus stops near start and end points, unless they
+        // are found for search key in this graph already
+        AccessStops access = settings.getAccessStops();
+        if (access == null || access.getGraph() != graph) {
+            access = transportGeometry.findAccessStops(graph, profile,
+                    settings);
+        }
+        List<BusStop> startBs = access.getStart();
+        List<BusStop> endBs = access.getEnd();
+        t = phase(SearchPhase.NEAREST_STOPS, pid, t, diag);
         // getting start vertices for search (start search conditions)
         Map<Integer, Set<BusStop>> endVertices = createPointVertices(
-                endBs, false, profile, graph);
+                endBs, false, graph);
         // getting end vertices for search (end search conditions)
         Map<Integer, Set<BusStop>> startVertices = createPointVertices(
-                startBs, true, profile, graph);
-        LOG.info("#-bfs-# start vertices [" + startVertices.size() + "]");
-        LOG.info("#-bfs-# end vertices [" + endVertices.size() + "]");
+                startBs, true, graph);
+        StopSelector selector = graph.hasWayDistances()
+                ? new StopSelector(graph, geometry, sLat, sLng, eLat,
+                        eLng) : null;
+        if (pruneAccess && selector != null) {
+            int dominated = selector.prune(startVertices, true)
+                    + selector.prune(endVertices, false);
+            if (diag != null) {
+                diag.setDominatedStops(dominated);
+            }
+        }
+        t = phase(SearchPhase.POINT_VERTICES, pid, t, diag);
+        if (LOG.isDebugEnabled()) {
+            LOG.debug("#-bfs-# start vertices [" + startVertices.size()
+                    + "], end vertices [" + endVertices.size() + "]");
+        }
+        if (diag != null) {
+            diag.setStartVertices(startVertices.size());
+            diag.setEndVertices(endVertices.size());
+        }
         // search straight paths, it's simple -)
         List<OptimalPath> straight = straightPaths(startVertices, endVertices,
                 graph);
         if (!straight.isEmpty()) {
-            LOG.info("#-bfs-# straight paths [" + straight.size() + "]");
             result.addAll(straight);
         }
-        LOG.info("#-bfs-# max transfers [" + settings.getMaxTransfers() + "]");
+        if (diag != null) {
+            diag.setStraightPaths(straight.size());
+        }
+        t = phase(SearchPhase.STRAIGHT_PATHS, pid, t, diag);
         if (settings.getMaxTransfers() > 0) {
             // reverse search for performance
             boolean isReverseSearch = startVertices.size() > endVertices.size();
-            LOG.info("#-bfs-# reverse search [" + isReverseSearch + "]");
             Map<Integer, Set<BusStop>> pseudoStartVertices = isReverseSearch
                     ? endVertices : startVertices;
             Map<Integer, Set<BusStop>> pseudoEndVertices = isReverseSearch
                     ? startVertices : endVertices;
-            // multi-threading, using [physical processors]
-            // or [physical processors] + [hyper-threading]
-            int cores = Runtime.getRuntime().availableProcessors();
-            ExecutorService ex = Executors.newFixedThreadPool(cores);
+            if (diag != null) {
+                diag.setReverseSearch(isReverseSearch);
+            }
+            List<Integer> criteria = new ArrayList<>(
+                    pseudoStartVertices.keySet());
+            // skip disabled route types and paths without trips
+            BitSet active = traversableVertices(settings, profile, graph);
+            if (active != null) {
+                criteria.removeIf(v -> !active.get(v));
+                Map<Integer, Set<BusStop>> activeEnd = new HashMap<>();
+                pseudoEndVertices.forEach((v, bs) -> {
+                    if (active.get(v)) {
+                        activeEnd.put(v, bs);
+                    }
+                });
+                pseudoEndVertices = activeEnd;
+                if (diag != null) {
+                    diag.setInactiveVertices(graph.vertices()
+                            - active.cardinality());
+                }
+            }
+            // skip start vertices, which can't reach end vertices,
+            // BFS finds end vertices up to max transfers hops away
+            Reachability reachability = graph.getReachability();
+            int hops = settings.getMaxTransfers();
+            if (reachability != null && hops > 0
+                    && hops <= Reachability.MAX_HOPS) {
+                criteria = reachability.filter(criteria,
+                        pseudoEndVertices.keySet(), hops);
+            }
+            if (diag != null) {
+                diag.setUnreachableStarts(pseudoStartVertices.size()
+                        - criteria.size());
+            }
+            // multi-threading, using search worker threads,
+            // shared by all searches
+            ForkJoinPool ex = searchPool.workers();
+            int cores = ex.getParallelism();
+            // few start vertices can't load all processors,
+            // expand wide frontiers in parallel instead
+            boolean parallel = criteria.size() < cores;
+            if (diag != null) {
+                diag.setParallelFrontier(parallel);
+            }
+            // optimal paths are created for best bus stops of every way
             // increase search depth
-            long startBfs = System.currentTimeMillis();
             List<Future<List<OptimalPath>>> futures = new ArrayList<>();
             // break for threads
             List<Integer>[] portions = new ArrayList[cores];
             for (int i = 0; i < cores; i++) {
                 portions[i] = new ArrayList<>();
             }
-            Iterator<Integer> itr = pseudoStartVertices.keySet().iterator();
+            Iterator<Integer> itr = criteria.iterator();
             int counter = 0;
             while (itr.hasNext()) {
                 portions[counter % cores].add(itr.next());
                 counter++;
             }
             for (List<Integer> portion : portions) {
-                futures.add(ex.submit(
-                        new BFSTask(portion, pseudoEndVertices,
-                                pseudoStartVertices, graph,
-                                settings.getMaxTransfers(), isReverseSearch)
-                ));
+                BFSTask task;
+                if (parallel) {
+                    task = new ParallelBFSTask(portion, pseudoEndVertices,
+                            pseudoStartVertices, graph,
+                            settings.getMaxTransfers(), isReverseSearch, diag,
+                            deadline, searchPool.workers(),
+                            ParallelBFSTask.PARALLEL_FRONTIER);
+                } else if (portion.size() > 1) {
+                    // several start vertices share one traversal
+                    task = new MultiSourceBFSTask(portion, pseudoEndVertices,
+                            pseudoStartVertices, graph,
+                            settings.getMaxTransfers(), isReverseSearch, diag,
+                            deadline);
+                } else {
+                    task = new BFSTask(portion, pseudoEndVertices,
+                            pseudoStartVertices, graph,
+                            settings.getMaxTransfers(), isReverseSearch, diag,
+                            deadline);
+                }
+                task.setActiveVertices(active);
+                task.setReachability(reachability);
+                task.setStopSelector(selector);
+                Future<List<OptimalPath>> f = ex.submit(task);
+                deadline.register(f);
+                futures.add(f);
             }
             // getting results
-            for (Future<List<OptimalPath>> f : futures) {
-                result.addAll(f.get());
+            try {
+                for (Future<List<OptimalPath>> f : futures) {
+                    try {
+                        result.addAll(f.get());
+                    } catch (CancellationException e) {
+                        LOG.debug("#-bfs-# search cancelled");
+                    }
+                }
+            } finally {
+                // on error, not started tasks don't occupy workers
+                futures.forEach(f -> f.cancel(true));
             }
-            ex.shutdown();
-            LOG.info("#-bfs-# total number of decisions ["
-                    + (result.size() - straight.size()) + "], BFS time ["
-                    + (System.currentTimeMillis() - startBfs) + "] ms");
+            t = phase(SearchPhase.BFS, pid, t, diag);
         }
+        int decisions = result.size();
+        metrics.observe(TransportConst.METRIC_SEARCH_DECISIONS, decisions,
+                PROFILE, pid);
         // at this moment result not thread safe
         if (!settings.getDisabledRouteTypes().isEmpty()) {
             result = excludeDisabledRoutes(result, settings);
+            t = phase(SearchPhase.EXCLUDE_DISABLED, pid, t, diag);
+        }
+        int rest = result.size();
+        result = groupingResult(result, settings, graph);
+        t = phase(SearchPhase.GROUPING, pid, t, diag);
+        int groups = result.size();
+        result = filterDuplicates(result, settings);
+        t = phase(SearchPhase.DEDUPE, pid, t, diag);
+        int unique = result.size();
+        if (profile.isHasSchedule()) {
+            insertSchedule(result, settings, graph, true);
+            t = phase(SearchPhase.SCHEDULE, pid, t, diag);
+        }
+        if (diag != null) {
+            diag.setDisabledFiltered(decisions - rest);
+            diag.setGroups(groups);
+            diag.setDuplicatesFiltered(groups - unique);
+            diag.setScheduleMisses(unique - result.size());
+        }
+        result = sortResults(result, settings, profile);
+        if (graph.hasEquivalentPaths()) {
+            result = expandEquivalentPaths(result, settings, graph, profile);
+        }
+        phase(SearchPhase.SORT, pid, t, diag);
+        metrics.observe(TransportConst.METRIC_SEARCH_RESULTS, result.size(),
+                PROFILE, pid);
+        metrics.observeSince(TransportConst.METRIC_SEARCH, st, PROFILE, pid);
+        if (event.shouldCommit()) {
+            event.profileId = settings.getProfileId();
+            event.maxTransfers = settings.getMaxTransfers();
+            event.startVertices = startVertices.size();
+            event.endVertices = endVertices.size();
+            event.decisions = decisions;
+            event.results = result.size();
+            event.commit();
+        }
+        if (deadline.isPartial()) {
+            LOG.warn("search deadline reached, partial result ["
+                    + result.size() + "], profile [" + pid + "]");
+        }
+        if (LOG.isDebugEnabled()) {
+            LOG.debug("#-bfs-# total number of optimal paths ["
+                    + result.size() + "], elapsed time ["
+                    + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - st)
+                    + "] ms");
         }
-        result = groupingResult(result, settings);
-        result = filterDuplicates(result);
-        sortResults(result, settings, profile);
-        if (result.size() > settings.getMaxResults()) {
-            result = result.subList(0, settings.getMaxResults());
-        }
-        LOG.info("#-bfs-# total number of optimal paths ["
-                + result.size() + "]");
-        LOG.info("#-bfs-# elapsed time [" + (System.currentTimeMillis() - st)
-                + "]");
-        LOG.info("#-bfs-#-#-#-#-#-#-#-#-#-# search complete #-#-#-#-#-#-#\n");
         return result;
     }
+    /**
+     * Record search phase latency.
+     * @param phase search phase.
+     * @param pid transport profile ID.
+     * @param start phase start time, nanoseconds.
+     * @param diag search diagnostics, may be null.
+     * @return next phase start time, nanoseconds.
+     */
+    private long phase(final SearchPhase phase, final String pid,
+            final long start, final SearchDiagnostics diag) {
+        long now = System.nanoTime();
+        metrics.observe(TransportConst.METRIC_SEARCH_PHASE,
+                (double) (now - start) / TimeUnit.SECONDS.toNanos(1),
+                PROFILE, pid, PHASE, phase.getLabel());
+        if (diag != null) {
+            diag.addPhase(phase.getLabel(),
+                    (double) (now - start) / TimeUnit.MILLISECONDS.toNanos(1));
+        }
+        return now;
+    }
     /**
      * Create vertices for start or end vertices.
      * Grouping start / end bus stops by vertices (paths),
      * because every bus stop has paths, passing through it.
+     * Access bus stop of station is replaced on every path by one station
+     * bus stop, which path serves, access bus stop itself if possible.
      * @param pointBusStops point bus stops.
      * @param isStart start or end point.
-     * @param profile transport profile.
      * @param graph graph.
      * @return point vertices map.
      * @throws Exception - method error.
      */
     private Map<Integer, Set<BusStop>> createPointVertices(
             final List<BusStop> pointBusStops, final boolean isStart,
-            final TransportProfile profile, final Graph graph)
-            throws Exception {
+            final Graph graph) throws Exception {
         // key - vertex number, value - set bus stops
         Map<Integer, Set<BusStop>> map = new HashMap<>();
         List<BusStop> way;
-        Map<BusStop, List<Path>> bsPaths = graphConstructor
-                .findBusStopPathsMap(profile.getId());
-        for (BusStop bs : pointBusStops) {
-            // getting bus stop paths
-            List<Path> paths = bsPaths.get(bs);
-            if (paths == null) {
-                continue;
-            }
-            for (Path path : paths) {
-                // getting path way
-                way = path.getBusstops();
-                if (isStart) {
-                    // for start bus stops skip paths where start bus stop
-                    // in the end of way
-                    if (way.indexOf(bs) == way.size() - 1) {
-                        continue;
+        Map<BusStop, List<Path>> bsPaths = graph.getBusStopPaths();
+        Stations stations = graph.getStations();
+        for (BusStop access : pointBusStops) {
+            // vertices, which already have bus stop of this station
+            Set<Integer> served = new HashSet<>();
+            for (BusStop bs : members(access, stations)) {
+                // getting bus stop paths
+                List<Path> paths = bsPaths.get(bs);
+                if (paths == null) {
+                    continue;
+                }
+                for (Path path : paths) {
+                    // getting path way
+                    way = path.getBusstops();
+                    if (isStart) {
+                        // for start bus stops skip paths where start bus
+                        // stop in the end of way
+                        if (way.indexOf(bs) == way.size() - 1) {
+                            continue;
+                        }
+                    } else {
+                        // for end bus stops skip paths where end bus stop
+                        // in the start of way
+                        if (way.indexOf(bs) == 0) {
+                            continue;
+                        }
                     }
-                } else {
-                    // for end bus stops skip paths where end bus stop
-                    // in the start of way
-                    if (way.indexOf(bs) == 0) {
+                    // getting vertex number for path
+                    int idx = graph.indexOfPath(path);
+                    if (idx == -1) {
+                        throw new IllegalArgumentException(
+                                "vertex not defined for " + path);
+                    }
+                    if (!served.add(idx)) {
                         continue;
                     }
-                }
-                // getting vertex number for path
-                int idx = graph.indexOfPath(path);
-                if (idx == -1) {
-                    throw new IllegalArgumentException("vertex not defined for "
-                            + path);
-                }
-                if (map.containsKey(idx)) {
-                    map.get(idx).add(bs);
-                } else {
-                    Set<BusStop> l = new HashSet<>();
-                    l.add(bs);
-                    map.put(idx, l);
+                    if (map.containsKey(idx)) {
+                        map.get(idx).add(bs);
+                    } else {
+                        Set<BusStop> l = new HashSet<>();
+                        l.add(bs);
+                        map.put(idx, l);
+                    }
                 }
             }
         }
         return map;
     }
+    /**
+     * Bus stops of access bus stop station.
+     * @param access access bus stop.
+     * @param stations stations, may be null.
+     * @return access bus stop, then other station bus stops.
+     */
+    private static List<BusStop> members(final BusStop access,
+            final Stations stations) {
+        if (stations == null) {
+            return Collections.singletonList(access);
+        }
+        List<BusStop> result = new ArrayList<>();
+        result.add(access);
+        for (BusStop bs : stations.members(access)) {
+            if (!bs.equals(access)) {
+                result.add(bs);
+            }
+        }
+        return result;
+    }
     /**
      * Find straight paths.
      * @param startVertices start vertices.
@@ -267,12 +482,14 @@ public class BFSAlgorithmV1 implements SearchEngine {
                                 List<List<BusStop>> opWay =
                                         new ArrayList<>();
                                 List<Path> opPaths = new ArrayList<>();
-                                opWay.add(way.subList(way.indexOf(startBs),
+                                int from = way.indexOf(startBs);
+                                opWay.add(way.subList(from,
                                         way.indexOf(endBs) + 1));
                                 opPaths.add(path);
                                 OptimalPath op = new OptimalPath();
                                 op.setPath(opPaths);
                                 op.setWay(opWay);
+                                op.setWayStart(new int[] {from});
                                 list.add(op);
                             }
                         }
@@ -293,113 +510,123 @@ public class BFSAlgorithmV1 implements SearchEngine {
         return list;
     }
     /**
-     * Sort result.
+     * Sort result and keep best results.
+     * Only max results are kept in bounded heap, equal paths keep
+     * their order.
+     * Schedule must be inserted before, if profile has schedule.
      * @param result result.
      * @param settings search settings.
      * @param profile transport profile.
+     * @return best results, sorted.
      * @throws Exception error.
      */
-    protected void sortResults(final List<OptimalPath> result,
+    protected List<OptimalPath> sortResults(final List<OptimalPath> result,
             final SearchSettings settings, final TransportProfile profile)
             throws Exception {
+        Comparator<OptimalPath> cmp = resultComparator(profile);
+        int k = Math.min(settings.getMaxResults(), result.size());
+        if (k <= 0) {
+            return new ArrayList<>();
+        }
+        // head is worst of kept results
+        PriorityQueue<Integer> heap = new PriorityQueue<>(k, (i1, i2) -> {
+            int c = cmp.compare(result.get(i2), result.get(i1));
+            return c != 0 ? c : Integer.compare(i2, i1);
+        });
+        for (int i = 0; i < result.size(); i++) {
+            if (heap.size() < k) {
+                heap.add(i);
+            } else if (cmp.compare(result.get(i),
+                    result.get(heap.peek())) < 0) {
+                heap.poll();
+                heap.add(i);
+            }
+        }
+        OptimalPath[] top = new OptimalPath[heap.size()];
+        for (int i = top.length - 1; i >= 0; i--) {
+            top[i] = result.get(heap.poll());
+        }
+        return new ArrayList<>(Arrays.asList(top));
+    }
+    /**
+     * Result order.
+     * @param profile transport profile.
+     * @return comparator, best optimal path first.
+     */
+    private Comparator<OptimalPath> resultComparator(
+            final TransportProfile profile) {
         if (profile.isHasSchedule()) {
-            Graph graph = graphConstructor.findGraph(settings.getProfileId());
-            String time;
-            int day;
-            if (settings.isCurrentTimeAndDate()) {
-                Date now = new Date();
-                Calendar c = new GregorianCalendar();
-                c.setTime(now);
-                time = new SimpleDateFormat("HH:mm").format(now);
-                day = c.get(Calendar.DAY_OF_WEEK);
-            } else {
-                time = settings.getTime();
-                day = settings.getDay();
-            }
-            insertSchedule(result, time, day, graph);
-            Collections.sort(result, (OptimalPath o1, OptimalPath o2) -> {
-                if (o1.getTransfers() > o2.getTransfers()) {
-                    return 1;
-                } else if (o1.getTransfers() < o2.getTransfers()) {
-                    return -1;
-                } else {
-                    Date d1 = o1.getSchedule().getArrivalDate();
-                    Date d2 = o2.getSchedule().getArrivalDate();
-                    if (d1.getTime() < d2.getTime()) {
-                        return -1;
-                    } else if (d1.getTime() > d2.getTime()) {
-                        return 1;
-                    } else {
-                        if (o1.getTime() > o2.getTime()) {
-                            return 1;
-                        } else if (o1.getTime() < o2.getTime()) {
-                            return -1;
-                        } else {
-                            return 0;
-                        }
-                    }
-                }
-            });
-        } else {
-            // move decisions with minimal transfers to top,
-            // then sort it's by distance
-            Collections.sort(result, (OptimalPath o1, OptimalPath o2) -> {
-                if (o1.getPath().size() > o2.getPath().size()) {
-                    return 1;
-                } else if (o1.getPath().size() < o2.getPath().size()) {
-                    return -1;
-                } else {
-                    if (o1.getTime() > o2.getTime()) {
-                        return 1;
-                    } else if (o1.getTime() < o2.getTime()) {
-                        return -1;
-                    } else {
-                        return 0;
-                    }
+            return (OptimalPath o1, OptimalPath o2) -> {
+                int c = Integer.compare(o1.getTransfers(), o2.getTransfers());
+                if (c == 0) {
+                    c = Long.compare(o1.getSchedule().getArrivalDate()
+                            .getTime(), o2.getSchedule().getArrivalDate()
+                            .getTime());
                 }
-            });
+                return c != 0 ? c : Double.compare(o1.getTime(),
+                        o2.getTime());
+            };
         }
+        // move decisions with minimal transfers to top,
+        // then sort it's by distance
+        return (OptimalPath o1, OptimalPath o2) -> {
+            int c = Integer.compare(o1.getPath().size(),
+                    o2.getPath().size());
+            return c != 0 ? c : Double.compare(o1.getTime(), o2.getTime());
+        };
     }
     /**
      * Grouping result by time and distance.
      * @param dirty dirty result.
      * @param settings search settings.
-     * @return result in two parts: short paths in under zero index,
-     *      and long under 1 index.
+     * @param graph graph.
+     * @return best optimal path for every sequence of paths.
      * @throws Exception error.
      */
     private List<OptimalPath> groupingResult(final List<OptimalPath> dirty,
-            final SearchSettings settings) throws Exception {
-        long start = System.currentTimeMillis();
+            final SearchSettings settings, final Graph graph)
+            throws Exception {
         double sLat = settings.getStartLat();
         double sLon = settings.getStartLon();
         double eLat = settings.getEndLat();
         double eLon = settings.getEndLon();
-        List<OptimalPath> total = new ArrayList<>();
-        Map<String, List<OptimalPath>> grouping = new HashMap<>();
-        StringBuilder k = new StringBuilder();
+        Map<PathKey, List<OptimalPath>> grouping = new HashMap<>();
         for (OptimalPath op : dirty) {
-            k.setLength(0);
-            for (Path p : op.getPath()) {
-                k.append(p.getId()).append("#");
-            }
-            if (grouping.containsKey(k.toString())) {
-                grouping.get(k.toString()).add(op);
-            } else {
-                List<OptimalPath> opList = new ArrayList<>();
-                opList.add(op);
-                grouping.put(k.toString(), opList);
-            }
+            grouping.computeIfAbsent(PathKey.of(op.getPath()),
+                    key -> new ArrayList<>()).add(op);
         }
-        LOG.info("#-bfs-# dirty [" + dirty.size()
-                + "], groups [" + grouping.size() + "]");
+        // groups are independent, select best in worker pool
+        AtomicInteger done = new AtomicInteger();
+        List<Future<OptimalPath>> futures = new ArrayList<>(grouping.size());
         for (List<OptimalPath> list : grouping.values()) {
-            OptimalPath best = selectBest(list, sLat, sLon, eLat, eLon);
-            total.add(best);
+            futures.add(searchPool.workers().submit(() -> {
+                // enough results for response, skip if deadline reached
+                if (done.get() >= settings.getMaxResults()
+                        && settings.getDeadline().isExpired()) {
+                    return null;
+                }
+                OptimalPath best = selectBest(list, sLat, sLon, eLat, eLon,
+                        graph);
+                done.incrementAndGet();
+                return best;
+            }));
+        }
+        futures.forEach(settings.getDeadline()::register);
+        List<OptimalPath> total = new ArrayList<>(futures.size());
+        for (Future<OptimalPath> f : futures) {
+            try {
+                OptimalPath best = f.get();
+                if (best != null) {
+                    total.add(best);
+                }
+            } catch (CancellationException e) {
+                LOG.debug("#-bfs-# grouping cancelled");
+            }
+        }
+        if (LOG.isDebugEnabled()) {
+            LOG.debug("#-bfs-# dirty [" + dirty.size()
+                    + "], groups [" + grouping.size() + "]");
         }
-        LOG.info("#-bfs-# total paths size [" + total.size() + "]");
-        LOG.info("#-bfs-# grouping elapsed time ["
-                + (System.currentTimeMillis() - start) + "]");
         return total;
     }
     /**
@@ -409,15 +636,16 @@ public class BFSAlgorithmV1 implements SearchEngine {
      * @param sLng - start point longitude.
      * @param eLat - end point latitude.
      * @param eLng - end point longitude.
+     * @param graph - graph.
      * @return - best optimal path.
      * @throws Exception - method error.
      */
     private OptimalPath selectBest(final List<OptimalPath> ops,
             final double sLat, final double sLng, final double eLat,
-            final double eLng) throws Exception {
+            final double eLng, final Graph graph) throws Exception {
         OptimalPath best = null;
         for (OptimalPath op : ops) {
-            transportGeometry.calcOptimalPathTime(op);
+            transportGeometry.calcOptimalPathTime(op, graph);
             BusStop firstBs = op.getWay().get(0).get(0);
             List<BusStop> lastSubWay = op.getWay()
                     .get(op.getWay().size() - 1);
@@ -443,24 +671,95 @@ public class BFSAlgorithmV1 implements SearchEngine {
         }
         return best;
     }
+    /**
+     * Vertices, which can be traversed: vertices of enabled route types,
+     * which have trips at query time.
+     * @param settings search settings.
+     * @param profile transport profile.
+     * @param graph graph.
+     * @return vertices or null if all vertices can be traversed.
+     */
+    private BitSet traversableVertices(final SearchSettings settings,
+            final TransportProfile profile, final Graph graph) {
+        BitSet result = null;
+        if (!settings.getDisabledRouteTypes().isEmpty()) {
+            result = (BitSet) graph.enabledVertices(
+                    settings.getDisabledRouteTypes()).clone();
+        }
+        BitSet window = profile.isHasSchedule()
+                ? activeVertices(settings, graph) : null;
+        if (window != null) {
+            if (result == null) {
+                result = window;
+            } else {
+                result.and(window);
+            }
+        }
+        return result;
+    }
+    /**
+     * Vertices, which have trips at query day and hour.
+     * @param settings search settings.
+     * @param graph graph.
+     * @return vertices or null if unknown.
+     */
+    private BitSet activeVertices(final SearchSettings settings,
+            final Graph graph) {
+        int day;
+        int hour;
+        if (settings.isCurrentTimeAndDate()) {
+            Calendar c = new GregorianCalendar();
+            day = c.get(Calendar.DAY_OF_WEEK);
+            hour = c.get(Calendar.HOUR_OF_DAY);
+        } else {
+            String time = settings.getTime();
+            int idx = time == null ? -1 : time.indexOf(':');
+            if (idx < 1) {
+                return null;
+            }
+            try {
+                hour = Integer.parseInt(time.substring(0, idx));
+            } catch (NumberFormatException e) {
+                return null;
+            }
+            day = settings.getDay();
+        }
+        return graph.activeVertices(day, hour);
+    }
     /**
      * Insert schedule into optimal path.
      * @param opList optimal path list.
-     * @param time start trip time.
-     * @param day trip day.
+     * @param settings search settings.
      * @param graph graph.
+     * @param members choose equivalent path with earliest arrival for
+     * every leg.
      */
     private void insertSchedule(final List<OptimalPath> opList,
-            final String time, final int day, final Graph graph) {
-        long start = System.currentTimeMillis();
+            final SearchSettings settings, final Graph graph,
+            final boolean members) {
+        String time;
+        int day;
+        if (settings.isCurrentTimeAndDate()) {
+            Date now = new Date();
+            Calendar c = new GregorianCalendar();
+            c.setTime(now);
+            time = new SimpleDateFormat("HH:mm").format(now);
+            day = c.get(Calendar.DAY_OF_WEEK);
+        } else {
+            time = settings.getTime();
+            day = settings.getDay();
+        }
         int cores = Runtime.getRuntime().availableProcessors();
         int portionSize = opList.size() / cores;
-        LOG.info("#-bfs-# portion size [" + portionSize + "]");
+        if (LOG.isDebugEnabled()) {
+            LOG.debug("#-bfs-# portion size [" + portionSize + "]");
+        }
         List<Future<Void>> tasks = new ArrayList<>(cores);
-        ExecutorService ex = Executors.newFixedThreadPool(cores);
+        ExecutorService ex = searchPool.workers();
         if (portionSize == 0) {
             tasks.add(ex.submit(
-                    new InsertScheduleTask(opList, time, day, graph)
+                    new InsertScheduleTask(opList, time, day, graph,
+                            settings, members)
             ));
         } else {
             int min, max;
@@ -473,18 +772,21 @@ public class BFSAlgorithmV1 implements SearchEngine {
                 }
                 tasks.add(ex.submit(
                         new InsertScheduleTask(
-                                opList.subList(min, max), time, day, graph)
+                                opList.subList(min, max), time, day, graph,
+                                settings, members)
                 ));
             }
         }
+        tasks.forEach(settings.getDeadline()::register);
         for (Future<Void> task : tasks) {
             try {
                 task.get();
+            } catch (CancellationException ex1) {
+                LOG.debug("#-bfs-# insert schedule cancelled");
             } catch (Exception ex1) {
                 LOG.error("insert schedule task error!", ex1);
             }
         }
-        ex.shutdown();
         List<OptimalPath> withSchedule = new ArrayList<>();
         opList.stream().forEach(op -> {
             if (op.getSchedule() != null) {
@@ -493,8 +795,6 @@ public class BFSAlgorithmV1 implements SearchEngine {
         });
         opList.clear();
         opList.addAll(withSchedule);
-        LOG.info("#-bfs-# insert schedule elapsed time ["
-                + (System.currentTimeMillis() - start) + "] ms");
     }
     /**
      * Insert schedule into optimal path.
@@ -508,6 +808,12 @@ public class BFSAlgorithmV1 implements SearchEngine {
         private final int day;
         /** Graph. */
         private final Graph graph;
+        /** Search deadline. */
+        private final SearchDeadline deadline;
+        /** Max results. */
+        private final int maxResults;
+        /** Choose equivalent paths by schedule. */
+        private final boolean members;
         /** Time format. */
         private final SimpleDateFormat hhMM = new SimpleDateFormat("HH:mm");
         /**
@@ -516,23 +822,39 @@ public class BFSAlgorithmV1 implements SearchEngine {
          * @param pTime start trip time.
          * @param pDay trip day.
          * @param g graph.
+         * @param settings search settings.
+         * @param pMembers choose equivalent paths by schedule.
          */
         InsertScheduleTask(final List<OptimalPath> p, final String pTime,
-                final int pDay, final Graph g) {
+                final int pDay, final Graph g,
+                final SearchSettings settings, final boolean pMembers) {
             portion = p;
             time = pTime;
             day = pDay;
             graph = g;
+            deadline = settings.getDeadline();
+            maxResults = settings.getMaxResults();
+            members = pMembers;
         }
         @Override
         public Void call() throws Exception {
+            int found = 0;
             for (OptimalPath op : portion) {
+                // optimal paths without schedule are excluded from result
+                if (found >= maxResults && deadline.isExpired()) {
+                    break;
+                }
                 op.setSchedule(buildOptimalSchedule(op));
+                if (op.getSchedule() != null) {
+                    found++;
+                }
             }
             return null;
         }
         /**
          * Put optimal schedule.
+         * If equivalent paths are chosen, path of optimal path is replaced
+         * by paths with earliest arrival.
          * @param op - optimal schedule.
          * @return - optimal schedule or null.
          * @throws Exception - method error.
@@ -541,6 +863,7 @@ public class BFSAlgorithmV1 implements SearchEngine {
                 throws Exception {
             OptimalSchedule os = new OptimalSchedule();
             List<BusStopTime[]> data = new ArrayList<>();
+            List<Path> chosen = new ArrayList<>(op.getPath().size());
             Calendar c = GregorianCalendar.getInstance();
             Date startTrip = hhMM.parse(time);
             c.setTime(startTrip);
@@ -552,33 +875,8 @@ public class BFSAlgorithmV1 implements SearchEngine {
             long epoch = hhMM.parse("00:00").getTime();
             while (itr.hasNext()) {
                 Path path = itr.next();
-                Map<String, List<List<String>>> tripMap = graph
-                        .getSchedule(path);
-                List<List<String>> trips = null;
-                if (tripMap == null) {
-                    LOG.warn("Schedule absent for " + path);
-                    return null;
-                }
-                for (String days : tripMap.keySet()) {
-                    if (days.contains(dayOfWeek)) {
-                        trips = tripMap.get(days);
-                        break;
-                    }
-                }
-                if (trips == null) {
-                    return null;         // no trips today
-                }
                 List<BusStop> way = op.getWay().get(i);
                 BusStop sBs = way.get(0);
-                BusStop eBs = way.get(way.size() - 1);
-                List<BusStop> fullWay = new ArrayList<>();
-                for (BusStop bs : path.getBusstops()) {
-                    if (!TransportConst.MOCK_BS.equals(bs.getName())) {
-                        fullWay.add(bs);
-                    }
-                }
-                int sIdx = fullWay.indexOf(sBs);
-                int eIdx = fullWay.indexOf(eBs);
                 Date nowDate = cDate == null ? startTrip : cDate;   // now date
                 if (prevBs != null && !prevBs.equals(sBs)) {
                     // calc transfet distance.
@@ -594,57 +892,32 @@ public class BFSAlgorithmV1 implements SearchEngine {
                             + (long) (addTimeSec
                                     * TimeUnit.SECONDS.toMillis(1)));
                 }
-                Date sDate = null;                              // start bs date
-                List<String> foundTrip = null;                  // found trip
-                Date tDate;                                     // temp variable
-                for (int j = 0; j < trips.size(); j++) {
-                    List<String> trip = trips.get(j);
-                    String tm = trip.get(sIdx);
-                    if (tm.isEmpty()) {
-                        continue;
-                    }
-                    tDate = new Date(TransportConst.ALL_TIMES.get(tm));
-                    // add day for times after 00:00
-                    // and before transport midnight
-                    if (tDate.getTime() < TransportConst.TRANSPORT_MIDNIGHT) {
-                        tDate = new Date(tDate.getTime()
-                                + TimeUnit.DAYS.toMillis(1));
-                    }
-                    if (tDate.after(nowDate)) {
-                        if (sDate == null) {
-                            sDate = tDate;
-                            foundTrip = trip;
-                        } else if (tDate.before(sDate)) {
-                            sDate = tDate;
-                            foundTrip = trip;
-                        }
-                    }
-                }
-                if (sDate == null || foundTrip == null) {
-                    if (LOG.isTraceEnabled()) {
-                        LOG.trace(path + " for [" + hhMM.format(nowDate)
-                                + "] no trip today");
+                List<Path> same = members ? graph.equivalentPaths(path)
+                        : Collections.singletonList(path);
+                BusStopTime[] leg = null;
+                for (Path member : same) {
+                    BusStopTime[] t = legTime(member, way, nowDate,
+                            dayOfWeek, startTrip);
+                    if (t != null && (leg == null || t[1].getTime()
+                            .before(leg[1].getTime()))) {
+                        leg = t;
+                        path = member;
                     }
-                    return null;
                 }
-                String tripEndTime = foundTrip.get(eIdx);
-                if (tripEndTime.isEmpty()) {
+                if (leg == null) {
                     return null;
                 }
-                Date eDate = hhMM.parse(tripEndTime);
-                // add day if end date after 00:00
-                eDate = eDate.before(startTrip) ? new Date(eDate.getTime()
-                        + TimeUnit.DAYS.toMillis(1)) : eDate;
-                data.add(new BusStopTime[] {
-                            new BusStopTime(sBs, sDate),
-                            new BusStopTime(eBs, eDate)
-                        });
-                cDate = eDate;
+                chosen.add(path);
+                data.add(leg);
+                cDate = leg[1].getTime();
                 if (i == 0) {
-                    os.setStartDate(sDate);
+                    os.setStartDate(leg[0].getTime());
                 }
                 i++;
             }
+            if (members) {
+                op.setPath(chosen);
+            }
             os.setData(data);
             os.setArrivalDate(cDate);
             long dtime = data.get(0)[0].getTime().getTime()
@@ -652,59 +925,202 @@ public class BFSAlgorithmV1 implements SearchEngine {
             os.setDuration(new Date(epoch - dtime));
             return os;
         }
+        /**
+         * Find first trip of path between way ends.
+         * @param path path.
+         * @param way way on path.
+         * @param nowDate earliest departure.
+         * @param dayOfWeek trip day.
+         * @param startTrip start trip time.
+         * @return start and end bus stop times or null.
+         * @throws Exception - method error.
+         */
+        private BusStopTime[] legTime(final Path path,
+                final List<BusStop> way, final Date nowDate,
+                final String dayOfWeek, final Date startTrip)
+                throws Exception {
+            Map<String, List<List<String>>> tripMap = graph
+                    .getSchedule(path);
+            List<List<String>> trips = null;
+            if (tripMap == null) {
+                LOG.warn("Schedule absent for " + path);
+                return null;
+            }
+            for (String days : tripMap.keySet()) {
+                if (days.contains(dayOfWeek)) {
+                    trips = tripMap.get(days);
+                    break;
+                }
+            }
+            if (trips == null) {
+                return null;         // no trips today
+            }
+            BusStop sBs = way.get(0);
+            BusStop eBs = way.get(way.size() - 1);
+            List<BusStop> fullWay = new ArrayList<>();
+            for (BusStop bs : path.getBusstops()) {
+                if (!TransportConst.MOCK_BS.equals(bs.getName())) {
+                    fullWay.add(bs);
+                }
+            }
+            int sIdx = fullWay.indexOf(sBs);
+            int eIdx = fullWay.indexOf(eBs);
+            Date sDate = null;                              // start bs date
+            List<String> foundTrip = null;                  // found trip
+            Date tDate;                                     // temp variable
+            for (int j = 0; j < trips.size(); j++) {
+                List<String> trip = trips.get(j);
+                String tm = trip.get(sIdx);
+                if (tm.isEmpty()) {
+                    continue;
+                }
+                tDate = new Date(TransportConst.ALL_TIMES.get(tm));
+                // add day for times after 00:00
+                // and before transport midnight
+                if (tDate.getTime() < TransportConst.TRANSPORT_MIDNIGHT) {
+                    tDate = new Date(tDate.getTime()
+                            + TimeUnit.DAYS.toMillis(1));
+                }
+                if (tDate.after(nowDate)) {
+                    if (sDate == null) {
+                        sDate = tDate;
+                        foundTrip = trip;
+                    } else if (tDate.before(sDate)) {
+                        sDate = tDate;
+                        foundTrip = trip;
+                    }
+                }
+            }
+            if (sDate == null || foundTrip == null) {
+                if (LOG.isTraceEnabled()) {
+                    LOG.trace(path + " for [" + hhMM.format(nowDate)
+                            + "] no trip today");
+                }
+                return null;
+            }
+            String tripEndTime = foundTrip.get(eIdx);
+            if (tripEndTime.isEmpty()) {
+                return null;
+            }
+            Date eDate = hhMM.parse(tripEndTime);
+            // add day if end date after 00:00
+            eDate = eDate.before(startTrip) ? new Date(eDate.getTime()
+                    + TimeUnit.DAYS.toMillis(1)) : eDate;
+            return new BusStopTime[] {
+                new BusStopTime(sBs, sDate),
+                new BusStopTime(eBs, eDate)
+            };
+        }
     }
     /**
      * Filter duplicate among optimal paths.
      * @param result all optimal paths.
+     * @param settings search settings.
      * @return filtered list of optimal paths.
+     * @throws Exception error.
      */
-    private List<OptimalPath> filterDuplicates(final List<OptimalPath> result) {
-        long start = System.currentTimeMillis();
+    private List<OptimalPath> filterDuplicates(final List<OptimalPath> result,
+            final SearchSettings settings) throws Exception {
         List<OptimalPath> filtered = new ArrayList<>();
         Map<Integer, List<OptimalPath>> map = new HashMap<>();
         for (OptimalPath op : result) {
-            Integer key = op.getPath().size();
-            if (map.containsKey(key)) {
-                map.get(key).add(op);
-            } else {
-                List<OptimalPath> list = new ArrayList<>();
-                list.add(op);
-                map.put(key, list);
-            }
+            map.computeIfAbsent(op.getPath().size(),
+                    key -> new ArrayList<>()).add(op);
         }
-        Set<String> relevance = new HashSet<>();
+        // paths of shorter optimal paths
+        PathTrie relevance = new PathTrie();
         List<Integer> sortedLevels = new ArrayList<>(map.keySet());
         Collections.sort(sortedLevels);
         for (Integer level : sortedLevels) {
-            for (OptimalPath op : map.get(level)) {
-                if (level == 1) {
-                    filtered.add(op);
-                    relevance.add(op.getPath().get(0).getId() + "");
-                } else {
-                    StringBuilder opKeySb = new StringBuilder();
-                    for (Path p : op.getPath()) {
-                        opKeySb.append(p.getId()).append("#");
-                    }
-                    String opKey = opKeySb.toString();
-                    boolean isMatch = false;
-                    for (String relKey : relevance) {
-                        if (opKey.contains(relKey)) {
-                            isMatch = true;
-                            break;
-                        }
-                    }
-                    if (!isMatch) {
-                        filtered.add(op);
-                        relevance.add(opKey);
-                    }
+            if (filtered.size() >= settings.getMaxResults()
+                    && settings.getDeadline().isExpired()) {
+                break;
+            }
+            List<OptimalPath> ops = map.get(level);
+            // same level paths can't contain each other, check in parallel
+            List<PathKey> keys = searchPool.workers().submit(
+                    () -> ops.parallelStream()
+                            .map(op -> PathKey.of(op.getPath()))
+                            .map(key -> relevance.containsPart(key.getIds())
+                                    ? null : key)
+                            .collect(Collectors.toList())).get();
+            for (int i = 0; i < ops.size(); i++) {
+                if (keys.get(i) != null) {
+                    filtered.add(ops.get(i));
                 }
             }
+            keys.stream().filter(key -> key != null)
+                    .forEach(key -> relevance.add(key.getIds()));
+        }
+        if (LOG.isDebugEnabled()) {
+            LOG.debug("#-bfs-# filter duplicates: was [" + result.size()
+                    + "], rest [" + filtered.size() + "]");
         }
-        LOG.info("#-bfs-# filter duplicates: was [" + result.size()
-                + "], rest [" + filtered.size() + "], elapsed time ["
-                + (System.currentTimeMillis() - start) + "]");
         return filtered;
     }
+    /**
+     * Expand best optimal paths to paths, equivalent to their paths.
+     * Every best optimal path is kept, variants fill rest of max results
+     * in order of best optimal paths.
+     * @param best best optimal paths, sorted.
+     * @param settings search settings.
+     * @param graph graph.
+     * @param profile transport profile.
+     * @return best optimal paths with their variants, sorted.
+     * @throws Exception error.
+     */
+    private List<OptimalPath> expandEquivalentPaths(
+            final List<OptimalPath> best, final SearchSettings settings,
+            final Graph graph, final TransportProfile profile)
+            throws Exception {
+        int room = settings.getMaxResults() - best.size();
+        List<OptimalPath> variants = new ArrayList<>();
+        for (OptimalPath op : best) {
+            if (variants.size() >= room) {
+                break;
+            }
+            List<List<Path>> same = new ArrayList<>();
+            for (Path p : op.getPath()) {
+                same.add(graph.equivalentPaths(p));
+            }
+            int[] idx = new int[same.size()];
+            boolean more = true;
+            while (more && variants.size() < room) {
+                List<Path> variant = new ArrayList<>(same.size());
+                for (int i = 0; i < idx.length; i++) {
+                    variant.add(same.get(i).get(idx[i]));
+                }
+                if (!variant.equals(op.getPath())) {
+                    OptimalPath copy = new OptimalPath();
+                    copy.setPath(variant);
+                    copy.setWay(op.getWay());
+                    copy.setWayStart(op.getWayStart());
+                    copy.setDecision(op.getDecision());
+                    copy.setTime(op.getTime());
+                    copy.setDistance(op.getDistance());
+                    copy.setTransfers(op.getTransfers());
+                    variants.add(copy);
+                }
+                // next combination
+                more = false;
+                for (int i = idx.length - 1; i >= 0 && !more; i--) {
+                    more = ++idx[i] < same.get(i).size();
+                    if (!more) {
+                        idx[i] = 0;
+                    }
+                }
+            }
+        }
+        if (variants.isEmpty()) {
+            return best;
+        }
+        if (profile.isHasSchedule()) {
+            insertSchedule(variants, settings, graph, false);
+        }
+        List<OptimalPath> all = new ArrayList<>(best);
+        all.addAll(variants);
+        return sortResults(all, settings, profile);
+    }
     /**
      * Exclude disabled routes (if user not want see any route in result).
      * @param result all optimal paths.
@@ -713,7 +1129,6 @@ public class BFSAlgorithmV1 implements SearchEngine {
      */
     private List<OptimalPath> excludeDisabledRoutes(
             final List<OptimalPath> result, final SearchSettings settings) {
-        long start = System.currentTimeMillis();
         List<OptimalPath> filtered = new ArrayList<>();
         for (OptimalPath op : result) {
             boolean isMatch = false;
@@ -728,9 +1143,10 @@ public class BFSAlgorithmV1 implements SearchEngine {
                 filtered.add(op);
             }
         }
-        LOG.info("#-bfs-# exclude disabled routes: was [" + result.size()
-                + "], rest [" + filtered.size() + "], elapsed time ["
-                + (System.currentTimeMillis() - start) + "]");
+        if (LOG.isDebugEnabled()) {
+            LOG.debug("#-bfs-# exclude disabled routes: was [" + result.size()
+                    + "], rest [" + filtered.size() + "]");
+        }
         return filtered;
     }
 }
@@ -19,6 +19,7 @@ package ss.sonya.transport.search;
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.BitSet;
 import java.util.Collections;
 import java.util.LinkedList;
 import java.util.List;
@@ -30,8 +31,10 @@ import org.apache.log4j.Logger;
 import ss.sonya.entity.BusStop;
 import ss.sonya.entity.Path;
 import ss.sonya.transport.constants.TransportConst;
+import ss.sonya.transport.jfr.BFSTaskEvent;
 import ss.sonya.transport.search.vo.Decision;
 import ss.sonya.transport.search.vo.OptimalPath;
+import ss.sonya.transport.search.vo.SearchDiagnostics;
 
 /**
  * BFS task.
@@ -41,17 +44,33 @@ public class BFSTask implements Callable<List<OptimalPath>> {
     /** Logger. */
     private static final Logger LOG = Logger.getLogger(BFSTask.class);
     /** Start vertices criteria. */
-    private final List<Integer> startCriteria;
+    protected final List<Integer> startCriteria;
     /** End vertices and it bus stops. */
-    private final Map<Integer, Set<BusStop>> endVertices;
+    protected final Map<Integer, Set<BusStop>> endVertices;
     /** Start vertices and it bus stops. */
     private final Map<Integer, Set<BusStop>> startVertices;
     /** Graph. */
-    private final Graph graph;
+    protected final Graph graph;
     /** Search limit depth (max transfers). */
-    private final int limitDepth;
+    protected final int limitDepth;
     /** Reverse search. */
     private final boolean isReverseSearch;
+    /** Search diagnostics, null if explain mode is off. */
+    private final SearchDiagnostics diagnostics;
+    /** Vertices expanded per level. */
+    protected final long[] expanded;
+    /** Search deadline. */
+    protected final SearchDeadline deadline;
+    /** Traversable vertices, null - all vertices. */
+    private BitSet active;
+    /** Bus stops selector, null - all bus stops combinations. */
+    private StopSelector selector;
+    /** Reachability matrices, null - frontier is not checked. */
+    private Reachability reachability;
+    /** End vertices bit set of reachability matrices. */
+    private long[] endBits;
+    /** Decisions without real optimal path. */
+    private int unreal;
     /**
      * Constructor.
      * @param pStartCriteria start vertices criteria.
@@ -60,32 +79,105 @@ public class BFSTask implements Callable<List<OptimalPath>> {
      * @param pGraph graph.
      * @param pLimitDepth search limit depth.
      * @param reverse is reverse search?
+     * @param pDiagnostics search diagnostics, may be null.
+     * @param pDeadline search deadline.
      */
     public BFSTask(final List<Integer> pStartCriteria,
             final Map<Integer, Set<BusStop>> pEndVertices,
             final Map<Integer, Set<BusStop>> pStartVertices, final Graph pGraph,
-            final int pLimitDepth, final boolean reverse) {
+            final int pLimitDepth, final boolean reverse,
+            final SearchDiagnostics pDiagnostics,
+            final SearchDeadline pDeadline) {
         startCriteria = pStartCriteria;
         endVertices = pEndVertices;
         startVertices = pStartVertices;
         graph = pGraph;
         limitDepth = pLimitDepth + 1;
         isReverseSearch = reverse;
+        diagnostics = pDiagnostics;
+        expanded = new long[limitDepth - 1];
+        deadline = pDeadline;
+    }
+    /**
+     * Restrict traversal to active vertices: vertices of enabled route
+     * types, which have trips at query time.
+     * @param pActive active vertices, null - all.
+     */
+    public void setActiveVertices(final BitSet pActive) {
+        active = pActive;
+    }
+    /**
+     * Select best start and end bus stops for every decision.
+     * @param pSelector bus stops selector, null - optimal paths are
+     *      created for all bus stops combinations.
+     */
+    public void setStopSelector(final StopSelector pSelector) {
+        selector = pSelector;
+    }
+    /**
+     * Skip frontier vertices, which can't reach end vertices within rest
+     * of search depth. Matrices cover last levels only (see max hops).
+     * @param pReachability reachability matrices, null - no check.
+     */
+    public void setReachability(final Reachability pReachability) {
+        reachability = pReachability;
+        endBits = pReachability == null ? null
+                : pReachability.bits(endVertices.keySet());
+    }
+    /**
+     * Check if vertex of level can reach end vertices within rest of
+     * search depth.
+     * @param v vertex.
+     * @param depth level.
+     * @return false if vertex can't reach end vertices, true if it can
+     *      or rest of depth isn't covered by matrices.
+     */
+    protected boolean canReach(final int v, final int depth) {
+        int hops = limitDepth - depth;
+        return reachability == null || hops > Reachability.MAX_HOPS
+                || reachability.reaches(v, endBits, hops);
+    }
+    /**
+     * Check if vertex can be traversed.
+     * @param v vertex.
+     * @return true if vertex is active.
+     */
+    protected boolean isActive(final int v) {
+        return active == null || active.get(v);
     }
     @Override
     public List<OptimalPath> call() throws Exception {
-//        long start = System.currentTimeMillis();
+        BFSTaskEvent event = new BFSTaskEvent();
+        event.begin();
+        List<Decision> all = traverse();
+        List<OptimalPath> list = transformDecisions(all);
+        if (diagnostics != null) {
+            diagnostics.addTraversal(expanded, all.size(), unreal);
+        }
+        if (event.shouldCommit()) {
+            event.startVertices = startCriteria.size();
+            event.depth = limitDepth;
+            event.reverse = isReverseSearch;
+            event.decisions = all.size();
+            event.paths = list.size();
+            event.commit();
+        }
+        return list;
+    }
+    /**
+     * Graph traversal from all start vertices.
+     * @return list decisions.
+     * @throws Exception method error.
+     */
+    protected List<Decision> traverse() throws Exception {
         List<Decision> all = new ArrayList<>();
         for (Integer sV : startCriteria) {
+            if (deadline.isTraversalExpired()) {
+                break;
+            }
             all.addAll(bfs(sV));
         }
-//        LOG.info("#-bfs-# bfs graph search time ["
-//                + (System.currentTimeMillis() - start) + "]");
-//        start = System.currentTimeMillis();
-        List<OptimalPath> list = transformDecisions(all);
-//        LOG.info("#-bfs-# bfs transform decisions time ["
-//                + (System.currentTimeMillis() - start) + "]");
-        return list;
+        return all;
     }
     /**
      * BFS implementation.
@@ -93,16 +185,10 @@ public class BFSTask implements Callable<List<OptimalPath>> {
      * @return list decisions.
      * @throws Exception method error.
      */
-    private List<Decision> bfs(final Integer sV) throws Exception {
+    protected List<Decision> bfs(final Integer sV) throws Exception {
         Set<Integer> endCriteria = endVertices.keySet();
         List<Decision> result = new ArrayList<>();
-        int vertices = graph.vertices();
-        List<Integer>[][] edgesTo = new List[limitDepth][vertices];
-        for (int m = 0; m < limitDepth; m++) {
-            for (int n = 0; n < vertices; n++) {
-                edgesTo[m][n] = new ArrayList<>();
-            }
-        }
+        List<Integer>[][] edgesTo = createEdgesTo();
         boolean[] marked = new boolean[graph.vertices()];
         // end vertices marked as visited already
         endCriteria.forEach(v -> {
@@ -114,6 +200,9 @@ public class BFSTask implements Callable<List<OptimalPath>> {
         int levelCount = 0;
         int w;
         while (!queue.isEmpty()) {
+            if (deadline.isTraversalExpired()) {
+                break;
+            }
             if (levelCount == 0) {
                 depth++;
                 levelCount = queue.size();
@@ -128,71 +217,20 @@ public class BFSTask implements Callable<List<OptimalPath>> {
             }
             int v = queue.poll();
             levelCount--;
-            for (Integer[] adj : graph.adj(v)) {
-                w = adj[Graph.IDX_W];
+            if (!canReach(v, depth)) {
+                marked[v] = true;
+                continue;
+            }
+            expanded[depth - 1]++;
+            for (int i = 0, n = graph.degree(v); i < n; i++) {
+                w = graph.target(v, i);
+                if (!isActive(w)) {
+                    continue;
+                }
                 edgesTo[depth - 1][w].add(v);
                 if (endCriteria.contains(w)) {
                     // bingo! found potencial decision
-                    // create way
-                    List<Integer[]> ways = new ArrayList<>();
-                    Integer[] sWay = new Integer[depth + 1];
-                    sWay[sWay.length - 1] = w;
-                    sWay[sWay.length - 2] = v;
-                    if (v != sV) {
-                        // if decisions exist, restrict all by length, exclude
-                        // decisions which contains metro vertices
-                        Integer restriction = result.isEmpty()
-                                ? null : result.get(0).getWay().length;
-                        int metroVCount = 0;
-                        if (restriction != null) {
-                            metroVCount += graph
-                                    .metroVertices().contains(v) ? 1 : 0;
-                            metroVCount += graph
-                                    .metroVertices().contains(w) ? 1 : 0;
-                        }
-                        restoreDecisionLevel(
-                                v, edgesTo, sWay, ways, sV, depth - 2,
-                                restriction, metroVCount);
-                    } else {
-                        ways.add(sWay);
-                    }
-
-//                    List<Integer[]> ways = new ArrayList<>();
-//                    if (v != sV) {
-//                        // if decisions exist, restrict all by length, exclude
-//                        // decisions which contains metro vertices
-//                        Integer restriction = result.isEmpty()
-//                                ? null : result.get(0).getWay().length;
-//                        ways.addAll(restoreDecisionWays(v, w, edgesTo, sV, depth - 1, restriction));
-//                    } else {
-//                        Integer[] sWay = new Integer[depth + 1];
-//                        sWay[sWay.length - 1] = w;
-//                        sWay[sWay.length - 2] = v;
-//                        ways.add(sWay);
-//                    }
-                    if (isReverseSearch) {
-                        List<Integer> rWay;
-                        for (Integer[] way : ways) {
-                            rWay = Arrays.asList(way);
-                            Collections.reverse(rWay);
-                            way = rWay.toArray(new Integer[0]);
-                            for (BusStop startBs : endVertices.get(w)) {
-                                for (BusStop endBs : startVertices.get(sV)) {
-                                    result.add(
-                                            new Decision(startBs, endBs, way));
-                                }
-                            }
-                        }
-                    } else {
-                        for (Integer[] way : ways) {
-                            for (BusStop startBs : startVertices.get(sV)) {
-                                for (BusStop endBs : endVertices.get(w)) {
-                                    result.add(
-                                            new Decision(startBs, endBs, way));
-                                }
-                            }
-                        }
-                    }
+                    addDecisions(result, sV, v, w, depth, edgesTo);
                 }
                 // exclude duplicates from next level.
                 if (!queue.contains(w) && !marked[w]) {
@@ -208,6 +246,95 @@ public class BFSTask implements Callable<List<OptimalPath>> {
 //        LOG.info("total [" + result.size() + "], rest [" + set.size() + "]");
         return result;
     }
+    /**
+     * Restore decision ways for found end vertex and create decisions.
+     * @param result decisions.
+     * @param sV start vertex.
+     * @param v current vertex.
+     * @param w end vertex, adjacent to current vertex.
+     * @param depth current depth (level).
+     * @param edgesTo edges array, filled for previous levels.
+     */
+    protected void addDecisions(final List<Decision> result, final int sV,
+            final int v, final int w, final int depth,
+            final List<Integer>[][] edgesTo) {
+        // create way
+        List<Integer[]> ways = new ArrayList<>();
+        Integer[] sWay = new Integer[depth + 1];
+        sWay[sWay.length - 1] = w;
+        sWay[sWay.length - 2] = v;
+        if (v != sV) {
+            // if decisions exist, restrict all by length, exclude
+            // decisions which contains metro vertices
+            Integer restriction = result.isEmpty()
+                    ? null : result.get(0).getWay().length;
+            int metroVCount = 0;
+            if (restriction != null) {
+                metroVCount += graph.metroVertices().contains(v) ? 1 : 0;
+                metroVCount += graph.metroVertices().contains(w) ? 1 : 0;
+            }
+            restoreDecisionLevel(v, edgesTo, sWay, ways, sV, depth - 2,
+                    restriction, metroVCount);
+        } else {
+            ways.add(sWay);
+        }
+
+//        List<Integer[]> ways = new ArrayList<>();
+//        if (v != sV) {
+//            // if decisions exist, restrict all by length, exclude
+//            // decisions which contains metro vertices
+//            Integer restriction = result.isEmpty()
+//                    ? null : result.get(0).getWay().length;
+//            ways.addAll(restoreDecisionWays(v, w, edgesTo, sV, depth - 1, restriction));
+//        } else {
+//            Integer[] sWay = new Integer[depth + 1];
+//            sWay[sWay.length - 1] = w;
+//            sWay[sWay.length - 2] = v;
+//            ways.add(sWay);
+//        }
+        if (isReverseSearch) {
+            List<Integer> rWay;
+            for (Integer[] way : ways) {
+                rWay = Arrays.asList(way);
+                Collections.reverse(rWay);
+                way = rWay.toArray(new Integer[0]);
+                result.add(new Decision(endVertices.get(w),
+                        startVertices.get(sV), way));
+            }
+        } else {
+            for (Integer[] way : ways) {
+                result.add(new Decision(startVertices.get(sV),
+                        endVertices.get(w), way));
+            }
+        }
+    }
+    /**
+     * Create edges array: for every level and vertex - vertices
+     * of previous level, which have edge to it.
+     * @return edges array.
+     */
+    @SuppressWarnings("unchecked")
+    protected List<Integer>[][] createEdgesTo() {
+        int vertices = graph.vertices();
+        List<Integer>[][] edgesTo = new List[limitDepth][vertices];
+        for (int m = 0; m < limitDepth; m++) {
+            for (int n = 0; n < vertices; n++) {
+                edgesTo[m][n] = new ArrayList<>();
+            }
+        }
+        return edgesTo;
+    }
+    /**
+     * Vertices of level, which have edge to vertex.
+     * @param edgesTo edges array.
+     * @param depth level.
+     * @param v vertex.
+     * @return parent vertices.
+     */
+    protected List<Integer> parents(final List<Integer>[][] edgesTo,
+            final int depth, final int v) {
+        return edgesTo[depth][v];
+    }
     /**
      * Restore one level of graph decision.
      * Recursive! Slowly.
@@ -225,7 +352,10 @@ public class BFSTask implements Callable<List<OptimalPath>> {
             final List<Integer>[][] edgesTo, final Integer[] path,
             final List<Integer[]> result, final int sV, final int depth,
             final Integer restriction, final int metroVCount) {
-        for (Integer w : edgesTo[depth][v]) {
+        if (deadline.isTraversalExpired()) {
+            return;
+        }
+        for (Integer w : parents(edgesTo, depth, v)) {
             int newMetroVCount = 0;
             if (restriction != null) {
                 newMetroVCount = metroVCount
@@ -311,109 +441,181 @@ public class BFSTask implements Callable<List<OptimalPath>> {
      */
     private List<OptimalPath> transformDecisions(final List<Decision> list) {
         List<OptimalPath> rest = new LinkedList<>();
-        int idxS, idxT, idxE;
-        Integer[] way;
-        Queue<Integer> queue = new LinkedList<>();
         for (Decision decision : list) {
-            queue.clear();
-            way = decision.getWay();
-            idxS = graph.getPath(way[0]).getBusstops().indexOf(decision.getS());
-            idxE = graph.getPath(way[way.length - 1]).getBusstops()
-                    .lastIndexOf(decision.getE());
-            if (idxS == -1 || idxE == -1) {
-                throw new RuntimeException("incorrect decision!");
+            if (deadline.isExpired()) {
+                break;
             }
-            idxT = idxS;
-            boolean isRight = true;
-            queue.add(idxS);
-            for (int k = 0; k < way.length; k++) {
-                int v = way[k];             // current vertex
-                if (way.length - 1 == k) {  // end vertex
-                    if (idxT != -1 && idxT >= idxE) {
-                        idxT = -1;
-                    } else {
-                        queue.add(idxE);
-                    }
-                } else {                    // start and middle vertices
-                    int w = way[k + 1];     // next vertex
-                    Integer[] adjW = null;
-                    for (Integer[] adj : graph.adj(v)) {
-                        if (adj[Graph.IDX_W] == w) {
-                            adjW = adj;
-                            break;
-                        }
-                    }
-                    if (idxT != -1) {
-                        int v1 = -1;
-                        int w1 = -1;
-                        double checkTotal = Double.MAX_VALUE;
-                        for (int j = 1; j < adjW.length; j += 2) {
-                            int vt = adjW[j];
-                            if (idxT < vt) {
-                                int tV = vt + 1;
-                                int tW = graph.getPath(w).getBusstops()
-                                        .size() - (adjW[j + 1] + 1);
-                                double newTotal = (tV / graph.getPath(v)
-                                        .getRoute().getType().getAvgSpeed())
-                                    + (tW / graph.getPath(w).getRoute()
-                                            .getType().getAvgSpeed());
-                                if (v1 == -1) {
-                                    v1 = vt;
-                                    w1 = adjW[j + 1];
-                                    checkTotal = newTotal;
-                                } else {
-                                    // check total bus stop count for two paths
-                                    if (checkTotal > newTotal) {
-                                        v1 = vt;
-                                        w1 = adjW[j + 1];
-                                        checkTotal = newTotal;
-                                    }
-                                }
-                            }
-                        }
-                        if (v1 != -1) {
-                            queue.add(v1);
-                            queue.add(w1);
-                            idxT = w1;
-                        } else {
-                            idxT = -1;
+            int before = rest.size();
+            if (selector != null) {
+                OptimalPath op = selectStops(decision);
+                if (op != null) {
+                    rest.add(op);
+                }
+            } else {
+                for (BusStop s : decision.getStarts()) {
+                    for (BusStop e : decision.getEnds()) {
+                        OptimalPath op = transform(
+                                new Decision(s, e, decision.getWay()));
+                        if (op != null) {
+                            rest.add(op);
                         }
                     }
                 }
-                if (idxT == -1) {
-                    isRight = false;
-                    break;
-                }
             }
-            if (isRight) {
-                OptimalPath op = new OptimalPath();
-                List<Path> paths = new ArrayList<>();
-                List<List<BusStop>> pathsWay = new ArrayList<>();
-                int transfers = 0;
-                for (int i = 0; i < way.length; i++) {
-                    int v = way[i];
-                    int s = queue.poll();
-                    int e = queue.poll();
-                    Path p = graph.getPath(v);
-                    if (!TransportConst.METRO.equals(
-                            p.getRoute().getType().getName())) {
-                        transfers++;
-                    }
-                    paths.add(p);
-                    pathsWay.add(p.getBusstops().subList(s, e + 1));
-                }
-                op.setTransfers(transfers);
-                op.setPath(paths);
-                op.setWay(pathsWay);
-                op.setDecision(decision);
-                op.setWay(pathsWay);
-                rest.add(op);
+            if (rest.size() == before) {
+                unreal++;
             }
         }
         if (LOG.isDebugEnabled()) {
-            LOG.trace("#-bfs-# remove [" + (list.size() - rest.size())
+            LOG.trace("#-bfs-# remove [" + unreal
                     + "] unreal decisions from [" + list.size() + "]");
         }
         return rest;
     }
+    /**
+     * Transform decision with selected bus stops to optimal path.
+     * @param decision decision.
+     * @return optimal path or null if decision is unreal.
+     */
+    private OptimalPath transform(final Decision decision) {
+        Integer[] way = decision.getWay();
+        int idxS = graph.getPath(way[0]).getBusstops()
+                .indexOf(decision.getS());
+        int idxE = graph.getPath(way[way.length - 1]).getBusstops()
+                .lastIndexOf(decision.getE());
+        if (idxS == -1 || idxE == -1) {
+            throw new RuntimeException("incorrect decision!");
+        }
+        int[] idx = transfers(way, idxS);
+        if (idx == null || idx[idx.length - 1] >= idxE) {
+            return null;
+        }
+        return createOptimalPath(decision, idx, idxE);
+    }
+    /**
+     * Select best start and end bus stops of decision and transform it
+     * to optimal path. Transfers depend on start bus stop only, so they
+     * are found once for every start bus stop.
+     * @param decision decision with bus stop candidates.
+     * @return optimal path or null if decision is unreal.
+     */
+    private OptimalPath selectStops(final Decision decision) {
+        Integer[] way = decision.getWay();
+        int last = way.length - 1;
+        List<BusStop> firstWay = graph.getPath(way[0]).getBusstops();
+        List<BusStop> lastWay = graph.getPath(way[last]).getBusstops();
+        List<BusStop> ends = new ArrayList<>(decision.getEnds());
+        int[] idxE = new int[ends.size()];
+        double[] endWalk = new double[ends.size()];
+        for (int j = 0; j < ends.size(); j++) {
+            idxE[j] = lastWay.lastIndexOf(ends.get(j));
+            endWalk[j] = selector.endWalk(ends.get(j));
+        }
+        double best = Double.MAX_VALUE;
+        BusStop bestS = null;
+        int bestE = -1;
+        int[] bestIdx = null;
+        for (BusStop s : decision.getStarts()) {
+            int idxS = firstWay.indexOf(s);
+            if (idxS == -1) {
+                throw new RuntimeException("incorrect decision!");
+            }
+            int[] idx = transfers(way, idxS);
+            if (idx == null) {
+                continue;
+            }
+            // walk to start bus stop, ride and transfers before last path
+            double cost = selector.startWalk(s);
+            for (int k = 0; k < last; k++) {
+                cost += selector.ride(way[k], idx[2 * k], idx[2 * k + 1]);
+                cost += selector.transferWalk(
+                        graph.getPath(way[k]).getBusstops()
+                                .get(idx[2 * k + 1]),
+                        graph.getPath(way[k + 1]).getBusstops()
+                                .get(idx[2 * k + 2]));
+            }
+            int entry = idx[idx.length - 1];
+            for (int j = 0; j < ends.size(); j++) {
+                if (idxE[j] == -1) {
+                    throw new RuntimeException("incorrect decision!");
+                }
+                if (entry >= idxE[j]) {
+                    continue;
+                }
+                double total = cost + selector.ride(way[last], entry, idxE[j])
+                        + endWalk[j];
+                if (total < best) {
+                    best = total;
+                    bestS = s;
+                    bestE = j;
+                    bestIdx = idx;
+                }
+            }
+        }
+        if (bestIdx == null) {
+            return null;
+        }
+        return createOptimalPath(new Decision(bestS, ends.get(bestE), way),
+                bestIdx, idxE[bestE]);
+    }
+    /**
+     * Find transfers of decision way.
+     * For every transfer, pair of bus stops with min ride is selected
+     * (see transfer index).
+     * @param way decision way.
+     * @param idxS start bus stop index in first path way.
+     * @return bus stop indexes: start bus stop index, then for every
+     *      transfer exit index in current path and entry index in next
+     *      path; null if way can't be used from start bus stop.
+     */
+    private int[] transfers(final Integer[] way, final int idxS) {
+        TransferIndex index = graph.transferIndex();
+        int[] idx = new int[2 * way.length - 1];
+        idx[0] = idxS;
+        int idxT = idxS;
+        for (int k = 0; k < way.length - 1; k++) {
+            long t = index.transfer(way[k], way[k + 1], idxT);
+            if (t == TransferIndex.NONE) {
+                return null;
+            }
+            idx[2 * k + 1] = (int) (t >>> Integer.SIZE);
+            idxT = (int) t;
+            idx[2 * k + 2] = idxT;
+        }
+        return idx;
+    }
+    /**
+     * Create optimal path.
+     * @param decision decision with selected bus stops.
+     * @param idx bus stop indexes, found by transfers.
+     * @param idxE end bus stop index in last path way.
+     * @return optimal path.
+     */
+    private OptimalPath createOptimalPath(final Decision decision,
+            final int[] idx, final int idxE) {
+        Integer[] way = decision.getWay();
+        OptimalPath op = new OptimalPath();
+        List<Path> paths = new ArrayList<>();
+        List<List<BusStop>> pathsWay = new ArrayList<>();
+        int[] wayStart = new int[way.length];
+        int transfers = 0;
+        for (int i = 0; i < way.length; i++) {
+            Path p = graph.getPath(way[i]);
+            int s = idx[2 * i];
+            int e = i == way.length - 1 ? idxE : idx[2 * i + 1];
+            if (!TransportConst.METRO.equals(
+                    p.getRoute().getType().getName())) {
+                transfers++;
+            }
+            paths.add(p);
+            pathsWay.add(p.getBusstops().subList(s, e + 1));
+            wayStart[i] = s;
+        }
+        op.setTransfers(transfers);
+        op.setPath(paths);
+        op.setWay(pathsWay);
+        op.setWayStart(wayStart);
+        op.setDecision(decision);
+        return op;
+    }
 }
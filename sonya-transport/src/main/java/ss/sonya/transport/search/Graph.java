@@ -19,13 +19,19 @@ package ss.sonya.transport.search;
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.LongConsumer;
+import ss.sonya.entity.BusStop;
 import ss.sonya.entity.Path;
+import ss.sonya.entity.RouteProfile;
 
 /**
  * Transport path graph.
@@ -67,17 +73,66 @@ public class Graph {
     public static final int IDX_V_TRANSFER_2 = 3;
     /** Adjacency vertex bus stop order (index) in way for second transfer. */
     public static final int IDX_W_TRANSFER_2 = 4;
+    /** Object header size, bytes (64-bit JVM, compressed references). */
+    private static final int HEADER = 16;
+    /** Reference size, bytes. */
+    private static final int REF = 4;
+    /** Linked list node or hash map entry size, bytes. */
+    private static final int NODE = 32;
+    /** Boxed integer size, bytes. */
+    private static final int BOXED = 16;
+    /** Schedule time string size ("HH:mm"), bytes. */
+    private static final int TIME = 48;
     /** Path in vertex order. */
     private final List<Path> paths;
     /** Path schedule cache. Path/Days/Bus stop times/separate time. */
     private final Map<Path, Map<String, List<List<String>>>> scheduleMap =
             new HashMap<>();
+    /** Vertex of path. */
+    private final Map<Path, Integer> pathIndex;
     /** Edges count. */
     private int edges;
     /** Lists of adjacency. */
     private final List<Integer[]>[] adj;
     /** Metro vertices. */
     private final Set<Integer> metroVertices;
+    /** Graph version, creation time in milliseconds. */
+    private final long version = System.currentTimeMillis();
+    /** Compact adjacency, built on first use. */
+    private volatile int[][] compactAdj;
+    /** Compact reverse adjacency, built on first use. */
+    private volatile int[][] compactReverseAdj;
+    /** Reachability matrices, optional. */
+    private volatile Reachability reachability;
+    /** Vertices with departures, [day of week][hour], optional. */
+    private volatile BitSet[][] serviceWindows;
+    /** Best transfers of edges, built on first use. */
+    private volatile TransferIndex transferIndex;
+    /** Way distances from first bus stop, km, optional. */
+    private volatile double[][] wayDistances;
+    /** Vertices of route types, built on first use. */
+    private volatile Map<RouteProfile, BitSet> typeVertices;
+    /** Enabled vertices, key - disabled route types. */
+    private final Map<Set<RouteProfile>, BitSet> enabledCache =
+            new ConcurrentHashMap<>();
+    /** Bus stops of enabled vertices, key - disabled route types. */
+    private final Map<Set<RouteProfile>, Set<BusStop>> busStopsCache =
+            new ConcurrentHashMap<>();
+    /** Equivalent paths, key - vertex path, optional. */
+    private volatile Map<Path, List<Path>> equivalents;
+    /** Vertex paths, key - equivalent path. */
+    private volatile Map<Path, Path> vertexPaths;
+    /** Bus stop paths, key - bus stop, value - vertex paths. */
+    private volatile Map<BusStop, List<Path>> busStopPaths;
+    /** Off-heap adjacency, null - adjacency is on heap. */
+    private volatile GraphStore store;
+    /** Stations, optional. */
+    private volatile Stations stations;
+    /** Access bus stops, key - disabled route types. */
+    private final Map<Set<RouteProfile>, Set<BusStop>> accessCache =
+            new ConcurrentHashMap<>();
+    /** Listener of lazily built structures size, bytes, optional. */
+    private volatile LongConsumer growthListener;
     /**
      * Constructor.
      * @param sortedPaths sorted paths.
@@ -85,6 +140,10 @@ public class Graph {
     public Graph(final List<Path> sortedPaths) {
         adj = new List[sortedPaths.size()];
         paths = sortedPaths;
+        pathIndex = new HashMap<>();
+        for (int i = 0; i < sortedPaths.size(); i++) {
+            pathIndex.putIfAbsent(sortedPaths.get(i), i);
+        }
         edges = 0;
         for (int i = 0; i < adj.length; i++) {
             adj[i] = new LinkedList<>();
@@ -187,11 +246,242 @@ public class Graph {
     }
     /**
      * Get vertex adjacency.
+     * If adjacency is off-heap, edges are copied to new list.
      * @param v - vertex order number.
      * @return - adjacency.
      */
     public List<Integer[]> adj(int v) {
-        return adj[v];
+        GraphStore s = store;
+        if (s == null) {
+            return adj[v];
+        }
+        List<Integer[]> list = new ArrayList<>(s.degree(v));
+        s.edges(v, list);
+        return list;
+    }
+    /**
+     * Get adjacent vertices count of vertex.
+     * Must be used after graph is built.
+     * @param v vertex.
+     * @return adjacent vertices count.
+     */
+    public int degree(final int v) {
+        GraphStore s = store;
+        return s == null ? adjacency()[v].length : s.degree(v);
+    }
+    /**
+     * Get adjacent vertex, without copying of edge.
+     * Must be used after graph is built.
+     * @param v vertex.
+     * @param i edge number in adjacency list.
+     * @return adjacent vertex.
+     */
+    public int target(final int v, final int i) {
+        GraphStore s = store;
+        return s == null ? adjacency()[v][i] : s.target(v, i);
+    }
+    /**
+     * Get incoming vertices count of vertex.
+     * Must be used after graph is built.
+     * @param v vertex.
+     * @return vertices count, which have edge to vertex.
+     */
+    public int reverseDegree(final int v) {
+        GraphStore s = store;
+        return s == null ? reverseAdjacency()[v].length : s.reverseDegree(v);
+    }
+    /**
+     * Get incoming vertex.
+     * Must be used after graph is built.
+     * @param v vertex.
+     * @param i incoming edge number, vertices are ascending.
+     * @return vertex, which has edge to vertex.
+     */
+    public int source(final int v, final int i) {
+        GraphStore s = store;
+        return s == null ? reverseAdjacency()[v][i] : s.source(v, i);
+    }
+    /**
+     * Get compact adjacency, adjacent vertices in adjacency list order.
+     * Must be used after graph is built. Off-heap adjacency is copied to
+     * heap, use degree and target instead.
+     * @return adjacent vertices for every vertex.
+     */
+    public int[][] adjacency() {
+        int[][] result = compactAdj;
+        if (result == null) {
+            synchronized (this) {
+                result = compactAdj;
+                if (result == null) {
+                    result = buildAdjacency();
+                    compactAdj = result;
+                    grown(compactSize());
+                }
+            }
+        }
+        return result;
+    }
+    /**
+     * Build compact adjacency.
+     * @return adjacent vertices for every vertex.
+     */
+    private int[][] buildAdjacency() {
+        GraphStore s = store;
+        int[][] result = new int[adj.length][];
+        for (int v = 0; v < adj.length; v++) {
+            if (s != null) {
+                result[v] = new int[s.degree(v)];
+                for (int i = 0; i < result[v].length; i++) {
+                    result[v][i] = s.target(v, i);
+                }
+                continue;
+            }
+            result[v] = new int[adj[v].size()];
+            int i = 0;
+            for (Integer[] e : adj[v]) {
+                result[v][i++] = e[IDX_W];
+            }
+        }
+        return result;
+    }
+    /**
+     * Get compact reverse adjacency, vertices which have edge to vertex.
+     * Must be used after graph is built.
+     * @return incoming vertices for every vertex, in ascending order.
+     */
+    public int[][] reverseAdjacency() {
+        int[][] result = compactReverseAdj;
+        if (result == null) {
+            synchronized (this) {
+                result = compactReverseAdj;
+                if (result == null) {
+                    result = buildReverseAdjacency();
+                    compactReverseAdj = result;
+                    grown(compactSize());
+                }
+            }
+        }
+        return result;
+    }
+    /**
+     * Build compact reverse adjacency.
+     * @return incoming vertices for every vertex, in ascending order.
+     */
+    private int[][] buildReverseAdjacency() {
+        int[][] out = adjacency();
+        int[] count = new int[out.length];
+        for (int[] ws : out) {
+            for (int w : ws) {
+                count[w]++;
+            }
+        }
+        int[][] result = new int[out.length][];
+        for (int v = 0; v < out.length; v++) {
+            result[v] = new int[count[v]];
+            count[v] = 0;
+        }
+        for (int v = 0; v < out.length; v++) {
+            for (int w : out[v]) {
+                result[w][count[w]++] = v;
+            }
+        }
+        return result;
+    }
+    /**
+     * Get best transfers of edges.
+     * Must be used after graph is built.
+     * @return transfer index.
+     */
+    public TransferIndex transferIndex() {
+        TransferIndex result = transferIndex;
+        if (result == null) {
+            synchronized (this) {
+                result = transferIndex;
+                if (result == null) {
+                    result = new TransferIndex(this);
+                    transferIndex = result;
+                    grown(result.size());
+                }
+            }
+        }
+        return result;
+    }
+    /**
+     * Get reachability matrices.
+     * @return reachability matrices or null if they are not built.
+     */
+    public Reachability getReachability() {
+        return reachability;
+    }
+    /**
+     * Set reachability matrices.
+     * @param pReachability reachability matrices, built for this graph.
+     */
+    public void setReachability(final Reachability pReachability) {
+        if (pReachability != null && pReachability.getVersion() != version) {
+            throw new IllegalArgumentException(
+                    "reachability built for other graph version");
+        }
+        Reachability old = reachability;
+        reachability = pReachability;
+        grown((pReachability == null ? 0 : pReachability.size())
+                - (old == null ? 0 : old.size()));
+    }
+    /**
+     * Get way distances of vertex path: distance from first bus stop to
+     * every bus stop of way, km. Distance between two bus stops of way
+     * is a difference of values.
+     * @param v vertex.
+     * @return distances or null if they are not built.
+     */
+    public double[] wayDistances(final int v) {
+        double[][] distances = wayDistances;
+        return distances == null ? null : distances[v];
+    }
+    /**
+     * Get way distances of path.
+     * @param path vertex path or path, equivalent to it.
+     * @return distances or null if they are not built or path is not
+     *      in graph.
+     */
+    public double[] wayDistances(final Path path) {
+        int v = indexOfPath(path);
+        return v < 0 ? null : wayDistances(v);
+    }
+    /**
+     * Check if way distances are built.
+     * @return true if built.
+     */
+    public boolean hasWayDistances() {
+        return wayDistances != null;
+    }
+    /**
+     * Set way distances.
+     * @param distances distances for every vertex.
+     */
+    public void setWayDistances(final double[][] distances) {
+        wayDistances = distances;
+    }
+    /**
+     * Get vertices, which have trips at day after hour start.
+     * @param day day of week.
+     * @param hour hour, 0-23.
+     * @return vertices or null if service windows are not built.
+     */
+    public BitSet activeVertices(final int day, final int hour) {
+        BitSet[][] windows = serviceWindows;
+        if (windows == null || day < 0 || day >= windows.length
+                || hour < 0 || hour >= windows[day].length) {
+            return null;
+        }
+        return windows[day][hour];
+    }
+    /**
+     * Set service windows.
+     * @param windows vertices with departures, [day of week][hour].
+     */
+    public void setServiceWindows(final BitSet[][] windows) {
+        serviceWindows = windows;
     }
     /**
      * Get index path in graph.
@@ -199,7 +489,50 @@ public class Graph {
      * @return - index in graph.
      */
     public int indexOfPath(final Path path) {
-        return paths.indexOf(path);
+        Map<Path, Path> vp = vertexPaths;
+        Path vertexPath = vp == null ? null : vp.get(path);
+        Integer idx = pathIndex.get(vertexPath == null ? path : vertexPath);
+        return idx == null ? -1 : idx;
+    }
+    /**
+     * Get paths of vertex: vertex path and paths, which are equivalent
+     * to it (the same route type and way).
+     * @param v vertex.
+     * @return paths, vertex path first.
+     */
+    public List<Path> members(final int v) {
+        Map<Path, List<Path>> eq = equivalents;
+        List<Path> result = eq == null ? null : eq.get(paths.get(v));
+        return result == null ? Collections.singletonList(paths.get(v))
+                : result;
+    }
+    /**
+     * Get paths, which are equivalent to vertex path.
+     * @param path vertex path.
+     * @return paths, vertex path first.
+     */
+    public List<Path> equivalentPaths(final Path path) {
+        Map<Path, List<Path>> eq = equivalents;
+        List<Path> result = eq == null ? null : eq.get(path);
+        return result == null ? Collections.singletonList(path) : result;
+    }
+    /**
+     * Check if some vertices have equivalent paths.
+     * @return true if equivalent paths are collapsed.
+     */
+    public boolean hasEquivalentPaths() {
+        return equivalents != null;
+    }
+    /**
+     * Set equivalent paths.
+     * @param pEquivalents equivalent paths, key - vertex path,
+     *      value - all paths, vertex path first.
+     */
+    public void setEquivalentPaths(final Map<Path, List<Path>> pEquivalents) {
+        Map<Path, Path> vp = new HashMap<>();
+        pEquivalents.forEach((p, list) -> list.forEach(m -> vp.put(m, p)));
+        vertexPaths = vp;
+        equivalents = pEquivalents;
     }
     /**
      * Get path by graph index.
@@ -237,7 +570,8 @@ public class Graph {
      * @return - vertex degree.
      */
     public int vertexDegree(int v) {
-        return adj[v].size();
+        GraphStore s = store;
+        return s == null ? adj[v].size() : s.degree(v);
     }
     /**
      * Find graph average degree.
@@ -283,6 +617,273 @@ public class Graph {
     public List<Path> getAllPaths() {
         return paths;
     }
+    /**
+     * Get bus stops of paths, excluding disabled route types.
+     * Bus stops are cached for every set of disabled route types.
+     * @param disabled disabled route types.
+     * @return bus stops, unmodifiable.
+     */
+    public Set<BusStop> getBusStops(final List<RouteProfile> disabled) {
+        return busStopsCache.computeIfAbsent(typeKey(disabled), k -> {
+            BitSet enabled = enabledVertices(disabled);
+            Set<BusStop> all = new HashSet<>();
+            for (int v = enabled.nextSetBit(0); v >= 0;
+                    v = enabled.nextSetBit(v + 1)) {
+                all.addAll(paths.get(v).getBusstops());
+            }
+            grown(setSize(all));
+            return Collections.unmodifiableSet(all);
+        });
+    }
+    /**
+     * Get access bus stops: one bus stop for every station.
+     * Without stations it's the same as bus stops.
+     * @param disabled disabled route types.
+     * @return bus stops, unmodifiable.
+     */
+    public Set<BusStop> getAccessStops(final List<RouteProfile> disabled) {
+        Stations s = stations;
+        if (s == null) {
+            return getBusStops(disabled);
+        }
+        return accessCache.computeIfAbsent(typeKey(disabled), k -> {
+            Set<BusStop> heads = s.heads(getBusStops(disabled));
+            grown(setSize(heads));
+            return Collections.unmodifiableSet(heads);
+        });
+    }
+    /**
+     * Get off-heap adjacency.
+     * @return store or null if adjacency is on heap.
+     */
+    public GraphStore getStore() {
+        return store;
+    }
+    /**
+     * Move adjacency off heap. Heap adjacency is released, so edges
+     * can't be added after it.
+     * Must be used after graph is built, before it's available for search.
+     * @param pStore store, created for this graph.
+     */
+    public void setStore(final GraphStore pStore) {
+        store = pStore;
+        compactAdj = null;
+        compactReverseAdj = null;
+        Arrays.fill(adj, null);
+    }
+    /**
+     * Get bus stop paths.
+     * @return key - bus stop, value - vertex paths with it.
+     */
+    public Map<BusStop, List<Path>> getBusStopPaths() {
+        return busStopPaths;
+    }
+    /**
+     * Set bus stop paths.
+     * @param pBusStopPaths key - bus stop, value - vertex paths with it.
+     */
+    public void setBusStopPaths(final Map<BusStop, List<Path>> pBusStopPaths) {
+        busStopPaths = pBusStopPaths;
+    }
+    /**
+     * Set listener of lazily built structures: compact adjacency,
+     * transfer index tables and route type caches. Listener gets size
+     * of every built structure, so footprint is known without estimate
+     * of whole graph.
+     * @param listener listener, bytes are added to footprint.
+     */
+    public void setGrowthListener(final LongConsumer listener) {
+        growthListener = listener;
+    }
+    /**
+     * Report lazily built structure.
+     * @param bytes structure size, negative if structure is released.
+     */
+    void grown(final long bytes) {
+        LongConsumer listener = growthListener;
+        if (listener != null && bytes != 0) {
+            listener.accept(bytes);
+        }
+    }
+    /**
+     * Compact adjacency size.
+     * @return size, bytes.
+     */
+    private long compactSize() {
+        return HEADER * adj.length + (long) Integer.BYTES * edges;
+    }
+    /**
+     * Bit sets size.
+     * @param sets bit sets.
+     * @return size, bytes.
+     */
+    private static long bitsSize(final Iterable<BitSet> sets) {
+        long bytes = 0;
+        for (BitSet b : sets) {
+            bytes += NODE + HEADER + b.size() / Byte.SIZE;
+        }
+        return bytes;
+    }
+    /**
+     * Cached bus stops size, bus stops are counted by references only.
+     * @param set bus stops.
+     * @return size, bytes.
+     */
+    private static long setSize(final Set<BusStop> set) {
+        return NODE + HEADER + (long) set.size() * NODE;
+    }
+    /**
+     * Estimate heap footprint of graph: adjacency, indexes, matrices,
+     * caches and schedule. Paths and bus stops are counted by references
+     * only, off-heap adjacency is not counted.
+     * Estimate is rough, it's used for graph memory budget.
+     * @return footprint, bytes.
+     */
+    public long footprint() {
+        long bytes = (long) adj.length * (NODE * 2 + BOXED + REF * 2);
+        for (List<Integer[]> edgesV : adj) {
+            if (edgesV == null) {
+                continue;
+            }
+            for (Integer[] e : edgesV) {
+                bytes += NODE + HEADER + (long) e.length * (REF + BOXED);
+            }
+        }
+        if (compactAdj != null) {
+            bytes += compactSize();
+        }
+        if (compactReverseAdj != null) {
+            bytes += compactSize();
+        }
+        TransferIndex index = transferIndex;
+        if (index != null) {
+            bytes += index.size();
+        }
+        Map<RouteProfile, BitSet> types = typeVertices;
+        if (types != null) {
+            bytes += bitsSize(types.values());
+        }
+        bytes += bitsSize(enabledCache.values());
+        for (Set<BusStop> bs : busStopsCache.values()) {
+            bytes += setSize(bs);
+        }
+        for (Set<BusStop> bs : accessCache.values()) {
+            bytes += setSize(bs);
+        }
+        double[][] distances = wayDistances;
+        if (distances != null) {
+            for (double[] d : distances) {
+                bytes += HEADER + (long) d.length * Double.BYTES;
+            }
+        }
+        Reachability r = reachability;
+        if (r != null) {
+            bytes += r.size();
+        }
+        BitSet[][] windows = serviceWindows;
+        if (windows != null) {
+            for (BitSet[] day : windows) {
+                for (BitSet w : day) {
+                    bytes += w == null ? 0 : HEADER + w.size() / Byte.SIZE;
+                }
+            }
+        }
+        Map<BusStop, List<Path>> bsPaths = busStopPaths;
+        if (bsPaths != null) {
+            for (List<Path> l : bsPaths.values()) {
+                bytes += NODE * 2 + (long) l.size() * NODE;
+            }
+        }
+        for (Map<String, List<List<String>>> sch : scheduleMap.values()) {
+            for (List<List<String>> trips : sch.values()) {
+                for (List<String> trip : trips) {
+                    bytes += NODE + (long) trip.size() * (REF + TIME);
+                }
+            }
+        }
+        return bytes;
+    }
+    /**
+     * Get stations.
+     * @return stations or null if they are not built.
+     */
+    public Stations getStations() {
+        return stations;
+    }
+    /**
+     * Set stations.
+     * @param pStations stations.
+     */
+    public void setStations(final Stations pStations) {
+        stations = pStations;
+        long bytes = 0;
+        for (Set<BusStop> heads : accessCache.values()) {
+            bytes += setSize(heads);
+        }
+        accessCache.clear();
+        grown(-bytes);
+    }
+    /**
+     * Get vertices of every route type.
+     * @return vertices, key - route type.
+     */
+    public Map<RouteProfile, BitSet> typeVertices() {
+        Map<RouteProfile, BitSet> result = typeVertices;
+        if (result == null) {
+            synchronized (this) {
+                result = typeVertices;
+                if (result == null) {
+                    result = new HashMap<>();
+                    for (int v = 0; v < paths.size(); v++) {
+                        result.computeIfAbsent(
+                                paths.get(v).getRoute().getType(),
+                                t -> new BitSet(paths.size())).set(v);
+                    }
+                    typeVertices = result;
+                    grown(bitsSize(result.values()));
+                }
+            }
+        }
+        return result;
+    }
+    /**
+     * Cache key of disabled route types: route types of graph only,
+     * so caches are bounded by graph route types, whatever client sends.
+     * @param disabled disabled route types.
+     * @return key.
+     */
+    private Set<RouteProfile> typeKey(final List<RouteProfile> disabled) {
+        Set<RouteProfile> key = new HashSet<>(disabled);
+        key.retainAll(typeVertices().keySet());
+        return key;
+    }
+    /**
+     * Get vertices, excluding disabled route types.
+     * Vertices are cached for every set of disabled route types.
+     * @param disabled disabled route types.
+     * @return vertices, must not be modified.
+     */
+    public BitSet enabledVertices(final List<RouteProfile> disabled) {
+        return enabledCache.computeIfAbsent(typeKey(disabled), k -> {
+            BitSet enabled = new BitSet(paths.size());
+            enabled.set(0, paths.size());
+            for (RouteProfile type : k) {
+                BitSet vs = typeVertices().get(type);
+                if (vs != null) {
+                    enabled.andNot(vs);
+                }
+            }
+            grown(bitsSize(Collections.singleton(enabled)));
+            return enabled;
+        });
+    }
+    /**
+     * Graph version, changed on every graph rebuild.
+     * @return version.
+     */
+    public long getVersion() {
+        return version;
+    }
     /**
      * Print vertex.
      * @param v - vertex.
@@ -16,18 +16,33 @@
  */
 package ss.sonya.transport.search;
 
+import java.io.File;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.BitSet;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
 import org.apache.log4j.Logger;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
+import ss.sonya.configuration.SonyaConfig;
+import ss.sonya.constants.SonyaProperty;
+import ss.sonya.transport.constants.GraphState;
 import ss.sonya.transport.constants.TransportConst;
 import ss.sonya.entity.BusStop;
 import ss.sonya.entity.Path;
@@ -36,20 +51,29 @@ import ss.sonya.entity.RouteProfile;
 import ss.sonya.entity.TransportProfile;
 import ss.sonya.entity.Trip;
 import ss.sonya.inject.DataService;
+import ss.sonya.inject.SonyaMetrics;
 import ss.sonya.inject.service.Geometry;
 import ss.sonya.transport.api.TransportDataService;
 import ss.sonya.transport.component.TransportGeometry;
 import ss.sonya.transport.component.VirtualScheduleBuilder;
+import ss.sonya.transport.jfr.GraphBuildEvent;
 
 /**
  * Graph constructor.
  * Build all graphs from transport profiles.
+ * If graph memory budget is set, graphs are built at startup while they
+ * fit the budget, others are built on first search. Least recently
+ * searched graphs are evicted and loaded again on next search.
  * @author ss
  */
 @Service
 public class GraphConstructor {
     /** Logger. */
     private static final Logger LOG = Logger.getLogger(GraphConstructor.class);
+    /** Metric label, transport profile. */
+    private static final String PROFILE = "profile";
+    /** Metric label, graph build phase. */
+    private static final String PHASE = "phase";
     /** First path transfer, from bus stop (path#1). */
     private static final int TRANSFER_1_FROM = 0;
     /** First path transfer, to bus stop (path#2). */
@@ -60,12 +84,31 @@ public class GraphConstructor {
     private static final int TRANSFER_2_TO = 3;
     /** All graphs, key - transport profile ID. */
     private static final Map<Integer, Graph> GRAPHS = new ConcurrentHashMap<>();
+    /** Service window days, day of week digit is index. */
+    private static final int DAYS = 8;
+    /** Service window hours. */
+    private static final int HOURS = 24;
+    /** Default max vertices for reachability matrices (16 MB). */
+    private static final int DEFAULT_REACHABILITY_VERTICES = 8192;
+    /** Meters in kilometer. */
+    private static final double METERS = 1000;
+    /** Bytes in megabyte. */
+    private static final long MB = 1024 * 1024;
     /** Transport profiles map. */
     private static final Map<Integer, TransportProfile> PROFILES =
             new ConcurrentHashMap<>();
-    /** Bus stop paths cache. */
-    private static final Map<Integer, Map<BusStop, List<Path>>> BUS_STOP_PATHS =
-            new HashMap<>();
+    /** Graph loaders, key - transport profile ID. */
+    private static final Map<Integer, Callable<Graph>> LOADERS =
+            new ConcurrentHashMap<>();
+    /** Graph footprints, bytes, key - transport profile ID. */
+    private static final Map<Integer, Long> FOOTPRINTS =
+            new ConcurrentHashMap<>();
+    /** Last graph access, nanoseconds, key - transport profile ID. */
+    private static final Map<Integer, Long> LAST_ACCESS =
+            new ConcurrentHashMap<>();
+    /** Graphs in loading, key - transport profile ID. */
+    private static final Map<Integer, CompletableFuture<Graph>> LOADING =
+            new ConcurrentHashMap<>();
     /** Data service. */
     @Autowired
     private DataService dataService;
@@ -81,36 +124,167 @@ public class GraphConstructor {
     /** Virtual schedule builder. */
     @Autowired
     private VirtualScheduleBuilder virtualScheduleBuilder;
+    /** Metrics. */
+    @Autowired
+    private SonyaMetrics metrics;
+    /** Max graph vertices for reachability matrices. */
+    private int reachabilityVertices = DEFAULT_REACHABILITY_VERTICES;
+    /** Station radius, km, zero - stations are not built. */
+    private double stationRadius;
+    /** Collapse paths with the same way into one vertex. */
+    private boolean collapsePaths = true;
+    /** Graphs memory budget, bytes, zero - unlimited. */
+    private volatile long memoryBudget;
+    /** Min vertices of graph with off-heap adjacency, zero - disabled. */
+    private int offHeapVertices;
+    /** Directory for memory-mapped adjacency, null - direct buffers. */
+    private File offHeapDir;
+    /** Evicted graphs loading thread. */
+    private final ExecutorService loader =
+            Executors.newSingleThreadExecutor(r -> {
+                Thread t = new Thread(r, "graph-loader");
+                t.setDaemon(true);
+                return t;
+            });
     /** Initialization. */
     @PostConstruct
     public void init() {
+        reachabilityVertices = SonyaConfig.settingI(
+                SonyaProperty.SEARCH_REACHABILITY_MAX_VERTICES,
+                DEFAULT_REACHABILITY_VERTICES);
+        setStationRadius(SonyaConfig.settingI(
+                SonyaProperty.SEARCH_STATION_RADIUS_M, 0) / METERS);
+        setCollapsePaths(Boolean.parseBoolean(SonyaConfig.setting(
+                SonyaProperty.SEARCH_COLLAPSE_PATHS,
+                Boolean.TRUE.toString())));
+        setMemoryBudget(SonyaConfig.settingI(
+                SonyaProperty.SEARCH_GRAPH_MEMORY_MB, 0) * MB);
+        setOffHeapVertices(SonyaConfig.settingI(
+                SonyaProperty.SEARCH_GRAPH_OFFHEAP_VERTICES, 0));
+        String dir = SonyaConfig.setting(
+                SonyaProperty.SEARCH_GRAPH_OFFHEAP_DIR, "");
+        setOffHeapDir(dir.isEmpty() ? null : new File(dir));
         LOG.info("======================= GRAPHS INITIALIZATION =============");
         try {
             List<TransportProfile> profiles = dataService
                     .getAll(TransportProfile.class);
-            profiles.stream().forEach(profile -> {
-                try {
-                    GRAPHS.put(profile.getId(), buildGraph(profile));
-                    PROFILES.put(profile.getId(), profile);
-                    LOG.info("================================================"
-                            + "===========");
-                } catch (Exception ex) {
-                    LOG.fatal("build graph error! " + profile, ex);
-                }
-            });
+            Map<TransportProfile, Callable<Graph>> loaders =
+                    new LinkedHashMap<>();
+            profiles.forEach(profile -> loaders.put(profile,
+                    () -> buildGraph(profile)));
+            registerGraphs(loaders);
         } catch (Exception e) {
             LOG.fatal("init graph constructor error!", e);
         }
         LOG.info("======================= COMPLETE ==========================");
     }
+    /**
+     * Destroy.
+     */
+    @PreDestroy
+    protected void destroy() {
+        loader.shutdownNow();
+    }
     /**
      * Find graph.
+     * Evicted graph is loaded, caller waits for it.
      * @param profileId transport profile ID.
-     * @return graph.
+     * @return graph or null if it's not registered or not loaded.
      */
     public Graph findGraph(final Integer profileId) {
+        Graph graph = GRAPHS.get(profileId);
+        if (graph == null && LOADERS.containsKey(profileId)) {
+            try {
+                graph = loadGraph(profileId).get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return null;
+            } catch (ExecutionException e) {
+                return null;    // logged by loader
+            }
+        }
+        if (graph != null) {
+            LAST_ACCESS.put(profileId, System.nanoTime());
+        }
+        return graph;
+    }
+    /**
+     * Find resident graph, evicted graph is not loaded.
+     * @param profileId transport profile ID.
+     * @return graph or null if it's not registered or evicted.
+     */
+    public Graph peekGraph(final Integer profileId) {
         return GRAPHS.get(profileId);
     }
+    /**
+     * Load evicted graph in background.
+     * Concurrent calls share one loading.
+     * @param profileId transport profile ID.
+     * @return loaded graph, null if profile is not registered.
+     */
+    public CompletableFuture<Graph> loadGraph(final Integer profileId) {
+        if (!LOADERS.containsKey(profileId)) {
+            return CompletableFuture.completedFuture(null);
+        }
+        return LOADING.computeIfAbsent(profileId, id -> CompletableFuture
+                .supplyAsync(() -> load(id), loader));
+    }
+    /**
+     * Load evicted graph and register it.
+     * @param profileId transport profile ID.
+     * @return graph.
+     */
+    private Graph load(final Integer profileId) {
+        try {
+            Graph graph = GRAPHS.get(profileId);
+            if (graph == null) {
+                LOG.info("load evicted graph, profile [" + profileId + "]");
+                Callable<Graph> graphLoader = LOADERS.get(profileId);
+                graph = graphLoader.call();
+                registerGraph(PROFILES.get(profileId), graph, graphLoader);
+            }
+            return graph;
+        } catch (Exception e) {
+            LOG.error("load graph error! profile [" + profileId + "]", e);
+            throw new CompletionException(e);
+        } finally {
+            LOADING.remove(profileId);
+        }
+    }
+    /**
+     * Graph state.
+     * @param profileId transport profile ID.
+     * @return state or null if profile is not registered.
+     */
+    public GraphState getState(final Integer profileId) {
+        if (GRAPHS.containsKey(profileId)) {
+            return GraphState.READY;
+        }
+        if (LOADING.containsKey(profileId)) {
+            return GraphState.LOADING;
+        }
+        return PROFILES.containsKey(profileId) ? GraphState.EVICTED : null;
+    }
+    /**
+     * Graph states.
+     * @return key - transport profile ID, value - graph state.
+     */
+    public Map<Integer, GraphState> getStates() {
+        Map<Integer, GraphState> states = new TreeMap<>();
+        PROFILES.keySet().forEach(id -> states.put(id, getState(id)));
+        return states;
+    }
+    /**
+     * Estimated memory of resident graphs.
+     * @return bytes.
+     */
+    public long getResidentBytes() {
+        long bytes = 0;
+        for (Integer id : GRAPHS.keySet()) {
+            bytes += FOOTPRINTS.getOrDefault(id, 0L);
+        }
+        return bytes;
+    }
     /**
      * Find transport profile.
      * @param profileId transport profile ID.
@@ -119,6 +293,153 @@ public class GraphConstructor {
     public TransportProfile findProfile(final Integer profileId) {
         return PROFILES.get(profileId);
     }
+    /**
+     * Transport profiles with registered graphs.
+     * @return transport profiles.
+     */
+    public List<TransportProfile> getProfiles() {
+        return new ArrayList<>(PROFILES.values());
+    }
+    /**
+     * Register graph loaders of transport profiles and build graphs,
+     * while they fit memory budget. Other graphs are evicted, they are
+     * built on first search.
+     * @param loaders graph loaders, key - transport profile, in build
+     *      order.
+     */
+    public void registerGraphs(
+            final Map<TransportProfile, Callable<Graph>> loaders) {
+        loaders.forEach((profile, graphLoader) -> {
+            PROFILES.put(profile.getId(), profile);
+            LOADERS.put(profile.getId(), graphLoader);
+        });
+        // footprint of next graph is not known before build,
+        // it's estimated by largest built graph
+        long built = 0;
+        long largest = 0;
+        for (Map.Entry<TransportProfile, Callable<Graph>> e
+                : loaders.entrySet()) {
+            Integer id = e.getKey().getId();
+            if (memoryBudget > 0 && built + largest > memoryBudget) {
+                unload(id);
+                LOG.info("graph is built on first search, profile [" + id
+                        + "]");
+                continue;
+            }
+            try {
+                Graph graph = e.getValue().call();
+                registerGraph(e.getKey(), graph, e.getValue());
+                built += graph.footprint();
+                largest = Math.max(largest, graph.footprint());
+                LOG.info("===================================================="
+                        + "=======");
+            } catch (Exception ex) {
+                LOG.fatal("build graph error! " + e.getKey(), ex);
+            }
+        }
+    }
+    /**
+     * Register graph for transport profile.
+     * Graph becomes available for search engines. If it's evicted,
+     * it's built again from database.
+     * @param profile transport profile.
+     * @param graph graph, built for this profile.
+     */
+    public void registerGraph(final TransportProfile profile,
+            final Graph graph) {
+        registerGraph(profile, graph, () -> buildGraph(profile));
+    }
+    /**
+     * Register graph for transport profile.
+     * Graph becomes available for search engines, least recently
+     * searched graphs are evicted if memory budget is exceeded.
+     * @param profile transport profile.
+     * @param graph graph, built for this profile.
+     * @param graphLoader builds graph again after eviction.
+     */
+    public void registerGraph(final TransportProfile profile,
+            final Graph graph, final Callable<Graph> graphLoader) {
+        Integer id = profile.getId();
+        graph.setGrowthListener(grown -> grown(id, graph, grown));
+        long bytes = graph.footprint();
+        PROFILES.put(id, profile);
+        LOADERS.put(id, graphLoader);
+        FOOTPRINTS.put(id, bytes);
+        LAST_ACCESS.put(id, System.nanoTime());
+        GRAPHS.put(id, graph);
+        metrics.gauge(TransportConst.METRIC_GRAPH_MEMORY, bytes,
+                PROFILE, String.valueOf(id));
+        evict(id);
+    }
+    /**
+     * Add lazily built structure of resident graph to its footprint.
+     * Other graphs are evicted if memory budget is exceeded.
+     * @param id transport profile ID.
+     * @param graph graph.
+     * @param grown structure size, bytes.
+     */
+    private void grown(final Integer id, final Graph graph,
+            final long grown) {
+        if (GRAPHS.get(id) != graph) {
+            return;     // evicted or replaced
+        }
+        long bytes = FOOTPRINTS.merge(id, grown, Long::sum);
+        metrics.gauge(TransportConst.METRIC_GRAPH_MEMORY, bytes,
+                PROFILE, String.valueOf(id));
+        if (grown > 0 && memoryBudget > 0
+                && getResidentBytes() > memoryBudget) {
+            evict(id);
+        }
+    }
+    /**
+     * Evict least recently searched graphs, while resident graphs
+     * exceed memory budget.
+     * @param keep transport profile ID, which graph is not evicted.
+     */
+    private synchronized void evict(final Integer keep) {
+        long budget = memoryBudget;
+        if (budget <= 0) {
+            return;
+        }
+        long total = getResidentBytes();
+        while (total > budget) {
+            Integer lru = null;
+            for (Integer id : GRAPHS.keySet()) {
+                if (!id.equals(keep) && (lru == null || LAST_ACCESS.get(id)
+                        - LAST_ACCESS.get(lru) < 0)) {
+                    lru = id;
+                }
+            }
+            if (lru == null) {
+                LOG.warn("graph exceeds memory budget, profile [" + keep
+                        + "], [" + total + "] bytes");
+                return;
+            }
+            Graph graph = GRAPHS.remove(lru);
+            long bytes = FOOTPRINTS.getOrDefault(lru, 0L);
+            total -= bytes;
+            LOG.info("graph evicted, profile [" + lru + "], [" + bytes
+                    + "] bytes");
+            String pid = String.valueOf(lru);
+            metrics.gauge(TransportConst.METRIC_GRAPH_MEMORY, 0, PROFILE, pid);
+            if (graph.getStore() != null) {
+                metrics.gauge(TransportConst.METRIC_GRAPH_OFFHEAP, 0,
+                        PROFILE, pid);
+            }
+            metrics.increment(TransportConst.METRIC_GRAPH_EVICTIONS, 1,
+                    PROFILE, pid);
+        }
+    }
+    /**
+     * Remove resident graph of profile, which is not rebuilt.
+     * @param id transport profile ID.
+     */
+    private synchronized void unload(final Integer id) {
+        if (GRAPHS.remove(id) != null) {
+            metrics.gauge(TransportConst.METRIC_GRAPH_MEMORY, 0, PROFILE,
+                    String.valueOf(id));
+        }
+    }
     /**
      * Find bus stop paths map.
      * @param profileId transport profile ID.
@@ -126,7 +447,44 @@ public class GraphConstructor {
      */
     public Map<BusStop, List<Path>> findBusStopPathsMap(
             final Integer profileId) {
-        return BUS_STOP_PATHS.get(profileId);
+        Graph graph = findGraph(profileId);
+        return graph == null ? null : graph.getBusStopPaths();
+    }
+    /**
+     * Set station radius for next graph builds.
+     * @param radius radius, km, zero - stations are not built.
+     */
+    public void setStationRadius(final double radius) {
+        stationRadius = radius;
+    }
+    /**
+     * Collapse paths with the same way for next graph builds.
+     * @param collapse collapse equivalent paths.
+     */
+    public void setCollapsePaths(final boolean collapse) {
+        collapsePaths = collapse;
+    }
+    /**
+     * Set graphs memory budget.
+     * Budget is checked when graph is registered.
+     * @param bytes budget, bytes, zero - unlimited.
+     */
+    public void setMemoryBudget(final long bytes) {
+        memoryBudget = bytes;
+    }
+    /**
+     * Keep adjacency of large graphs off heap, for next graph builds.
+     * @param vertices min graph vertices, zero - adjacency is on heap.
+     */
+    public void setOffHeapVertices(final int vertices) {
+        offHeapVertices = vertices;
+    }
+    /**
+     * Directory for memory-mapped adjacency, for next graph builds.
+     * @param dir directory, null - direct buffers are used.
+     */
+    public void setOffHeapDir(final File dir) {
+        offHeapDir = dir;
     }
     /**
      * Build graph for one transport profile.
@@ -135,21 +493,57 @@ public class GraphConstructor {
      * @throws Exception error.
      */
     public Graph buildGraph(final TransportProfile profile) throws Exception {
-        LOG.info("--------------- GRAPH (" + profile + ") -------------------");
-        long start = System.currentTimeMillis();
         List<Path> paths = transportService
                 .getFromProfile(profile.getId(), Path.class);
+        List<BusStop> all = transportService
+                .getFromProfile(profile.getId(), BusStop.class);
+        Map<Path, List<Trip>> schedule = new HashMap<>();
+        if (profile.isHasSchedule()) {
+            for (Path p : paths) {
+                schedule.put(p, transportService.getSchedule(p.getId()));
+            }
+        }
+        return buildGraph(profile, paths, all, schedule);
+    }
+    /**
+     * Build graph for one transport profile from prepared data.
+     * Data not loaded from database, so graph can be built for
+     * entities which exist in memory only.
+     * @param profile transport profile.
+     * @param paths all profile paths.
+     * @param all all profile bus stops.
+     * @param pathSchedule path schedule, used if profile has schedule.
+     * @return graph.
+     * @throws Exception error.
+     */
+    public Graph buildGraph(final TransportProfile profile,
+            final List<Path> paths, final List<BusStop> all,
+            final Map<Path, List<Trip>> pathSchedule) throws Exception {
+        LOG.info("--------------- GRAPH (" + profile + ") -------------------");
+        long start = System.currentTimeMillis();
+        long startNanos = System.nanoTime();
+        String pid = String.valueOf(profile.getId());
+        GraphBuildEvent edgesEvent = new GraphBuildEvent();
+        edgesEvent.begin();
         // sort very important, path vertex number will
         // correspond path in sorted array
         Collections.sort(paths,
                 (Path o1, Path o2) -> o1.getId() > o2.getId() ? 1 : -1);
         LOG.info("paths count [" + paths.size() + "]");
-        List<BusStop> all = transportService
-                .getFromProfile(profile.getId(), BusStop.class);
         LOG.info("bus stops count [" + all.size() + "]");
-        Graph graph = new Graph(paths);
+        // paths with the same way share vertex
+        Map<Path, List<Path>> equivalents = new HashMap<>();
+        List<Path> vertexPaths = collapsePaths
+                ? collapseEquivalentPaths(paths, equivalents) : paths;
+        if (vertexPaths.size() < paths.size()) {
+            LOG.info("vertex paths [" + vertexPaths.size() + "]");
+        }
+        Graph graph = new Graph(vertexPaths);
+        if (!equivalents.isEmpty()) {
+            graph.setEquivalentPaths(equivalents);
+        }
         Map<BusStop, List<Path>> bsPaths = new HashMap<>();
-        paths.stream().forEach(path -> {
+        vertexPaths.stream().forEach(path -> {
             path.getBusstops().stream().forEach(bs -> {
                 if (bsPaths.containsKey(bs)) {
                     bsPaths.get(bs).add(path);
@@ -160,7 +554,7 @@ public class GraphConstructor {
                 }
             });
         });
-        BUS_STOP_PATHS.put(profile.getId(), bsPaths);
+        graph.setBusStopPaths(bsPaths);
         // for search transfer paths required found closest bus stops for
         // every bus stop in path way, cache using for speed up
         Map<BusStop, List<BusStop>> nearBsCache = new HashMap<>();
@@ -168,8 +562,8 @@ public class GraphConstructor {
         BusStop bs;
         BusStop transferBs;
         List<BusStop> way;
-        for (Path path : paths) {
-            int vertex = paths.indexOf(path);
+        for (Path path : vertexPaths) {
+            int vertex = vertexPaths.indexOf(path);
             if (TransportConst.METRO
                     .equals(path.getRoute().getType().getName())) {
                 graph.addMetroVertex(vertex);
@@ -186,7 +580,7 @@ public class GraphConstructor {
                 int[] tInfo = new int[pairs.length];
                 int[] rtInfo = new int[pairs.length];   // reverse transfers
                 // transfer from path to path
-                int tPathVertex = paths.indexOf(transferPath);
+                int tPathVertex = vertexPaths.indexOf(transferPath);
                 for (int i = 0; i < pairs.length; i += 2) {
                     bs = pairs[i];
                     transferBs = pairs[i + 1];
@@ -203,10 +597,39 @@ public class GraphConstructor {
             }
         }
         LOG.info("--- " + graph.toString());       // output graph
+        metrics.observeSince(TransportConst.METRIC_GRAPH_BUILD, startNanos,
+                PROFILE, pid, PHASE, "edges");
+        metrics.gauge(TransportConst.METRIC_GRAPH_VERTICES, graph.vertices(),
+                PROFILE, pid);
+        metrics.gauge(TransportConst.METRIC_GRAPH_EDGES, graph.edges(),
+                PROFILE, pid);
+        graph.setWayDistances(buildWayDistances(vertexPaths));
+        if (stationRadius > 0) {
+            Stations stations = new Stations(all, stationRadius, geometry);
+            graph.setStations(stations);
+            LOG.info("stations [" + stations.size() + "]");
+        }
+        commit(edgesEvent, "edges", profile, paths, all, graph);
+        if (graph.vertices() <= reachabilityVertices) {
+            long reachNanos = System.nanoTime();
+            Reachability reachability = new Reachability(graph);
+            graph.setReachability(reachability);
+            LOG.info("reachability matrices [" + reachability.size()
+                    + "] bytes");
+            metrics.observeSince(TransportConst.METRIC_GRAPH_BUILD,
+                    reachNanos, PROFILE, pid, PHASE, "reachability");
+        }
         if (profile.isHasSchedule()) {
             long startSchedule = System.currentTimeMillis();
+            long scheduleNanos = System.nanoTime();
+            GraphBuildEvent scheduleEvent = new GraphBuildEvent();
+            scheduleEvent.begin();
             for (Path p : paths) {
-                List<Trip> schedule = transportService.getSchedule(p.getId());
+                List<Trip> schedule = pathSchedule.get(p);
+                if (schedule == null || schedule.isEmpty()) {
+                    LOG.warn("schedule absent for " + p);
+                    continue;
+                }
                 if (schedule.get(0) != null
                         && schedule.get(0).getIrregular() != null
                         && !schedule.get(0).getIrregular().isEmpty()) {
@@ -217,13 +640,178 @@ public class GraphConstructor {
                 }
                 graph.putSchedule(p, buildSchedule(schedule));
             }
+            graph.setServiceWindows(buildServiceWindows(graph));
             LOG.info("build schedule for graph, elapsed time ["
                     + (System.currentTimeMillis() - startSchedule) + "] ms");
+            metrics.observeSince(TransportConst.METRIC_GRAPH_BUILD,
+                    scheduleNanos, PROFILE, pid, PHASE, "schedule");
+            commit(scheduleEvent, "schedule", profile, paths, all, graph);
         }
+        if (offHeapVertices > 0 && graph.vertices() >= offHeapVertices) {
+            // graph is built, edges are not added anymore
+            GraphStore store = GraphStore.of(graph, offHeapDir);
+            graph.setStore(store);
+            LOG.info("off-heap adjacency [" + store.size() + "] bytes"
+                    + (store.isMapped() ? ", memory-mapped" : ""));
+            metrics.gauge(TransportConst.METRIC_GRAPH_OFFHEAP, store.size(),
+                    PROFILE, pid);
+        }
+        metrics.observeSince(TransportConst.METRIC_GRAPH_BUILD, startNanos,
+                PROFILE, pid, PHASE, "total");
         LOG.info("--- build path graph end... Elapsed time ["
                 + (System.currentTimeMillis() - start) + "] ms");
         return graph;
     }
+    /**
+     * Latest trip time of path at day.
+     * @param tripMap path schedule, broken by days.
+     * @param dayOfWeek day of week digit.
+     * @return latest time, times after midnight are moved to next day,
+     *      or min value if path has no trips.
+     */
+    private static long latestTime(
+            final Map<String, List<List<String>>> tripMap,
+            final String dayOfWeek) {
+        long latest = Long.MIN_VALUE;
+        if (tripMap == null) {
+            return latest;
+        }
+        List<List<String>> trips = null;
+        for (String days : tripMap.keySet()) {
+            if (days.contains(dayOfWeek)) {
+                trips = tripMap.get(days);
+                break;
+            }
+        }
+        if (trips == null) {
+            return latest;
+        }
+        for (List<String> trip : trips) {
+            for (String tm : trip) {
+                Long time = TransportConst.ALL_TIMES.get(tm);
+                if (time == null) {
+                    continue;
+                }
+                // times after 00:00 and before transport midnight
+                if (time < TransportConst.TRANSPORT_MIDNIGHT) {
+                    time += TimeUnit.DAYS.toMillis(1);
+                }
+                latest = Math.max(latest, time);
+            }
+        }
+        return latest;
+    }
+    /**
+     * Collapse paths with the same route type and way.
+     * @param paths sorted paths.
+     * @param equivalents collapsed paths, key - vertex path,
+     *      value - all paths with the same way, vertex path first.
+     * @return vertex paths, sorted.
+     */
+    private static List<Path> collapseEquivalentPaths(final List<Path> paths,
+            final Map<Path, List<Path>> equivalents) {
+        Map<List<Integer>, List<Path>> byWay = new LinkedHashMap<>();
+        for (Path p : paths) {
+            List<Integer> key = new ArrayList<>();
+            key.add(p.getRoute().getType().getId());
+            p.getBusstops().forEach(bs -> key.add(bs.getId()));
+            byWay.computeIfAbsent(key, k -> new ArrayList<>()).add(p);
+        }
+        List<Path> result = new ArrayList<>(byWay.size());
+        for (List<Path> same : byWay.values()) {
+            result.add(same.get(0));
+            if (same.size() > 1) {
+                equivalents.put(same.get(0),
+                        Collections.unmodifiableList(same));
+            }
+        }
+        return result;
+    }
+    /**
+     * Build way distances: distance from first bus stop to every bus stop
+     * of path way, mock bus stops are skipped as in way distance
+     * calculation.
+     * @param paths paths in vertex order.
+     * @return distances, km.
+     */
+    private double[][] buildWayDistances(final List<Path> paths) {
+        double[][] distances = new double[paths.size()][];
+        for (int v = 0; v < paths.size(); v++) {
+            List<BusStop> way = paths.get(v).getBusstops();
+            double[] d = new double[way.size()];
+            BusStop prev = way.isEmpty() ? null : way.get(0);
+            for (int i = 1; i < way.size(); i++) {
+                BusStop cur = way.get(i);
+                d[i] = d[i - 1];
+                if (!TransportConst.MOCK_BS.equals(cur.getName())) {
+                    d[i] += geometry.calcDistance(prev.getLatitude(),
+                            prev.getLongitude(), cur.getLatitude(),
+                            cur.getLongitude());
+                    prev = cur;
+                }
+            }
+            distances[v] = d;
+        }
+        return distances;
+    }
+    /**
+     * Build service windows: vertices, which have departures after hour
+     * start, for every day of week and hour.
+     * Search can't find trip on other vertices at this time, comparison
+     * is the same as in schedule insertion.
+     * @param graph graph with schedule.
+     * @return vertices, [day of week][hour].
+     */
+    private BitSet[][] buildServiceWindows(final Graph graph) {
+        long[] hourStart = new long[HOURS];
+        for (int h = 0; h < HOURS; h++) {
+            hourStart[h] = TransportConst.ALL_TIMES.get(
+                    String.format("%02d:00", h));
+        }
+        BitSet[][] windows = new BitSet[DAYS][HOURS];
+        for (int day = 0; day < DAYS; day++) {
+            for (int h = 0; h < HOURS; h++) {
+                windows[day][h] = new BitSet(graph.vertices());
+            }
+            String dayOfWeek = String.valueOf(day);
+            for (int v = 0; v < graph.vertices(); v++) {
+                // vertex is active if any of its paths is active
+                long latest = Long.MIN_VALUE;
+                for (Path p : graph.members(v)) {
+                    latest = Math.max(latest, latestTime(
+                            graph.getSchedule(p), dayOfWeek));
+                }
+                for (int h = 0; h < HOURS; h++) {
+                    if (latest > hourStart[h]) {
+                        windows[day][h].set(v);
+                    }
+                }
+            }
+        }
+        return windows;
+    }
+    /**
+     * Commit graph build event.
+     * @param event event.
+     * @param phase build phase.
+     * @param profile transport profile.
+     * @param paths paths.
+     * @param all bus stops.
+     * @param graph graph.
+     */
+    private void commit(final GraphBuildEvent event, final String phase,
+            final TransportProfile profile, final List<Path> paths,
+            final List<BusStop> all, final Graph graph) {
+        if (event.shouldCommit()) {
+            event.profileId = profile.getId();
+            event.phase = phase;
+            event.paths = paths.size();
+            event.busstops = all.size();
+            event.vertices = graph.vertices();
+            event.edges = graph.edges();
+            event.commit();
+        }
+    }
     /**
      * Analyze path.
      * @param path current analyzed path.
@@ -0,0 +1,242 @@
+/*
+ * Copyright (C) 2017 ss
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ss.sonya.transport.search;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.util.List;
+
+/**
+ * Off-heap graph adjacency.
+ * Adjacent vertices, incoming vertices and transfer information are kept
+ * as compressed rows (CSR) in direct or memory-mapped buffer, so large
+ * graph doesn't
+ * hold boxed edges on heap and doesn't increase GC pauses.
+ * Store is read only, it's created for built graph.
+ * @author ss
+ */
+public final class GraphStore {
+    /** Edge offsets of vertices, vertices + 1. */
+    private final IntBuffer offsets;
+    /** Adjacent vertices, edges. */
+    private final IntBuffer targets;
+    /** Transfer offsets of edges, edges + 1. */
+    private final IntBuffer transferOffsets;
+    /** Transfers: path bus stop position, transfer path position. */
+    private final IntBuffer transfers;
+    /** Incoming edge offsets of vertices, vertices + 1. */
+    private final IntBuffer reverseOffsets;
+    /** Incoming vertices, ascending for every vertex, edges. */
+    private final IntBuffer sources;
+    /** Store size, bytes. */
+    private final long size;
+    /** Store is memory-mapped. */
+    private final boolean mapped;
+    /**
+     * Constructor.
+     * @param buffer buffer, filled by rows.
+     * @param vertices vertices count.
+     * @param edges edges count.
+     * @param transferCount transfer values count.
+     * @param pMapped buffer is memory-mapped.
+     */
+    private GraphStore(final ByteBuffer buffer, final int vertices,
+            final int edges, final int transferCount, final boolean pMapped) {
+        buffer.order(ByteOrder.nativeOrder());
+        offsets = slice(buffer, vertices + 1);
+        targets = slice(buffer, edges);
+        transferOffsets = slice(buffer, edges + 1);
+        transfers = slice(buffer, transferCount);
+        reverseOffsets = slice(buffer, vertices + 1);
+        sources = slice(buffer, edges);
+        size = buffer.capacity();
+        mapped = pMapped;
+    }
+    /**
+     * Create store for built graph.
+     * @param graph graph, adjacency must be on heap.
+     * @param dir directory for memory-mapped file, null - direct buffer.
+     * @return store.
+     * @throws IOException file error.
+     */
+    public static GraphStore of(final Graph graph, final File dir)
+            throws IOException {
+        int vertices = graph.vertices();
+        long edges = 0;
+        long transferCount = 0;
+        for (int v = 0; v < vertices; v++) {
+            for (Integer[] e : graph.adj(v)) {
+                edges++;
+                transferCount += e.length - 1;
+            }
+        }
+        long bytes = Integer.BYTES
+                * (2 * (vertices + 1) + 3 * edges + 1 + transferCount);
+        if (bytes > Integer.MAX_VALUE) {
+            throw new IllegalStateException("graph store is too large ["
+                    + bytes + "] bytes");
+        }
+        ByteBuffer buffer = dir == null
+                ? ByteBuffer.allocateDirect((int) bytes) : map(dir, bytes);
+        GraphStore store = new GraphStore(buffer, vertices, (int) edges,
+                (int) transferCount, dir != null);
+        int e = 0;
+        int t = 0;
+        for (int v = 0; v < vertices; v++) {
+            store.offsets.put(v, e);
+            for (Integer[] adjW : graph.adj(v)) {
+                store.targets.put(e, adjW[Graph.IDX_W]);
+                store.transferOffsets.put(e, t);
+                for (int i = 1; i < adjW.length; i++) {
+                    store.transfers.put(t++, adjW[i]);
+                }
+                e++;
+            }
+        }
+        store.offsets.put(vertices, e);
+        store.transferOffsets.put(e, t);
+        // incoming rows: count, prefix sums, fill in vertex order
+        int[] next = new int[vertices + 1];
+        for (int i = 0; i < e; i++) {
+            next[store.targets.get(i) + 1]++;
+        }
+        for (int v = 0; v < vertices; v++) {
+            next[v + 1] += next[v];
+        }
+        for (int v = 0; v <= vertices; v++) {
+            store.reverseOffsets.put(v, next[v]);
+        }
+        for (int v = 0; v < vertices; v++) {
+            for (int i = store.offsets.get(v); i < store.offsets.get(v + 1);
+                    i++) {
+                store.sources.put(next[store.targets.get(i)]++, v);
+            }
+        }
+        return store;
+    }
+    /**
+     * Vertex degree.
+     * @param v vertex.
+     * @return adjacent vertices count.
+     */
+    public int degree(final int v) {
+        return offsets.get(v + 1) - offsets.get(v);
+    }
+    /**
+     * Adjacent vertex.
+     * @param v vertex.
+     * @param i edge number in adjacency list.
+     * @return adjacent vertex.
+     */
+    public int target(final int v, final int i) {
+        return targets.get(offsets.get(v) + i);
+    }
+    /**
+     * Incoming vertices count.
+     * @param v vertex.
+     * @return vertices count, which have edge to vertex.
+     */
+    public int reverseDegree(final int v) {
+        return reverseOffsets.get(v + 1) - reverseOffsets.get(v);
+    }
+    /**
+     * Incoming vertex.
+     * @param v vertex.
+     * @param i incoming edge number, vertices are ascending.
+     * @return vertex, which has edge to vertex.
+     */
+    public int source(final int v, final int i) {
+        return sources.get(reverseOffsets.get(v) + i);
+    }
+    /**
+     * Edge in graph adjacency format: adjacent vertex and transfers.
+     * @param v vertex.
+     * @param i edge number in adjacency list.
+     * @return edge, new array.
+     */
+    public Integer[] edge(final int v, final int i) {
+        int e = offsets.get(v) + i;
+        int from = transferOffsets.get(e);
+        int to = transferOffsets.get(e + 1);
+        Integer[] edge = new Integer[to - from + 1];
+        edge[Graph.IDX_W] = targets.get(e);
+        for (int t = from; t < to; t++) {
+            edge[t - from + 1] = transfers.get(t);
+        }
+        return edge;
+    }
+    /**
+     * Add vertex edges to list.
+     * @param v vertex.
+     * @param list list.
+     */
+    public void edges(final int v, final List<Integer[]> list) {
+        for (int i = 0, n = degree(v); i < n; i++) {
+            list.add(edge(v, i));
+        }
+    }
+    /**
+     * Store size.
+     * @return size, bytes.
+     */
+    public long size() {
+        return size;
+    }
+    /**
+     * @return the mapped
+     */
+    public boolean isMapped() {
+        return mapped;
+    }
+    /**
+     * Map temporary file. File is deleted at once, mapping stays valid
+     * until buffer is collected.
+     * @param dir directory.
+     * @param bytes file size.
+     * @return mapped buffer.
+     * @throws IOException file error.
+     */
+    private static ByteBuffer map(final File dir, final long bytes)
+            throws IOException {
+        File file = File.createTempFile("graph-", ".bin", dir);
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw");
+                FileChannel channel = raf.getChannel()) {
+            return channel.map(FileChannel.MapMode.READ_WRITE, 0, bytes);
+        } finally {
+            if (!file.delete()) {
+                file.deleteOnExit();
+            }
+        }
+    }
+    /**
+     * Next int region of buffer.
+     * @param buffer buffer, position is moved to region end.
+     * @param count ints count.
+     * @return region.
+     */
+    private static IntBuffer slice(final ByteBuffer buffer, final int count) {
+        ByteBuffer region = buffer.slice().order(ByteOrder.nativeOrder());
+        region.limit(count * Integer.BYTES);
+        buffer.position(buffer.position() + count * Integer.BYTES);
+        return region.asIntBuffer();
+    }
+}
@@ -0,0 +1,186 @@
+/*
+ * Copyright (C) 2017 ss
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ss.sonya.transport.search;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import ss.sonya.entity.BusStop;
+import ss.sonya.transport.search.vo.Decision;
+import ss.sonya.transport.search.vo.SearchDiagnostics;
+
+/**
+ * Multi-source bit-parallel BFS task.
+ * Up to 64 start vertices are traversed together: every vertex has
+ * masks of sources, which have seen it and which expand it on current
+ * level, masks are propagated by word operations.
+ * Levels masks are kept, so decision ways are restored for every source
+ * separately, with same parents as in sequential task. Decisions are
+ * equal to sequential task, order inside one level may differ.
+ * Task is not reusable, it keeps traversal state.
+ * @author ss
+ */
+public class MultiSourceBFSTask extends BFSTask {
+    /** Max sources in one traversal. */
+    public static final int SOURCES = Long.SIZE;
+    /** Sources, which expand vertex: [level][vertex]. */
+    private long[][] levels;
+    /** Current source bit, used by parents restore. */
+    private long source;
+    /**
+     * Constructor.
+     * @param pStartCriteria start vertices criteria.
+     * @param pEndVertices end bus stops.
+     * @param pStartVertices start bus stops.
+     * @param pGraph graph.
+     * @param pLimitDepth search limit depth.
+     * @param reverse is reverse search?
+     * @param pDiagnostics search diagnostics, may be null.
+     * @param pDeadline search deadline.
+     */
+    public MultiSourceBFSTask(final List<Integer> pStartCriteria,
+            final Map<Integer, Set<BusStop>> pEndVertices,
+            final Map<Integer, Set<BusStop>> pStartVertices, final Graph pGraph,
+            final int pLimitDepth, final boolean reverse,
+            final SearchDiagnostics pDiagnostics,
+            final SearchDeadline pDeadline) {
+        super(pStartCriteria, pEndVertices, pStartVertices, pGraph,
+                pLimitDepth, reverse, pDiagnostics, pDeadline);
+    }
+    @Override
+    protected List<Decision> traverse() throws Exception {
+        List<Decision> all = new ArrayList<>();
+        for (int i = 0; i < startCriteria.size(); i += SOURCES) {
+            if (deadline.isTraversalExpired()) {
+                break;
+            }
+            all.addAll(bfs(startCriteria.subList(i,
+                    Math.min(startCriteria.size(), i + SOURCES))));
+        }
+        return all;
+    }
+    /**
+     * Bit-parallel BFS from several start vertices.
+     * @param sources start vertices, up to 64.
+     * @return list decisions, grouped by start vertex.
+     */
+    private List<Decision> bfs(final List<Integer> sources) {
+        int vertices = graph.vertices();
+        boolean[] isEnd = new boolean[vertices];
+        // sources, which have seen vertex, end vertices are seen by all
+        long[] seen = new long[vertices];
+        for (Integer v : endVertices.keySet()) {
+            isEnd[v] = true;
+            seen[v] = -1L;
+        }
+        // sources, which have expanded vertex on previous levels
+        long[] marked = new long[vertices];
+        long[] frontier = new long[vertices];
+        for (int b = 0; b < sources.size(); b++) {
+            frontier[sources.get(b)] |= 1L << b;
+            seen[sources.get(b)] |= 1L << b;
+        }
+        // found end vertices: depth, vertex, end vertex, sources
+        List<long[]> hits = new ArrayList<>();
+        levels = new long[limitDepth][];
+        for (int depth = 1; depth < limitDepth; depth++) {
+            if (deadline.isTraversalExpired()) {
+                break;
+            }
+            levels[depth - 1] = frontier;
+            long[] next = new long[vertices];
+            boolean found = false;
+            for (int v = 0; v < vertices; v++) {
+                long f = frontier[v];
+                if (f == 0 || !canReach(v, depth)) {
+                    continue;
+                }
+                expanded[depth - 1] += Long.bitCount(f);
+                for (int i = 0, n = graph.degree(v); i < n; i++) {
+                    int w = graph.target(v, i);
+                    if (!isActive(w)) {
+                        continue;
+                    }
+                    if (isEnd[w]) {
+                        hits.add(new long[] {depth, v, w, f});
+                    }
+                    if (w == v) {
+                        // self-loop, vertex is expanded again on next level
+                        next[v] |= f & ~marked[v];
+                    } else {
+                        next[w] |= f & ~seen[w];
+                    }
+                }
+            }
+            for (int v = 0; v < vertices; v++) {
+                marked[v] |= frontier[v];
+                seen[v] |= next[v];
+                found |= next[v] != 0;
+            }
+            if (!found) {
+                break;
+            }
+            frontier = next;
+        }
+        List<Decision> result = new ArrayList<>();
+        for (int b = 0; b < sources.size(); b++) {
+            source = 1L << b;
+            List<Decision> decisions = new ArrayList<>();
+            @SuppressWarnings({"unchecked", "rawtypes"})
+            List<Integer>[][] edgesTo = new List[limitDepth][];
+            for (long[] hit : hits) {
+                if ((hit[3] & source) != 0) {
+                    addDecisions(decisions, sources.get(b), (int) hit[1],
+                            (int) hit[2], (int) hit[0], edgesTo);
+                }
+            }
+            result.addAll(decisions);
+        }
+        levels = null;
+        return result;
+    }
+    /**
+     * Parents of current source are restored from level masks on demand.
+     * @param edgesTo parents cache of current source.
+     * @param depth level.
+     * @param v vertex.
+     * @return parent vertices.
+     */
+    @Override
+    protected List<Integer> parents(final List<Integer>[][] edgesTo,
+            final int depth, final int v) {
+        if (edgesTo[depth] == null) {
+            @SuppressWarnings({"unchecked", "rawtypes"})
+            List<Integer>[] row = new List[graph.vertices()];
+            edgesTo[depth] = row;
+        }
+        List<Integer> list = edgesTo[depth][v];
+        if (list == null) {
+            list = new ArrayList<>();
+            long[] level = levels[depth];
+            for (int i = 0, n = graph.reverseDegree(v); i < n; i++) {
+                int u = graph.source(v, i);
+                if ((level[u] & source) != 0) {
+                    list.add(u);
+                }
+            }
+            edgesTo[depth][v] = list;
+        }
+        return list;
+    }
+}
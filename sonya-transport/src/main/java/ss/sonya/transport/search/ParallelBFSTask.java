@@ -0,0 +1,314 @@
+/*
+ * Copyright (C) 2017 ss
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ss.sonya.transport.search;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLongArray;
+import ss.sonya.entity.BusStop;
+import ss.sonya.transport.search.vo.Decision;
+import ss.sonya.transport.search.vo.SearchDiagnostics;
+
+/**
+ * BFS task with level-synchronous parallel frontier expansion.
+ * Used when start vertices are too few to load all processors,
+ * but frontier is wide (start near metro hub).
+ * Wide frontier is broken into chunks, which are expanded by worker
+ * threads into own buffers. Next level vertices are claimed atomically,
+ * every vertex keeps its first position in frontier order. Buffers are
+ * merged in frontier order, so decisions are equal to sequential task.
+ * @author ss
+ */
+public class ParallelBFSTask extends BFSTask {
+    /** Default min frontier size for parallel expansion. */
+    public static final int PARALLEL_FRONTIER = 256;
+    /** Min frontier chunk size. */
+    private static final int MIN_CHUNK = 64;
+    /** Vertex is not discovered. */
+    private static final long UNSEEN = Long.MAX_VALUE;
+    /** Vertex is discovered on previous levels or it is end vertex. */
+    private static final long VISITED = -1;
+    /** Deadline check interval, frontier vertices. */
+    private static final int CHECK_INTERVAL = 64;
+    /** Worker threads. */
+    private final ForkJoinPool workers;
+    /** Min frontier size for parallel expansion. */
+    private final int parallelFrontier;
+    /**
+     * Constructor.
+     * @param pStartCriteria start vertices criteria.
+     * @param pEndVertices end bus stops.
+     * @param pStartVertices start bus stops.
+     * @param pGraph graph.
+     * @param pLimitDepth search limit depth.
+     * @param reverse is reverse search?
+     * @param pDiagnostics search diagnostics, may be null.
+     * @param pDeadline search deadline.
+     * @param pWorkers worker threads.
+     * @param pParallelFrontier min frontier size for parallel expansion.
+     */
+    public ParallelBFSTask(final List<Integer> pStartCriteria,
+            final Map<Integer, Set<BusStop>> pEndVertices,
+            final Map<Integer, Set<BusStop>> pStartVertices, final Graph pGraph,
+            final int pLimitDepth, final boolean reverse,
+            final SearchDiagnostics pDiagnostics,
+            final SearchDeadline pDeadline, final ForkJoinPool pWorkers,
+            final int pParallelFrontier) {
+        super(pStartCriteria, pEndVertices, pStartVertices, pGraph,
+                pLimitDepth, reverse, pDiagnostics, pDeadline);
+        workers = pWorkers;
+        parallelFrontier = pParallelFrontier;
+    }
+    @Override
+    protected List<Decision> bfs(final Integer sV) throws Exception {
+        Set<Integer> endCriteria = endVertices.keySet();
+        List<Decision> result = new ArrayList<>();
+        List<Integer>[][] edgesTo = createEdgesTo();
+        int vertices = graph.vertices();
+        // first position in frontier order: (vertex index << 32) | edge
+        AtomicLongArray order = new AtomicLongArray(vertices);
+        for (int i = 0; i < vertices; i++) {
+            order.set(i, UNSEEN);
+        }
+        endCriteria.forEach(v -> order.set(v, VISITED));
+        order.set(sV, VISITED);
+        // expanded vertices
+        boolean[] marked = new boolean[vertices];
+        int[] frontier = {sV};
+        for (int depth = 1; depth < limitDepth && frontier.length > 0;
+                depth++) {
+            if (deadline.isTraversalExpired()) {
+                break;
+            }
+            frontier = reachable(frontier, depth);
+            expanded[depth - 1] += frontier.length;
+            Chunk[] chunks = expand(frontier, endCriteria, order, marked);
+            int nextSize = 0;
+            for (Chunk c : chunks) {
+                for (int i = 0; i < c.edges.size; i += 2) {
+                    edgesTo[depth - 1][c.edges.data[i + 1]]
+                            .add(c.edges.data[i]);
+                }
+                for (int i = 0; i < c.hits.size; i += 2) {
+                    addDecisions(result, sV, c.hits.data[i],
+                            c.hits.data[i + 1], depth, edgesTo);
+                }
+                nextSize += c.next.size / 2;
+            }
+            for (int v : frontier) {
+                marked[v] = true;
+            }
+            frontier = nextFrontier(chunks, nextSize, order);
+        }
+        return result;
+    }
+    /**
+     * Remove frontier vertices, which can't reach end vertices.
+     * @param frontier current level vertices.
+     * @param depth level.
+     * @return frontier vertices, in same order.
+     */
+    private int[] reachable(final int[] frontier, final int depth) {
+        int[] result = new int[frontier.length];
+        int n = 0;
+        for (int v : frontier) {
+            if (canReach(v, depth)) {
+                result[n++] = v;
+            }
+        }
+        return n == frontier.length ? frontier : Arrays.copyOf(result, n);
+    }
+    /**
+     * Expand frontier, in parallel if frontier is wide.
+     * @param frontier current level vertices.
+     * @param endCriteria end vertices.
+     * @param order vertices order.
+     * @param marked expanded vertices.
+     * @return expanded chunks, in frontier order.
+     * @throws Exception error.
+     */
+    private Chunk[] expand(final int[] frontier, final Set<Integer> endCriteria,
+            final AtomicLongArray order, final boolean[] marked)
+            throws Exception {
+        int n = frontier.length < parallelFrontier ? 1 : Math.max(1,
+                Math.min(workers.getParallelism(),
+                        frontier.length / MIN_CHUNK));
+        Chunk[] chunks = new Chunk[n];
+        if (n == 1) {
+            chunks[0] = expand(frontier, 0, frontier.length, endCriteria,
+                    order, marked);
+            return chunks;
+        }
+        List<Callable<Chunk>> tasks = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) {
+            int from = (int) ((long) frontier.length * i / n);
+            int to = (int) ((long) frontier.length * (i + 1) / n);
+            tasks.add(() -> expand(frontier, from, to, endCriteria, order,
+                    marked));
+        }
+        List<Future<Chunk>> futures = workers.invokeAll(tasks);
+        for (int i = 0; i < n; i++) {
+            try {
+                chunks[i] = futures.get(i).get();
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof Exception) {
+                    throw (Exception) e.getCause();
+                }
+                throw e;
+            }
+        }
+        return chunks;
+    }
+    /**
+     * Expand frontier part.
+     * @param frontier current level vertices.
+     * @param from first vertex index, inclusive.
+     * @param to last vertex index, exclusive.
+     * @param endCriteria end vertices.
+     * @param order vertices order.
+     * @param marked expanded vertices.
+     * @return expanded chunk.
+     */
+    private Chunk expand(final int[] frontier, final int from, final int to,
+            final Set<Integer> endCriteria, final AtomicLongArray order,
+            final boolean[] marked) {
+        Chunk chunk = new Chunk();
+        for (int i = from; i < to; i++) {
+            if ((i - from) % CHECK_INTERVAL == 0
+                    && deadline.isTraversalExpired()) {
+                break;
+            }
+            int v = frontier[i];
+            long j = 0;
+            for (int e = 0, n = graph.degree(v); e < n; e++) {
+                int w = graph.target(v, e);
+                if (!isActive(w)) {
+                    continue;
+                }
+                long key = ((long) i << Integer.SIZE) | j++;
+                chunk.edges.add(v, w);
+                if (endCriteria.contains(w)) {
+                    chunk.hits.add(v, w);
+                }
+                if (w == v && !marked[v]) {
+                    // self-loop, vertex is expanded again on next level
+                    chunk.next.add(w, key);
+                    continue;
+                }
+                long current = order.get(w);
+                while (current != VISITED && key < current) {
+                    if (order.compareAndSet(w, current, key)) {
+                        if (current == UNSEEN) {
+                            chunk.next.add(w, key);
+                        }
+                        break;
+                    }
+                    current = order.get(w);
+                }
+            }
+        }
+        return chunk;
+    }
+    /**
+     * Merge next level vertices in frontier order.
+     * @param chunks expanded chunks.
+     * @param size next level size.
+     * @param order vertices order.
+     * @return next frontier.
+     */
+    private int[] nextFrontier(final Chunk[] chunks, final int size,
+            final AtomicLongArray order) {
+        long[][] next = new long[size][];
+        int k = 0;
+        for (Chunk c : chunks) {
+            for (int i = 0; i < c.next.size; i += 2) {
+                int w = (int) c.next.data[i];
+                long key = order.get(w);
+                // self-loop vertex is visited already, it keeps own position
+                next[k++] = new long[] {key == VISITED
+                        ? c.next.data[i + 1] : key, w};
+            }
+        }
+        Arrays.sort(next, (o1, o2) -> Long.compare(o1[0], o2[0]));
+        int[] frontier = new int[size];
+        for (int i = 0; i < size; i++) {
+            frontier[i] = (int) next[i][1];
+            order.set(frontier[i], VISITED);
+        }
+        return frontier;
+    }
+    /**
+     * Expanded frontier chunk, owned by one thread.
+     */
+    private static final class Chunk {
+        /** Edges: vertex, adjacent vertex. */
+        private final IntBuffer edges = new IntBuffer();
+        /** Found end vertices: vertex, end vertex. */
+        private final IntBuffer hits = new IntBuffer();
+        /** Claimed next level vertices: vertex, order. */
+        private final LongBuffer next = new LongBuffer();
+    }
+    /**
+     * Growable int pairs buffer.
+     */
+    private static final class IntBuffer {
+        /** Data. */
+        private int[] data = new int[16];
+        /** Size. */
+        private int size;
+        /**
+         * Add pair.
+         * @param a first value.
+         * @param b second value.
+         */
+        void add(final int a, final int b) {
+            if (size + 2 > data.length) {
+                data = Arrays.copyOf(data, data.length * 2);
+            }
+            data[size++] = a;
+            data[size++] = b;
+        }
+    }
+    /**
+     * Growable long pairs buffer.
+     */
+    private static final class LongBuffer {
+        /** Data. */
+        private long[] data = new long[16];
+        /** Size. */
+        private int size;
+        /**
+         * Add pair.
+         * @param a first value.
+         * @param b second value.
+         */
+        void add(final long a, final long b) {
+            if (size + 2 > data.length) {
+                data = Arrays.copyOf(data, data.length * 2);
+            }
+            data[size++] = a;
+            data[size++] = b;
+        }
+    }
+}
@@ -0,0 +1,89 @@
+/*
+ * Copyright (C) 2017 ss
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ss.sonya.transport.search;
+
+import java.util.Arrays;
+import java.util.List;
+import ss.sonya.entity.Path;
+
+/**
+ * Key of optimal path: sequence of path IDs.
+ * Sequence is hashed to long once, keys are compared by IDs.
+ * @author ss
+ */
+public final class PathKey {
+    /** FNV-1a offset basis. */
+    private static final long FNV_BASIS = 0xcbf29ce484222325L;
+    /** FNV-1a prime. */
+    private static final long FNV_PRIME = 0x100000001b3L;
+    /** Path IDs. */
+    private final int[] ids;
+    /** Sequence hash. */
+    private final long hash;
+    /**
+     * Constructor.
+     * @param pIds path IDs.
+     */
+    public PathKey(final int[] pIds) {
+        ids = pIds;
+        long h = FNV_BASIS;
+        for (int id : ids) {
+            h = (h ^ id) * FNV_PRIME;
+        }
+        hash = h;
+    }
+    /**
+     * Create key for paths.
+     * @param paths paths of optimal path.
+     * @return key.
+     */
+    public static PathKey of(final List<Path> paths) {
+        int[] ids = new int[paths.size()];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = paths.get(i).getId();
+        }
+        return new PathKey(ids);
+    }
+    /**
+     * @return path IDs
+     */
+    public int[] getIds() {
+        return ids;
+    }
+    /**
+     * @return sequence hash
+     */
+    public long getHash() {
+        return hash;
+    }
+    @Override
+    public int hashCode() {
+        return (int) (hash ^ (hash >>> Integer.SIZE));
+    }
+    @Override
+    public boolean equals(final Object object) {
+        if (!(object instanceof PathKey)) {
+            return false;
+        }
+        PathKey other = (PathKey) object;
+        return hash == other.hash && Arrays.equals(ids, other.ids);
+    }
+    @Override
+    public String toString() {
+        return Arrays.toString(ids);
+    }
+}
@@ -0,0 +1,72 @@
+/*
+ * Copyright (C) 2017 ss
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ss.sonya.transport.search;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Trie of path ID sequences.
+ * Finds if sequence contains one of added sequences as a part, it is
+ * used to filter optimal paths, which repeat shorter optimal path.
+ * Not thread safe for adding, concurrent reads are safe.
+ * @author ss
+ */
+public class PathTrie {
+    /** Root node. */
+    private final Node root = new Node();
+    /**
+     * Add sequence.
+     * @param ids path IDs.
+     */
+    public void add(final int[] ids) {
+        Node node = root;
+        for (int id : ids) {
+            node = node.children.computeIfAbsent(id, k -> new Node());
+        }
+        node.terminal = true;
+    }
+    /**
+     * Check if sequence contains added sequence.
+     * @param ids path IDs.
+     * @return true if any added sequence is a part of sequence.
+     */
+    public boolean containsPart(final int[] ids) {
+        for (int i = 0; i < ids.length; i++) {
+            Node node = root;
+            for (int j = i; j < ids.length; j++) {
+                node = node.children.get(ids[j]);
+                if (node == null) {
+                    break;
+                }
+                if (node.terminal) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+    /**
+     * Trie node.
+     */
+    private static final class Node {
+        /** Children, key - path ID. */
+        private final Map<Integer, Node> children = new HashMap<>();
+        /** Sequence ends in node. */
+        private boolean terminal;
+    }
+}
@@ -0,0 +1,136 @@
+/*
+ * Copyright (C) 2017 ss
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ss.sonya.transport.search;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Vertex reachability matrices of graph.
+ * Adjacency and its two-hop product are V x V bit matrices, so vertices,
+ * reachable from vertex within one or two transfers, are checked by word
+ * operations instead of BFS.
+ * Matrices ignore search restrictions (end vertices are not passed
+ * through), so reachability is a necessary condition only.
+ * @author ss
+ */
+public class Reachability {
+    /** Max hops, supported by matrices. */
+    public static final int MAX_HOPS = 2;
+    /** Graph version. */
+    private final long version;
+    /** Vertices count. */
+    private final int vertices;
+    /** Words in matrix row. */
+    private final int words;
+    /** Adjacency matrix, rows one by one. */
+    private final long[] oneHop;
+    /** Vertices, reachable by two hops, rows one by one. */
+    private final long[] twoHops;
+    /**
+     * Build matrices.
+     * @param graph graph, must be built.
+     */
+    public Reachability(final Graph graph) {
+        version = graph.getVersion();
+        vertices = graph.vertices();
+        words = (vertices + Long.SIZE - 1) / Long.SIZE;
+        oneHop = new long[vertices * words];
+        for (int v = 0; v < vertices; v++) {
+            for (int i = 0, n = graph.degree(v); i < n; i++) {
+                int w = graph.target(v, i);
+                oneHop[v * words + (w >>> 6)] |= 1L << w;
+            }
+        }
+        twoHops = new long[vertices * words];
+        for (int v = 0; v < vertices; v++) {
+            int row = v * words;
+            for (int e = 0, n = graph.degree(v); e < n; e++) {
+                int from = graph.target(v, e) * words;
+                for (int i = 0; i < words; i++) {
+                    twoHops[row + i] |= oneHop[from + i];
+                }
+            }
+        }
+    }
+    /**
+     * Vertices as bit set.
+     * @param vs vertices.
+     * @return bit set.
+     */
+    public long[] bits(final Collection<Integer> vs) {
+        long[] set = new long[words];
+        for (Integer v : vs) {
+            set[v >>> 6] |= 1L << v;
+        }
+        return set;
+    }
+    /**
+     * Check if any target is reachable from vertex.
+     * @param v vertex.
+     * @param targets target vertices bit set.
+     * @param hops max hops, 1 or 2.
+     * @return true if reachable.
+     */
+    public boolean reaches(final int v, final long[] targets,
+            final int hops) {
+        int row = v * words;
+        for (int i = 0; i < words; i++) {
+            long row1 = oneHop[row + i];
+            if (hops > 1) {
+                row1 |= twoHops[row + i];
+            }
+            if ((row1 & targets[i]) != 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+    /**
+     * Filter vertices, which can reach targets.
+     * @param sources source vertices.
+     * @param targets target vertices.
+     * @param hops max hops, 1 or 2.
+     * @return sources, which reach any target, in same order.
+     */
+    public List<Integer> filter(final Collection<Integer> sources,
+            final Collection<Integer> targets, final int hops) {
+        long[] set = bits(targets);
+        List<Integer> result = new ArrayList<>();
+        for (Integer v : sources) {
+            if (reaches(v, set, hops)) {
+                result.add(v);
+            }
+        }
+        return result;
+    }
+    /**
+     * Graph version, matrices built for.
+     * @return graph version.
+     */
+    public long getVersion() {
+        return version;
+    }
+    /**
+     * Matrices size.
+     * @return size, bytes.
+     */
+    public long size() {
+        return 2L * vertices * words * Long.BYTES;
+    }
+}
@@ -0,0 +1,139 @@
+/*
+ * Copyright (C) 2017 ss
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ss.sonya.transport.search;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Search deadline.
+ * Search tasks check it cooperatively and stop, returning results
+ * found so far. Graph traversal gets most of timeout, the rest is reserved
+ * for post-processing of found decisions. Search can be cancelled
+ * explicitly, for example when client aborted HTTP request,
+ * then registered futures are cancelled.
+ * @author ss
+ */
+public class SearchDeadline {
+    /** Traversal share of timeout. */
+    private static final double TRAVERSAL_SHARE = 0.8;
+    /** Deadline, nanoseconds (System.nanoTime()). */
+    private final long deadline;
+    /** Traversal deadline, nanoseconds. */
+    private final long traversalDeadline;
+    /** Deadline is defined. */
+    private final boolean bounded;
+    /** Cancelled. */
+    private volatile boolean cancelled;
+    /** Deadline reached during search, result is partial. */
+    private volatile boolean partial;
+    /** Registered futures. */
+    private final List<Future<?>> futures = new CopyOnWriteArrayList<>();
+    /**
+     * Constructor.
+     * @param timeout timeout, milliseconds, zero or negative - no deadline.
+     */
+    public SearchDeadline(final long timeout) {
+        bounded = timeout > 0;
+        long now = System.nanoTime();
+        long nanos = TimeUnit.MILLISECONDS.toNanos(Math.max(0, timeout));
+        deadline = now + nanos;
+        traversalDeadline = now + (long) (nanos * TRAVERSAL_SHARE);
+    }
+    /**
+     * Check deadline, used by post-processing.
+     * Marks result as partial if deadline reached.
+     * @return true if search must be stopped.
+     */
+    public boolean isExpired() {
+        return isReached(deadline);
+    }
+    /**
+     * Check traversal deadline, used by graph traversal.
+     * Marks result as partial if deadline reached.
+     * @return true if traversal must be stopped.
+     */
+    public boolean isTraversalExpired() {
+        return isReached(traversalDeadline);
+    }
+    /**
+     * Check deadline.
+     * @param time deadline, nanoseconds.
+     * @return true if deadline reached or search cancelled.
+     */
+    private boolean isReached(final long time) {
+        if (cancelled) {
+            return true;
+        }
+        if (bounded && System.nanoTime() - time > 0) {
+            partial = true;
+            return true;
+        }
+        return false;
+    }
+    /**
+     * Cancel search and registered futures.
+     */
+    public void cancel() {
+        cancelled = true;
+        partial = true;
+        futures.forEach(f -> f.cancel(true));
+    }
+    /**
+     * Mark result as partial, for example when result is taken
+     * from other search, which reached its deadline.
+     */
+    public void markPartial() {
+        partial = true;
+    }
+    /**
+     * Register search task future, it will be cancelled with search.
+     * @param future future.
+     */
+    public void register(final Future<?> future) {
+        futures.add(future);
+        if (cancelled) {
+            future.cancel(true);
+        }
+    }
+    /**
+     * @return the cancelled
+     */
+    public boolean isCancelled() {
+        return cancelled;
+    }
+    /**
+     * Result is partial, because deadline reached or search cancelled.
+     * @return the partial
+     */
+    public boolean isPartial() {
+        return partial;
+    }
+    /**
+     * Remaining time.
+     * @return milliseconds, Long.MAX_VALUE if deadline is not defined.
+     */
+    public long remaining() {
+        if (!bounded) {
+            return Long.MAX_VALUE;
+        }
+        return Math.max(0, TimeUnit.NANOSECONDS.toMillis(
+                deadline - System.nanoTime()));
+    }
+}
@@ -18,6 +18,7 @@
 package ss.sonya.transport.search;
 
 import java.util.List;
+import ss.sonya.entity.TransportProfile;
 import ss.sonya.transport.search.vo.OptimalPath;
 import ss.sonya.transport.search.vo.SearchSettings;
 
@@ -33,4 +34,14 @@ public interface SearchEngine {
      * @throws Exception operation error.
      */
     List<OptimalPath> search(SearchSettings settings) throws Exception;
+    /**
+     * Check if engine can search in transport profile graph.
+     * Engine with precomputed data can be limited by graph size.
+     * @param graph graph.
+     * @param profile transport profile.
+     * @return true if engine is a candidate for profile.
+     */
+    default boolean supports(Graph graph, TransportProfile profile) {
+        return true;
+    }
 }
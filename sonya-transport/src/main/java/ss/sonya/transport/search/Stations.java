@@ -0,0 +1,162 @@
+/*
+ * Copyright (C) 2017 ss
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ss.sonya.transport.search;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import ss.sonya.entity.BusStop;
+import ss.sonya.inject.service.Geometry;
+import ss.sonya.transport.constants.TransportConst;
+
+/**
+ * Stations: clusters of bus stops with the same name around one crossroad.
+ * Search uses one bus stop of station as access point, so near points
+ * are not counted several times. On every path access point is one
+ * station bus stop, which path serves.
+ * Bus stops itself are not changed.
+ * @author ss
+ */
+public class Stations {
+    /** Station bus stops, only stations with several bus stops. */
+    private final Map<BusStop, List<BusStop>> members = new HashMap<>();
+    /** Stations count. */
+    private final int size;
+    /**
+     * Constructor.
+     * Bus stops are in one station, if they have the same name and
+     * connected by bus stops in radius.
+     * @param all bus stops.
+     * @param radius radius, km.
+     * @param geometry geometry.
+     */
+    public Stations(final Collection<BusStop> all, final double radius,
+            final Geometry geometry) {
+        Map<String, List<BusStop>> byName = new HashMap<>();
+        for (BusStop bs : all) {
+            if (bs.getName() == null
+                    || TransportConst.MOCK_BS.equals(bs.getName())) {
+                continue;
+            }
+            byName.computeIfAbsent(name(bs), k -> new ArrayList<>()).add(bs);
+        }
+        int count = 0;
+        for (List<BusStop> group : byName.values()) {
+            int n = group.size();
+            if (n < 2) {
+                continue;
+            }
+            // union-find over bus stops in radius
+            int[] parent = new int[n];
+            for (int i = 0; i < n; i++) {
+                parent[i] = i;
+            }
+            for (int i = 0; i < n; i++) {
+                BusStop a = group.get(i);
+                for (int j = i + 1; j < n; j++) {
+                    BusStop b = group.get(j);
+                    if (geometry.calcDistance(a.getLatitude(),
+                            a.getLongitude(), b.getLatitude(),
+                            b.getLongitude()) <= radius) {
+                        parent[root(parent, i)] = root(parent, j);
+                    }
+                }
+            }
+            Map<Integer, List<BusStop>> clusters = new HashMap<>();
+            for (int i = 0; i < n; i++) {
+                clusters.computeIfAbsent(root(parent, i),
+                        k -> new ArrayList<>()).add(group.get(i));
+            }
+            for (List<BusStop> cluster : clusters.values()) {
+                if (cluster.size() < 2) {
+                    continue;
+                }
+                cluster.sort(Comparator.comparing(BusStop::getId,
+                        Comparator.nullsLast(Comparator.naturalOrder())));
+                List<BusStop> station = Collections.unmodifiableList(
+                        cluster);
+                cluster.forEach(bs -> members.put(bs, station));
+                count++;
+            }
+        }
+        size = count;
+    }
+    /**
+     * Get station bus stops.
+     * @param bs bus stop.
+     * @return station bus stops or bus stop itself.
+     */
+    public List<BusStop> members(final BusStop bs) {
+        List<BusStop> station = members.get(bs);
+        return station == null ? Collections.singletonList(bs) : station;
+    }
+    /**
+     * Get one bus stop for every station.
+     * @param stops bus stops.
+     * @return first bus stop of every station among bus stops and
+     *      bus stops out of stations.
+     */
+    public Set<BusStop> heads(final Set<BusStop> stops) {
+        Set<BusStop> result = new HashSet<>();
+        for (BusStop bs : stops) {
+            for (BusStop m : members(bs)) {
+                if (stops.contains(m)) {
+                    result.add(m);
+                    break;
+                }
+            }
+        }
+        return result;
+    }
+    /**
+     * Stations with several bus stops.
+     * @return stations count.
+     */
+    public int size() {
+        return size;
+    }
+    /**
+     * Station key of bus stop name.
+     * @param bs bus stop.
+     * @return name key.
+     */
+    private static String name(final BusStop bs) {
+        return bs.getName().trim().replaceAll("\\s+", " ")
+                .toLowerCase(Locale.ROOT);
+    }
+    /**
+     * Find cluster root.
+     * @param parent parents.
+     * @param i element.
+     * @return root.
+     */
+    private static int root(final int[] parent, final int i) {
+        int r = i;
+        while (parent[r] != r) {
+            r = parent[r];
+        }
+        parent[i] = r;
+        return r;
+    }
+}
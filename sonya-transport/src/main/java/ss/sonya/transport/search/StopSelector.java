@@ -0,0 +1,207 @@
+/*
+ * Copyright (C) 2017 ss
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ss.sonya.transport.search;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import ss.sonya.entity.BusStop;
+import ss.sonya.inject.service.Geometry;
+import ss.sonya.transport.constants.TransportConst;
+
+/**
+ * Costs for selection of decision start and end bus stops.
+ * Costs are the same as for selection of best optimal path: walk time to
+ * start bus stop and from end bus stop, ride time and transfer walk time,
+ * hours. Ride distance is taken from graph way distances, so optimal path
+ * is not needed.
+ * Shared by search tasks of one request.
+ * @author ss
+ */
+public class StopSelector {
+    /** Graph. */
+    private final Graph graph;
+    /** Geometry. */
+    private final Geometry geometry;
+    /** Start point latitude. */
+    private final double sLat;
+    /** Start point longitude. */
+    private final double sLon;
+    /** End point latitude. */
+    private final double eLat;
+    /** End point longitude. */
+    private final double eLon;
+    /** Walk time to start bus stops. */
+    private final Map<BusStop, Double> startWalks = new ConcurrentHashMap<>();
+    /** Walk time from end bus stops. */
+    private final Map<BusStop, Double> endWalks = new ConcurrentHashMap<>();
+    /**
+     * Constructor.
+     * @param pGraph graph, must have way distances.
+     * @param pGeometry geometry.
+     * @param pSLat start point latitude.
+     * @param pSLon start point longitude.
+     * @param pELat end point latitude.
+     * @param pELon end point longitude.
+     */
+    public StopSelector(final Graph pGraph, final Geometry pGeometry,
+            final double pSLat, final double pSLon, final double pELat,
+            final double pELon) {
+        graph = pGraph;
+        geometry = pGeometry;
+        sLat = pSLat;
+        sLon = pSLon;
+        eLat = pELat;
+        eLon = pELon;
+    }
+    /**
+     * Walk time from start point to bus stop.
+     * @param bs bus stop.
+     * @return time, hours.
+     */
+    public double startWalk(final BusStop bs) {
+        return startWalks.computeIfAbsent(bs, b -> walk(b, sLat, sLon));
+    }
+    /**
+     * Walk time from bus stop to end point.
+     * @param bs bus stop.
+     * @return time, hours.
+     */
+    public double endWalk(final BusStop bs) {
+        return endWalks.computeIfAbsent(bs, b -> walk(b, eLat, eLon));
+    }
+    /**
+     * Walk time between transfer bus stops.
+     * @param from bus stop.
+     * @param to bus stop.
+     * @return time, hours.
+     */
+    public double transferWalk(final BusStop from, final BusStop to) {
+        return geometry.calcDistance(from.getLatitude(), from.getLongitude(),
+                to.getLatitude(), to.getLongitude())
+                / TransportConst.HUMAN_SPEED;
+    }
+    /**
+     * Ride time along vertex path.
+     * @param v vertex.
+     * @param from start bus stop index in way.
+     * @param to end bus stop index in way.
+     * @return time, hours.
+     */
+    public double ride(final int v, final int from, final int to) {
+        double[] distances = graph.wayDistances(v);
+        return (distances[to] - distances[from])
+                / graph.getPath(v).getRoute().getType().getAvgSpeed();
+    }
+    /**
+     * Remove dominated bus stops of start or end vertices.
+     * Start bus stop is dominated, if the same path is boarded at earlier
+     * bus stop, which is closer to start point, so that walk to it and
+     * ride to dominated bus stop is faster than walk to dominated bus stop.
+     * Transfers are found by entry position (see transfer index), so
+     * earlier bus stop dominates only if it has the same transfers to
+     * every adjacent vertex.
+     * End bus stop is dominated by later bus stop in the same way, its
+     * position is the last one, as in decision transformation.
+     * Every vertex keeps at least one bus stop.
+     * @param vertices start or end vertices, bus stops are removed.
+     * @param start start or end vertices.
+     * @return number of removed bus stops.
+     */
+    public int prune(final Map<Integer, Set<BusStop>> vertices,
+            final boolean start) {
+        int pruned = 0;
+        for (Map.Entry<Integer, Set<BusStop>> e : vertices.entrySet()) {
+            Set<BusStop> stops = e.getValue();
+            if (stops.size() < 2) {
+                continue;
+            }
+            int v = e.getKey();
+            List<BusStop> way = graph.getPath(v).getBusstops();
+            double[] distances = graph.wayDistances(v);
+            double speed = graph.getPath(v).getRoute().getType()
+                    .getAvgSpeed();
+            BusStop[] sorted = stops.toArray(new BusStop[stops.size()]);
+            int[] idx = new int[sorted.length];
+            Integer[] order = new Integer[sorted.length];
+            for (int i = 0; i < sorted.length; i++) {
+                idx[i] = start ? way.indexOf(sorted[i])
+                        : way.lastIndexOf(sorted[i]);
+                order[i] = i;
+            }
+            // start: earlier bus stops first, end: later bus stops first
+            Arrays.sort(order, (i1, i2) -> start
+                    ? Integer.compare(idx[i1], idx[i2])
+                    : Integer.compare(idx[i2], idx[i1]));
+            // cost, reduced to way start, of kept bus stops
+            double[] cost = new double[sorted.length];
+            int[] kept = new int[sorted.length];
+            int count = 0;
+            for (int i : order) {
+                double ride = distances[idx[i]] / speed;
+                cost[i] = start ? startWalk(sorted[i]) - ride
+                        : endWalk(sorted[i]) + ride;
+                boolean dominated = false;
+                for (int k = 0; k < count && !dominated; k++) {
+                    int j = kept[k];
+                    dominated = cost[j] < cost[i] && (!start
+                            || sameTransfers(v, idx[j], idx[i]));
+                }
+                if (dominated) {
+                    stops.remove(sorted[i]);
+                    pruned++;
+                } else {
+                    kept[count++] = i;
+                }
+            }
+        }
+        return pruned;
+    }
+    /**
+     * Check if vertex path, boarded at two positions, has the same best
+     * transfers to every adjacent vertex.
+     * @param v vertex.
+     * @param idx1 first entry position.
+     * @param idx2 second entry position.
+     * @return true if transfers are the same.
+     */
+    private boolean sameTransfers(final int v, final int idx1,
+            final int idx2) {
+        TransferIndex index = graph.transferIndex();
+        for (int i = 0; i < graph.degree(v); i++) {
+            int w = graph.target(v, i);
+            if (index.transfer(v, w, idx1) != index.transfer(v, w, idx2)) {
+                return false;
+            }
+        }
+        return true;
+    }
+    /**
+     * Walk time between point and bus stop.
+     * @param bs bus stop.
+     * @param lat point latitude.
+     * @param lon point longitude.
+     * @return time, hours.
+     */
+    private double walk(final BusStop bs, final double lat,
+            final double lon) {
+        return geometry.calcDistance(lat, lon, bs.getLatitude(),
+                bs.getLongitude()) / TransportConst.HUMAN_SPEED;
+    }
+}
@@ -0,0 +1,171 @@
+/*
+ * Copyright (C) 2017 ss
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ss.sonya.transport.search;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Best transfers of graph edges, indexed by bus stop position.
+ * For edge V-W and entry bus stop position in V-path, transfer with
+ * bus stop in V-path after entry and min ride is selected (bus stop
+ * count divided by transport speed, first transfer of edge if equal).
+ * Tables are built for vertex on first use and shared by all searches.
+ * @author ss
+ */
+public class TransferIndex {
+    /** No transfer. */
+    public static final long NONE = -1;
+    /** Array header size, bytes. */
+    private static final int ARRAY = 16;
+    /** Reference size, bytes. */
+    private static final int REF = 4;
+    /** Graph. */
+    private final Graph graph;
+    /** Vertex tables, built on first use. */
+    private final AtomicReferenceArray<VertexTable> tables;
+    /** Size of index and built tables, bytes. */
+    private final AtomicLong size;
+    /**
+     * Constructor.
+     * @param pGraph graph, must be built.
+     */
+    public TransferIndex(final Graph pGraph) {
+        graph = pGraph;
+        tables = new AtomicReferenceArray<>(graph.vertices());
+        size = new AtomicLong(ARRAY + (long) REF * graph.vertices());
+    }
+    /**
+     * Find best transfer from vertex to adjacent vertex.
+     * @param v vertex.
+     * @param w adjacent vertex.
+     * @param idxT entry bus stop position in vertex path.
+     * @return transfer: V-path bus stop position in high 32 bits, W-path
+     *      bus stop position in low 32 bits; NONE if there is no transfer
+     *      after entry.
+     */
+    public long transfer(final int v, final int w, final int idxT) {
+        VertexTable table = tables.get(v);
+        if (table == null) {
+            table = new VertexTable(v);
+            if (tables.compareAndSet(v, null, table)) {
+                long bytes = table.size();
+                size.addAndGet(bytes);
+                graph.grown(bytes);
+            } else {
+                table = tables.get(v);
+            }
+        }
+        int e = Arrays.binarySearch(table.targets, w);
+        if (e < 0) {
+            return NONE;
+        }
+        int[] best = table.best[table.edges[e]];
+        int i = idxT + 1;
+        if (i < 0 || i >= best.length / 2 || best[2 * i] == -1) {
+            return NONE;
+        }
+        return ((long) best[2 * i] << Integer.SIZE)
+                | (best[2 * i + 1] & 0xFFFFFFFFL);
+    }
+    /**
+     * Heap size of index and built tables, estimated.
+     * @return size, bytes.
+     */
+    public long size() {
+        return size.get();
+    }
+    /**
+     * Tables of one vertex.
+     */
+    private final class VertexTable {
+        /** Adjacent vertices, ascending. */
+        private final int[] targets;
+        /** Edge number in adjacency list for every adjacent vertex. */
+        private final int[] edges;
+        /**
+         * Best transfer for every edge: for entry position p, transfer
+         * is at [2 * (p + 1)] (V-path) and [2 * (p + 1) + 1] (W-path).
+         */
+        private final int[][] best;
+        /**
+         * Build tables.
+         * @param v vertex.
+         */
+        VertexTable(final int v) {
+            List<Integer[]> adj = graph.adj(v);
+            int n = graph.getPath(v).getBusstops().size();
+            double speedV = graph.getPath(v).getRoute().getType()
+                    .getAvgSpeed();
+            long[] sorted = new long[adj.size()];
+            best = new int[adj.size()][];
+            int k = 0;
+            for (Integer[] adjW : adj) {
+                int w = adjW[Graph.IDX_W];
+                sorted[k] = ((long) w << Integer.SIZE) | k;
+                int m = graph.getPath(w).getBusstops().size();
+                double speedW = graph.getPath(w).getRoute().getType()
+                        .getAvgSpeed();
+                // position -1 is a start before first bus stop
+                int[] table = new int[2 * (n + 1)];
+                Arrays.fill(table, -1);
+                int bestJ = -1;
+                double bestTotal = Double.MAX_VALUE;
+                for (int p = n - 1; p >= -1; p--) {
+                    for (int j = 1; j < adjW.length; j += 2) {
+                        if (adjW[j] != p + 1) {
+                            continue;
+                        }
+                        double total = (adjW[j] + 1) / speedV
+                                + (m - (adjW[j + 1] + 1)) / speedW;
+                        if (bestJ == -1 || total < bestTotal
+                                || (total == bestTotal && j < bestJ)) {
+                            bestJ = j;
+                            bestTotal = total;
+                        }
+                    }
+                    if (bestJ != -1) {
+                        table[2 * (p + 1)] = adjW[bestJ];
+                        table[2 * (p + 1) + 1] = adjW[bestJ + 1];
+                    }
+                }
+                best[k++] = table;
+            }
+            Arrays.sort(sorted);
+            targets = new int[sorted.length];
+            edges = new int[sorted.length];
+            for (int i = 0; i < sorted.length; i++) {
+                targets[i] = (int) (sorted[i] >>> Integer.SIZE);
+                edges[i] = (int) sorted[i];
+            }
+        }
+        /**
+         * Tables size, estimated.
+         * @return size, bytes.
+         */
+        long size() {
+            long bytes = ARRAY * 3
+                    + (long) Integer.BYTES * (targets.length + edges.length);
+            for (int[] table : best) {
+                bytes += ARRAY + (long) Integer.BYTES * table.length;
+            }
+            return bytes;
+        }
+    }
+}
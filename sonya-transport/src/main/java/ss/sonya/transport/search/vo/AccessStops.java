@@ -0,0 +1,66 @@
+/*
+ * Copyright (C) 2017 ss
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ss.sonya.transport.search.vo;
+
+import java.util.List;
+import ss.sonya.entity.BusStop;
+import ss.sonya.transport.search.Graph;
+
+/**
+ * Access bus stops of search start and end points.
+ * Found once per search: by coalescer for search key, then reused by
+ * search engine, if graph is the same.
+ * @author ss
+ */
+public final class AccessStops {
+    /** Graph, bus stops are found in. */
+    private final Graph graph;
+    /** Bus stops near start point. */
+    private final List<BusStop> start;
+    /** Bus stops near end point. */
+    private final List<BusStop> end;
+    /**
+     * Constructor.
+     * @param pGraph graph, bus stops are found in.
+     * @param pStart bus stops near start point.
+     * @param pEnd bus stops near end point.
+     */
+    public AccessStops(final Graph pGraph, final List<BusStop> pStart,
+            final List<BusStop> pEnd) {
+        graph = pGraph;
+        start = pStart;
+        end = pEnd;
+    }
+    /**
+     * @return graph, bus stops are found in.
+     */
+    public Graph getGraph() {
+        return graph;
+    }
+    /**
+     * @return bus stops near start point.
+     */
+    public List<BusStop> getStart() {
+        return start;
+    }
+    /**
+     * @return bus stops near end point.
+     */
+    public List<BusStop> getEnd() {
+        return end;
+    }
+}
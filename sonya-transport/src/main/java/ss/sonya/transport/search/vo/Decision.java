@@ -17,19 +17,28 @@
  */
 package ss.sonya.transport.search.vo;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import java.util.Collections;
+import java.util.Set;
 import ss.sonya.entity.BusStop;
 
 /**
  * Graph search decision.
+ * Decision is found by BFS once for every way, with candidate start and
+ * end bus stops. Optimal path is created for selected bus stops only.
  * @author ss
  */
 public class Decision {
     /** Path from start to end. */
     private final Integer[] way;
-    /** Start vertex start bus stop. */
+    /** Start vertex start bus stop, null if not selected. */
     private final BusStop s;
-    /** End vertex end bus stop. */
+    /** End vertex end bus stop, null if not selected. */
     private final BusStop e;
+    /** Start vertex start bus stop candidates. */
+    private final Set<BusStop> starts;
+    /** End vertex end bus stop candidates. */
+    private final Set<BusStop> ends;
     /**
      * Constructor.
      * @param pS - start vertex start bus stop.
@@ -41,6 +50,22 @@ public class Decision {
         s = pS;
         e = pE;
         way = pWay;
+        starts = Collections.singleton(pS);
+        ends = Collections.singleton(pE);
+    }
+    /**
+     * Constructor, bus stops are not selected.
+     * @param pStarts - start vertex start bus stop candidates.
+     * @param pEnds - end vertex end bus stop candidates.
+     * @param pWay - path from start vertex to end vertex.
+     */
+    public Decision(final Set<BusStop> pStarts, final Set<BusStop> pEnds,
+            final Integer[] pWay) {
+        s = null;
+        e = null;
+        way = pWay;
+        starts = pStarts;
+        ends = pEnds;
     }
     /**
      * @return the path
@@ -60,13 +85,31 @@ public class Decision {
     public BusStop getE() {
         return e;
     }
+    /**
+     * @return the start bus stop candidates
+     */
+    @JsonIgnore
+    public Set<BusStop> getStarts() {
+        return starts;
+    }
+    /**
+     * @return the end bus stop candidates
+     */
+    @JsonIgnore
+    public Set<BusStop> getEnds() {
+        return ends;
+    }
     @Override
     public String toString() {
         StringBuilder sb = new StringBuilder();
         for (int c : way) {
             sb.append(c).append("#");
         }
-        sb.append(s.getId()).append("#").append(e.getId());
+        if (s != null && e != null) {
+            sb.append(s.getId()).append("#").append(e.getId());
+        } else {
+            sb.append(starts.size()).append("x").append(ends.size());
+        }
         return sb.toString();
     }
 }
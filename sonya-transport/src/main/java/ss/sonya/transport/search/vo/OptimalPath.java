@@ -34,6 +34,8 @@ public class OptimalPath {
     private List<Path> path;
     /** Path ways. */
     private List<List<BusStop>> way;
+    /** Start index of every path way in path bus stops. */
+    private int[] wayStart;
     /** Duration of trip. */
     private Double time;
     /** Distance, km. */
@@ -92,6 +94,18 @@ public class OptimalPath {
     public void setWay(List<List<BusStop>> way) {
         this.way = way;
     }
+    /**
+     * @return the way start indexes
+     */
+    public int[] getWayStart() {
+        return wayStart;
+    }
+    /**
+     * @param wayStart the way start indexes to set
+     */
+    public void setWayStart(int[] wayStart) {
+        this.wayStart = wayStart;
+    }
     /**
      * @return the distance
      */
@@ -0,0 +1,258 @@
+/*
+ * Copyright (C) 2017 ss
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ss.sonya.transport.search.vo;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Search diagnostics.
+ * Filled by search engine in the same pass, if explain mode requested.
+ * BFS counters are merged from parallel tasks.
+ * @author ss
+ */
+public class SearchDiagnostics {
+    /** Start vertices count. */
+    private int startVertices;
+    /** End vertices count. */
+    private int endVertices;
+    /** Reverse search. */
+    private boolean reverseSearch;
+    /** BFS frontier is expanded in parallel. */
+    private boolean parallelFrontier;
+    /** Start vertices skipped, end vertices are unreachable from them. */
+    private int unreachableStarts;
+    /** Vertices of disabled route types or without trips. */
+    private int inactiveVertices;
+    /** Start and end bus stops of vertices, dominated by other stops. */
+    private int dominatedStops;
+    /** Straight paths count. */
+    private int straightPaths;
+    /** Vertices expanded per BFS level. */
+    private long[] expandedPerLevel = new long[0];
+    /** Decisions generated by BFS. */
+    private long decisionsGenerated;
+    /** Decisions discarded as unreal. */
+    private long decisionsDiscarded;
+    /** Optimal paths excluded by disabled route types. */
+    private int disabledFiltered;
+    /** Groups count. */
+    private int groups;
+    /** Duplicates filtered. */
+    private int duplicatesFiltered;
+    /** Optimal paths without schedule. */
+    private int scheduleMisses;
+    /** Phase timings, milliseconds. Key - phase label. */
+    private final Map<String, Double> phases = new LinkedHashMap<>();
+    /**
+     * Merge BFS task counters.
+     * @param expanded vertices expanded per level.
+     * @param generated decisions generated.
+     * @param discarded decisions discarded.
+     */
+    public synchronized void addTraversal(final long[] expanded,
+            final long generated, final long discarded) {
+        if (expandedPerLevel.length < expanded.length) {
+            long[] copy = new long[expanded.length];
+            System.arraycopy(expandedPerLevel, 0, copy, 0,
+                    expandedPerLevel.length);
+            expandedPerLevel = copy;
+        }
+        for (int i = 0; i < expanded.length; i++) {
+            expandedPerLevel[i] += expanded[i];
+        }
+        decisionsGenerated += generated;
+        decisionsDiscarded += discarded;
+    }
+    /**
+     * Record phase timing.
+     * @param phase phase label.
+     * @param millis elapsed time, milliseconds.
+     */
+    public synchronized void addPhase(final String phase,
+            final double millis) {
+        phases.put(phase, millis);
+    }
+    /**
+     * @return the startVertices
+     */
+    public int getStartVertices() {
+        return startVertices;
+    }
+    /**
+     * @param pStartVertices the startVertices to set
+     */
+    public void setStartVertices(int pStartVertices) {
+        startVertices = pStartVertices;
+    }
+    /**
+     * @return the endVertices
+     */
+    public int getEndVertices() {
+        return endVertices;
+    }
+    /**
+     * @param pEndVertices the endVertices to set
+     */
+    public void setEndVertices(int pEndVertices) {
+        endVertices = pEndVertices;
+    }
+    /**
+     * @return the reverseSearch
+     */
+    public boolean isReverseSearch() {
+        return reverseSearch;
+    }
+    /**
+     * @param pReverseSearch the reverseSearch to set
+     */
+    public void setReverseSearch(boolean pReverseSearch) {
+        reverseSearch = pReverseSearch;
+    }
+    /**
+     * @return the parallelFrontier
+     */
+    public boolean isParallelFrontier() {
+        return parallelFrontier;
+    }
+    /**
+     * @param pParallelFrontier the parallelFrontier to set
+     */
+    public void setParallelFrontier(boolean pParallelFrontier) {
+        parallelFrontier = pParallelFrontier;
+    }
+    /**
+     * @return the unreachableStarts
+     */
+    public int getUnreachableStarts() {
+        return unreachableStarts;
+    }
+    /**
+     * @param pUnreachableStarts the unreachableStarts to set
+     */
+    public void setUnreachableStarts(int pUnreachableStarts) {
+        unreachableStarts = pUnreachableStarts;
+    }
+    /**
+     * @return the inactiveVertices
+     */
+    public int getInactiveVertices() {
+        return inactiveVertices;
+    }
+    /**
+     * @param pInactiveVertices the inactiveVertices to set
+     */
+    public void setInactiveVertices(int pInactiveVertices) {
+        inactiveVertices = pInactiveVertices;
+    }
+    /**
+     * @return the dominatedStops
+     */
+    public int getDominatedStops() {
+        return dominatedStops;
+    }
+    /**
+     * @param pDominatedStops the dominatedStops to set
+     */
+    public void setDominatedStops(int pDominatedStops) {
+        dominatedStops = pDominatedStops;
+    }
+    /**
+     * @return the straightPaths
+     */
+    public int getStraightPaths() {
+        return straightPaths;
+    }
+    /**
+     * @param pStraightPaths the straightPaths to set
+     */
+    public void setStraightPaths(int pStraightPaths) {
+        straightPaths = pStraightPaths;
+    }
+    /**
+     * @return the expandedPerLevel
+     */
+    public synchronized long[] getExpandedPerLevel() {
+        return expandedPerLevel.clone();
+    }
+    /**
+     * @return the decisionsGenerated
+     */
+    public synchronized long getDecisionsGenerated() {
+        return decisionsGenerated;
+    }
+    /**
+     * @return the decisionsDiscarded
+     */
+    public synchronized long getDecisionsDiscarded() {
+        return decisionsDiscarded;
+    }
+    /**
+     * @return the disabledFiltered
+     */
+    public int getDisabledFiltered() {
+        return disabledFiltered;
+    }
+    /**
+     * @param pDisabledFiltered the disabledFiltered to set
+     */
+    public void setDisabledFiltered(int pDisabledFiltered) {
+        disabledFiltered = pDisabledFiltered;
+    }
+    /**
+     * @return the groups
+     */
+    public int getGroups() {
+        return groups;
+    }
+    /**
+     * @param pGroups the groups to set
+     */
+    public void setGroups(int pGroups) {
+        groups = pGroups;
+    }
+    /**
+     * @return the duplicatesFiltered
+     */
+    public int getDuplicatesFiltered() {
+        return duplicatesFiltered;
+    }
+    /**
+     * @param pDuplicatesFiltered the duplicatesFiltered to set
+     */
+    public void setDuplicatesFiltered(int pDuplicatesFiltered) {
+        duplicatesFiltered = pDuplicatesFiltered;
+    }
+    /**
+     * @return the scheduleMisses
+     */
+    public int getScheduleMisses() {
+        return scheduleMisses;
+    }
+    /**
+     * @param pScheduleMisses the scheduleMisses to set
+     */
+    public void setScheduleMisses(int pScheduleMisses) {
+        scheduleMisses = pScheduleMisses;
+    }
+    /**
+     * @return the phases
+     */
+    public synchronized Map<String, Double> getPhases() {
+        return new LinkedHashMap<>(phases);
+    }
+}
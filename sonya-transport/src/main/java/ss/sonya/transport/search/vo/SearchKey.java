@@ -0,0 +1,120 @@
+/*
+ * Copyright (C) 2017 ss
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ss.sonya.transport.search.vo;
+
+import java.util.Arrays;
+
+/**
+ * Normalized search key.
+ * Searches with equal keys have equal results, so key can be used
+ * for coalescing of concurrent searches and for result caching.
+ * Start and end points are replaced by nearest bus stops,
+ * search time is replaced by time bucket.
+ * @author ss
+ */
+public final class SearchKey {
+    /** Transport profile ID. */
+    private final Integer profileId;
+    /** Start bus stop IDs, sorted. */
+    private final int[] startStops;
+    /** End bus stop IDs, sorted. */
+    private final int[] endStops;
+    /** Day of week. */
+    private final int day;
+    /** Time bucket. */
+    private final int timeBucket;
+    /** Max transfers. */
+    private final int maxTransfers;
+    /** Max results. */
+    private final int maxResults;
+    /** Disabled route type IDs, sorted. */
+    private final int[] disabledTypes;
+    /** Hash code. */
+    private final int hash;
+    /**
+     * Constructor.
+     * @param pProfileId transport profile ID.
+     * @param pStartStops start bus stop IDs.
+     * @param pEndStops end bus stop IDs.
+     * @param pDay day of week.
+     * @param pTimeBucket time bucket.
+     * @param pMaxTransfers max transfers.
+     * @param pMaxResults max results.
+     * @param pDisabledTypes disabled route type IDs.
+     */
+    public SearchKey(final Integer pProfileId, final int[] pStartStops,
+            final int[] pEndStops, final int pDay, final int pTimeBucket,
+            final int pMaxTransfers, final int pMaxResults,
+            final int[] pDisabledTypes) {
+        profileId = pProfileId;
+        startStops = sorted(pStartStops);
+        endStops = sorted(pEndStops);
+        day = pDay;
+        timeBucket = pTimeBucket;
+        maxTransfers = pMaxTransfers;
+        maxResults = pMaxResults;
+        disabledTypes = sorted(pDisabledTypes);
+        int h = profileId == null ? 0 : profileId.hashCode();
+        h = 31 * h + Arrays.hashCode(startStops);
+        h = 31 * h + Arrays.hashCode(endStops);
+        h = 31 * h + day;
+        h = 31 * h + timeBucket;
+        h = 31 * h + maxTransfers;
+        h = 31 * h + maxResults;
+        hash = 31 * h + Arrays.hashCode(disabledTypes);
+    }
+    /**
+     * Sorted copy.
+     * @param ids IDs.
+     * @return sorted IDs.
+     */
+    private static int[] sorted(final int[] ids) {
+        int[] copy = ids.clone();
+        Arrays.sort(copy);
+        return copy;
+    }
+    @Override
+    public int hashCode() {
+        return hash;
+    }
+    @Override
+    public boolean equals(final Object object) {
+        if (this == object) {
+            return true;
+        }
+        if (!(object instanceof SearchKey)) {
+            return false;
+        }
+        SearchKey other = (SearchKey) object;
+        return hash == other.hash && day == other.day
+                && timeBucket == other.timeBucket
+                && maxTransfers == other.maxTransfers
+                && maxResults == other.maxResults
+                && (profileId == null ? other.profileId == null
+                        : profileId.equals(other.profileId))
+                && Arrays.equals(startStops, other.startStops)
+                && Arrays.equals(endStops, other.endStops)
+                && Arrays.equals(disabledTypes, other.disabledTypes);
+    }
+    @Override
+    public String toString() {
+        return "SearchKey[profile=" + profileId + ", start="
+                + Arrays.toString(startStops) + ", end="
+                + Arrays.toString(endStops) + ", day=" + day + ", bucket="
+                + timeBucket + ", transfers=" + maxTransfers + "]";
+    }
+}
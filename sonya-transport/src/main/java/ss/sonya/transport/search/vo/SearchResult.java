@@ -0,0 +1,63 @@
+/*
+ * Copyright (C) 2017 ss
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ss.sonya.transport.search.vo;
+
+import java.util.List;
+
+/**
+ * Search result with diagnostics.
+ * Returned instead of plain optimal path list in explain mode.
+ * @author ss
+ */
+public class SearchResult {
+    /** Optimal paths. */
+    private final List<OptimalPath> paths;
+    /** Search diagnostics. */
+    private final SearchDiagnostics diagnostics;
+    /** Partial result, search deadline reached. */
+    private final boolean partial;
+    /**
+     * Constructor.
+     * @param pPaths optimal paths.
+     * @param pDiagnostics search diagnostics.
+     * @param pPartial partial result.
+     */
+    public SearchResult(final List<OptimalPath> pPaths,
+            final SearchDiagnostics pDiagnostics, final boolean pPartial) {
+        paths = pPaths;
+        diagnostics = pDiagnostics;
+        partial = pPartial;
+    }
+    /**
+     * @return the paths
+     */
+    public List<OptimalPath> getPaths() {
+        return paths;
+    }
+    /**
+     * @return the diagnostics
+     */
+    public SearchDiagnostics getDiagnostics() {
+        return diagnostics;
+    }
+    /**
+     * @return the partial
+     */
+    public boolean isPartial() {
+        return partial;
+    }
+}
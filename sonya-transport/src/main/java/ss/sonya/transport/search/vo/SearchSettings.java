@@ -17,8 +17,10 @@
  */
 package ss.sonya.transport.search.vo;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import java.util.List;
 import ss.sonya.entity.RouteProfile;
+import ss.sonya.transport.search.SearchDeadline;
 
 /**
  * Search settings.
@@ -47,6 +49,16 @@ public class SearchSettings {
     private List<RouteProfile> disabledRouteTypes;
     /** Use current day and time for calculate schedule. */
     private boolean currentTimeAndDate;
+    /** Explain mode, collect search diagnostics. */
+    private boolean explain;
+    /** Search diagnostics, filled by search engine in explain mode. */
+    private SearchDiagnostics diagnostics;
+    /** Search timeout, milliseconds. Zero - server default. */
+    private long timeout;
+    /** Search deadline. */
+    private SearchDeadline deadline;
+    /** Access bus stops, found before search, may be null. */
+    private AccessStops accessStops;
     /**
      * @return the sLat
      */
@@ -179,4 +191,67 @@ public class SearchSettings {
     public void setCurrentTimeAndDate(boolean pCurrentTimeAndDate) {
         currentTimeAndDate = pCurrentTimeAndDate;
     }
+    /**
+     * @return the explain
+     */
+    public boolean isExplain() {
+        return explain;
+    }
+    /**
+     * @param pExplain the explain to set
+     */
+    public void setExplain(boolean pExplain) {
+        explain = pExplain;
+    }
+    /**
+     * @return the diagnostics
+     */
+    @JsonIgnore
+    public SearchDiagnostics getDiagnostics() {
+        return diagnostics;
+    }
+    /**
+     * @param pDiagnostics the diagnostics to set
+     */
+    public void setDiagnostics(SearchDiagnostics pDiagnostics) {
+        diagnostics = pDiagnostics;
+    }
+    /**
+     * @return the timeout
+     */
+    public long getTimeout() {
+        return timeout;
+    }
+    /**
+     * @param pTimeout the timeout to set
+     */
+    public void setTimeout(long pTimeout) {
+        timeout = pTimeout;
+    }
+    /**
+     * @return the deadline
+     */
+    @JsonIgnore
+    public SearchDeadline getDeadline() {
+        return deadline;
+    }
+    /**
+     * @param pDeadline the deadline to set
+     */
+    public void setDeadline(SearchDeadline pDeadline) {
+        deadline = pDeadline;
+    }
+    /**
+     * @return the accessStops
+     */
+    @JsonIgnore
+    public AccessStops getAccessStops() {
+        return accessStops;
+    }
+    /**
+     * @param pAccessStops the accessStops to set
+     */
+    public void setAccessStops(AccessStops pAccessStops) {
+        accessStops = pAccessStops;
+    }
 }
@@ -0,0 +1,97 @@
+/*
+ * Copyright (C) 2017 ss
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ss.sonya.transport.search.vo;
+
+import java.util.Date;
+
+/**
+ * Slow search query.
+ * Captured search settings with graph version, used for replay.
+ * @author ss
+ */
+public class SlowQuery {
+    /** Capture date. */
+    private Date date;
+    /** Graph version. */
+    private long graphVersion;
+    /** Search latency, milliseconds. */
+    private double elapsed;
+    /** Results count. */
+    private int results;
+    /** Search settings. */
+    private SearchSettings settings;
+    /**
+     * @return the date
+     */
+    public Date getDate() {
+        return date;
+    }
+    /**
+     * @param pDate the date to set
+     */
+    public void setDate(Date pDate) {
+        date = pDate;
+    }
+    /**
+     * @return the graphVersion
+     */
+    public long getGraphVersion() {
+        return graphVersion;
+    }
+    /**
+     * @param pGraphVersion the graphVersion to set
+     */
+    public void setGraphVersion(long pGraphVersion) {
+        graphVersion = pGraphVersion;
+    }
+    /**
+     * @return the elapsed
+     */
+    public double getElapsed() {
+        return elapsed;
+    }
+    /**
+     * @param pElapsed the elapsed to set
+     */
+    public void setElapsed(double pElapsed) {
+        elapsed = pElapsed;
+    }
+    /**
+     * @return the results
+     */
+    public int getResults() {
+        return results;
+    }
+    /**
+     * @param pResults the results to set
+     */
+    public void setResults(int pResults) {
+        results = pResults;
+    }
+    /**
+     * @return the settings
+     */
+    public SearchSettings getSettings() {
+        return settings;
+    }
+    /**
+     * @param pSettings the settings to set
+     */
+    public void setSettings(SearchSettings pSettings) {
+        settings = pSettings;
+    }
+}
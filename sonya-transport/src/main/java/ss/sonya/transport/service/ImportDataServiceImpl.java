@@ -35,16 +35,20 @@ import ss.sonya.entity.RouteProfile;
 import ss.sonya.entity.TransportProfile;
 import ss.sonya.entity.Trip;
 import ss.sonya.inject.DataService;
+import ss.sonya.inject.SonyaMetrics;
 import ss.sonya.transport.iface.ImportData;
 import ss.sonya.transport.api.ImportDataSerializer;
 import ss.sonya.transport.api.ImportDataService;
 import ss.sonya.transport.api.TransportDataService;
 import ss.sonya.transport.component.ImportDataEvent;
+import ss.sonya.transport.component.SearchWarmup;
 import ss.sonya.transport.constants.ImportDataEventType;
 import ss.sonya.transport.constants.ImportInfoKey;
 import ss.sonya.transport.dataparser.DataParser;
 import ss.sonya.transport.exception.EmptyFieldException;
 import ss.sonya.transport.exception.ImportDataException;
+import ss.sonya.transport.jfr.DataParseEvent;
+import ss.sonya.transport.jfr.ImportStageEvent;
 import ss.sonya.transport.iface.ExternalRef;
 import ss.sonya.transport.search.GraphConstructor;
 
@@ -57,6 +61,10 @@ class ImportDataServiceImpl implements ImportDataService {
     /** Logger. */
     private static final Logger LOG = Logger
             .getLogger(ImportDataService.class);
+    /** Metric label, transport profile. */
+    private static final String PROFILE = "profile";
+    /** Metric label, route profile. */
+    private static final String ROUTE_PROFILE = "route_profile";
     /** Data serializer. */
     @Autowired
     private ImportDataSerializer serializer;
@@ -66,9 +74,15 @@ class ImportDataServiceImpl implements ImportDataService {
     /** Transport service. */
     @Autowired
     private TransportDataService transportService;
+    /** Metrics. */
+    @Autowired
+    private SonyaMetrics metrics;
     /** Graph constructor. */
     @Autowired
     private GraphConstructor graphConstructor;
+    /** Search warm-up. */
+    @Autowired
+    private SearchWarmup searchWarmup;
     /** All parsers. */
     @Autowired
     private List<DataParser> parsers;
@@ -79,46 +93,70 @@ class ImportDataServiceImpl implements ImportDataService {
         LOG.info("==========> start import, transport profile [" + tpId
                 + "], route profile [" + rpId + "]");
         List<ImportDataEvent> events = new ArrayList<>();
+        String tp = String.valueOf(tpId);
+        String rp = String.valueOf(rpId);
         try {
+            StageRecorder stage = new StageRecorder(tpId, rpId, isPersist);
             TransportProfile tProfile = dataService
                     .findById(tpId, TransportProfile.class);
             RouteProfile rProfile = dataService
                     .findById(rpId, RouteProfile.class);
             ImportData data = serializer.deserialize(file,
                     tProfile, rProfile);
+            stage.record("deserialize", file.length, 0);
             // ---------------------- bus stops -------------------------------
             List<BusStop> busstops = data.busstops();
             if (busstops != null && !busstops.isEmpty()) {
+                int n = events.size();
                 events.addAll(handleBusStops(busstops, isPersist, tpId));
+                stage.record("busstops", busstops.size(), events.size() - n);
             }
             // ---------------------- routes ----------------------------------
             List<Route> routes = data.routes();
             if (routes != null && !routes.isEmpty()) {
+                int n = events.size();
                 events.addAll(handleRoutes(routes, isPersist, tpId));
+                stage.record("routes", routes.size(), events.size() - n);
             }
             // ---------------------- paths -----------------------------------
             List<Path> paths = data.paths();
             if (paths != null && !paths.isEmpty()) {
+                int n = events.size();
                 events.addAll(handlePaths(paths, busstops, isPersist, tpId));
+                stage.record("paths", paths.size(), events.size() - n);
             }
             // ---------------------- schedule --------------------------------
             Map<Path, List<Trip>> sch = data.schedule();
             if (sch != null && !sch.isEmpty()) {
+                int n = events.size();
                 events.addAll(handleSchedule(sch, isPersist, tpId));
+                stage.record("schedule", sch.size(), events.size() - n);
             }
             // ---------------------- orphan routes & paths -------------------
+            int n = events.size();
             events.addAll(deleteOrphanRoutesAndPaths(
                     paths, routes, tpId, rpId, isPersist));
+            stage.record("orphans", 0, events.size() - n);
             if (isPersist) {
                 rProfile.setLastUpdate(new Date());
                 dataService.update(rProfile);
                 if (reloadGraph) {
-                    graphConstructor.buildGraph(tProfile);
+                    graphConstructor.registerGraph(tProfile,
+                            graphConstructor.buildGraph(tProfile));
+                    searchWarmup.warmup(tProfile);
+                    stage.record("graph", 0, 0);
                 }
             }
+            for (ImportDataEvent event : events) {
+                metrics.increment(TransportConst.METRIC_IMPORT_EVENTS, 1,
+                        PROFILE, tp, ROUTE_PROFILE, rp,
+                        "type", event.getType().name());
+            }
             LOG.info("==========> finish import");
             return events;
         } catch (Exception e) {
+            metrics.increment(TransportConst.METRIC_IMPORT_ERRORS, 1,
+                    PROFILE, tp, ROUTE_PROFILE, rp);
             LOG.error("import data error!", e);
             throw new ImportDataException("import data error!", e);
         }
@@ -140,7 +178,8 @@ class ImportDataServiceImpl implements ImportDataService {
                     if (parserName != null
                             && parserMap.containsKey(parserName)) {
                         try {
-                            ImportData data = parserMap.get(parserName).parse();
+                            ImportData data = parse(parserMap.get(parserName),
+                                    profile, routeType);
                             byte[] binData = serializer.serialize(data);
                             List<ImportDataEvent> events = this
                                     .importData(binData, profile.getId(),
@@ -172,6 +211,37 @@ class ImportDataServiceImpl implements ImportDataService {
         }
     }
 // ================================== PRIVATE =================================
+    /**
+     * Run data parser.
+     * @param parser data parser.
+     * @param profile transport profile.
+     * @param routeType route profile.
+     * @return import data.
+     * @throws Exception parser error.
+     */
+    private ImportData parse(final DataParser parser,
+            final TransportProfile profile, final RouteProfile routeType)
+            throws Exception {
+        long start = System.nanoTime();
+        DataParseEvent event = new DataParseEvent();
+        event.begin();
+        ImportData data = parser.parse();
+        metrics.observeSince(TransportConst.METRIC_IMPORT, start,
+                PROFILE, String.valueOf(profile.getId()),
+                ROUTE_PROFILE, String.valueOf(routeType.getId()),
+                "stage", "parse");
+        if (event.shouldCommit()) {
+            event.parser = parser.name();
+            event.busstops = data.busstops() == null ? 0
+                    : data.busstops().size();
+            event.routes = data.routes() == null ? 0 : data.routes().size();
+            event.paths = data.paths() == null ? 0 : data.paths().size();
+            event.schedule = data.schedule() == null ? 0
+                    : data.schedule().size();
+            event.commit();
+        }
+        return data;
+    }
     /**
      * Delete orphan paths & routes.
      * @param paths actual paths.
@@ -590,4 +660,62 @@ class ImportDataServiceImpl implements ImportDataService {
         });
         return map;
     }
+    /**
+     * Import stage recorder.
+     * Records stage latency into metrics and flight recorder.
+     */
+    private final class StageRecorder {
+        /** Transport profile ID. */
+        private final Integer tpId;
+        /** Route profile ID. */
+        private final Integer rpId;
+        /** Persist changes. */
+        private final boolean isPersist;
+        /** Current stage start time, nanoseconds. */
+        private long start;
+        /** Current stage event. */
+        private ImportStageEvent event;
+        /**
+         * Constructor, starts first stage.
+         * @param pTpId transport profile ID.
+         * @param pRpId route profile ID.
+         * @param persist persist changes.
+         */
+        StageRecorder(final Integer pTpId, final Integer pRpId,
+                final boolean persist) {
+            tpId = pTpId;
+            rpId = pRpId;
+            isPersist = persist;
+            next();
+        }
+        /**
+         * Record current stage and start next.
+         * @param stage stage name.
+         * @param items stage input items.
+         * @param produced events, produced by stage.
+         */
+        void record(final String stage, final int items, final int produced) {
+            metrics.observeSince(TransportConst.METRIC_IMPORT, start,
+                    PROFILE, String.valueOf(tpId),
+                    ROUTE_PROFILE, String.valueOf(rpId), "stage", stage);
+            if (event.shouldCommit()) {
+                event.profileId = tpId;
+                event.routeProfileId = rpId;
+                event.stage = stage;
+                event.items = items;
+                event.events = produced;
+                event.persist = isPersist;
+                event.commit();
+            }
+            next();
+        }
+        /**
+         * Start next stage.
+         */
+        private void next() {
+            start = System.nanoTime();
+            event = new ImportStageEvent();
+            event.begin();
+        }
+    }
 }
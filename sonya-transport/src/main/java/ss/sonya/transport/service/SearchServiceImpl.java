@@ -0,0 +1,164 @@
+/*
+ * Copyright (C) 2017 ss
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ss.sonya.transport.service;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import javax.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import ss.sonya.configuration.SonyaConfig;
+import ss.sonya.constants.SonyaProperty;
+import ss.sonya.transport.api.SearchService;
+import ss.sonya.transport.component.SearchAdmission;
+import ss.sonya.transport.component.SearchCoalescer;
+import ss.sonya.transport.component.SearchEngineRegistry;
+import ss.sonya.transport.component.SearchPool;
+import ss.sonya.transport.component.SlowQueryLog;
+import ss.sonya.transport.constants.GraphState;
+import ss.sonya.transport.exception.SearchRejectedException;
+import ss.sonya.transport.search.Graph;
+import ss.sonya.transport.search.GraphConstructor;
+import ss.sonya.transport.search.SearchDeadline;
+import ss.sonya.transport.search.SearchEngine;
+import ss.sonya.transport.search.vo.OptimalPath;
+import ss.sonya.transport.search.vo.SearchSettings;
+import ss.sonya.transport.search.vo.SlowQuery;
+
+/**
+ * Search service implementation.
+ * @author ss
+ */
+@Service
+class SearchServiceImpl implements SearchService {
+    /** Default search timeout, milliseconds. */
+    private static final int DEFAULT_TIMEOUT = 10000;
+    /** Retry after, while evicted graph is loading, seconds. */
+    private static final int LOADING_RETRY_AFTER = 5;
+    /** Search engines. */
+    @Autowired
+    private SearchEngineRegistry engines;
+    /** Graph constructor. */
+    @Autowired
+    private GraphConstructor graphConstructor;
+    /** Slow query log. */
+    @Autowired
+    private SlowQueryLog slowQueryLog;
+    /** Search admission control. */
+    @Autowired
+    private SearchAdmission admission;
+    /** Search coalescing. */
+    @Autowired
+    private SearchCoalescer coalescer;
+    /** Search pool. */
+    @Autowired
+    private SearchPool pool;
+    /** Search timeout, milliseconds. */
+    private long timeout;
+    /**
+     * Initialization.
+     */
+    @PostConstruct
+    protected void init() {
+        timeout = SonyaConfig.settingI(SonyaProperty.SEARCH_TIMEOUT_MS,
+                DEFAULT_TIMEOUT);
+    }
+    @Override
+    public List<OptimalPath> searchRoutes(final SearchSettings settings)
+            throws Exception {
+        if (settings.getDeadline() == null) {
+            // client timeout is limited by server timeout
+            settings.setDeadline(new SearchDeadline(settings.getTimeout() > 0
+                    ? Math.min(settings.getTimeout(), timeout) : timeout));
+        }
+        return search(settings, true);
+    }
+    /**
+     * Run search and record it in slow query log.
+     * @param settings search settings, deadline is set.
+     * @param coalesce share computation with identical searches.
+     * @return search result.
+     * @throws Exception search error.
+     */
+    private List<OptimalPath> search(final SearchSettings settings,
+            final boolean coalesce) throws Exception {
+        Graph graph = graphConstructor.findGraph(settings.getProfileId());
+        long start = System.nanoTime();
+        SearchEngine engine = engines.select(settings);
+        List<OptimalPath> result = coalesce
+                ? coalescer.search(settings, engine) : engine.search(settings);
+        slowQueryLog.record(settings, graph == null ? 0 : graph.getVersion(),
+                System.nanoTime() - start, result.size());
+        return result;
+    }
+    @Override
+    public CompletableFuture<List<OptimalPath>> searchRoutesAsync(
+            final SearchSettings settings, final String client) {
+        SearchDeadline deadline = new SearchDeadline(settings.getTimeout() > 0
+                ? Math.min(settings.getTimeout(), timeout) : timeout);
+        settings.setDeadline(deadline);
+        GraphState state = graphConstructor.getState(settings.getProfileId());
+        if (state == GraphState.EVICTED || state == GraphState.LOADING) {
+            // search thread is not blocked by graph loading
+            graphConstructor.loadGraph(settings.getProfileId());
+            CompletableFuture<List<OptimalPath>> rejected =
+                    new CompletableFuture<>();
+            rejected.completeExceptionally(new SearchRejectedException(
+                    "graph is loading",
+                    SearchRejectedException.SERVICE_UNAVAILABLE,
+                    LOADING_RETRY_AFTER));
+            return rejected;
+        }
+        // identical searches wait for leader without permits
+        return coalescer.searchAsync(settings, s -> admitted(s, client));
+    }
+    /**
+     * Admit search and run it in search pool.
+     * @param settings search settings, deadline is set.
+     * @param client client key.
+     * @return search result.
+     */
+    private CompletableFuture<List<OptimalPath>> admitted(
+            final SearchSettings settings, final String client) {
+        SearchDeadline deadline = settings.getDeadline();
+        // time in queue is a part of search time
+        CompletableFuture<Void> permit = admission.admit(client,
+                deadline.remaining());
+        // search cancelled while waiting in queue
+        deadline.register(permit);
+        permit.whenComplete((v, e) -> {
+            if (permit.isCancelled()) {
+                admission.abandon(permit);
+            }
+        });
+        return permit.thenApplyAsync(v -> {
+            long start = System.nanoTime();
+            try {
+                return search(settings, false);
+            } catch (Exception e) {
+                throw new CompletionException(e);
+            } finally {
+                admission.release(System.nanoTime() - start);
+            }
+        }, pool.requests());
+    }
+    @Override
+    public List<SlowQuery> getSlowQueries() {
+        return slowQueryLog.snapshot();
+    }
+}
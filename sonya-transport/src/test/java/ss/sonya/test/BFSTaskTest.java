@@ -0,0 +1,136 @@
+/*
+ * Copyright (C) 2017 ss
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ss.sonya.test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+import ss.sonya.entity.BusStop;
+import ss.sonya.test.fixture.InMemoryTransportConfig;
+import ss.sonya.test.fixture.SearchFixtures;
+import ss.sonya.test.fixture.SyntheticNetwork;
+import ss.sonya.test.fixture.SyntheticNetworkGenerator;
+import ss.sonya.test.fixture.SyntheticNetworkSettings;
+import ss.sonya.transport.search.BFSTask;
+import ss.sonya.transport.search.Graph;
+import ss.sonya.transport.search.GraphConstructor;
+import ss.sonya.transport.search.MultiSourceBFSTask;
+import ss.sonya.transport.search.ParallelBFSTask;
+import ss.sonya.transport.search.SearchDeadline;
+import ss.sonya.transport.search.vo.OptimalPath;
+import ss.sonya.transport.search.vo.SearchDiagnostics;
+
+/**
+ * Parallel and multi-source BFS tasks test, database not required.
+ * @author ss
+ */
+@RunWith(SpringJUnit4ClassRunner.class)
+@ContextConfiguration(classes = InMemoryTransportConfig.class)
+public class BFSTaskTest {
+    @Autowired
+    private GraphConstructor graphConstructor;
+    @Test
+    public void testParallelFrontier() throws Exception {
+        // frontier is wide enough for several chunks
+        SyntheticNetworkSettings city = SearchFixtures.mediumCity(6);
+        SyntheticNetwork network = new SyntheticNetworkGenerator(city)
+                .generate();
+        Graph graph = network.toGraph(graphConstructor);
+        Map<Integer, Set<BusStop>> start = new HashMap<>();
+        Map<Integer, Set<BusStop>> end = new HashMap<>();
+        for (int v = 0; v < graph.vertices(); v++) {
+            List<BusStop> way = graph.getPath(v).getBusstops();
+            Set<BusStop> stops = new HashSet<>();
+            if (v < 2) {
+                stops.add(way.get(0));
+                start.put(v, stops);
+            } else if (v % 7 == 0) {
+                stops.add(way.get(way.size() - 1));
+                end.put(v, stops);
+            }
+        }
+        List<Integer> criteria = new ArrayList<>(start.keySet());
+        SearchDiagnostics sequential = new SearchDiagnostics();
+        SearchDiagnostics parallel = new SearchDiagnostics();
+        ForkJoinPool workers = new ForkJoinPool(4);
+        try {
+            List<OptimalPath> expected = new BFSTask(criteria, end, start,
+                    graph, 3, false, sequential, new SearchDeadline(0))
+                    .call();
+            List<OptimalPath> actual = new ParallelBFSTask(criteria, end,
+                    start, graph, 3, false, parallel, new SearchDeadline(0),
+                    workers, 1).call();
+            Assert.assertFalse(expected.isEmpty());
+            Assert.assertEquals(expected.toString(), actual.toString());
+            Assert.assertArrayEquals(sequential.getExpandedPerLevel(),
+                    parallel.getExpandedPerLevel());
+        } finally {
+            workers.shutdown();
+        }
+    }
+    @Test
+    public void testMultiSource() throws Exception {
+        SyntheticNetworkSettings city = SearchFixtures.mediumCity(6);
+        SyntheticNetwork network = new SyntheticNetworkGenerator(city)
+                .generate();
+        Graph graph = network.toGraph(graphConstructor);
+        Map<Integer, Set<BusStop>> start = new HashMap<>();
+        Map<Integer, Set<BusStop>> end = new HashMap<>();
+        for (int v = 0; v < graph.vertices(); v++) {
+            List<BusStop> way = graph.getPath(v).getBusstops();
+            Set<BusStop> stops = new HashSet<>();
+            if (v % 11 == 0) {
+                stops.add(way.get(0));
+                start.put(v, stops);
+            } else if (v % 7 == 1) {
+                stops.add(way.get(way.size() - 1));
+                end.put(v, stops);
+            }
+        }
+        for (boolean reverse : new boolean[] {false, true}) {
+            // reverse search starts from end vertices
+            Map<Integer, Set<BusStop>> from = reverse ? end : start;
+            Map<Integer, Set<BusStop>> to = reverse ? start : end;
+            List<Integer> criteria = new ArrayList<>(from.keySet());
+            SearchDiagnostics sequential = new SearchDiagnostics();
+            SearchDiagnostics multi = new SearchDiagnostics();
+            List<OptimalPath> expected = new BFSTask(criteria, to, from,
+                    graph, 3, reverse, sequential, new SearchDeadline(0))
+                    .call();
+            List<OptimalPath> actual = new MultiSourceBFSTask(criteria, to,
+                    from, graph, 3, reverse, multi, new SearchDeadline(0))
+                    .call();
+            Assert.assertTrue(criteria.size() > 1);
+            Assert.assertFalse(expected.isEmpty());
+            // order inside one level may differ
+            Assert.assertEquals(SearchFixtures.sorted(expected),
+                    SearchFixtures.sorted(actual));
+            Assert.assertArrayEquals(sequential.getExpandedPerLevel(),
+                    multi.getExpandedPerLevel());
+        }
+    }
+}
@@ -0,0 +1,125 @@
+/*
+ * Copyright (C) 2017 ss
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ss.sonya.test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+import ss.sonya.entity.BusStop;
+import ss.sonya.entity.Path;
+import ss.sonya.entity.Trip;
+import ss.sonya.test.fixture.InMemoryTransportConfig;
+import ss.sonya.test.fixture.SearchFixtures;
+import ss.sonya.test.fixture.SyntheticNetwork;
+import ss.sonya.test.fixture.SyntheticNetworkGenerator;
+import ss.sonya.transport.search.Graph;
+import ss.sonya.transport.search.GraphConstructor;
+import ss.sonya.transport.search.SearchEngine;
+import ss.sonya.transport.search.vo.OptimalPath;
+import ss.sonya.transport.search.vo.SearchSettings;
+
+/**
+ * Equivalent paths test, database not required.
+ * @author ss
+ */
+@RunWith(SpringJUnit4ClassRunner.class)
+@ContextConfiguration(classes = InMemoryTransportConfig.class)
+public class EquivalentPathsTest {
+    @Autowired
+    private GraphConstructor graphConstructor;
+    @Autowired
+    private SearchEngine searchEngine;
+    @Test
+    public void testEquivalentPaths() throws Exception {
+        SyntheticNetwork base = new SyntheticNetworkGenerator(
+                SearchFixtures.smallCity(3)).generate();
+        List<Path> paths = new ArrayList<>(base.getPaths());
+        Map<Path, List<Trip>> schedule = new HashMap<>(base.getSchedule());
+        int id = paths.size() * 10;
+        Map<Integer, Integer> copies = new HashMap<>();
+        for (Path path : base.getPaths()) {
+            if (path.getId() % 3 == 0) {
+                Path copy = new Path();
+                copy.setId(++id);
+                copies.put(path.getId(), id);
+                copy.setRoute(path.getRoute());
+                copy.setDescription(path.getDescription());
+                copy.setBusstops(path.getBusstops());
+                copy.setTransportProfile(path.getTransportProfile());
+                paths.add(copy);
+                if (schedule.containsKey(path)) {
+                    schedule.put(copy, schedule.get(path));
+                }
+            }
+        }
+        SyntheticNetwork network = new SyntheticNetwork(base.getProfile(),
+                base.getBusstops(), base.getRoutes(), paths, schedule);
+        List<BusStop> last = paths.get(base.getPaths().size() - 1)
+                .getBusstops();
+        List<BusStop> way = new ArrayList<>();
+        way.add(paths.get(0).getBusstops().get(0));
+        way.add(last.get(last.size() - 1));
+        Graph graph = network.toGraph(graphConstructor);
+        Assert.assertTrue(graph.hasEquivalentPaths());
+        Assert.assertEquals(base.getPaths().size(), graph.vertices());
+        SearchSettings s = SearchFixtures.allResults(network, way, 1);
+        List<OptimalPath> result = searchEngine.search(s);
+        Assert.assertFalse(result.isEmpty());
+        // result is expanded to every equivalent path
+        List<String> routes = SearchFixtures.routes(result);
+        int expanded = 0;
+        for (OptimalPath op : result) {
+            for (int i = 0; i < op.getPath().size(); i++) {
+                Integer copy = copies.get(op.getPath().get(i).getId());
+                if (copy != null) {
+                    OptimalPath other = new OptimalPath();
+                    List<Path> otherPaths = new ArrayList<>(op.getPath());
+                    otherPaths.set(i, graph.equivalentPaths(
+                            op.getPath().get(i)).get(1));
+                    Assert.assertEquals(copy, otherPaths.get(i).getId());
+                    other.setPath(otherPaths);
+                    other.setWay(op.getWay());
+                    other.setTime(op.getTime());
+                    Assert.assertTrue(routes.contains(SearchFixtures.routes(
+                            Collections.singletonList(other)).get(0)));
+                    expanded++;
+                }
+            }
+        }
+        Assert.assertTrue(expanded > 0);
+        // variants are expanded only from best results
+        s = SearchFixtures.settings(network, way);
+        List<OptimalPath> best = searchEngine.search(s);
+        Assert.assertEquals(s.getMaxResults(), best.size());
+        Assert.assertEquals(result.get(0).toString(), best.get(0).toString());
+        try {
+            graphConstructor.setCollapsePaths(false);
+            graph = network.toGraph(graphConstructor);
+        } finally {
+            graphConstructor.setCollapsePaths(true);
+        }
+        Assert.assertEquals(paths.size(), graph.vertices());
+    }
+}
@@ -0,0 +1,160 @@
+/*
+ * Copyright (C) 2017 ss
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ss.sonya.test;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+import ss.sonya.entity.BusStop;
+import ss.sonya.entity.TransportProfile;
+import ss.sonya.inject.SonyaMetrics;
+import ss.sonya.test.fixture.InMemoryTransportConfig;
+import ss.sonya.test.fixture.SearchFixtures;
+import ss.sonya.test.fixture.SyntheticNetwork;
+import ss.sonya.test.fixture.SyntheticNetworkGenerator;
+import ss.sonya.test.fixture.SyntheticNetworkSettings;
+import ss.sonya.transport.component.SearchCoalescer;
+import ss.sonya.transport.constants.GraphState;
+import ss.sonya.transport.constants.TransportConst;
+import ss.sonya.transport.search.Graph;
+import ss.sonya.transport.search.GraphConstructor;
+import ss.sonya.transport.search.SearchDeadline;
+import ss.sonya.transport.search.SearchEngine;
+import ss.sonya.transport.search.vo.SearchSettings;
+
+/**
+ * Graph memory budget test, database not required.
+ * @author ss
+ */
+@RunWith(SpringJUnit4ClassRunner.class)
+@ContextConfiguration(classes = InMemoryTransportConfig.class)
+public class GraphEvictionTest {
+    @Autowired
+    private GraphConstructor graphConstructor;
+    @Autowired
+    private SearchEngine searchEngine;
+    @Autowired
+    private SonyaMetrics metrics;
+    @Autowired
+    private SearchCoalescer coalescer;
+    @Test
+    public void testGraphEviction() throws Exception {
+        List<SyntheticNetwork> networks = new ArrayList<>();
+        for (int id = 101; id <= 103; id++) {
+            SyntheticNetworkSettings settings = SearchFixtures.smallCity(3);
+            settings.setProfileId(id);
+            networks.add(new SyntheticNetworkGenerator(settings).generate());
+        }
+        Graph graph = networks.get(0).toGraph(graphConstructor);
+        try {
+            graphConstructor.setMemoryBudget(graph.footprint() * 5 / 2);
+            networks.get(1).toGraph(graphConstructor);
+            Assert.assertSame(graph, graphConstructor.findGraph(101));
+            networks.get(2).toGraph(graphConstructor);
+            // least recently searched graph is evicted
+            Assert.assertEquals(GraphState.READY,
+                    graphConstructor.getState(101));
+            Assert.assertEquals(GraphState.EVICTED,
+                    graphConstructor.getState(102));
+            Assert.assertEquals(GraphState.READY,
+                    graphConstructor.getState(103));
+            Assert.assertNull(graphConstructor.peekGraph(102));
+            Assert.assertTrue(graphConstructor.getResidentBytes()
+                    <= graph.footprint() * 5 / 2);
+            Assert.assertTrue(metrics.export().contains(
+                    TransportConst.METRIC_GRAPH_MEMORY
+                    + "{profile=\"102\"} 0.0"));
+            // evicted graph is not loaded for coalescing key
+            List<BusStop> way = networks.get(1).getPaths().get(0)
+                    .getBusstops();
+            SearchSettings s = SearchFixtures.settings(networks.get(1), way);
+            s.setDeadline(new SearchDeadline(0));
+            coalescer.searchAsync(s, x -> CompletableFuture.completedFuture(
+                    new ArrayList<>())).get(10, TimeUnit.SECONDS);
+            Assert.assertNull(s.getAccessStops());
+            Assert.assertEquals(GraphState.EVICTED,
+                    graphConstructor.getState(102));
+            // evicted graph is loaded on search
+            Assert.assertFalse(searchEngine.search(
+                    SearchFixtures.settings(networks.get(1), way)).isEmpty());
+            Assert.assertEquals(GraphState.READY,
+                    graphConstructor.getState(102));
+            Assert.assertEquals(GraphState.EVICTED,
+                    graphConstructor.getState(101));
+            // lazily built structures are added to footprint
+            Graph loaded = graphConstructor.peekGraph(102);
+            loaded.reverseAdjacency();
+            loaded.transferIndex().transfer(0, loaded.target(0, 0), -1);
+            Assert.assertEquals(loaded.footprint(),
+                    graphConstructor.getResidentBytes()
+                    - graphConstructor.peekGraph(103).footprint());
+            Assert.assertTrue(metrics.export().contains(
+                    TransportConst.METRIC_GRAPH_MEMORY + "{profile=\"102\"} "
+                    + (double) loaded.footprint()));
+        } finally {
+            graphConstructor.setMemoryBudget(0);
+        }
+    }
+    @Test
+    public void testStartupBudget() throws Exception {
+        List<SyntheticNetwork> networks = new ArrayList<>();
+        Map<TransportProfile, Callable<Graph>> loaders =
+                new LinkedHashMap<>();
+        for (int id = 104; id <= 106; id++) {
+            SyntheticNetworkSettings settings = SearchFixtures.smallCity(3);
+            settings.setProfileId(id);
+            SyntheticNetwork network =
+                    new SyntheticNetworkGenerator(settings).generate();
+            networks.add(network);
+            loaders.put(network.getProfile(),
+                    network.loader(graphConstructor));
+        }
+        long footprint = networks.get(0).loader(graphConstructor).call()
+                .footprint();
+        try {
+            graphConstructor.setMemoryBudget(footprint * 5 / 2);
+            graphConstructor.registerGraphs(loaders);
+            // graphs are built while they fit memory budget
+            Assert.assertEquals(GraphState.READY,
+                    graphConstructor.getState(104));
+            Assert.assertEquals(GraphState.READY,
+                    graphConstructor.getState(105));
+            Assert.assertEquals(GraphState.EVICTED,
+                    graphConstructor.getState(106));
+            Assert.assertNull(graphConstructor.peekGraph(106));
+            // graph is built on first search
+            List<BusStop> way = networks.get(2).getPaths().get(0)
+                    .getBusstops();
+            Assert.assertFalse(searchEngine.search(
+                    SearchFixtures.settings(networks.get(2), way)).isEmpty());
+            Assert.assertEquals(GraphState.READY,
+                    graphConstructor.getState(106));
+        } finally {
+            graphConstructor.setMemoryBudget(0);
+        }
+    }
+}
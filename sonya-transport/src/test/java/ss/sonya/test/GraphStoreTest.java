@@ -0,0 +1,104 @@
+/*
+ * Copyright (C) 2017 ss
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ss.sonya.test;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+import ss.sonya.entity.BusStop;
+import ss.sonya.test.fixture.InMemoryTransportConfig;
+import ss.sonya.test.fixture.SearchFixtures;
+import ss.sonya.test.fixture.SyntheticNetwork;
+import ss.sonya.test.fixture.SyntheticNetworkGenerator;
+import ss.sonya.transport.search.Graph;
+import ss.sonya.transport.search.GraphConstructor;
+import ss.sonya.transport.search.SearchEngine;
+import ss.sonya.transport.search.vo.SearchSettings;
+
+/**
+ * Off-heap graph store test, database not required.
+ * @author ss
+ */
+@RunWith(SpringJUnit4ClassRunner.class)
+@ContextConfiguration(classes = InMemoryTransportConfig.class)
+public class GraphStoreTest {
+    @Autowired
+    private GraphConstructor graphConstructor;
+    @Autowired
+    private SearchEngine searchEngine;
+    @Test
+    public void testGraphStore() throws Exception {
+        SyntheticNetwork network = new SyntheticNetworkGenerator(
+                SearchFixtures.smallCity(4)).generate();
+        Graph heap = network.toGraph(graphConstructor);
+        List<BusStop> way = SearchFixtures.acrossCity(network);
+        SearchSettings s = SearchFixtures.allResults(network, way, 2);
+        List<String> expected = SearchFixtures.routes(searchEngine.search(s));
+        Assert.assertFalse(expected.isEmpty());
+        File dir = new File(System.getProperty("java.io.tmpdir"));
+        for (File storeDir : Arrays.asList(null, dir)) {
+            Graph graph;
+            try {
+                graphConstructor.setOffHeapVertices(1);
+                graphConstructor.setOffHeapDir(storeDir);
+                graph = network.toGraph(graphConstructor);
+            } finally {
+                graphConstructor.setOffHeapVertices(0);
+                graphConstructor.setOffHeapDir(null);
+            }
+            Assert.assertNotNull(graph.getStore());
+            Assert.assertEquals(storeDir != null,
+                    graph.getStore().isMapped());
+            Assert.assertTrue(graph.footprint() < heap.footprint());
+            Assert.assertEquals(heap.edges(), graph.edges());
+            for (int v = 0; v < heap.vertices(); v++) {
+                Assert.assertEquals(heap.degree(v), graph.degree(v));
+                List<Integer[]> expectedAdj = heap.adj(v);
+                List<Integer[]> adj = graph.adj(v);
+                Assert.assertEquals(expectedAdj.size(), adj.size());
+                for (int i = 0; i < adj.size(); i++) {
+                    Assert.assertArrayEquals(expectedAdj.get(i), adj.get(i));
+                    Assert.assertEquals(heap.target(v, i),
+                            graph.target(v, i));
+                }
+            }
+            int[][] reverse = heap.reverseAdjacency();
+            for (int v = 0; v < heap.vertices(); v++) {
+                Assert.assertEquals(reverse[v].length, graph.reverseDegree(v));
+                for (int i = 0; i < reverse[v].length; i++) {
+                    Assert.assertEquals(reverse[v][i], graph.source(v, i));
+                }
+            }
+            // route type caches, used by search
+            graph.getAccessStops(Collections.emptyList());
+            long footprint = graph.footprint();
+            s = SearchFixtures.allResults(network, way, 2);
+            Assert.assertEquals(expected,
+                    SearchFixtures.routes(searchEngine.search(s)));
+            // search doesn't copy adjacency to heap
+            Assert.assertEquals(footprint + graph.transferIndex().size(),
+                    graph.footprint());
+        }
+    }
+}
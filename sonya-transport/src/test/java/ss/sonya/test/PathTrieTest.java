@@ -0,0 +1,45 @@
+/*
+ * Copyright (C) 2017 ss
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ss.sonya.test;
+
+import org.junit.Assert;
+import org.junit.Test;
+import ss.sonya.transport.search.PathKey;
+import ss.sonya.transport.search.PathTrie;
+
+/**
+ * Path trie and path key test.
+ * @author ss
+ */
+public class PathTrieTest {
+    @Test
+    public void testPathTrie() throws Exception {
+        Assert.assertEquals(new PathKey(new int[] {12, 3}),
+                new PathKey(new int[] {12, 3}));
+        Assert.assertNotEquals(new PathKey(new int[] {1, 23}),
+                new PathKey(new int[] {12, 3}));
+        PathTrie trie = new PathTrie();
+        trie.add(new int[] {5});
+        trie.add(new int[] {7, 8});
+        Assert.assertTrue(trie.containsPart(new int[] {1, 5, 2}));
+        Assert.assertTrue(trie.containsPart(new int[] {9, 7, 8}));
+        Assert.assertFalse(trie.containsPart(new int[] {7, 9, 8}));
+        // ids are not matched as strings
+        Assert.assertFalse(trie.containsPart(new int[] {15, 55}));
+        Assert.assertFalse(trie.containsPart(new int[] {17, 8}));
+    }
+}
@@ -0,0 +1,117 @@
+/*
+ * Copyright (C) 2017 ss
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ss.sonya.test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.stream.LongStream;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+import ss.sonya.entity.BusStop;
+import ss.sonya.test.fixture.InMemoryTransportConfig;
+import ss.sonya.test.fixture.SearchFixtures;
+import ss.sonya.test.fixture.SyntheticNetwork;
+import ss.sonya.test.fixture.SyntheticNetworkGenerator;
+import ss.sonya.test.fixture.SyntheticNetworkSettings;
+import ss.sonya.transport.search.Graph;
+import ss.sonya.transport.search.GraphConstructor;
+import ss.sonya.transport.search.Reachability;
+import ss.sonya.transport.search.SearchEngine;
+import ss.sonya.transport.search.vo.OptimalPath;
+import ss.sonya.transport.search.vo.SearchSettings;
+
+/**
+ * Reachability matrices test, database not required.
+ * @author ss
+ */
+@RunWith(SpringJUnit4ClassRunner.class)
+@ContextConfiguration(classes = InMemoryTransportConfig.class)
+public class ReachabilityTest {
+    @Autowired
+    private GraphConstructor graphConstructor;
+    @Autowired
+    private SearchEngine searchEngine;
+    @Test
+    public void testReachability() throws Exception {
+        SyntheticNetworkSettings city = SearchFixtures.mediumCity(6);
+        SyntheticNetwork network = new SyntheticNetworkGenerator(city)
+                .generate();
+        Graph graph = network.toGraph(graphConstructor);
+        Reachability reachability = graph.getReachability();
+        Assert.assertNotNull(reachability);
+        Assert.assertEquals(graph.getVersion(), reachability.getVersion());
+        int[][] out = graph.adjacency();
+        for (int v = 0; v < graph.vertices(); v++) {
+            Set<Integer> one = new HashSet<>();
+            Set<Integer> two = new HashSet<>();
+            for (int w : out[v]) {
+                one.add(w);
+                for (int u : out[w]) {
+                    two.add(u);
+                }
+            }
+            two.addAll(one);
+            for (int u = 0; u < graph.vertices(); u++) {
+                long[] target = reachability.bits(Collections.singleton(u));
+                Assert.assertEquals(one.contains(u),
+                        reachability.reaches(v, target, 1));
+                Assert.assertEquals(two.contains(u),
+                        reachability.reaches(v, target, 2));
+            }
+        }
+        // skipped start and frontier vertices don't change full result
+        Random random = new Random(6);
+        List<BusStop> stops = network.getBusstops();
+        int skipped = 0;
+        long expanded = 0;
+        long all = 0;
+        for (int q = 0; q < 30; q++) {
+            List<BusStop> way = new ArrayList<>();
+            way.add(stops.get(random.nextInt(stops.size())));
+            way.add(stops.get(random.nextInt(stops.size())));
+            SearchSettings s1 = SearchFixtures.allResults(network, way,
+                    1 + q % 3);
+            s1.setExplain(true);
+            graph.setReachability(reachability);
+            List<OptimalPath> expected = searchEngine.search(s1);
+            skipped += s1.getDiagnostics().getUnreachableStarts();
+            expanded += LongStream.of(s1.getDiagnostics()
+                    .getExpandedPerLevel()).sum();
+            SearchSettings s2 = SearchFixtures.allResults(network, way,
+                    1 + q % 3);
+            s2.setExplain(true);
+            graph.setReachability(null);
+            List<OptimalPath> actual = searchEngine.search(s2);
+            Assert.assertEquals(0, s2.getDiagnostics().getUnreachableStarts());
+            all += LongStream.of(s2.getDiagnostics()
+                    .getExpandedPerLevel()).sum();
+            Assert.assertEquals(SearchFixtures.sorted(actual),
+                    SearchFixtures.sorted(expected));
+        }
+        graph.setReachability(reachability);
+        Assert.assertTrue(skipped > 0);
+        Assert.assertTrue(expanded < all);
+    }
+}
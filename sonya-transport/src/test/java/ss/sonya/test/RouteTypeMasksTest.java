@@ -0,0 +1,92 @@
+/*
+ * Copyright (C) 2017 ss
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ss.sonya.test;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.List;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+import ss.sonya.entity.BusStop;
+import ss.sonya.entity.Path;
+import ss.sonya.entity.RouteProfile;
+import ss.sonya.test.fixture.InMemoryTransportConfig;
+import ss.sonya.test.fixture.SearchFixtures;
+import ss.sonya.test.fixture.SyntheticNetwork;
+import ss.sonya.test.fixture.SyntheticNetworkGenerator;
+import ss.sonya.transport.search.Graph;
+import ss.sonya.transport.search.GraphConstructor;
+import ss.sonya.transport.search.SearchEngine;
+import ss.sonya.transport.search.vo.OptimalPath;
+import ss.sonya.transport.search.vo.SearchSettings;
+
+/**
+ * Route type masks test, database not required.
+ * @author ss
+ */
+@RunWith(SpringJUnit4ClassRunner.class)
+@ContextConfiguration(classes = InMemoryTransportConfig.class)
+public class RouteTypeMasksTest {
+    @Autowired
+    private GraphConstructor graphConstructor;
+    @Autowired
+    private SearchEngine searchEngine;
+    @Test
+    public void testRouteTypeMasks() throws Exception {
+        SyntheticNetwork network = new SyntheticNetworkGenerator(
+                SearchFixtures.smallCity(3)).generate();
+        Graph graph = network.toGraph(graphConstructor);
+        RouteProfile metro = graph.getPath(graph.metroVertices().iterator()
+                .next()).getRoute().getType();
+        List<RouteProfile> disabled = Collections.singletonList(metro);
+        BitSet enabled = graph.enabledVertices(disabled);
+        Assert.assertEquals(graph.vertices() - graph.metroVertices().size(),
+                enabled.cardinality());
+        graph.metroVertices().forEach(v -> Assert.assertFalse(
+                enabled.get(v)));
+        Assert.assertSame(graph.getBusStops(disabled),
+                graph.getBusStops(new ArrayList<>(disabled)));
+        // unknown route types share cache entry
+        List<RouteProfile> unknown = new ArrayList<>(disabled);
+        for (int id = 100000; id < 100010; id++) {
+            RouteProfile type = new RouteProfile();
+            type.setId(id);
+            unknown.add(type);
+            Assert.assertSame(enabled, graph.enabledVertices(unknown));
+            Assert.assertSame(graph.getBusStops(disabled),
+                    graph.getAccessStops(unknown));
+        }
+        List<BusStop> way = SearchFixtures.acrossCity(network);
+        SearchSettings s = SearchFixtures.allResults(network, way, 2);
+        s.setDisabledRouteTypes(disabled);
+        s.setExplain(true);
+        List<OptimalPath> result = searchEngine.search(s);
+        Assert.assertFalse(result.isEmpty());
+        Assert.assertEquals(graph.metroVertices().size(),
+                s.getDiagnostics().getInactiveVertices());
+        for (OptimalPath op : result) {
+            for (Path p : op.getPath()) {
+                Assert.assertNotEquals(metro, p.getRoute().getType());
+            }
+        }
+    }
+}
@@ -0,0 +1,123 @@
+/*
+ * Copyright (C) 2017 ss
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ss.sonya.test;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+import ss.sonya.test.fixture.InMemoryTransportConfig;
+import ss.sonya.transport.component.SearchAdmission;
+import ss.sonya.transport.exception.SearchRejectedException;
+
+/**
+ * Search admission control test.
+ * @author ss
+ */
+@RunWith(SpringJUnit4ClassRunner.class)
+@ContextConfiguration(classes = InMemoryTransportConfig.class)
+public class SearchAdmissionTest {
+    @Autowired
+    private SearchAdmission admission;
+    @Test
+    public void testQueue() throws Exception {
+        admission.configure(1, 2, 1, 10000);
+        long rejected = admission.getRejected();
+        admission.acquire("a", 10000);
+        Assert.assertEquals(1, admission.getInFlight());
+        List<String> order = new CopyOnWriteArrayList<>();
+        Thread b = waiter("b", order);
+        Thread c = waiter("c", order);
+        b.start();
+        awaitQueued(1);
+        c.start();
+        awaitQueued(2);
+        // client already has queued search
+        Assert.assertEquals(SearchRejectedException.TOO_MANY_REQUESTS,
+                rejectStatus("b"));
+        // queue is full
+        Assert.assertEquals(SearchRejectedException.SERVICE_UNAVAILABLE,
+                rejectStatus("d"));
+        Assert.assertEquals(rejected + 2, admission.getRejected());
+        admission.release(1000000);
+        b.join(10000);
+        admission.release(1000000);
+        c.join(10000);
+        Assert.assertEquals("[b, c]", order.toString());
+        Assert.assertEquals(0, admission.getQueued());
+        admission.release(1000000);
+        Assert.assertEquals(0, admission.getInFlight());
+    }
+    @Test
+    public void testTimeout() throws Exception {
+        admission.configure(1, 10, 10, 10000);
+        admission.acquire("a", 10000);
+        Assert.assertEquals(SearchRejectedException.SERVICE_UNAVAILABLE,
+                rejectStatus("b"));
+        Assert.assertEquals(0, admission.getQueued());
+        admission.release(1000000);
+    }
+    @Test
+    public void testAbandon() throws Exception {
+        admission.configure(1, 10, 10, 10000);
+        CompletableFuture<Void> a = admission.admit("a", 10000);
+        Assert.assertTrue(a.isDone());
+        CompletableFuture<Void> b = admission.admit("b", 10000);
+        CompletableFuture<Void> c = admission.admit("c", 10000);
+        Assert.assertEquals(2, admission.getQueued());
+        // client gone, queue slot is freed without waiting for timeout
+        admission.abandon(b);
+        Assert.assertTrue(b.isCancelled());
+        Assert.assertEquals(1, admission.getQueued());
+        admission.release(1000000);
+        Assert.assertTrue(c.isDone());
+        Assert.assertFalse(c.isCompletedExceptionally());
+        // abandoned after admission, permit is returned
+        admission.abandon(c);
+        Assert.assertEquals(0, admission.getInFlight());
+    }
+    private Thread waiter(final String client, final List<String> order) {
+        return new Thread(() -> {
+            try {
+                admission.acquire(client, 10000);
+                order.add(client);
+            } catch (Exception e) {
+                order.add(e.getMessage());
+            }
+        });
+    }
+    private void awaitQueued(final int n) throws InterruptedException {
+        for (int i = 0; i < 1000 && admission.getQueued() < n; i++) {
+            Thread.sleep(10);
+        }
+        Assert.assertEquals(n, admission.getQueued());
+    }
+    private int rejectStatus(final String client) throws Exception {
+        try {
+            admission.acquire(client, 50);
+        } catch (SearchRejectedException e) {
+            return e.getStatus();
+        }
+        admission.release(0);
+        return 0;
+    }
+}
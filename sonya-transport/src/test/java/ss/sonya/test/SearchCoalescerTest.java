@@ -0,0 +1,147 @@
+/*
+ * Copyright (C) 2017 ss
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ss.sonya.test;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+import ss.sonya.entity.BusStop;
+import ss.sonya.inject.SonyaMetrics;
+import ss.sonya.test.fixture.InMemoryTransportConfig;
+import ss.sonya.test.fixture.SearchFixtures;
+import ss.sonya.test.fixture.SyntheticNetwork;
+import ss.sonya.test.fixture.SyntheticNetworkGenerator;
+import ss.sonya.transport.component.SearchCoalescer;
+import ss.sonya.transport.constants.TransportConst;
+import ss.sonya.transport.search.GraphConstructor;
+import ss.sonya.transport.search.SearchDeadline;
+import ss.sonya.transport.search.SearchEngine;
+import ss.sonya.transport.search.vo.OptimalPath;
+import ss.sonya.transport.search.vo.SearchSettings;
+
+/**
+ * Search coalescer test, database not required.
+ * @author ss
+ */
+@RunWith(SpringJUnit4ClassRunner.class)
+@ContextConfiguration(classes = InMemoryTransportConfig.class)
+public class SearchCoalescerTest {
+    @Autowired
+    private GraphConstructor graphConstructor;
+    @Autowired
+    private SearchEngine searchEngine;
+    @Autowired
+    private SonyaMetrics metrics;
+    @Autowired
+    private SearchCoalescer coalescer;
+    @Test
+    public void testCoalesce() throws Exception {
+        SyntheticNetwork network = new SyntheticNetworkGenerator(
+                SearchFixtures.smallCity(3)).generate();
+        network.toGraph(graphConstructor);
+        List<BusStop> way = network.getPaths().get(0).getBusstops();
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger searches = new AtomicInteger();
+        SearchEngine slow = settings -> {
+            searches.incrementAndGet();
+            release.await(10, TimeUnit.SECONDS);
+            return searchEngine.search(settings);
+        };
+        SearchSettings s1 = SearchFixtures.settings(network, way);
+        SearchSettings s2 = SearchFixtures.settings(network, way);
+        // same nearest bus stops, other coordinates
+        s2.setStartLat(s2.getStartLat() + 0.00001);
+        SearchDeadline leader = new SearchDeadline(0);
+        s1.setDeadline(leader);
+        s2.setDeadline(new SearchDeadline(0));
+        CompletableFuture<List<OptimalPath>> r1 = CompletableFuture
+                .supplyAsync(() -> coalesce(s1, slow));
+        for (int i = 0; i < 1000 && coalescer.getInFlight() == 0; i++) {
+            Thread.sleep(10);
+        }
+        CompletableFuture<List<OptimalPath>> r2 = CompletableFuture
+                .supplyAsync(() -> coalesce(s2, slow));
+        String joined = TransportConst.METRIC_SEARCH_COALESCED
+                + "{profile=\"" + s1.getProfileId() + "\"}";
+        String before = metrics.export();
+        for (int i = 0; i < 1000 && before.equals(metrics.export()); i++) {
+            Thread.sleep(10);
+        }
+        Assert.assertTrue(metrics.export().contains(joined));
+        // leader is gone, shared search continues for follower
+        leader.cancel();
+        release.countDown();
+        List<OptimalPath> shared = r2.get(10, TimeUnit.SECONDS);
+        r1.get(10, TimeUnit.SECONDS);
+        Assert.assertEquals(1, searches.get());
+        Assert.assertFalse(shared.isEmpty());
+        Assert.assertFalse(s2.getDeadline().isPartial());
+        Assert.assertEquals(0, coalescer.getInFlight());
+    }
+    @Test
+    public void testCoalesceAsync() throws Exception {
+        SyntheticNetwork network = new SyntheticNetworkGenerator(
+                SearchFixtures.smallCity(3)).generate();
+        network.toGraph(graphConstructor);
+        List<BusStop> way = network.getPaths().get(0).getBusstops();
+        AtomicInteger admitted = new AtomicInteger();
+        CompletableFuture<List<OptimalPath>> search =
+                new CompletableFuture<>();
+        SearchSettings s1 = SearchFixtures.settings(network, way);
+        SearchSettings s2 = SearchFixtures.settings(network, way);
+        s1.setDeadline(new SearchDeadline(0));
+        s2.setDeadline(new SearchDeadline(0));
+        CompletableFuture<List<OptimalPath>> r1 = coalescer.searchAsync(s1,
+                s -> {
+                    admitted.incrementAndGet();
+                    return search;
+                });
+        // follower doesn't start search and doesn't hold thread
+        CompletableFuture<List<OptimalPath>> r2 = coalescer.searchAsync(s2,
+                s -> {
+                    admitted.incrementAndGet();
+                    return search;
+                });
+        Assert.assertEquals(1, admitted.get());
+        Assert.assertFalse(r2.isDone());
+        // access bus stops of key are passed to search engine
+        Assert.assertSame(graphConstructor.peekGraph(s1.getProfileId()),
+                s1.getAccessStops().getGraph());
+        Assert.assertFalse(s1.getAccessStops().getStart().isEmpty());
+        List<OptimalPath> result = searchEngine.search(
+                SearchFixtures.settings(network, way));
+        search.complete(result);
+        Assert.assertEquals(result, r1.get(10, TimeUnit.SECONDS));
+        Assert.assertEquals(result, r2.get(10, TimeUnit.SECONDS));
+        Assert.assertEquals(0, coalescer.getInFlight());
+    }
+    private List<OptimalPath> coalesce(SearchSettings s, SearchEngine e) {
+        try {
+            return coalescer.search(s, e);
+        } catch (Exception ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+}
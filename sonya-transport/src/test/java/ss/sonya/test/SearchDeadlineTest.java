@@ -0,0 +1,62 @@
+/*
+ * Copyright (C) 2017 ss
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ss.sonya.test;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+import ss.sonya.test.fixture.InMemoryTransportConfig;
+import ss.sonya.test.fixture.SearchFixtures;
+import ss.sonya.test.fixture.SyntheticNetwork;
+import ss.sonya.test.fixture.SyntheticNetworkGenerator;
+import ss.sonya.transport.search.GraphConstructor;
+import ss.sonya.transport.search.SearchDeadline;
+import ss.sonya.transport.search.SearchEngine;
+import ss.sonya.transport.search.vo.SearchSettings;
+
+/**
+ * Search deadline test, database not required.
+ * @author ss
+ */
+@RunWith(SpringJUnit4ClassRunner.class)
+@ContextConfiguration(classes = InMemoryTransportConfig.class)
+public class SearchDeadlineTest {
+    @Autowired
+    private GraphConstructor graphConstructor;
+    @Autowired
+    private SearchEngine searchEngine;
+    @Test
+    public void testCancel() throws Exception {
+        SyntheticNetwork network = new SyntheticNetworkGenerator(
+                SearchFixtures.smallCity(3)).generate();
+        network.toGraph(graphConstructor);
+        SearchSettings s = SearchFixtures.settings(network,
+                SearchFixtures.acrossCity(network));
+        s.setMaxTransfers(2);
+        s.setExplain(true);
+        SearchDeadline deadline = new SearchDeadline(0);
+        deadline.cancel();
+        s.setDeadline(deadline);
+        searchEngine.search(s);
+        Assert.assertTrue(deadline.isPartial());
+        // traversal stopped before first start vertex
+        Assert.assertEquals(0, s.getDiagnostics().getDecisionsGenerated());
+    }
+}
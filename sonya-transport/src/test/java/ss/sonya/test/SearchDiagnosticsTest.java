@@ -0,0 +1,72 @@
+/*
+ * Copyright (C) 2017 ss
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ss.sonya.test;
+
+import java.util.List;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+import ss.sonya.test.fixture.InMemoryTransportConfig;
+import ss.sonya.test.fixture.SearchFixtures;
+import ss.sonya.test.fixture.SyntheticNetwork;
+import ss.sonya.test.fixture.SyntheticNetworkGenerator;
+import ss.sonya.transport.constants.SearchPhase;
+import ss.sonya.transport.search.GraphConstructor;
+import ss.sonya.transport.search.SearchEngine;
+import ss.sonya.transport.search.vo.OptimalPath;
+import ss.sonya.transport.search.vo.SearchDiagnostics;
+import ss.sonya.transport.search.vo.SearchSettings;
+
+/**
+ * Search explain mode test, database not required.
+ * @author ss
+ */
+@RunWith(SpringJUnit4ClassRunner.class)
+@ContextConfiguration(classes = InMemoryTransportConfig.class)
+public class SearchDiagnosticsTest {
+    @Autowired
+    private GraphConstructor graphConstructor;
+    @Autowired
+    private SearchEngine searchEngine;
+    @Test
+    public void testExplain() throws Exception {
+        SyntheticNetwork network = new SyntheticNetworkGenerator(
+                SearchFixtures.smallCity(3)).generate();
+        network.toGraph(graphConstructor);
+        SearchSettings s = SearchFixtures.settings(network,
+                SearchFixtures.acrossCity(network));
+        s.setMaxTransfers(2);
+        s.setExplain(true);
+        List<OptimalPath> result = searchEngine.search(s);
+        SearchDiagnostics diag = s.getDiagnostics();
+        Assert.assertNotNull(diag);
+        Assert.assertTrue(diag.getStartVertices() > 0);
+        Assert.assertTrue(diag.getEndVertices() > 0);
+        Assert.assertEquals(s.getMaxTransfers(),
+                diag.getExpandedPerLevel().length);
+        Assert.assertTrue(diag.getExpandedPerLevel()[0] > 0);
+        Assert.assertTrue(diag.getDecisionsGenerated()
+                >= diag.getDecisionsDiscarded());
+        Assert.assertTrue(diag.getGroups() >= result.size());
+        Assert.assertTrue(diag.getPhases().containsKey(
+                SearchPhase.BFS.getLabel()));
+        Assert.assertFalse(s.getDeadline().isPartial());
+    }
+}
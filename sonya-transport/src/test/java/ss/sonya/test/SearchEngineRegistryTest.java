@@ -0,0 +1,103 @@
+/*
+ * Copyright (C) 2017 ss
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ss.sonya.test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+import ss.sonya.entity.BusStop;
+import ss.sonya.entity.TransportProfile;
+import ss.sonya.inject.SonyaMetrics;
+import ss.sonya.test.fixture.InMemoryTransportConfig;
+import ss.sonya.test.fixture.SearchFixtures;
+import ss.sonya.test.fixture.SyntheticNetwork;
+import ss.sonya.test.fixture.SyntheticNetworkGenerator;
+import ss.sonya.transport.component.SearchEngineRegistry;
+import ss.sonya.transport.constants.TransportConst;
+import ss.sonya.transport.search.Graph;
+import ss.sonya.transport.search.GraphConstructor;
+import ss.sonya.transport.search.SearchEngine;
+import ss.sonya.transport.search.vo.OptimalPath;
+import ss.sonya.transport.search.vo.SearchSettings;
+
+/**
+ * Search engine registry test, database not required.
+ * @author ss
+ */
+@RunWith(SpringJUnit4ClassRunner.class)
+@ContextConfiguration(classes = InMemoryTransportConfig.class)
+public class SearchEngineRegistryTest {
+    @Autowired
+    private GraphConstructor graphConstructor;
+    @Autowired
+    private SonyaMetrics metrics;
+    @Autowired
+    private SearchEngineRegistry engines;
+    @Test
+    public void testEngineRegistry() throws Exception {
+        SyntheticNetwork network = new SyntheticNetworkGenerator(
+                SearchFixtures.smallCity(3)).generate();
+        network.toGraph(graphConstructor);
+        Integer pid = network.getProfile().getId();
+        List<BusStop> way = network.getPaths().get(0).getBusstops();
+        String bfs = "BFSAlgorithmV1";
+        Assert.assertTrue(engines.getEngines().contains(bfs));
+        AtomicInteger instant = new AtomicInteger();
+        engines.register("instant", s -> {
+            instant.incrementAndGet();
+            return new ArrayList<>();
+        });
+        engines.register("unsupported", new SearchEngine() {
+            @Override
+            public List<OptimalPath> search(SearchSettings settings) {
+                throw new IllegalStateException("not a candidate");
+            }
+            @Override
+            public boolean supports(Graph graph, TransportProfile profile) {
+                return false;
+            }
+        });
+        try {
+            Assert.assertEquals(Arrays.asList(bfs, "instant"),
+                    engines.candidates(pid));
+            // every candidate is measured, then the fastest serves
+            for (int i = 0; i < 50; i++) {
+                SearchSettings s = SearchFixtures.settings(network, way);
+                engines.select(s).search(s);
+            }
+            Assert.assertEquals(30, instant.get());
+            engines.setOverride(pid, bfs);
+            SearchSettings s = SearchFixtures.settings(network, way);
+            Assert.assertFalse(engines.select(s).search(s).isEmpty());
+            Assert.assertEquals(30, instant.get());
+            Assert.assertTrue(metrics.export().contains(
+                    TransportConst.METRIC_SEARCH_ENGINE + "{profile=\""
+                    + pid + "\",engine=\"instant\"} 30.0"));
+        } finally {
+            engines.remove("instant");
+            engines.remove("unsupported");
+            engines.setOverride(pid, null);
+        }
+    }
+}
@@ -0,0 +1,62 @@
+/*
+ * Copyright (C) 2017 ss
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ss.sonya.test;
+
+import java.util.concurrent.TimeUnit;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+import ss.sonya.inject.SonyaMetrics;
+import ss.sonya.test.fixture.InMemoryTransportConfig;
+import ss.sonya.test.fixture.SearchFixtures;
+import ss.sonya.test.fixture.SyntheticNetwork;
+import ss.sonya.test.fixture.SyntheticNetworkGenerator;
+import ss.sonya.transport.component.SearchWarmup;
+import ss.sonya.transport.constants.TransportConst;
+import ss.sonya.transport.search.GraphConstructor;
+
+/**
+ * Search warmup test, database not required.
+ * @author ss
+ */
+@RunWith(SpringJUnit4ClassRunner.class)
+@ContextConfiguration(classes = InMemoryTransportConfig.class)
+public class SearchWarmupTest {
+    @Autowired
+    private GraphConstructor graphConstructor;
+    @Autowired
+    private SonyaMetrics metrics;
+    @Autowired
+    private SearchWarmup warmup;
+    @Test
+    public void testWarmup() throws Exception {
+        SyntheticNetwork network = new SyntheticNetworkGenerator(
+                SearchFixtures.smallCity(4)).generate();
+        network.toGraph(graphConstructor);
+        Integer pid = network.getProfile().getId();
+        warmup.setQueries(5);
+        Assert.assertEquals(5, warmup.warmup(network.getProfile())
+                .get(30, TimeUnit.SECONDS).intValue());
+        Assert.assertTrue(warmup.getStatus().get(pid));
+        Assert.assertFalse(Double.isNaN(metrics.quantile(
+                TransportConst.METRIC_SEARCH_WARMUP, 0.5,
+                "profile", String.valueOf(pid))));
+    }
+}
@@ -0,0 +1,82 @@
+/*
+ * Copyright (C) 2017 ss
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ss.sonya.test;
+
+import java.util.List;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+import ss.sonya.entity.BusStop;
+import ss.sonya.test.fixture.InMemoryTransportConfig;
+import ss.sonya.test.fixture.SearchFixtures;
+import ss.sonya.test.fixture.SyntheticNetwork;
+import ss.sonya.test.fixture.SyntheticNetworkGenerator;
+import ss.sonya.test.fixture.SyntheticNetworkSettings;
+import ss.sonya.transport.search.Graph;
+import ss.sonya.transport.search.GraphConstructor;
+import ss.sonya.transport.search.SearchEngine;
+import ss.sonya.transport.search.vo.OptimalPath;
+import ss.sonya.transport.search.vo.SearchSettings;
+
+/**
+ * Graph service windows test, database not required.
+ * @author ss
+ */
+@RunWith(SpringJUnit4ClassRunner.class)
+@ContextConfiguration(classes = InMemoryTransportConfig.class)
+public class ServiceWindowsTest {
+    @Autowired
+    private GraphConstructor graphConstructor;
+    @Autowired
+    private SearchEngine searchEngine;
+    @Test
+    public void testServiceWindows() throws Exception {
+        SyntheticNetworkSettings city = SearchFixtures.smallCity(3);
+        city.setServiceEnd("20:00");
+        SyntheticNetwork network = new SyntheticNetworkGenerator(city)
+                .generate();
+        Graph graph = network.toGraph(graphConstructor);
+        Assert.assertEquals(graph.vertices(),
+                graph.activeVertices(2, 12).cardinality());
+        Assert.assertTrue(graph.activeVertices(2, 22).isEmpty());
+        Assert.assertTrue(graph.activeVertices(0, 12).isEmpty());
+        List<BusStop> way = SearchFixtures.acrossCity(network);
+        SearchSettings day = SearchFixtures.allResults(network, way, 2);
+        day.setExplain(true);
+        List<OptimalPath> expected = searchEngine.search(day);
+        Assert.assertFalse(expected.isEmpty());
+        Assert.assertEquals(0, day.getDiagnostics().getInactiveVertices());
+        // no trips at night, traversal is skipped
+        SearchSettings night = SearchFixtures.settings(network, way);
+        night.setMaxTransfers(2);
+        night.setTime("22:30");
+        night.setExplain(true);
+        Assert.assertTrue(searchEngine.search(night).isEmpty());
+        Assert.assertEquals(graph.vertices(),
+                night.getDiagnostics().getInactiveVertices());
+        Assert.assertEquals(0, night.getDiagnostics().getDecisionsGenerated());
+        // masks don't change result
+        graph.setServiceWindows(null);
+        SearchSettings all = SearchFixtures.allResults(network, way, 2);
+        List<OptimalPath> actual = searchEngine.search(all);
+        Assert.assertEquals(SearchFixtures.sorted(expected),
+                SearchFixtures.sorted(actual));
+    }
+}
@@ -0,0 +1,92 @@
+/*
+ * Copyright (C) 2017 ss
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ss.sonya.test;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.PrintStream;
+import java.util.List;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationContext;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+import ss.sonya.entity.BusStop;
+import ss.sonya.test.fixture.InMemoryTransportConfig;
+import ss.sonya.test.fixture.SearchFixtures;
+import ss.sonya.test.fixture.SyntheticNetwork;
+import ss.sonya.test.fixture.SyntheticNetworkGenerator;
+import ss.sonya.test.tool.SearchReplay;
+import ss.sonya.transport.component.SlowQueryLog;
+import ss.sonya.transport.search.Graph;
+import ss.sonya.transport.search.GraphConstructor;
+import ss.sonya.transport.search.SearchEngine;
+import ss.sonya.transport.search.vo.SearchSettings;
+import ss.sonya.transport.search.vo.SlowQuery;
+
+/**
+ * Slow query log and replay test, database not required.
+ * @author ss
+ */
+@RunWith(SpringJUnit4ClassRunner.class)
+@ContextConfiguration(classes = InMemoryTransportConfig.class)
+public class SlowQueryLogTest {
+    @Autowired
+    private GraphConstructor graphConstructor;
+    @Autowired
+    private SearchEngine searchEngine;
+    @Autowired
+    private SlowQueryLog slowQueryLog;
+    @Autowired
+    private ApplicationContext ctx;
+    @Test
+    public void testSlowQueryReplay() throws Exception {
+        SyntheticNetwork network = new SyntheticNetworkGenerator(
+                SearchFixtures.smallCity(5)).generate();
+        Graph graph = network.toGraph(graphConstructor);
+        slowQueryLog.setCapacity(2);
+        slowQueryLog.setThreshold(0);
+        for (int i = 0; i < 3; i++) {
+            List<BusStop> way = network.getPaths().get(i).getBusstops();
+            SearchSettings s = SearchFixtures.settings(network, way);
+            long start = System.nanoTime();
+            int results = searchEngine.search(s).size();
+            Assert.assertTrue(slowQueryLog.record(s, graph.getVersion(),
+                    System.nanoTime() - start, results));
+        }
+        // ring buffer keeps last queries only
+        List<SlowQuery> captured = slowQueryLog.snapshot();
+        Assert.assertEquals(2, captured.size());
+        Assert.assertEquals(3, slowQueryLog.getTotal());
+        File file = File.createTempFile("slow-queries", ".json");
+        file.deleteOnExit();
+        new ObjectMapper().writeValue(file, captured);
+        List<SlowQuery> restored = SearchReplay.readQueries(file);
+        Assert.assertEquals(graph.getVersion(),
+                restored.get(0).getGraphVersion());
+        Assert.assertEquals(captured.get(1).getSettings().getEndLat(),
+                restored.get(1).getSettings().getEndLat(), 0);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        long[] latencies = new SearchReplay(ctx, new PrintStream(out))
+                .replay(restored, network.getProfile(), searchEngine, 2);
+        Assert.assertEquals(4, latencies.length);
+        Assert.assertTrue(out.toString().contains("total: p50"));
+    }
+}
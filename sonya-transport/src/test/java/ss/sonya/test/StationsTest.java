@@ -0,0 +1,86 @@
+/*
+ * Copyright (C) 2017 ss
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ss.sonya.test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+import ss.sonya.entity.BusStop;
+import ss.sonya.inject.service.Geometry;
+import ss.sonya.test.fixture.InMemoryTransportConfig;
+import ss.sonya.test.fixture.SearchFixtures;
+import ss.sonya.test.fixture.SyntheticNetwork;
+import ss.sonya.test.fixture.SyntheticNetworkGenerator;
+import ss.sonya.transport.search.Graph;
+import ss.sonya.transport.search.GraphConstructor;
+import ss.sonya.transport.search.SearchEngine;
+import ss.sonya.transport.search.Stations;
+
+/**
+ * Stations test, database not required.
+ * @author ss
+ */
+@RunWith(SpringJUnit4ClassRunner.class)
+@ContextConfiguration(classes = InMemoryTransportConfig.class)
+public class StationsTest {
+    @Autowired
+    private GraphConstructor graphConstructor;
+    @Autowired
+    private SearchEngine searchEngine;
+    @Autowired
+    private Geometry geometry;
+    @Test
+    public void testStations() throws Exception {
+        SyntheticNetwork network = new SyntheticNetworkGenerator(
+                SearchFixtures.smallCity(3)).generate();
+        Graph graph;
+        try {
+            graphConstructor.setStationRadius(0.1);
+            graph = network.toGraph(graphConstructor);
+        } finally {
+            graphConstructor.setStationRadius(0);
+        }
+        Stations stations = graph.getStations();
+        Assert.assertNotNull(stations);
+        Assert.assertTrue(stations.size() > 0);
+        Set<BusStop> all = graph.getBusStops(new ArrayList<>());
+        Set<BusStop> access = graph.getAccessStops(new ArrayList<>());
+        Assert.assertTrue(access.size() < all.size());
+        Set<BusStop> covered = new HashSet<>();
+        for (BusStop bs : access) {
+            for (BusStop m : stations.members(bs)) {
+                Assert.assertEquals(bs.getName(), m.getName());
+                Assert.assertTrue(geometry.calcDistance(bs.getLatitude(),
+                        bs.getLongitude(), m.getLatitude(),
+                        m.getLongitude()) < 0.2);
+                Assert.assertTrue(covered.add(m));
+            }
+        }
+        // every bus stop is reachable through its station
+        Assert.assertTrue(covered.containsAll(all));
+        List<BusStop> way = SearchFixtures.acrossCity(network);
+        Assert.assertFalse(searchEngine.search(
+                SearchFixtures.settings(network, way)).isEmpty());
+    }
+}
@@ -0,0 +1,215 @@
+/*
+ * Copyright (C) 2017 ss
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ss.sonya.test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+import ss.sonya.entity.BusStop;
+import ss.sonya.inject.service.Geometry;
+import ss.sonya.test.fixture.InMemoryTransportConfig;
+import ss.sonya.test.fixture.SearchFixtures;
+import ss.sonya.test.fixture.SyntheticNetwork;
+import ss.sonya.test.fixture.SyntheticNetworkGenerator;
+import ss.sonya.transport.component.TransportGeometry;
+import ss.sonya.transport.constants.TransportConst;
+import ss.sonya.transport.search.BFSAlgorithmV1;
+import ss.sonya.transport.search.BFSTask;
+import ss.sonya.transport.search.Graph;
+import ss.sonya.transport.search.GraphConstructor;
+import ss.sonya.transport.search.SearchDeadline;
+import ss.sonya.transport.search.StopSelector;
+import ss.sonya.transport.search.TransferIndex;
+import ss.sonya.transport.search.vo.OptimalPath;
+
+/**
+ * Stop selector test, database not required.
+ * @author ss
+ */
+@RunWith(SpringJUnit4ClassRunner.class)
+@ContextConfiguration(classes = InMemoryTransportConfig.class)
+public class StopSelectorTest {
+    @Autowired
+    private GraphConstructor graphConstructor;
+    @Autowired
+    private Geometry geometry;
+    @Autowired
+    private TransportGeometry transportGeometry;
+    @Autowired
+    private BFSAlgorithmV1 bfs;
+    @Test
+    public void testStopSelection() throws Exception {
+        SyntheticNetwork network = new SyntheticNetworkGenerator(
+                SearchFixtures.smallCity(3)).generate();
+        Graph graph = network.toGraph(graphConstructor);
+        Map<Integer, Set<BusStop>> start = new HashMap<>();
+        Map<Integer, Set<BusStop>> end = new HashMap<>();
+        for (int v = 0; v < graph.vertices(); v++) {
+            List<BusStop> way = graph.getPath(v).getBusstops();
+            if (v % 3 == 0) {
+                start.put(v, new HashSet<>(way.subList(0, 3)));
+            } else if (v % 5 == 1) {
+                end.put(v, new HashSet<>(
+                        way.subList(way.size() - 3, way.size())));
+            }
+        }
+        List<Integer> criteria = new ArrayList<>(start.keySet());
+        BusStop from = network.getPaths().get(0).getBusstops().get(0);
+        List<BusStop> last = network.getPaths()
+                .get(network.getPaths().size() - 1).getBusstops();
+        BusStop to = last.get(last.size() - 1);
+        List<OptimalPath> all = new BFSTask(criteria, end, start, graph, 2,
+                false, null, new SearchDeadline(0)).call();
+        BFSTask task = new BFSTask(criteria, end, start, graph, 2, false,
+                null, new SearchDeadline(0));
+        task.setStopSelector(new StopSelector(graph, geometry,
+                from.getLatitude(), from.getLongitude(), to.getLatitude(),
+                to.getLongitude()));
+        List<OptimalPath> selected = task.call();
+        // best of all bus stop combinations, as in search result selection
+        Map<String, OptimalPath> best = new HashMap<>();
+        for (OptimalPath op : all) {
+            transportGeometry.calcOptimalPathTime(op);
+            BusStop s = op.getDecision().getS();
+            BusStop e = op.getDecision().getE();
+            op.setTime(op.getTime() + (geometry.calcDistance(
+                    from.getLatitude(), from.getLongitude(), s.getLatitude(),
+                    s.getLongitude()) + geometry.calcDistance(
+                    e.getLatitude(), e.getLongitude(), to.getLatitude(),
+                    to.getLongitude())) / TransportConst.HUMAN_SPEED);
+            String key = Arrays.toString(op.getDecision().getWay());
+            if (!best.containsKey(key)
+                    || best.get(key).getTime() > op.getTime()) {
+                best.put(key, op);
+            }
+        }
+        Assert.assertTrue(all.size() > selected.size());
+        Assert.assertEquals(best.size(), selected.size());
+        for (OptimalPath op : selected) {
+            Assert.assertEquals(best.get(Arrays.toString(op.getDecision()
+                    .getWay())).getDecision().toString(),
+                    op.getDecision().toString());
+        }
+    }
+    @Test
+    public void testAccessPruning() throws Exception {
+        SyntheticNetwork network = new SyntheticNetworkGenerator(
+                SearchFixtures.smallCity(3)).generate();
+        Graph graph = network.toGraph(graphConstructor);
+        BusStop from = network.getPaths().get(0).getBusstops().get(2);
+        BusStop to = network.getPaths().get(1).getBusstops().get(2);
+        StopSelector selector = new StopSelector(graph, geometry,
+                from.getLatitude(), from.getLongitude(), to.getLatitude(),
+                to.getLongitude());
+        int pruned = 0;
+        for (boolean start : new boolean[] {true, false}) {
+            Map<Integer, Set<BusStop>> vertices = new HashMap<>();
+            for (int v = 0; v < graph.vertices(); v++) {
+                List<BusStop> way = graph.getPath(v).getBusstops();
+                vertices.put(v, new HashSet<>(way.subList(0,
+                        Math.min(way.size(), 6))));
+            }
+            Map<Integer, Set<BusStop>> all = new HashMap<>();
+            vertices.forEach((v, bs) -> all.put(v, new HashSet<>(bs)));
+            pruned += selector.prune(vertices, start);
+            for (int v = 0; v < graph.vertices(); v++) {
+                List<BusStop> way = graph.getPath(v).getBusstops();
+                Assert.assertFalse(vertices.get(v).isEmpty());
+                for (BusStop bs : all.get(v)) {
+                    // removed if and only if dominated by other bus stop
+                    boolean dominated = false;
+                    int i = start ? way.indexOf(bs) : way.lastIndexOf(bs);
+                    for (BusStop other : all.get(v)) {
+                        int j = start ? way.indexOf(other)
+                                : way.lastIndexOf(other);
+                        if (start && j < i) {
+                            dominated |= selector.startWalk(other)
+                                    + selector.ride(v, j, i)
+                                    < selector.startWalk(bs) - 1e-9
+                                    && sameTransfers(graph, v, j, i);
+                        } else if (!start && j > i) {
+                            dominated |= selector.ride(v, i, j)
+                                    + selector.endWalk(other)
+                                    < selector.endWalk(bs) - 1e-9;
+                        }
+                    }
+                    if (dominated) {
+                        Assert.assertFalse(vertices.get(v).contains(bs));
+                    }
+                }
+            }
+        }
+        Assert.assertTrue(pruned > 0);
+        // adaptive radius: at least min stops, at most limit
+        Set<BusStop> stops = graph.getBusStops(new ArrayList<>());
+        try {
+            transportGeometry.setAccessRadius(0.001);
+            transportGeometry.setAccessMinStops(2);
+            Assert.assertEquals(2, transportGeometry.findAccessBusStops(10,
+                    stops, from.getLatitude(), from.getLongitude()).size());
+            transportGeometry.setAccessRadius(1000);
+            Assert.assertEquals(10, transportGeometry.findAccessBusStops(10,
+                    stops, from.getLatitude(), from.getLongitude()).size());
+        } finally {
+            transportGeometry.setAccessRadius(0);
+            transportGeometry.setAccessMinStops(3);
+        }
+    }
+    private static boolean sameTransfers(Graph graph, int v, int idx1,
+            int idx2) {
+        TransferIndex index = graph.transferIndex();
+        for (int i = 0; i < graph.degree(v); i++) {
+            int w = graph.target(v, i);
+            if (index.transfer(v, w, idx1) != index.transfer(v, w, idx2)) {
+                return false;
+            }
+        }
+        return true;
+    }
+    @Test
+    public void testPruneResults() throws Exception {
+        SyntheticNetwork network = new SyntheticNetworkGenerator(
+                SearchFixtures.smallCity(1)).generate();
+        network.toGraph(graphConstructor);
+        Random random = new Random(1);
+        List<BusStop> stops = network.getBusstops();
+        for (int q = 0; q < 60; q++) {
+            List<BusStop> way = new ArrayList<>();
+            way.add(stops.get(random.nextInt(stops.size())));
+            way.add(stops.get(random.nextInt(stops.size())));
+            bfs.setPruneAccess(false);
+            List<OptimalPath> expected = bfs.search(
+                    SearchFixtures.allResults(network, way, 1 + q % 2));
+            bfs.setPruneAccess(true);
+            List<OptimalPath> actual = bfs.search(
+                    SearchFixtures.allResults(network, way, 1 + q % 2));
+            Assert.assertEquals("query " + q, SearchFixtures.routes(expected),
+                    SearchFixtures.routes(actual));
+        }
+    }
+}
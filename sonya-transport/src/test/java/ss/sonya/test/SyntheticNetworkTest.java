@@ -0,0 +1,132 @@
+/*
+ * Copyright (C) 2017 ss
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ss.sonya.test;
+
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+import ss.sonya.entity.Path;
+import ss.sonya.entity.RouteProfile;
+import ss.sonya.inject.SonyaMetrics;
+import ss.sonya.test.fixture.InMemoryTransportConfig;
+import ss.sonya.test.fixture.SearchFixtures;
+import ss.sonya.test.fixture.SyntheticNetwork;
+import ss.sonya.test.fixture.SyntheticNetworkGenerator;
+import ss.sonya.test.fixture.SyntheticNetworkSettings;
+import ss.sonya.transport.api.ImportDataSerializer;
+import ss.sonya.transport.constants.SearchPhase;
+import ss.sonya.transport.constants.TransportConst;
+import ss.sonya.transport.iface.ImportData;
+import ss.sonya.transport.search.Graph;
+import ss.sonya.transport.search.GraphConstructor;
+import ss.sonya.transport.search.SearchEngine;
+import ss.sonya.transport.search.vo.OptimalPath;
+import ss.sonya.transport.search.vo.SearchSettings;
+
+/**
+ * Synthetic network test, database not required.
+ * @author ss
+ */
+@RunWith(SpringJUnit4ClassRunner.class)
+@ContextConfiguration(classes = InMemoryTransportConfig.class)
+public class SyntheticNetworkTest {
+    @Autowired
+    private GraphConstructor graphConstructor;
+    @Autowired
+    private SearchEngine searchEngine;
+    @Autowired
+    private ImportDataSerializer serializer;
+    @Autowired
+    private SonyaMetrics metrics;
+    @Test
+    public void testDeterministic() throws Exception {
+        SyntheticNetwork n1 = new SyntheticNetworkGenerator(
+                SearchFixtures.smallCity(7)).generate();
+        SyntheticNetwork n2 = new SyntheticNetworkGenerator(
+                SearchFixtures.smallCity(7)).generate();
+        SyntheticNetwork n3 = new SyntheticNetworkGenerator(
+                SearchFixtures.smallCity(8)).generate();
+        Assert.assertEquals(describe(n1), describe(n2));
+        Assert.assertNotEquals(describe(n1), describe(n3));
+        SyntheticNetworkSettings city = SearchFixtures.smallCity(7);
+        Assert.assertEquals(city.getRoutes() + city.getMetroLines(),
+                n1.getRoutes().size());
+        Assert.assertEquals(n1.getPaths().size(), n1.getSchedule().size());
+    }
+    @Test
+    public void testImportData() throws Exception {
+        SyntheticNetwork network = new SyntheticNetworkGenerator(
+                SearchFixtures.smallCity(1)).generate();
+        RouteProfile type = network.getProfile().getRouteProfiles().get(0);
+        ImportData data = network.toImportData(type);
+        byte[] bin = serializer.serialize(data);
+        ImportData restored = serializer.deserialize(bin,
+                network.getProfile(), type);
+        Assert.assertEquals(data.busstops().size(),
+                restored.busstops().size());
+        Assert.assertEquals(data.routes().size(), restored.routes().size());
+        Assert.assertEquals(data.paths().size(), restored.paths().size());
+        Assert.assertEquals(data.schedule().size(),
+                restored.schedule().size());
+        for (int i = 0; i < data.paths().size(); i++) {
+            Assert.assertEquals(way(data.paths().get(i)),
+                    way(restored.paths().get(i)));
+        }
+        // source network not modified by serializer
+        Assert.assertEquals(network.getProfile(),
+                network.getPaths().get(0).getTransportProfile());
+    }
+    @Test
+    public void testSearch() throws Exception {
+        SyntheticNetwork network = new SyntheticNetworkGenerator(
+                SearchFixtures.smallCity(3)).generate();
+        Graph graph = network.toGraph(graphConstructor);
+        Assert.assertEquals(network.getPaths().size(), graph.vertices());
+        Assert.assertTrue(graph.edges() > 0);
+        Assert.assertFalse(graph.metroVertices().isEmpty());
+        SearchSettings s = SearchFixtures.settings(network,
+                network.getPaths().get(0).getBusstops());
+        s.setMaxTransfers(2);
+        List<OptimalPath> result = searchEngine.search(s);
+        Assert.assertFalse(result.isEmpty());
+        Assert.assertNull(s.getDiagnostics());
+        String pid = String.valueOf(s.getProfileId());
+        Assert.assertFalse(Double.isNaN(metrics.quantile(
+                TransportConst.METRIC_SEARCH_PHASE, 0.99,
+                "profile", pid, "phase", SearchPhase.BFS.getLabel())));
+        Assert.assertTrue(metrics.export().contains(
+                TransportConst.METRIC_SEARCH_RESULTS + "_count{profile=\""
+                        + pid + "\"}"));
+    }
+    private String describe(SyntheticNetwork network) {
+        StringBuilder sb = new StringBuilder();
+        network.getBusstops().forEach(bs -> sb.append(bs.getLatitude())
+                .append(":").append(bs.getLongitude()).append(";"));
+        network.getPaths().forEach(p -> sb.append(way(p)).append(";"));
+        return sb.toString();
+    }
+    private List<Long> way(Path path) {
+        List<Long> ids = new ArrayList<>();
+        path.getBusstops().forEach(bs -> ids.add(bs.getExternalId()));
+        return ids;
+    }
+}
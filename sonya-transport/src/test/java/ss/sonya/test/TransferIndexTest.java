@@ -0,0 +1,79 @@
+/*
+ * Copyright (C) 2017 ss
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ss.sonya.test;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+import ss.sonya.test.fixture.InMemoryTransportConfig;
+import ss.sonya.test.fixture.SearchFixtures;
+import ss.sonya.test.fixture.SyntheticNetwork;
+import ss.sonya.test.fixture.SyntheticNetworkGenerator;
+import ss.sonya.transport.search.Graph;
+import ss.sonya.transport.search.GraphConstructor;
+import ss.sonya.transport.search.TransferIndex;
+
+/**
+ * Transfer index test, database not required.
+ * @author ss
+ */
+@RunWith(SpringJUnit4ClassRunner.class)
+@ContextConfiguration(classes = InMemoryTransportConfig.class)
+public class TransferIndexTest {
+    @Autowired
+    private GraphConstructor graphConstructor;
+    @Test
+    public void testTransferIndex() throws Exception {
+        SyntheticNetwork network = new SyntheticNetworkGenerator(
+                SearchFixtures.smallCity(5)).generate();
+        Graph graph = network.toGraph(graphConstructor);
+        TransferIndex index = graph.transferIndex();
+        int checked = 0;
+        for (int v = 0; v < graph.vertices(); v++) {
+            int n = graph.getPath(v).getBusstops().size();
+            double speedV = graph.getPath(v).getRoute().getType()
+                    .getAvgSpeed();
+            for (Integer[] adjW : graph.adj(v)) {
+                int w = adjW[Graph.IDX_W];
+                int m = graph.getPath(w).getBusstops().size();
+                double speedW = graph.getPath(w).getRoute().getType()
+                        .getAvgSpeed();
+                for (int idxT = 0; idxT < n; idxT++) {
+                    // first transfer after entry with min ride
+                    long expected = TransferIndex.NONE;
+                    double min = Double.MAX_VALUE;
+                    for (int j = 1; j < adjW.length; j += 2) {
+                        double total = (adjW[j] + 1) / speedV
+                                + (m - (adjW[j + 1] + 1)) / speedW;
+                        if (idxT < adjW[j] && total < min) {
+                            min = total;
+                            expected = ((long) adjW[j] << Integer.SIZE)
+                                    | adjW[j + 1];
+                        }
+                    }
+                    Assert.assertEquals(expected, index.transfer(v, w, idxT));
+                    checked++;
+                }
+            }
+        }
+        Assert.assertTrue(checked > 0);
+        Assert.assertEquals(TransferIndex.NONE, index.transfer(0, -1, 0));
+    }
+}
@@ -0,0 +1,81 @@
+/*
+ * Copyright (C) 2017 ss
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ss.sonya.test;
+
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+import ss.sonya.entity.BusStop;
+import ss.sonya.test.fixture.InMemoryTransportConfig;
+import ss.sonya.test.fixture.SearchFixtures;
+import ss.sonya.test.fixture.SyntheticNetwork;
+import ss.sonya.test.fixture.SyntheticNetworkGenerator;
+import ss.sonya.transport.component.TransportGeometry;
+import ss.sonya.transport.search.Graph;
+import ss.sonya.transport.search.GraphConstructor;
+import ss.sonya.transport.search.SearchEngine;
+import ss.sonya.transport.search.vo.OptimalPath;
+import ss.sonya.transport.search.vo.SearchSettings;
+
+/**
+ * Transport geometry test, database not required.
+ * @author ss
+ */
+@RunWith(SpringJUnit4ClassRunner.class)
+@ContextConfiguration(classes = InMemoryTransportConfig.class)
+public class TransportGeometryTest {
+    @Autowired
+    private GraphConstructor graphConstructor;
+    @Autowired
+    private SearchEngine searchEngine;
+    @Autowired
+    private TransportGeometry transportGeometry;
+    @Test
+    public void testWayDistanceDifference() throws Exception {
+        SyntheticNetwork network = new SyntheticNetworkGenerator(
+                SearchFixtures.smallCity(5)).generate();
+        Graph graph = network.toGraph(graphConstructor);
+        List<BusStop> last = network.getPaths()
+                .get(network.getPaths().size() - 1).getBusstops();
+        List<BusStop> way = new ArrayList<>();
+        way.add(network.getPaths().get(0).getBusstops().get(1));
+        way.add(last.get(last.size() - 2));
+        SearchSettings s = SearchFixtures.settings(network, way);
+        s.setMaxTransfers(2);
+        List<OptimalPath> result = searchEngine.search(s);
+        Assert.assertFalse(result.isEmpty());
+        for (OptimalPath op : result) {
+            for (int i = 0; i < op.getWay().size(); i++) {
+                List<BusStop> subWay = op.getWay().get(i);
+                int from = op.getWayStart()[i];
+                Assert.assertEquals(subWay, op.getPath().get(i).getBusstops()
+                        .subList(from, from + subWay.size()));
+            }
+            transportGeometry.calcOptimalPathTime(op);
+            double time = op.getTime();
+            double distance = op.getDistance();
+            transportGeometry.calcOptimalPathTime(op, graph);
+            Assert.assertEquals(time, op.getTime(), 1e-9);
+            Assert.assertEquals(distance, op.getDistance(), 1e-9);
+        }
+    }
+}
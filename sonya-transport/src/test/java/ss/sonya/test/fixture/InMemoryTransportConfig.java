@@ -0,0 +1,99 @@
+/*
+ * Copyright (C) 2017 ss
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ss.sonya.test.fixture;
+
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.List;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.ComponentScan;
+import org.springframework.context.annotation.Configuration;
+import ss.sonya.inject.DataService;
+import ss.sonya.inject.SonyaMetrics;
+import ss.sonya.inject.service.Geometry;
+import ss.sonya.inject.service.MetricsServiceImpl;
+import ss.sonya.transport.api.TransportDataService;
+import ss.sonya.transport.component.TransportGeometry;
+import ss.sonya.transport.search.GraphConstructor;
+
+/**
+ * Transport search configuration without database.
+ * Data services are empty, graphs come from synthetic networks.
+ * @author ss
+ */
+@Configuration
+@ComponentScan(basePackageClasses = {
+    GraphConstructor.class, TransportGeometry.class
+})
+public class InMemoryTransportConfig {
+    /**
+     * Geometry.
+     * @return geometry.
+     */
+    @Bean
+    public Geometry geometry() {
+        return new Geometry();
+    }
+    /**
+     * Metrics.
+     * @return metrics.
+     */
+    @Bean
+    public SonyaMetrics metrics() {
+        return new MetricsServiceImpl();
+    }
+    /**
+     * Empty data service.
+     * @return data service.
+     */
+    @Bean
+    public DataService dataService() {
+        return emptyService(DataService.class);
+    }
+    /**
+     * Empty transport data service.
+     * @return transport data service.
+     */
+    @Bean
+    public TransportDataService transportDataService() {
+        return emptyService(TransportDataService.class);
+    }
+    /**
+     * Service, which returns empty lists and nulls.
+     * @param <T> service type.
+     * @param iface service interface.
+     * @return service.
+     */
+    @SuppressWarnings("unchecked")
+    private static <T> T emptyService(final Class<T> iface) {
+        return (T) Proxy.newProxyInstance(iface.getClassLoader(),
+                new Class<?>[] {iface}, (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "hashCode":
+                            return System.identityHashCode(proxy);
+                        case "equals":
+                            return proxy == args[0];
+                        case "toString":
+                            return "empty " + iface.getSimpleName();
+                        default:
+                            return List.class.isAssignableFrom(
+                                    method.getReturnType())
+                                    ? new ArrayList<>() : null;
+                    }
+                });
+    }
+}
@@ -0,0 +1,150 @@
+/*
+ * Copyright (C) 2017 ss
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ss.sonya.test.fixture;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import ss.sonya.entity.BusStop;
+import ss.sonya.transport.search.vo.OptimalPath;
+import ss.sonya.transport.search.vo.SearchSettings;
+
+/**
+ * Search fixtures: synthetic cities, search settings and result views,
+ * shared by synthetic network tests.
+ * @author ss
+ */
+public final class SearchFixtures {
+    /** Max results, which never truncate search result. */
+    public static final int ALL_RESULTS = Integer.MAX_VALUE;
+    /** Search day. */
+    private static final int DAY = 2;
+    /** Search time. */
+    private static final String TIME = "12:00";
+    /** Default max results. */
+    private static final int MAX_RESULTS = 5;
+    /**
+     * Utility class.
+     */
+    private SearchFixtures() {
+    }
+    /**
+     * Small city, fast to build.
+     * @param seed random seed.
+     * @return network settings.
+     */
+    public static SyntheticNetworkSettings smallCity(final long seed) {
+        SyntheticNetworkSettings s = SyntheticNetworkSettings.scaled(0.04);
+        s.setSeed(seed);
+        return s;
+    }
+    /**
+     * City with wide BFS frontier.
+     * @param seed random seed.
+     * @return network settings.
+     */
+    public static SyntheticNetworkSettings mediumCity(final long seed) {
+        SyntheticNetworkSettings s = SyntheticNetworkSettings.scaled(0.5);
+        s.setSeed(seed);
+        return s;
+    }
+    /**
+     * Way across city: first bus stop of first path, last bus stop of
+     * last path.
+     * @param network network.
+     * @return way.
+     */
+    public static List<BusStop> acrossCity(final SyntheticNetwork network) {
+        List<BusStop> last = network.getPaths()
+                .get(network.getPaths().size() - 1).getBusstops();
+        List<BusStop> way = new ArrayList<>();
+        way.add(network.getPaths().get(0).getBusstops().get(0));
+        way.add(last.get(last.size() - 1));
+        return way;
+    }
+    /**
+     * Search settings: midday of working day, one transfer, no disabled
+     * route types.
+     * @param network network.
+     * @param way way, first and last bus stops are search points.
+     * @return search settings.
+     */
+    public static SearchSettings settings(final SyntheticNetwork network,
+            final List<BusStop> way) {
+        SearchSettings s = new SearchSettings();
+        s.setProfileId(network.getProfile().getId());
+        s.setStartLat(way.get(0).getLatitude());
+        s.setStartLon(way.get(0).getLongitude());
+        s.setEndLat(way.get(way.size() - 1).getLatitude());
+        s.setEndLon(way.get(way.size() - 1).getLongitude());
+        s.setDay(DAY);
+        s.setTime(TIME);
+        s.setMaxResults(MAX_RESULTS);
+        s.setMaxTransfers(1);
+        s.setDisabledRouteTypes(new ArrayList<>());
+        return s;
+    }
+    /**
+     * Search settings, which keep every result.
+     * @param network network.
+     * @param way way, first and last bus stops are search points.
+     * @param maxTransfers max transfers.
+     * @return search settings.
+     */
+    public static SearchSettings allResults(final SyntheticNetwork network,
+            final List<BusStop> way, final int maxTransfers) {
+        SearchSettings s = settings(network, way);
+        s.setMaxResults(ALL_RESULTS);
+        s.setMaxTransfers(maxTransfers);
+        return s;
+    }
+    /**
+     * Results as sorted strings: paths, ways and time.
+     * @param paths results.
+     * @return sorted strings.
+     */
+    public static List<String> routes(final List<OptimalPath> paths) {
+        List<String> list = new ArrayList<>();
+        for (OptimalPath op : paths) {
+            StringBuilder sb = new StringBuilder();
+            for (int i = 0; i < op.getPath().size(); i++) {
+                List<BusStop> part = op.getWay().get(i);
+                sb.append(op.getPath().get(i).getId()).append(":")
+                        .append(part.get(0).getId()).append("-")
+                        .append(part.get(part.size() - 1).getId())
+                        .append(";");
+            }
+            sb.append(String.format("%.6f", op.getTime()));
+            list.add(sb.toString());
+        }
+        Collections.sort(list);
+        return list;
+    }
+    /**
+     * Results as sorted strings, with decisions.
+     * @param paths results.
+     * @return sorted strings.
+     */
+    public static List<String> sorted(final List<OptimalPath> paths) {
+        List<String> list = new ArrayList<>();
+        for (OptimalPath p : paths) {
+            list.add(p.toString());
+        }
+        Collections.sort(list);
+        return list;
+    }
+}
@@ -0,0 +1,187 @@
+/*
+ * Copyright (C) 2017 ss
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ss.sonya.test.fixture;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import ss.sonya.entity.BusStop;
+import ss.sonya.entity.Path;
+import ss.sonya.entity.Route;
+import ss.sonya.entity.RouteProfile;
+import ss.sonya.entity.TransportProfile;
+import ss.sonya.entity.Trip;
+import ss.sonya.transport.component.JsonImportData;
+import ss.sonya.transport.iface.ImportData;
+import ss.sonya.transport.search.Graph;
+import ss.sonya.transport.search.GraphConstructor;
+
+/**
+ * Synthetic city network.
+ * @author ss
+ */
+public class SyntheticNetwork {
+    /** Transport profile. */
+    private final TransportProfile profile;
+    /** All bus stops. */
+    private final List<BusStop> busstops;
+    /** All routes. */
+    private final List<Route> routes;
+    /** All paths. */
+    private final List<Path> paths;
+    /** Schedule. */
+    private final Map<Path, List<Trip>> schedule;
+    /**
+     * Constructor.
+     * @param pProfile transport profile.
+     * @param lBs bus stops.
+     * @param lR routes.
+     * @param lP paths.
+     * @param sch schedule.
+     */
+    public SyntheticNetwork(final TransportProfile pProfile,
+            final List<BusStop> lBs, final List<Route> lR,
+            final List<Path> lP, final Map<Path, List<Trip>> sch) {
+        profile = pProfile;
+        busstops = lBs;
+        routes = lR;
+        paths = lP;
+        schedule = sch;
+    }
+    /**
+     * Import data for one route profile, like data parsers produce.
+     * Serializer modifies entities, so import data contains copies.
+     * @param type route profile.
+     * @return import data.
+     */
+    public ImportData toImportData(final RouteProfile type) {
+        Map<BusStop, BusStop> bsCopies = new LinkedHashMap<>();
+        Map<Route, Route> routeCopies = new LinkedHashMap<>();
+        Map<Path, Path> pathCopies = new LinkedHashMap<>();
+        for (Route route : routes) {
+            if (type.equals(route.getType())) {
+                Route r = new Route();
+                r.setExternalId(route.getExternalId());
+                r.setNamePrefix(route.getNamePrefix());
+                r.setNamePostfix(route.getNamePostfix());
+                r.setType(type);
+                r.setTransportProfile(profile);
+                routeCopies.put(route, r);
+            }
+        }
+        for (Path path : paths) {
+            if (!routeCopies.containsKey(path.getRoute())) {
+                continue;
+            }
+            List<BusStop> way = new ArrayList<>();
+            for (BusStop bs : path.getBusstops()) {
+                if (!bsCopies.containsKey(bs)) {
+                    BusStop b = new BusStop();
+                    b.setExternalId(bs.getExternalId());
+                    b.setName(bs.getName());
+                    b.setLatitude(bs.getLatitude());
+                    b.setLongitude(bs.getLongitude());
+                    b.setTransportProfile(profile);
+                    bsCopies.put(bs, b);
+                }
+                way.add(bsCopies.get(bs));
+            }
+            Path p = new Path();
+            p.setExternalId(path.getExternalId());
+            p.setDescription(path.getDescription());
+            p.setRoute(routeCopies.get(path.getRoute()));
+            p.setBusstops(way);
+            p.setTransportProfile(profile);
+            pathCopies.put(path, p);
+        }
+        Map<Path, List<Trip>> sch = new LinkedHashMap<>();
+        for (Path path : pathCopies.keySet()) {
+            if (!schedule.containsKey(path)) {
+                continue;
+            }
+            List<Trip> trips = new ArrayList<>();
+            for (Trip trip : schedule.get(path)) {
+                Trip t = new Trip();
+                t.setDays(trip.getDays());
+                t.setRegular(trip.getRegular());
+                t.setIrregular(trip.getIrregular());
+                t.setPath(pathCopies.get(path));
+                trips.add(t);
+            }
+            sch.put(pathCopies.get(path), trips);
+        }
+        return new JsonImportData(new ArrayList<>(bsCopies.values()),
+                new ArrayList<>(pathCopies.values()),
+                new ArrayList<>(routeCopies.values()), sch);
+    }
+    /**
+     * Build in-memory graph and register it, so search engines
+     * can find paths in synthetic network. Evicted graph is built
+     * again from network.
+     * @param graphConstructor graph constructor.
+     * @return graph.
+     * @throws Exception error.
+     */
+    public Graph toGraph(final GraphConstructor graphConstructor)
+            throws Exception {
+        Callable<Graph> loader = loader(graphConstructor);
+        Graph graph = loader.call();
+        graphConstructor.registerGraph(profile, graph, loader);
+        return graph;
+    }
+    /**
+     * Graph loader, builds graph of network.
+     * @param graphConstructor graph constructor.
+     * @return graph loader.
+     */
+    public Callable<Graph> loader(final GraphConstructor graphConstructor) {
+        return () -> graphConstructor.buildGraph(profile,
+                new ArrayList<>(paths), busstops, schedule);
+    }
+    /**
+     * @return the profile
+     */
+    public TransportProfile getProfile() {
+        return profile;
+    }
+    /**
+     * @return the busstops
+     */
+    public List<BusStop> getBusstops() {
+        return busstops;
+    }
+    /**
+     * @return the routes
+     */
+    public List<Route> getRoutes() {
+        return routes;
+    }
+    /**
+     * @return the paths
+     */
+    public List<Path> getPaths() {
+        return paths;
+    }
+    /**
+     * @return the schedule
+     */
+    public Map<Path, List<Trip>> getSchedule() {
+        return schedule;
+    }
+}
@@ -0,0 +1,602 @@
+/*
+ * Copyright (C) 2017 ss
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ss.sonya.test.fixture;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import org.json.JSONArray;
+import org.json.JSONObject;
+import ss.sonya.entity.BusStop;
+import ss.sonya.entity.MapLayer;
+import ss.sonya.entity.Path;
+import ss.sonya.entity.Route;
+import ss.sonya.entity.RouteProfile;
+import ss.sonya.entity.TransportProfile;
+import ss.sonya.entity.Trip;
+import ss.sonya.transport.constants.TransportConst;
+
+/**
+ * Synthetic city network generator.
+ * Builds transport profile, route profiles, bus stops, routes, paths and
+ * schedule for city of any size. Network depends on settings only,
+ * same seed always produce same network.
+ * Generator is not thread safe.
+ * @author ss
+ */
+public class SyntheticNetworkGenerator {
+    /** Kilometers in one latitude degree. */
+    private static final double KM_PER_DEGREE = 111.32;
+    /** Ground route types. */
+    private static final String[] GROUND_TYPES = {
+        "Autobus", "Trolleybus", "Tram"
+    };
+    /** Ground route types average speed, km/h. */
+    private static final double[] GROUND_SPEED = {20, 17, 16};
+    /** Ground route types share, cumulative. */
+    private static final double[] GROUND_SHARE = {0.7, 0.9, 1.0};
+    /** Ground route types line color. */
+    private static final String[] GROUND_COLOR = {
+        "#1565c0", "#2e7d32", "#c62828"
+    };
+    /** Metro average speed, km/h. */
+    private static final double METRO_SPEED = 40;
+    /** Distance between platform and crossroad center, km. */
+    private static final double PLATFORM_OFFSET = 0.04;
+    /** Metro station position deviation from line, km. */
+    private static final double METRO_DEVIATION = 0.2;
+    /** Metro line covers this part of city diameter. */
+    private static final double METRO_COVERAGE = 0.8;
+    /** Max heading change between neighboring bus stops, radians. */
+    private static final double MAX_TURN = Math.toRadians(35);
+    /** Grid rings, checked for the nearest bus stop. */
+    private static final int NEAREST_RINGS = 3;
+    /** Attempts to create one route. */
+    private static final int ROUTE_ATTEMPTS = 10;
+    /** Bus stop cost, min. */
+    private static final double BUS_STOP_COST = 0.5;
+    /** Weekday trips. */
+    private static final String WEEKDAYS = "12345";
+    /** Weekend trips. */
+    private static final String WEEKEND = "67";
+    /** Minutes in hour. */
+    private static final int MINUTES = 60;
+    /** Minutes in day. */
+    private static final int DAY_MINUTES = 24 * MINUTES;
+    /** Settings. */
+    private final SyntheticNetworkSettings settings;
+    /** Random. */
+    private Random random;
+    /** Bus stops. */
+    private List<BusStop> busstops;
+    /** Bus stop coordinates, km from city center. */
+    private List<double[]> coords;
+    /** Ground bus stops (crossroad) site. */
+    private List<Integer> siteOf;
+    /** Crossroad platforms. */
+    private List<List<Integer>> sites;
+    /** Ground bus stops grid. */
+    private Map<Long, List<Integer>> grid;
+    /** Route ID sequence. */
+    private int routeSeq;
+    /** Path ID sequence. */
+    private int pathSeq;
+    /**
+     * Constructor.
+     * @param pSettings network settings.
+     */
+    public SyntheticNetworkGenerator(final SyntheticNetworkSettings pSettings) {
+        settings = pSettings;
+    }
+    /**
+     * Generate network.
+     * @return synthetic network.
+     */
+    public SyntheticNetwork generate() {
+        random = new Random(settings.getSeed());
+        busstops = new ArrayList<>();
+        coords = new ArrayList<>();
+        siteOf = new ArrayList<>();
+        sites = new ArrayList<>();
+        grid = new HashMap<>();
+        routeSeq = 0;
+        pathSeq = 0;
+        TransportProfile profile = createProfile();
+        createGroundBusStops();
+        List<Route> routes = new ArrayList<>();
+        List<Path> paths = new ArrayList<>();
+        for (int r = 0; r < settings.getRoutes(); r++) {
+            RouteProfile type = pickGroundType(profile);
+            List<Integer> way = null;
+            for (int a = 0; a < ROUTE_ATTEMPTS && way == null; a++) {
+                way = walk();
+            }
+            if (way == null) {
+                continue;
+            }
+            Route route = createRoute(profile, type,
+                    String.valueOf(routes.size() + 1));
+            routes.add(route);
+            paths.add(createPath(route, way));
+            paths.add(createPath(route, platformsBack(way)));
+        }
+        RouteProfile metro = findType(profile, TransportConst.METRO);
+        for (int l = 0; l < settings.getMetroLines(); l++) {
+            List<Integer> way = createMetroLine(l);
+            Route route = createRoute(profile, metro, "M" + (l + 1));
+            routes.add(route);
+            paths.add(createPath(route, way));
+            List<Integer> back = new ArrayList<>(way);
+            Collections.reverse(back);
+            paths.add(createPath(route, back));
+        }
+        Map<Path, List<Trip>> schedule = new LinkedHashMap<>();
+        if (settings.isSchedule()) {
+            long tripId = 0;
+            for (Path path : paths) {
+                List<Trip> trips = createTrips(path);
+                for (Trip trip : trips) {
+                    trip.setId(++tripId);
+                }
+                path.setSchedule(trips);
+                schedule.put(path, trips);
+            }
+        }
+        return new SyntheticNetwork(profile, busstops, routes, paths,
+                schedule);
+    }
+    /**
+     * Create transport profile with route profiles.
+     * @return transport profile.
+     */
+    private TransportProfile createProfile() {
+        double dLat = settings.getRadius() / KM_PER_DEGREE;
+        double dLon = settings.getRadius() / kmPerLonDegree();
+        TransportProfile profile = new TransportProfile();
+        profile.setId(settings.getProfileId());
+        profile.setName("Synthetic city #" + settings.getSeed());
+        profile.setCenterLat(settings.getCenterLat());
+        profile.setCenterLon(settings.getCenterLon());
+        profile.setSouthWestLat(settings.getCenterLat() - dLat);
+        profile.setSouthWestLon(settings.getCenterLon() - dLon);
+        profile.setNorthEastLat(settings.getCenterLat() + dLat);
+        profile.setNorthEastLon(settings.getCenterLon() + dLon);
+        profile.setInitialZoom(12);
+        profile.setMinZoom(10);
+        profile.setBusStopAccessZoneRadius(settings.getAccessZoneRadius());
+        profile.setSearchLimitForPoints(settings.getSearchLimitForPoints());
+        profile.setHasSchedule(settings.isSchedule());
+        profile.setMapLayers(new ArrayList<MapLayer>());
+        List<RouteProfile> types = new ArrayList<>();
+        for (int i = 0; i < GROUND_TYPES.length; i++) {
+            types.add(createType(profile, types.size() + 1, GROUND_TYPES[i],
+                    GROUND_SPEED[i], GROUND_COLOR[i]));
+        }
+        if (settings.getMetroLines() > 0) {
+            types.add(createType(profile, types.size() + 1,
+                    TransportConst.METRO, METRO_SPEED, "#6a1b9a"));
+        }
+        profile.setRouteProfiles(types);
+        return profile;
+    }
+    /**
+     * Create route profile.
+     * @param profile transport profile.
+     * @param id route profile ID.
+     * @param name route profile name.
+     * @param speed average speed.
+     * @param color line color.
+     * @return route profile.
+     */
+    private RouteProfile createType(final TransportProfile profile,
+            final int id, final String name, final double speed,
+            final String color) {
+        RouteProfile type = new RouteProfile();
+        type.setId(id);
+        type.setName(name);
+        type.setAvgSpeed(speed);
+        type.setLineColor(color);
+        type.setTransportProfile(profile);
+        return type;
+    }
+    /**
+     * Find route profile by name.
+     * @param profile transport profile.
+     * @param name route profile name.
+     * @return route profile or null.
+     */
+    private RouteProfile findType(final TransportProfile profile,
+            final String name) {
+        for (RouteProfile type : profile.getRouteProfiles()) {
+            if (name.equals(type.getName())) {
+                return type;
+            }
+        }
+        return null;
+    }
+    /**
+     * Pick type for ground route.
+     * @param profile transport profile.
+     * @return route profile.
+     */
+    private RouteProfile pickGroundType(final TransportProfile profile) {
+        double v = random.nextDouble();
+        for (int i = 0; i < GROUND_SHARE.length; i++) {
+            if (v < GROUND_SHARE[i]) {
+                return profile.getRouteProfiles().get(i);
+            }
+        }
+        return profile.getRouteProfiles().get(0);
+    }
+    /**
+     * Create ground bus stops.
+     * Bus stops are grouped by crossroads, every crossroad has one or
+     * more platforms with same name.
+     */
+    private void createGroundBusStops() {
+        List<double[]> clusters = new ArrayList<>();
+        for (int i = 0; i < settings.getClusters(); i++) {
+            clusters.add(uniformPoint(settings.getRadius() * METRO_COVERAGE));
+        }
+        while (busstops.size() < settings.getBusstops()) {
+            double[] c;
+            if (!clusters.isEmpty()
+                    && random.nextDouble() < settings.getClusterShare()) {
+                double[] cluster = clusters.get(
+                        random.nextInt(clusters.size()));
+                c = new double[] {
+                    cluster[0] + random.nextGaussian()
+                            * settings.getClusterRadius(),
+                    cluster[1] + random.nextGaussian()
+                            * settings.getClusterRadius()
+                };
+            } else {
+                c = uniformPoint(settings.getRadius());
+            }
+            int n = Math.min(1 + random.nextInt(
+                    Math.max(1, settings.getPlatforms())),
+                    settings.getBusstops() - busstops.size());
+            List<Integer> platforms = new ArrayList<>();
+            double angle = random.nextDouble() * 2 * Math.PI;
+            for (int k = 0; k < n; k++) {
+                double a = angle + 2 * Math.PI * k / n;
+                double x = n == 1 ? c[0] : c[0] + PLATFORM_OFFSET * Math.cos(a);
+                double y = n == 1 ? c[1] : c[1] + PLATFORM_OFFSET * Math.sin(a);
+                int idx = createBusStop("Stop " + (sites.size() + 1), x, y);
+                siteOf.add(sites.size());
+                platforms.add(idx);
+                long key = cell(x, y);
+                if (!grid.containsKey(key)) {
+                    grid.put(key, new ArrayList<>());
+                }
+                grid.get(key).add(idx);
+            }
+            sites.add(platforms);
+        }
+    }
+    /**
+     * Create metro line stations.
+     * All lines are crossing near city center.
+     * @param line line number.
+     * @return line way.
+     */
+    private List<Integer> createMetroLine(final int line) {
+        int n = Math.max(2, settings.getMetroStations());
+        double angle = Math.PI * line / settings.getMetroLines()
+                + (random.nextDouble() - 0.5) * MAX_TURN;
+        double length = 2 * settings.getRadius() * METRO_COVERAGE;
+        double step = length / (n - 1);
+        List<Integer> way = new ArrayList<>();
+        for (int i = 0; i < n; i++) {
+            double d = -length / 2 + step * i;
+            double dev = (random.nextDouble() - 0.5) * 2 * METRO_DEVIATION;
+            double x = d * Math.cos(angle) - dev * Math.sin(angle);
+            double y = d * Math.sin(angle) + dev * Math.cos(angle);
+            way.add(createBusStop("Station " + (line + 1) + "-" + (i + 1),
+                    x, y));
+            siteOf.add(-1);
+        }
+        return way;
+    }
+    /**
+     * Random walk through ground bus stops.
+     * @return way (bus stop indexes) or null if walk failed.
+     */
+    private List<Integer> walk() {
+        int len = Math.max(2, settings.getPathLength()
+                + (settings.getPathLengthDeviation() > 0
+                    ? random.nextInt(2 * settings.getPathLengthDeviation() + 1)
+                        - settings.getPathLengthDeviation() : 0));
+        int cur = random.nextInt(sites.size());
+        cur = sites.get(cur).get(0);
+        double heading = random.nextDouble() * 2 * Math.PI;
+        List<Integer> way = new ArrayList<>();
+        Set<Integer> usedSites = new HashSet<>();
+        way.add(cur);
+        usedSites.add(siteOf.get(cur));
+        while (way.size() < len) {
+            heading += (random.nextDouble() * 2 - 1) * MAX_TURN;
+            double[] c = coords.get(cur);
+            double tx = c[0] + settings.getStopSpacing() * Math.cos(heading);
+            double ty = c[1] + settings.getStopSpacing() * Math.sin(heading);
+            if (Math.hypot(tx, ty) > settings.getRadius()) {
+                // turn back to city center
+                heading = Math.atan2(-c[1], -c[0]);
+                tx = c[0] + settings.getStopSpacing() * Math.cos(heading);
+                ty = c[1] + settings.getStopSpacing() * Math.sin(heading);
+            }
+            int next = nearest(tx, ty, usedSites);
+            if (next < 0) {
+                break;
+            }
+            way.add(next);
+            usedSites.add(siteOf.get(next));
+            cur = next;
+        }
+        return way.size() < 2 ? null : way;
+    }
+    /**
+     * Way back, using other platforms of same crossroads.
+     * @param way forward way.
+     * @return back way.
+     */
+    private List<Integer> platformsBack(final List<Integer> way) {
+        List<Integer> back = new ArrayList<>();
+        for (int i = way.size() - 1; i >= 0; i--) {
+            int idx = way.get(i);
+            List<Integer> platforms = sites.get(siteOf.get(idx));
+            back.add(platforms.get((platforms.indexOf(idx) + 1)
+                    % platforms.size()));
+        }
+        return back;
+    }
+    /**
+     * Find nearest ground bus stop.
+     * @param x point X, km.
+     * @param y point Y, km.
+     * @param usedSites excluded crossroads.
+     * @return bus stop index or -1.
+     */
+    private int nearest(final double x, final double y,
+            final Set<Integer> usedSites) {
+        int cx = (int) Math.floor(x / settings.getStopSpacing());
+        int cy = (int) Math.floor(y / settings.getStopSpacing());
+        int best = -1;
+        double bestDist = Double.MAX_VALUE;
+        for (int ring = 0; ring <= NEAREST_RINGS && best < 0; ring++) {
+            for (int ix = cx - ring; ix <= cx + ring; ix++) {
+                for (int iy = cy - ring; iy <= cy + ring; iy++) {
+                    if (Math.max(Math.abs(ix - cx), Math.abs(iy - cy))
+                            != ring) {
+                        continue;
+                    }
+                    List<Integer> cellStops = grid.get(key(ix, iy));
+                    if (cellStops == null) {
+                        continue;
+                    }
+                    for (Integer idx : cellStops) {
+                        if (usedSites.contains(siteOf.get(idx))) {
+                            continue;
+                        }
+                        double[] c = coords.get(idx);
+                        double d = Math.hypot(c[0] - x, c[1] - y);
+                        if (d < bestDist) {
+                            bestDist = d;
+                            best = idx;
+                        }
+                    }
+                }
+            }
+        }
+        return best;
+    }
+    /**
+     * Create bus stop.
+     * @param name bus stop name.
+     * @param x X, km from city center.
+     * @param y Y, km from city center.
+     * @return bus stop index.
+     */
+    private int createBusStop(final String name, final double x,
+            final double y) {
+        BusStop bs = new BusStop();
+        bs.setId(busstops.size() + 1);
+        bs.setExternalId((long) bs.getId());
+        bs.setName(name);
+        bs.setLatitude(settings.getCenterLat() + y / KM_PER_DEGREE);
+        bs.setLongitude(settings.getCenterLon() + x / kmPerLonDegree());
+        bs.setPaths(new ArrayList<>());
+        busstops.add(bs);
+        coords.add(new double[] {x, y});
+        return busstops.size() - 1;
+    }
+    /**
+     * Create route.
+     * @param profile transport profile.
+     * @param type route profile.
+     * @param name route name.
+     * @return route.
+     */
+    private Route createRoute(final TransportProfile profile,
+            final RouteProfile type, final String name) {
+        Route route = new Route();
+        route.setId(++routeSeq);
+        route.setExternalId((long) route.getId());
+        route.setNamePrefix(name);
+        route.setType(type);
+        route.setTransportProfile(profile);
+        route.setPaths(new ArrayList<>());
+        return route;
+    }
+    /**
+     * Create path.
+     * @param route route.
+     * @param way bus stop indexes.
+     * @return path.
+     */
+    private Path createPath(final Route route, final List<Integer> way) {
+        List<BusStop> bsWay = new ArrayList<>();
+        for (Integer idx : way) {
+            bsWay.add(busstops.get(idx));
+        }
+        Path path = new Path();
+        path.setId(++pathSeq);
+        path.setExternalId((long) path.getId());
+        path.setRoute(route);
+        path.setTransportProfile(route.getTransportProfile());
+        path.setBusstops(bsWay);
+        path.setDescription(bsWay.get(0).getName() + " - "
+                + bsWay.get(bsWay.size() - 1).getName());
+        route.getPaths().add(path);
+        for (BusStop bs : new HashSet<>(bsWay)) {
+            bs.getPaths().add(path);
+        }
+        return path;
+    }
+    /**
+     * Create path trips, for weekdays and weekend.
+     * @param path path.
+     * @return trips.
+     */
+    private List<Trip> createTrips(final Path path) {
+        boolean isMetro = TransportConst.METRO.equals(
+                path.getRoute().getType().getName());
+        int min = Math.max(1, settings.getMinHeadway());
+        int headway = isMetro ? Math.max(1, min / 2)
+                : min + random.nextInt(
+                        Math.max(1, settings.getMaxHeadway() - min + 1));
+        List<Trip> trips = new ArrayList<>();
+        // weekend service is less frequent
+        trips.addAll(createTrips(path, WEEKDAYS, headway));
+        trips.addAll(createTrips(path, WEEKEND, headway + headway / 2));
+        return trips;
+    }
+    /**
+     * Create trips for days.
+     * @param path path.
+     * @param days days.
+     * @param headway movement interval, min.
+     * @return trips.
+     */
+    private List<Trip> createTrips(final Path path, final String days,
+            final int headway) {
+        List<Trip> trips = new ArrayList<>();
+        if (!settings.isRegularSchedule()) {
+            JSONObject o = new JSONObject();
+            o.put("time", new JSONArray());
+            o.put("interval", new JSONArray().put(settings.getServiceStart()
+                    + "-" + settings.getServiceEnd() + "=" + headway + "-"
+                    + (headway + 2)));
+            trips.add(createTrip(path, days, "", o.toString()));
+            return trips;
+        }
+        // bus stop offsets from trip start, min
+        List<BusStop> way = path.getBusstops();
+        double speed = path.getRoute().getType().getAvgSpeed();
+        int[] offsets = new int[way.size()];
+        double time = 0;
+        for (int i = 1; i < way.size(); i++) {
+            double[] c1 = coords.get(way.get(i - 1).getId() - 1);
+            double[] c2 = coords.get(way.get(i).getId() - 1);
+            time += Math.hypot(c2[0] - c1[0], c2[1] - c1[1]) / speed
+                    * MINUTES + BUS_STOP_COST;
+            offsets[i] = (int) time;
+        }
+        int end = minutes(settings.getServiceEnd());
+        for (int t = minutes(settings.getServiceStart()); t < end;
+                t += headway + 1) {
+            StringBuilder sb = new StringBuilder();
+            for (int offset : offsets) {
+                int m = (t + offset) % DAY_MINUTES;
+                sb.append(String.format("%02d:%02d", m / MINUTES,
+                        m % MINUTES)).append(",");
+            }
+            sb.setLength(sb.length() - 1);
+            trips.add(createTrip(path, days, sb.toString(), null));
+        }
+        return trips;
+    }
+    /**
+     * Create trip.
+     * @param path path.
+     * @param days days.
+     * @param regular regular schedule.
+     * @param irregular irregular schedule.
+     * @return trip.
+     */
+    private Trip createTrip(final Path path, final String days,
+            final String regular, final String irregular) {
+        Trip trip = new Trip();
+        trip.setPath(path);
+        trip.setDays(days);
+        trip.setRegular(regular);
+        trip.setIrregular(irregular);
+        return trip;
+    }
+    /**
+     * Uniform random point in circle.
+     * @param r circle radius, km.
+     * @return point, km from city center.
+     */
+    private double[] uniformPoint(final double r) {
+        double d = r * Math.sqrt(random.nextDouble());
+        double a = random.nextDouble() * 2 * Math.PI;
+        return new double[] {d * Math.cos(a), d * Math.sin(a)};
+    }
+    /**
+     * Kilometers in one longitude degree, for city center latitude.
+     * @return kilometers.
+     */
+    private double kmPerLonDegree() {
+        return KM_PER_DEGREE * Math.cos(Math.toRadians(
+                settings.getCenterLat()));
+    }
+    /**
+     * Grid cell key for point.
+     * @param x X, km.
+     * @param y Y, km.
+     * @return cell key.
+     */
+    private long cell(final double x, final double y) {
+        return key((int) Math.floor(x / settings.getStopSpacing()),
+                (int) Math.floor(y / settings.getStopSpacing()));
+    }
+    /**
+     * Grid cell key.
+     * @param ix cell X.
+     * @param iy cell Y.
+     * @return cell key.
+     */
+    private static long key(final int ix, final int iy) {
+        return ((long) ix << Integer.SIZE) | (iy & 0xffffffffL);
+    }
+    /**
+     * Time in minutes.
+     * @param hhMM time, HH:mm.
+     * @return minutes from midnight.
+     */
+    private static int minutes(final String hhMM) {
+        String[] arr = hhMM.split(":");
+        return Integer.parseInt(arr[0]) * MINUTES + Integer.parseInt(arr[1]);
+    }
+}
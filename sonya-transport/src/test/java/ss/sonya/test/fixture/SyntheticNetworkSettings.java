@@ -0,0 +1,378 @@
+/*
+ * Copyright (C) 2017 ss
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ss.sonya.test.fixture;
+
+/**
+ * Synthetic network settings.
+ * Same settings and same seed always produce same network.
+ * @author ss
+ */
+public class SyntheticNetworkSettings {
+    /** Random seed. */
+    private long seed = 1;
+    /** Transport profile ID. */
+    private int profileId = 1;
+    /** City center latitude. */
+    private double centerLat = 53.9;
+    /** City center longitude. */
+    private double centerLon = 27.56;
+    /** City radius, km. */
+    private double radius = 12;
+    /** Ground bus stops count (metro stations excluded). */
+    private int busstops = 2500;
+    /** Ground routes count (metro lines excluded). */
+    private int routes = 300;
+    /** Average path length (bus stops in way). */
+    private int pathLength = 22;
+    /** Path length deviation. */
+    private int pathLengthDeviation = 8;
+    /** Distance between neighboring bus stops in way, km. */
+    private double stopSpacing = 0.5;
+    /** Clusters count (dense districts). */
+    private int clusters = 40;
+    /** Share of bus stops placed into clusters, 0..1. */
+    private double clusterShare = 0.6;
+    /** Cluster radius, km. */
+    private double clusterRadius = 0.8;
+    /** Max platforms (bus stops with same name) around one crossroad. */
+    private int platforms = 3;
+    /** Metro lines count. */
+    private int metroLines = 2;
+    /** Stations on one metro line. */
+    private int metroStations = 15;
+    /** Generate schedule. */
+    private boolean schedule = true;
+    /** Use regular schedule (trip times) instead of headway intervals. */
+    private boolean regularSchedule = false;
+    /** Min headway, minutes. */
+    private int minHeadway = 5;
+    /** Max headway, minutes. */
+    private int maxHeadway = 15;
+    /** First departure, HH:mm. */
+    private String serviceStart = "05:30";
+    /** Last departure, HH:mm. */
+    private String serviceEnd = "23:30";
+    /** Bus stop access zone radius, km. */
+    private double accessZoneRadius = 0.3;
+    /** Search limit for points. */
+    private int searchLimitForPoints = 6;
+    /**
+     * Settings for network, which size is proportional to base network.
+     * Base network roughly corresponds to Minsk public transport.
+     * @param factor scale factor, for example 10 means '10x Minsk'.
+     * @return settings.
+     */
+    public static SyntheticNetworkSettings scaled(final double factor) {
+        SyntheticNetworkSettings s = new SyntheticNetworkSettings();
+        s.setBusstops((int) (s.getBusstops() * factor));
+        s.setRoutes((int) (s.getRoutes() * factor));
+        s.setClusters((int) Math.max(1, s.getClusters() * factor));
+        s.setMetroLines((int) Math.max(1, s.getMetroLines()
+                * Math.sqrt(factor)));
+        // area grows with factor, radius - with square root
+        s.setRadius(s.getRadius() * Math.sqrt(factor));
+        return s;
+    }
+    /**
+     * @return the seed
+     */
+    public long getSeed() {
+        return seed;
+    }
+    /**
+     * @param seed the seed to set
+     */
+    public void setSeed(long seed) {
+        this.seed = seed;
+    }
+    /**
+     * @return the profileId
+     */
+    public int getProfileId() {
+        return profileId;
+    }
+    /**
+     * @param profileId the profileId to set
+     */
+    public void setProfileId(int profileId) {
+        this.profileId = profileId;
+    }
+    /**
+     * @return the centerLat
+     */
+    public double getCenterLat() {
+        return centerLat;
+    }
+    /**
+     * @param centerLat the centerLat to set
+     */
+    public void setCenterLat(double centerLat) {
+        this.centerLat = centerLat;
+    }
+    /**
+     * @return the centerLon
+     */
+    public double getCenterLon() {
+        return centerLon;
+    }
+    /**
+     * @param centerLon the centerLon to set
+     */
+    public void setCenterLon(double centerLon) {
+        this.centerLon = centerLon;
+    }
+    /**
+     * @return the radius
+     */
+    public double getRadius() {
+        return radius;
+    }
+    /**
+     * @param radius the radius to set
+     */
+    public void setRadius(double radius) {
+        this.radius = radius;
+    }
+    /**
+     * @return the busstops
+     */
+    public int getBusstops() {
+        return busstops;
+    }
+    /**
+     * @param busstops the busstops to set
+     */
+    public void setBusstops(int busstops) {
+        this.busstops = busstops;
+    }
+    /**
+     * @return the routes
+     */
+    public int getRoutes() {
+        return routes;
+    }
+    /**
+     * @param routes the routes to set
+     */
+    public void setRoutes(int routes) {
+        this.routes = routes;
+    }
+    /**
+     * @return the pathLength
+     */
+    public int getPathLength() {
+        return pathLength;
+    }
+    /**
+     * @param pathLength the pathLength to set
+     */
+    public void setPathLength(int pathLength) {
+        this.pathLength = pathLength;
+    }
+    /**
+     * @return the pathLengthDeviation
+     */
+    public int getPathLengthDeviation() {
+        return pathLengthDeviation;
+    }
+    /**
+     * @param pathLengthDeviation the pathLengthDeviation to set
+     */
+    public void setPathLengthDeviation(int pathLengthDeviation) {
+        this.pathLengthDeviation = pathLengthDeviation;
+    }
+    /**
+     * @return the stopSpacing
+     */
+    public double getStopSpacing() {
+        return stopSpacing;
+    }
+    /**
+     * @param stopSpacing the stopSpacing to set
+     */
+    public void setStopSpacing(double stopSpacing) {
+        this.stopSpacing = stopSpacing;
+    }
+    /**
+     * @return the clusters
+     */
+    public int getClusters() {
+        return clusters;
+    }
+    /**
+     * @param clusters the clusters to set
+     */
+    public void setClusters(int clusters) {
+        this.clusters = clusters;
+    }
+    /**
+     * @return the clusterShare
+     */
+    public double getClusterShare() {
+        return clusterShare;
+    }
+    /**
+     * @param clusterShare the clusterShare to set
+     */
+    public void setClusterShare(double clusterShare) {
+        this.clusterShare = clusterShare;
+    }
+    /**
+     * @return the clusterRadius
+     */
+    public double getClusterRadius() {
+        return clusterRadius;
+    }
+    /**
+     * @param clusterRadius the clusterRadius to set
+     */
+    public void setClusterRadius(double clusterRadius) {
+        this.clusterRadius = clusterRadius;
+    }
+    /**
+     * @return the platforms
+     */
+    public int getPlatforms() {
+        return platforms;
+    }
+    /**
+     * @param platforms the platforms to set
+     */
+    public void setPlatforms(int platforms) {
+        this.platforms = platforms;
+    }
+    /**
+     * @return the metroLines
+     */
+    public int getMetroLines() {
+        return metroLines;
+    }
+    /**
+     * @param metroLines the metroLines to set
+     */
+    public void setMetroLines(int metroLines) {
+        this.metroLines = metroLines;
+    }
+    /**
+     * @return the metroStations
+     */
+    public int getMetroStations() {
+        return metroStations;
+    }
+    /**
+     * @param metroStations the metroStations to set
+     */
+    public void setMetroStations(int metroStations) {
+        this.metroStations = metroStations;
+    }
+    /**
+     * @return the schedule
+     */
+    public boolean isSchedule() {
+        return schedule;
+    }
+    /**
+     * @param schedule the schedule to set
+     */
+    public void setSchedule(boolean schedule) {
+        this.schedule = schedule;
+    }
+    /**
+     * @return the regularSchedule
+     */
+    public boolean isRegularSchedule() {
+        return regularSchedule;
+    }
+    /**
+     * @param regularSchedule the regularSchedule to set
+     */
+    public void setRegularSchedule(boolean regularSchedule) {
+        this.regularSchedule = regularSchedule;
+    }
+    /**
+     * @return the minHeadway
+     */
+    public int getMinHeadway() {
+        return minHeadway;
+    }
+    /**
+     * @param minHeadway the minHeadway to set
+     */
+    public void setMinHeadway(int minHeadway) {
+        this.minHeadway = minHeadway;
+    }
+    /**
+     * @return the maxHeadway
+     */
+    public int getMaxHeadway() {
+        return maxHeadway;
+    }
+    /**
+     * @param maxHeadway the maxHeadway to set
+     */
+    public void setMaxHeadway(int maxHeadway) {
+        this.maxHeadway = maxHeadway;
+    }
+    /**
+     * @return the serviceStart
+     */
+    public String getServiceStart() {
+        return serviceStart;
+    }
+    /**
+     * @param serviceStart the serviceStart to set
+     */
+    public void setServiceStart(String serviceStart) {
+        this.serviceStart = serviceStart;
+    }
+    /**
+     * @return the serviceEnd
+     */
+    public String getServiceEnd() {
+        return serviceEnd;
+    }
+    /**
+     * @param serviceEnd the serviceEnd to set
+     */
+    public void setServiceEnd(String serviceEnd) {
+        this.serviceEnd = serviceEnd;
+    }
+    /**
+     * @return the accessZoneRadius
+     */
+    public double getAccessZoneRadius() {
+        return accessZoneRadius;
+    }
+    /**
+     * @param accessZoneRadius the accessZoneRadius to set
+     */
+    public void setAccessZoneRadius(double accessZoneRadius) {
+        this.accessZoneRadius = accessZoneRadius;
+    }
+    /**
+     * @return the searchLimitForPoints
+     */
+    public int getSearchLimitForPoints() {
+        return searchLimitForPoints;
+    }
+    /**
+     * @param searchLimitForPoints the searchLimitForPoints to set
+     */
+    public void setSearchLimitForPoints(int searchLimitForPoints) {
+        this.searchLimitForPoints = searchLimitForPoints;
+    }
+}
@@ -0,0 +1,295 @@
+/*
+ * Copyright (C) 2017 ss
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ss.sonya.test.tool;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.File;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.springframework.context.ApplicationContext;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import ss.sonya.entity.BusStop;
+import ss.sonya.entity.Path;
+import ss.sonya.entity.Route;
+import ss.sonya.entity.RouteProfile;
+import ss.sonya.entity.TransportProfile;
+import ss.sonya.entity.Trip;
+import ss.sonya.test.fixture.InMemoryTransportConfig;
+import ss.sonya.test.fixture.SyntheticNetwork;
+import ss.sonya.test.fixture.SyntheticNetworkGenerator;
+import ss.sonya.test.fixture.SyntheticNetworkSettings;
+import ss.sonya.transport.api.ImportDataSerializer;
+import ss.sonya.transport.iface.ImportData;
+import ss.sonya.transport.search.BFSAlgorithmV1;
+import ss.sonya.transport.search.Graph;
+import ss.sonya.transport.search.GraphConstructor;
+import ss.sonya.transport.search.SearchEngine;
+import ss.sonya.transport.search.vo.SearchSettings;
+import ss.sonya.transport.search.vo.SlowQuery;
+
+/**
+ * Slow query replay tool.
+ * Re-runs captured slow queries against in-memory graph and reports
+ * latency percentiles. Graph is built from synthetic network or from
+ * import data files (one file per route profile).
+ * <pre>
+ * SearchReplay slow-queries.json [--runs N] [--engine class]
+ *      [--synthetic seed scale]
+ *      [--profile profile.json --import routeProfileId=file ...]
+ * </pre>
+ * @author ss
+ */
+public class SearchReplay {
+    /** Reported percentiles. */
+    private static final double[] PERCENTILES = {0.5, 0.95, 0.99, 1};
+    /** Application context. */
+    private final ApplicationContext ctx;
+    /** Output. */
+    private final PrintStream out;
+    /**
+     * Constructor.
+     * @param pCtx application context, see {@link InMemoryTransportConfig}.
+     * @param pOut output.
+     */
+    public SearchReplay(final ApplicationContext pCtx,
+            final PrintStream pOut) {
+        ctx = pCtx;
+        out = pOut;
+    }
+    /**
+     * Entry point.
+     * @param args arguments.
+     * @throws Exception error.
+     */
+    public static void main(final String[] args) throws Exception {
+        if (args.length == 0) {
+            System.err.println("usage: SearchReplay slow-queries.json"
+                    + " [--runs N] [--engine class]"
+                    + " [--synthetic seed scale]"
+                    + " [--profile profile.json"
+                    + " --import routeProfileId=file ...]");
+            System.exit(1);
+        }
+        int runs = 5;
+        Class<?> engine = BFSAlgorithmV1.class;
+        long seed = 1;
+        double scale = 1;
+        File profileFile = null;
+        Map<Integer, File> imports = new LinkedHashMap<>();
+        for (int i = 1; i < args.length; i++) {
+            switch (args[i]) {
+                case "--runs":
+                    runs = Integer.parseInt(args[++i]);
+                    break;
+                case "--engine":
+                    engine = Class.forName(args[++i]);
+                    break;
+                case "--synthetic":
+                    seed = Long.parseLong(args[++i]);
+                    scale = Double.parseDouble(args[++i]);
+                    break;
+                case "--profile":
+                    profileFile = new File(args[++i]);
+                    break;
+                case "--import":
+                    String[] kv = args[++i].split("=", 2);
+                    imports.put(Integer.valueOf(kv[0]), new File(kv[1]));
+                    break;
+                default:
+                    throw new IllegalArgumentException(
+                            "unknown argument: " + args[i]);
+            }
+        }
+        try (AnnotationConfigApplicationContext ctx =
+                new AnnotationConfigApplicationContext(
+                        InMemoryTransportConfig.class)) {
+            SearchReplay replay = new SearchReplay(ctx, System.out);
+            Graph graph;
+            TransportProfile profile;
+            if (profileFile == null) {
+                SyntheticNetworkSettings s = SyntheticNetworkSettings
+                        .scaled(scale);
+                s.setSeed(seed);
+                SyntheticNetwork network = new SyntheticNetworkGenerator(s)
+                        .generate();
+                profile = network.getProfile();
+                graph = network.toGraph(
+                        ctx.getBean(GraphConstructor.class));
+            } else {
+                profile = new ObjectMapper().readValue(profileFile,
+                        TransportProfile.class);
+                graph = replay.loadGraph(profile, imports);
+            }
+            replay.out.println("graph version [" + graph.getVersion()
+                    + "], vertices [" + graph.vertices() + "], edges ["
+                    + graph.edges() + "]");
+            replay.replay(readQueries(new File(args[0])), profile,
+                    (SearchEngine) ctx.getBean(engine), runs);
+        }
+    }
+    /**
+     * Read slow queries file.
+     * @param file file, downloaded from slow query log.
+     * @return slow queries.
+     * @throws Exception error.
+     */
+    public static List<SlowQuery> readQueries(final File file)
+            throws Exception {
+        return new ObjectMapper().readValue(file,
+                new TypeReference<List<SlowQuery>>() { });
+    }
+    /**
+     * Build and register graph from import data files.
+     * Entities are linked by external ID and get sequential IDs.
+     * @param profile transport profile.
+     * @param files import data files, key - route profile ID.
+     * @return graph.
+     * @throws Exception error.
+     */
+    public Graph loadGraph(final TransportProfile profile,
+            final Map<Integer, File> files) throws Exception {
+        ImportDataSerializer serializer = ctx.getBean(
+                ImportDataSerializer.class);
+        Map<Long, BusStop> busstops = new LinkedHashMap<>();
+        List<Path> paths = new ArrayList<>();
+        Map<Path, List<Trip>> schedule = new HashMap<>();
+        int routeId = 0;
+        for (Map.Entry<Integer, File> e : files.entrySet()) {
+            RouteProfile type = profile.getRouteProfiles().stream()
+                    .filter(rp -> e.getKey().equals(rp.getId()))
+                    .findFirst().orElseThrow(() -> new IllegalArgumentException(
+                            "route profile not found: " + e.getKey()));
+            ImportData data = serializer.deserialize(
+                    Files.readAllBytes(e.getValue().toPath()), profile, type);
+            for (BusStop bs : data.busstops()) {
+                if (!busstops.containsKey(bs.getExternalId())) {
+                    bs.setId(busstops.size() + 1);
+                    busstops.put(bs.getExternalId(), bs);
+                }
+            }
+            Map<Long, Route> routes = new HashMap<>();
+            for (Route route : data.routes()) {
+                route.setId(++routeId);
+                routes.put(route.getExternalId(), route);
+            }
+            Map<Long, Path> typePaths = new HashMap<>();
+            for (Path path : data.paths()) {
+                path.setId(paths.size() + 1);
+                path.setRoute(routes.get(path.getRoute().getExternalId()));
+                List<BusStop> way = new ArrayList<>();
+                for (BusStop ref : path.getBusstops()) {
+                    BusStop bs = busstops.get(ref.getExternalId());
+                    if (bs == null) {
+                        throw new IllegalArgumentException("bus stop ["
+                                + ref.getExternalId() + "] not found for "
+                                + path);
+                    }
+                    way.add(bs);
+                }
+                path.setBusstops(way);
+                paths.add(path);
+                typePaths.put(path.getExternalId(), path);
+            }
+            if (data.schedule() != null) {
+                data.schedule().forEach((ref, trips) -> {
+                    Path path = typePaths.get(ref.getExternalId());
+                    if (path != null) {
+                        trips.forEach(t -> t.setPath(path));
+                        schedule.put(path, trips);
+                    }
+                });
+            }
+        }
+        GraphConstructor graphConstructor = ctx.getBean(
+                GraphConstructor.class);
+        Graph graph = graphConstructor.buildGraph(profile, paths,
+                new ArrayList<>(busstops.values()), schedule);
+        graphConstructor.registerGraph(profile, graph);
+        return graph;
+    }
+    /**
+     * Replay slow queries.
+     * @param queries slow queries.
+     * @param profile transport profile, graph must be registered.
+     * @param engine search engine.
+     * @param runs runs per query.
+     * @return all latencies, nanoseconds.
+     * @throws Exception error.
+     */
+    public long[] replay(final List<SlowQuery> queries,
+            final TransportProfile profile, final SearchEngine engine,
+            final int runs) throws Exception {
+        out.println("queries [" + queries.size() + "], runs [" + runs
+                + "], engine [" + engine.getClass().getSimpleName() + "]");
+        out.println(String.format("%-4s %12s %10s %10s %10s %10s %8s",
+                "#", "captured", "p50", "p95", "p99", "max", "results"));
+        long[] all = new long[queries.size() * runs];
+        int n = 0;
+        for (int i = 0; i < queries.size(); i++) {
+            SlowQuery q = queries.get(i);
+            SearchSettings settings = q.getSettings();
+            settings.setProfileId(profile.getId());
+            settings.setExplain(false);
+            long[] times = new long[runs];
+            int results = 0;
+            for (int r = 0; r < runs; r++) {
+                long start = System.nanoTime();
+                results = engine.search(settings).size();
+                times[r] = System.nanoTime() - start;
+                all[n++] = times[r];
+            }
+            Arrays.sort(times);
+            out.println(String.format("%-4d %12.1f %10.1f %10.1f %10.1f"
+                    + " %10.1f %8d", i + 1, q.getElapsed(),
+                    millis(times, PERCENTILES[0]),
+                    millis(times, PERCENTILES[1]),
+                    millis(times, PERCENTILES[2]),
+                    millis(times, PERCENTILES[3]), results));
+        }
+        Arrays.sort(all);
+        StringBuilder sb = new StringBuilder("total:");
+        for (double p : PERCENTILES) {
+            sb.append(p < 1 ? " p" + (int) (p * 100) : " max").append(" [")
+                    .append(String.format("%.1f", millis(all, p)))
+                    .append("] ms");
+        }
+        out.println(sb);
+        return all;
+    }
+    /**
+     * Percentile, nearest rank.
+     * @param sorted sorted latencies, nanoseconds.
+     * @param p percentile, 0..1.
+     * @return latency, milliseconds.
+     */
+    private static double millis(final long[] sorted, final double p) {
+        if (sorted.length == 0) {
+            return Double.NaN;
+        }
+        int rank = (int) Math.ceil(p * sorted.length);
+        return (double) sorted[Math.max(0, rank - 1)]
+                / TimeUnit.MILLISECONDS.toNanos(1);
+    }
+}